@@ -0,0 +1,79 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.samskivert.viztool.hierarchy.Chain;
+import com.samskivert.viztool.hierarchy.ChainUtil;
+import com.samskivert.viztool.model.ClassModel;
+import com.samskivert.viztool.model.ClassRecord;
+
+/**
+ * Measures the construction of inheritance chains from deep and wide class hierarchies.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class ChainBenchmark
+{
+    /** The shape of the hierarchy: deep (long chains of single inheritance), wide (a few roots,
+     * each with many direct subclasses), bushy (trees of moderate depth and fan-out) or flat (no
+     * inheritance at all). */
+    @Param({ "deep", "wide", "bushy", "flat" })
+    public String shape;
+
+    /** The number of classes in the package. */
+    @Param({ "1000" })
+    public int classes;
+
+    @Setup(Level.Trial)
+    public void createClasses ()
+        throws ClassNotFoundException
+    {
+        CorpusGenerator gen = new CorpusGenerator();
+        gen.setPackages(1);
+        gen.setClassesPerPackage(classes);
+        gen.setFields(0);
+        gen.setMethods(0);
+        if (shape.equals("deep")) {
+            gen.setDepth(50);
+            gen.setFanout(1);
+        } else if (shape.equals("wide")) {
+            gen.setDepth(2);
+            gen.setFanout(classes / 10);
+        } else if (shape.equals("bushy")) {
+            gen.setDepth(5);
+            gen.setFanout(4);
+        } else {
+            gen.setDepth(1);
+        }
+
+        SyntheticClasses loader = new SyntheticClasses();
+        gen.define(loader);
+        ClassModel model = new ClassModel(false);
+        for (String name : gen.getClassNames()) {
+            _records.add(model.getRecord(loader.loadClass(name)));
+        }
+        _package = gen.getPackage(0);
+    }
+
+    @Benchmark
+    public List<Chain> buildChains ()
+    {
+        return ChainUtil.buildChains("", _package, _records.iterator());
+    }
+
+    protected List<ClassRecord> _records = new ArrayList<ClassRecord>();
+    protected String _package;
+}
@@ -0,0 +1,559 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates a corpus of valid classfiles, without compiling anything, with a controllable shape:
+ * the number of packages and classes per package, the depth and fan-out of the inheritance trees
+ * in each package, the number of interfaces each class implements and the number of public
+ * fields and methods declared by each class. The corpus can be written to a jar file or a
+ * directory tree (to be scanned by {@link com.samskivert.viztool.clenum.ClassEnumerator}) or
+ * defined directly in a {@link SyntheticClasses} loader.
+ *
+ * <p> The classes in each package are arranged into inheritance trees: the first class in a
+ * package is the root of a tree, each class has up to <code>fanout</code> direct subclasses and a
+ * new tree is started once a tree is <code>depth</code> classes deep. A fan-out of one thus yields
+ * chains of single inheritance and a depth of two yields a few roots with many subclasses each.
+ * Each package also contains a pool of (empty) interfaces from which each class implements a
+ * random selection. Member types and parameter counts are chosen randomly (but repeatably, for a
+ * given seed). Every class has a public no-argument constructor and concrete methods, so the
+ * generated classes can be loaded, linked and instantiated.
+ */
+public class CorpusGenerator
+{
+    /** Receives the generated classfiles. */
+    public interface Sink
+    {
+        /** Called with the name (fully qualified, with dots) and contents of each classfile. */
+        public void classGenerated (String name, byte[] data)
+            throws IOException;
+    }
+
+    /** Generates a corpus from the command line. */
+    public static void main (String[] args)
+        throws IOException
+    {
+        CorpusGenerator gen = new CorpusGenerator();
+        String output = null;
+        for (int ii = 0; ii < args.length; ii++) {
+            if (args[ii].startsWith("-") && ii+1 < args.length) {
+                String opt = args[ii].substring(1);
+                int value = Integer.parseInt(args[++ii]);
+                if (opt.equals("packages")) {
+                    gen.setPackages(value);
+                } else if (opt.equals("classes")) {
+                    gen.setClassesPerPackage(value);
+                } else if (opt.equals("depth")) {
+                    gen.setDepth(value);
+                } else if (opt.equals("fanout")) {
+                    gen.setFanout(value);
+                } else if (opt.equals("interfaces")) {
+                    gen.setInterfaces(value);
+                } else if (opt.equals("implements")) {
+                    gen.setImplements(value);
+                } else if (opt.equals("fields")) {
+                    gen.setFields(value);
+                } else if (opt.equals("methods")) {
+                    gen.setMethods(value);
+                } else if (opt.equals("seed")) {
+                    gen.setSeed(value);
+                } else {
+                    output = null;
+                    break;
+                }
+            } else {
+                output = args[ii];
+            }
+        }
+        if (output == null) {
+            System.err.println(USAGE);
+            System.exit(-1);
+        }
+
+        gen.write(new File(output));
+        System.out.println("Wrote " + gen.getClassCount() + " classes and " +
+                           gen.getInterfaceCount() + " interfaces to " + output + ".");
+    }
+
+    /** Configures the number of packages. */
+    public void setPackages (int packages)
+    {
+        _packages = packages;
+    }
+
+    /** Configures the number of classes (not counting interfaces) in each package. */
+    public void setClassesPerPackage (int classes)
+    {
+        _classes = classes;
+    }
+
+    /** Configures the maximum depth of each inheritance tree (one yields no inheritance). */
+    public void setDepth (int depth)
+    {
+        _depth = Math.max(1, depth);
+    }
+
+    /** Configures the maximum number of direct subclasses of each class. */
+    public void setFanout (int fanout)
+    {
+        _fanout = Math.max(1, fanout);
+    }
+
+    /** Configures the number of interfaces in each package. */
+    public void setInterfaces (int interfaces)
+    {
+        _interfaces = interfaces;
+    }
+
+    /** Configures the number of interfaces implemented by each class (at most the number of
+     * interfaces in its package). */
+    public void setImplements (int impls)
+    {
+        _implements = impls;
+    }
+
+    /** Configures the number of public fields declared by each class. */
+    public void setFields (int fields)
+    {
+        _fields = fields;
+    }
+
+    /** Configures the number of public methods declared by each class. */
+    public void setMethods (int methods)
+    {
+        _methods = methods;
+    }
+
+    /** Configures the seed from which member types and implemented interfaces are chosen. */
+    public void setSeed (long seed)
+    {
+        _seed = seed;
+    }
+
+    /** Returns the total number of classes (not counting interfaces) that will be generated. */
+    public int getClassCount ()
+    {
+        return _packages * _classes;
+    }
+
+    /** Returns the total number of interfaces that will be generated. */
+    public int getInterfaceCount ()
+    {
+        return _packages * _interfaces;
+    }
+
+    /** Returns the name of the specified package. */
+    public String getPackage (int pkg)
+    {
+        return "corpus.p" + pkg;
+    }
+
+    /**
+     * Returns the names of the classes (not including interfaces) that will be generated, in the
+     * order in which they are generated (superclasses precede their subclasses).
+     */
+    public List<String> getClassNames ()
+    {
+        List<String> names = new ArrayList<String>();
+        for (int pp = 0; pp < _packages; pp++) {
+            for (int cc = 0; cc < _classes; cc++) {
+                names.add(className(pp, cc));
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Generates the corpus, passing each classfile to the supplied sink. Each package's interfaces
+     * are generated before its classes.
+     */
+    public void generate (Sink sink)
+        throws IOException
+    {
+        Random rando = new Random(_seed);
+        for (int pp = 0; pp < _packages; pp++) {
+            for (int ii = 0; ii < _interfaces; ii++) {
+                String name = interfaceName(pp, ii);
+                sink.classGenerated(name, new ClassWriter(name, INTERFACE_ACCESS).toBytes());
+            }
+
+            // classes are numbered breadth first within each tree, so each tree is a heap
+            int treeSize = treeSize();
+            for (int cc = 0; cc < _classes; cc++) {
+                int root = cc - cc % treeSize, index = cc - root;
+                String parent = (index == 0) ? OBJECT : className(pp, root + (index-1) / _fanout);
+                String name = className(pp, cc);
+                sink.classGenerated(name, generateClass(name, parent, pp, rando));
+            }
+        }
+    }
+
+    /**
+     * Generates the corpus into a jar file (if the supplied file's name ends with
+     * <code>.jar</code> or <code>.zip</code>) or a directory tree.
+     */
+    public void write (File file)
+        throws IOException
+    {
+        String name = file.getName();
+        if (name.endsWith(".jar") || name.endsWith(".zip")) {
+            writeJar(file);
+        } else {
+            writeDirectory(file);
+        }
+    }
+
+    /**
+     * Generates the corpus into the specified jar file.
+     */
+    public void writeJar (File file)
+        throws IOException
+    {
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            generate(new Sink() {
+                public void classGenerated (String name, byte[] data) throws IOException {
+                    out.putNextEntry(new ZipEntry(name.replace('.', '/') + ".class"));
+                    out.write(data);
+                    out.closeEntry();
+                }
+            });
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Generates the corpus into a directory tree rooted at the specified directory.
+     */
+    public void writeDirectory (final File root)
+        throws IOException
+    {
+        generate(new Sink() {
+            public void classGenerated (String name, byte[] data) throws IOException {
+                File file = new File(root, name.replace('.', File.separatorChar) + ".class");
+                file.getParentFile().mkdirs();
+                OutputStream out = new FileOutputStream(file);
+                try {
+                    out.write(data);
+                } finally {
+                    out.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Generates the corpus into the supplied loader, from which the classes may then be loaded.
+     */
+    public void define (final SyntheticClasses loader)
+    {
+        try {
+            generate(new Sink() {
+                public void classGenerated (String name, byte[] data) {
+                    loader.add(name, data);
+                }
+            });
+        } catch (IOException ioe) {
+            throw new RuntimeException(ioe); // not possible
+        }
+    }
+
+    /**
+     * Returns the number of classes in a complete inheritance tree of our depth and fan-out.
+     */
+    protected int treeSize ()
+    {
+        long size = 0, level = 1;
+        for (int dd = 0; dd < _depth && size < Integer.MAX_VALUE; dd++) {
+            size += level;
+            level = Math.min(level * _fanout, Integer.MAX_VALUE);
+        }
+        return (int)Math.min(size, Integer.MAX_VALUE);
+    }
+
+    protected String className (int pkg, int index)
+    {
+        return getPackage(pkg) + ".Class" + index;
+    }
+
+    protected String interfaceName (int pkg, int index)
+    {
+        return getPackage(pkg) + ".Interface" + index;
+    }
+
+    protected byte[] generateClass (String name, String parent, int pkg, Random rando)
+    {
+        ClassWriter cw = new ClassWriter(name, CLASS_ACCESS);
+        cw.setSuperclass(parent);
+
+        // choose distinct interfaces from our package's pool
+        int impls = Math.min(_implements, _interfaces);
+        List<Integer> pool = new ArrayList<Integer>();
+        for (int ii = 0; ii < _interfaces; ii++) {
+            pool.add(ii);
+        }
+        for (int ii = 0; ii < impls; ii++) {
+            cw.addInterface(interfaceName(pkg, pool.remove(rando.nextInt(pool.size()))));
+        }
+
+        cw.addConstructor();
+        for (int ii = 0; ii < _fields; ii++) {
+            cw.addField("field" + ii, FIELD_TYPES[rando.nextInt(FIELD_TYPES.length)]);
+        }
+        for (int ii = 0; ii < _methods; ii++) {
+            String[] params = new String[rando.nextInt(MAX_PARAMS+1)];
+            for (int pp = 0; pp < params.length; pp++) {
+                params[pp] = FIELD_TYPES[rando.nextInt(FIELD_TYPES.length)];
+            }
+            cw.addMethod("method" + ii, RETURN_TYPES[rando.nextInt(RETURN_TYPES.length)], params);
+        }
+        return cw.toBytes();
+    }
+
+    /**
+     * Assembles a classfile. Targets version 49 (Java 5), which requires no stack map frames.
+     */
+    protected static class ClassWriter
+    {
+        public ClassWriter (String name, int access)
+        {
+            _name = internal(name);
+            _access = access;
+        }
+
+        public void setSuperclass (String name)
+        {
+            _super = internal(name);
+        }
+
+        public void addInterface (String name)
+        {
+            _ifaces.add(classRef(internal(name)));
+        }
+
+        public void addField (String name, String desc)
+        {
+            member(_fields, PUBLIC, name, desc);
+            _fields.writeShort(0); // attributes
+            _fieldCount++;
+        }
+
+        /** Adds a public no-argument constructor that calls that of our superclass. */
+        public void addConstructor ()
+        {
+            int ctor = methodRef(_super, "<init>", "()V");
+            member(_methods, PUBLIC, "<init>", "()V");
+            code(1, 1, new byte[] { 0x2A, (byte)0xB7, (byte)(ctor >> 8), (byte)ctor,
+                                    (byte)0xB1 });
+        }
+
+        /** Adds a public method that returns zero, false or null as its type requires. */
+        public void addMethod (String name, String rtype, String[] params)
+        {
+            StringBuilder desc = new StringBuilder("(");
+            int locals = 1;
+            for (String param : params) {
+                desc.append(param);
+                locals += (param.equals("J") || param.equals("D")) ? 2 : 1;
+            }
+            desc.append(")").append(rtype);
+            member(_methods, PUBLIC, name, desc.toString());
+
+            switch (rtype.charAt(0)) {
+            case 'V': code(0, locals, new byte[] { (byte)0xB1 }); break; // return
+            case 'J': code(2, locals, new byte[] { 0x09, (byte)0xAD }); break; // lconst_0, lreturn
+            case 'L': case '[':
+                code(1, locals, new byte[] { 0x01, (byte)0xB0 }); break; // aconst_null, areturn
+            default: code(1, locals, new byte[] { 0x03, (byte)0xAC }); break; // iconst_0, ireturn
+            }
+        }
+
+        public byte[] toBytes ()
+        {
+            int thisClass = classRef(_name), superClass = classRef(_super);
+            try {
+                ByteArrayOutputStream bout = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bout);
+                out.writeInt(0xCAFEBABE);
+                out.writeShort(0); // minor version
+                out.writeShort(49); // major version
+                out.writeShort(_poolSize);
+                _pool.writeTo(out);
+                out.writeShort(_access);
+                out.writeShort(thisClass);
+                out.writeShort(superClass);
+                out.writeShort(_ifaces.size());
+                for (int iface : _ifaces) {
+                    out.writeShort(iface);
+                }
+                out.writeShort(_fieldCount);
+                _fields.writeTo(out);
+                out.writeShort(_methodCount);
+                _methods.writeTo(out);
+                out.writeShort(0); // attributes
+                out.flush();
+                return bout.toByteArray();
+            } catch (IOException ioe) {
+                throw new RuntimeException(ioe); // not possible writing to memory
+            }
+        }
+
+        protected void member (Buffer buf, int access, String name, String desc)
+        {
+            buf.writeShort(access);
+            buf.writeShort(utf8(name));
+            buf.writeShort(utf8(desc));
+            if (buf == _methods) {
+                _methodCount++;
+            }
+        }
+
+        /** Writes a code attribute (the method's only attribute) to our methods. */
+        protected void code (int maxStack, int maxLocals, byte[] code)
+        {
+            _methods.writeShort(1); // attributes
+            _methods.writeShort(utf8("Code"));
+            _methods.writeInt(12 + code.length);
+            _methods.writeShort(maxStack);
+            _methods.writeShort(maxLocals);
+            _methods.writeInt(code.length);
+            _methods.write(code, 0, code.length);
+            _methods.writeShort(0); // exception table
+            _methods.writeShort(0); // attributes
+        }
+
+        protected int utf8 (String value)
+        {
+            Integer index = _utf8s.get(value);
+            if (index == null) {
+                _pool.writeByte(1);
+                _pool.writeUTF(value);
+                _utf8s.put(value, index = _poolSize++);
+            }
+            return index;
+        }
+
+        protected int classRef (String name)
+        {
+            return ref(7, utf8(name), -1);
+        }
+
+        protected int methodRef (String owner, String name, String desc)
+        {
+            int nameAndType = ref(12, utf8(name), utf8(desc));
+            return ref(10, classRef(owner), nameAndType);
+        }
+
+        /** Adds (if need be) a constant that refers to one or two others. */
+        protected int ref (int tag, int first, int second)
+        {
+            String key = tag + ":" + first + ":" + second;
+            Integer index = _refs.get(key);
+            if (index == null) {
+                _pool.writeByte(tag);
+                _pool.writeShort(first);
+                if (second >= 0) {
+                    _pool.writeShort(second);
+                }
+                _refs.put(key, index = _poolSize++);
+            }
+            return index;
+        }
+
+        protected static String internal (String name)
+        {
+            return name.replace('.', '/');
+        }
+
+        protected String _name, _super = internal(OBJECT);
+        protected int _access;
+        protected List<Integer> _ifaces = new ArrayList<Integer>();
+
+        /** Our constant pool, which is indexed from one. */
+        protected Buffer _pool = new Buffer();
+        protected int _poolSize = 1;
+        protected Map<String,Integer> _utf8s = new HashMap<String,Integer>();
+        protected Map<String,Integer> _refs = new HashMap<String,Integer>();
+
+        protected Buffer _fields = new Buffer(), _methods = new Buffer();
+        protected int _fieldCount, _methodCount;
+    }
+
+    /** A data output stream that writes into memory (and so cannot fail). */
+    protected static class Buffer extends ByteArrayOutputStream
+    {
+        public void writeByte (int value)
+        {
+            write(value);
+        }
+
+        public void writeShort (int value)
+        {
+            write(value >> 8);
+            write(value);
+        }
+
+        public void writeInt (int value)
+        {
+            writeShort(value >> 16);
+            writeShort(value);
+        }
+
+        public void writeUTF (String value)
+        {
+            try {
+                _out.writeUTF(value);
+            } catch (IOException ioe) {
+                throw new RuntimeException(ioe); // not possible
+            }
+        }
+
+        protected DataOutputStream _out = new DataOutputStream(this);
+    }
+
+    protected int _packages = 10, _classes = 100, _depth = 4, _fanout = 3;
+    protected int _interfaces = 5, _implements = 1, _fields = 2, _methods = 8;
+    protected long _seed = 4242L;
+
+    protected static final String OBJECT = "java.lang.Object";
+
+    protected static final int PUBLIC = 0x0001;
+    protected static final int CLASS_ACCESS = 0x0021; // public, super
+    protected static final int INTERFACE_ACCESS = 0x0601; // public, interface, abstract
+
+    protected static final int MAX_PARAMS = 3;
+
+    protected static final String[] FIELD_TYPES = {
+        "I", "J", "Z", "Ljava/lang/String;", "Ljava/util/List;", "[B", "Ljava/lang/Object;" };
+    protected static final String[] RETURN_TYPES = {
+        "V", "I", "J", "Z", "Ljava/lang/String;", "Ljava/util/Map;", "[I" };
+
+    protected static final String USAGE =
+        "Usage: CorpusGenerator [-packages N] [-classes N] [-depth N] [-fanout N] " +
+        "[-interfaces N] [-implements N] [-fields N] [-methods N] [-seed N] output\n" +
+        "       output = a jar file (ending in .jar) or a directory\n" +
+        "       -classes = the number of classes in each package\n" +
+        "       -depth = the maximum depth of each inheritance tree\n" +
+        "       -fanout = the maximum number of direct subclasses of each class\n" +
+        "       -interfaces = the number of interfaces in each package\n" +
+        "       -implements = the number of those interfaces implemented by each class\n" +
+        "       -fields, -methods = the number of public members declared by each class";
+}
@@ -0,0 +1,97 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool.bench;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.samskivert.viztool.layout.Element;
+import com.samskivert.viztool.layout.PackedColumnElementLayout;
+
+/**
+ * Measures the packing of randomly sized elements onto a page.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class ElementLayoutBenchmark
+{
+    /** The number of elements to be laid out. */
+    @Param({ "100", "1000" })
+    public int elements;
+
+    /** Whether the elements are sorted by height before they are packed. */
+    @Param({ "false", "true" })
+    public boolean sortByHeight;
+
+    /** A simple element with fixed dimensions. */
+    public static class Box implements Element
+    {
+        public Box (String name, double width, double height)
+        {
+            _name = name;
+            _bounds.setRect(0, 0, width, height);
+        }
+
+        public String getName ()
+        {
+            return _name;
+        }
+
+        public Rectangle2D getBounds ()
+        {
+            return _bounds;
+        }
+
+        public void setBounds (double x, double y, double width, double height)
+        {
+            _bounds.setRect(x, y, width, height);
+        }
+
+        protected String _name;
+        protected Rectangle2D _bounds = new Rectangle2D.Double();
+    }
+
+    @Setup(Level.Trial)
+    public void createElements ()
+    {
+        // roughly the range of sizes of class summaries on a letter sized page
+        Random rando = new Random(SEED);
+        for (int ii = 0; ii < elements; ii++) {
+            _elements.add(new Box("Element" + ii, 60 + rando.nextDouble() * 200,
+                                  20 + rando.nextDouble() * 300));
+        }
+        _layout.setSortByHeight(sortByHeight);
+    }
+
+    @Benchmark
+    public Rectangle2D layout ()
+    {
+        // pack the elements onto as many pages as it takes
+        List<Box> page = _elements, overflow = new ArrayList<Box>();
+        Rectangle2D bounds = null;
+        while (!page.isEmpty()) {
+            bounds = _layout.layout(page, PAGE_WIDTH, PAGE_HEIGHT, overflow);
+            page = overflow;
+            overflow = new ArrayList<Box>();
+        }
+        return bounds;
+    }
+
+    protected List<Box> _elements = new ArrayList<Box>();
+    protected PackedColumnElementLayout _layout = new PackedColumnElementLayout();
+
+    protected static final long SEED = 4242L;
+    protected static final double PAGE_WIDTH = 540, PAGE_HEIGHT = 720;
+}
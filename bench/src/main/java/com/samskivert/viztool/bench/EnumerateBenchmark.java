@@ -0,0 +1,84 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.samskivert.viztool.clenum.ClassEnumerator;
+
+/**
+ * Measures the enumeration of the class names in a jar file or directory tree.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class EnumerateBenchmark
+{
+    /** The number of classes in the component. */
+    @Param({ "1000", "10000", "100000" })
+    public int entries;
+
+    /** The kind of component: jar or dir. */
+    @Param({ "jar", "dir" })
+    public String kind;
+
+    @Setup(Level.Trial)
+    public void createComponent ()
+        throws IOException
+    {
+        _root = File.createTempFile("viztool-bench", "");
+        _root.delete();
+        _root.mkdirs();
+
+        // a hundred classes to a package, each with a handful of members
+        CorpusGenerator gen = new CorpusGenerator();
+        gen.setPackages(Math.max(1, entries / CLASSES_PER_PACKAGE));
+        gen.setClassesPerPackage(Math.min(entries, CLASSES_PER_PACKAGE));
+        gen.setInterfaces(0);
+        _component = new File(_root, kind.equals("jar") ? "classes.jar" : "classes");
+        gen.write(_component);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteComponent ()
+    {
+        delete(_root);
+    }
+
+    @Benchmark
+    public int enumerate ()
+    {
+        ClassEnumerator clenum = new ClassEnumerator(_component.getPath());
+        int count = 0;
+        while (clenum.hasNext()) {
+            clenum.next();
+            count++;
+        }
+        return count;
+    }
+
+    protected static void delete (File file)
+    {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    protected File _root, _component;
+
+    protected static final int CLASSES_PER_PACKAGE = 100;
+}
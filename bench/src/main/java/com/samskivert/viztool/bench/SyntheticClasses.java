@@ -0,0 +1,47 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool.bench;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Defines classes directly from bytecode (generally that generated by a {@link CorpusGenerator}),
+ * so that the benchmarks can work with classes of arbitrary shape without compiling anything.
+ */
+public class SyntheticClasses extends ClassLoader
+{
+    /**
+     * Creates a loader that will define the classes added to it (delegating everything else to
+     * the loader that loaded this class).
+     */
+    public SyntheticClasses ()
+    {
+        super(SyntheticClasses.class.getClassLoader());
+    }
+
+    /**
+     * Adds a class with the specified name (fully qualified, with dots) and contents. The class
+     * is defined when it is first loaded.
+     */
+    public void add (String name, byte[] data)
+    {
+        _classes.put(name, data);
+    }
+
+    @Override
+    protected Class<?> findClass (String name)
+        throws ClassNotFoundException
+    {
+        byte[] data = _classes.get(name);
+        if (data == null) {
+            throw new ClassNotFoundException(name);
+        }
+        return defineClass(name, data, 0, data.length);
+    }
+
+    protected Map<String,byte[]> _classes = new HashMap<String,byte[]>();
+}
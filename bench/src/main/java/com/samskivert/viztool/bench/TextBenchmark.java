@@ -0,0 +1,64 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool.bench;
+
+import java.awt.Font;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.Rectangle2D;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.samskivert.viztool.util.DisplayList;
+import com.samskivert.viztool.util.FontPicker;
+import com.samskivert.viztool.util.LayoutUtil;
+import com.samskivert.viztool.util.RenderUtil;
+
+/**
+ * Measures the measurement and rendering (into a display list) of the sort of text that makes up
+ * a class summary: the signatures of a class's methods.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class TextBenchmark
+{
+    @Setup(Level.Trial)
+    public void createText ()
+    {
+        FontPicker.init(true);
+        _font = FontPicker.getClassFont();
+        _frc = new FontRenderContext(null, true, true);
+
+        Method[] methods = java.util.HashMap.class.getMethods();
+        _text = new String[methods.length];
+        for (int ii = 0; ii < methods.length; ii++) {
+            _text[ii] = methods[ii].toString();
+        }
+    }
+
+    @Benchmark
+    public Rectangle2D measure ()
+    {
+        return LayoutUtil.accomodate(new Rectangle2D.Double(), _font, _frc, false, 0, _text);
+    }
+
+    @Benchmark
+    public DisplayList render ()
+    {
+        DisplayList list = new DisplayList(_frc);
+        RenderUtil.renderStrings(list, _frc, _font, false, 0, 0, _text);
+        return list;
+    }
+
+    protected Font _font;
+    protected FontRenderContext _frc;
+    protected String[] _text;
+}
@@ -0,0 +1,110 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool.bench;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.samskivert.viztool.Visualizer;
+import com.samskivert.viztool.clenum.ClassEnumerator;
+import com.samskivert.viztool.clenum.RegexpEnumerator;
+import com.samskivert.viztool.hierarchy.HierarchyVisualizer;
+import com.samskivert.viztool.summary.SummaryVisualizer;
+import com.samskivert.viztool.util.FontPicker;
+
+/**
+ * Measures a complete visualization: introspecting a collection of classes, laying them out and
+ * painting every page into an offscreen image.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class VisualizeBenchmark
+{
+    /** The visualizer: summary or hierarchy. */
+    @Param({ "summary", "hierarchy" })
+    public String visualizer;
+
+    /** The classes to be visualized: some of the samskivert library's packages, or a synthetic
+     * corpus of ten packages of a hundred classes each. */
+    @Param({ "samskivert", "synthetic" })
+    public String corpus;
+
+    @Setup(Level.Trial)
+    public void loadClasses ()
+        throws Exception
+    {
+        FontPicker.init(true);
+
+        // the classes are loaded once; the visualizers introspect them anew every time
+        if (corpus.equals("synthetic")) {
+            CorpusGenerator gen = new CorpusGenerator();
+            SyntheticClasses loader = new SyntheticClasses();
+            gen.define(loader);
+            for (String name : gen.getClassNames()) {
+                _classes.add(loader.loadClass(name));
+            }
+            _pkgroot = "corpus";
+
+        } else {
+            ClassEnumerator clenum = new ClassEnumerator(System.getProperty("java.class.path"));
+            RegexpEnumerator fenum = new RegexpEnumerator(SAMSKIVERT_CLASSES, null, clenum);
+            while (fenum.hasNext()) {
+                String name = fenum.next();
+                if (name.indexOf('$') == -1) {
+                    _classes.add(Class.forName(name, false, getClass().getClassLoader()));
+                }
+            }
+            if (_classes.isEmpty()) {
+                throw new IllegalStateException("No classes match " + SAMSKIVERT_CLASSES + ".");
+            }
+            _pkgroot = "com.samskivert";
+        }
+
+        _image = new BufferedImage(PAGE_WIDTH, PAGE_HEIGHT, BufferedImage.TYPE_INT_RGB);
+    }
+
+    @Benchmark
+    public int visualize ()
+    {
+        Visualizer viz = visualizer.equals("summary") ?
+            new SummaryVisualizer() : new HierarchyVisualizer();
+        viz.setPackageRoot(_pkgroot);
+        viz.setClasses(_classes.iterator());
+
+        Graphics2D gfx = _image.createGraphics();
+        try {
+            viz.layout(gfx, MARGIN, MARGIN, PAGE_WIDTH - 2*MARGIN, PAGE_HEIGHT - 2*MARGIN);
+            for (int ii = 0, ll = viz.getPageCount(); ii < ll; ii++) {
+                gfx.setColor(Color.white);
+                gfx.fillRect(0, 0, PAGE_WIDTH, PAGE_HEIGHT);
+                gfx.setColor(Color.black);
+                viz.paint(gfx, ii);
+            }
+            return viz.getPageCount();
+        } finally {
+            gfx.dispose();
+        }
+    }
+
+    protected List<Class<?>> _classes = new ArrayList<Class<?>>();
+    protected String _pkgroot;
+    protected BufferedImage _image;
+
+    protected static final String SAMSKIVERT_CLASSES = "com\\.samskivert\\.(util|swing|io)\\..*";
+
+    /** A letter sized page with half inch margins, at 72 pixels per inch. */
+    protected static final int PAGE_WIDTH = 612, PAGE_HEIGHT = 792, MARGIN = 36;
+}
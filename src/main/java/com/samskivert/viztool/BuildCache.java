@@ -0,0 +1,108 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.tools.ant.AntClassLoader;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.Path;
+
+import com.samskivert.viztool.daemon.ComponentCache;
+import com.samskivert.viztool.model.ClassModel;
+
+/**
+ * Holds on to everything that {@link DriverTask} learns about a classpath for the duration of an
+ * Ant build: the classes enumerated from each of its components, the loader from which its
+ * classes are loaded (and which keeps them loaded) and the records of the classes that have been
+ * introspected. Every viztool task in the build that is given the same classpath shares the same
+ * cache, so only the first pays to scan, load and introspect; later tasks need only filter the
+ * classes and lay them out.
+ *
+ * <p> Because a build may well compile classes between one viztool task and the next, each task
+ * {@link #refresh}es the cache before using it, which discards whatever was learned from
+ * components that have since changed.
+ */
+public class BuildCache
+{
+    /**
+     * Returns the cache for the supplied classpath in the supplied project, creating it if this
+     * is the first request for it.
+     */
+    public static BuildCache get (Project project, Path classpath)
+    {
+        String key = REFERENCE_PREFIX + classpath;
+        synchronized (project) {
+            // a cache created by a copy of this class from a different taskdef can't be shared
+            Object cache = project.getReference(key);
+            if (!(cache instanceof BuildCache)) {
+                cache = new BuildCache(project, classpath);
+                project.addReference(key, cache);
+            }
+            return (BuildCache)cache;
+        }
+    }
+
+    /**
+     * Brings this cache up to date with the classpath's components. If any component has changed
+     * since the cache was last refreshed, the records of the classes in that component (and those
+     * of their subclasses) are discarded and a new loader is created.
+     */
+    public synchronized void refresh ()
+    {
+        List<String> changed = _components.refresh(Arrays.asList(_classpath.list()));
+        if (!changed.isEmpty() || _loader == null) {
+            if (_loader != null) {
+                _loader.cleanup();
+                _project.log("Classpath changed, discarded " + _model.invalidate(changed) +
+                             " viztool class records.", Project.MSG_VERBOSE);
+            }
+            _loader = new AntClassLoader(null, _project, _classpath, false);
+        }
+    }
+
+    /**
+     * Returns the names of all of the classes in the classpath, as of the last {@link #refresh}.
+     */
+    public List<String> getClasses ()
+    {
+        return _components.getClasses();
+    }
+
+    /**
+     * Returns the loader from which the classpath's classes are to be loaded.
+     */
+    public synchronized ClassLoader getLoader ()
+    {
+        return _loader;
+    }
+
+    /**
+     * Returns the model in which the records of the classpath's classes are kept.
+     */
+    public ClassModel getModel ()
+    {
+        return _model;
+    }
+
+    protected BuildCache (Project project, Path classpath)
+    {
+        _project = project;
+        _classpath = classpath;
+    }
+
+    protected Project _project;
+    protected Path _classpath;
+    protected ComponentCache _components = new ComponentCache();
+    protected AntClassLoader _loader;
+
+    /** The visualizers request members for the records that need them. */
+    protected ClassModel _model = new ClassModel(false);
+
+    /** Prefixes the classpath to form the name of the project reference to a cache. */
+    protected static final String REFERENCE_PREFIX = "viztool.cache:";
+}
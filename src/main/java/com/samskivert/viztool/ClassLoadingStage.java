@@ -0,0 +1,79 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool;
+
+import java.util.Iterator;
+
+import com.samskivert.viztool.util.Events;
+import com.samskivert.viztool.util.Pipeline;
+import com.samskivert.viztool.util.Stats;
+
+/**
+ * The pipeline stage that turns enumerated class names into loaded classes. The drivers chain this
+ * stage onto their class enumerator so that classes are loaded (on multiple threads) while the
+ * classpath is still being scanned, and the visualizer introspects them as they arrive.
+ */
+public class ClassLoadingStage implements Pipeline.Stage<String,Class<?>>
+{
+    /** The default number of loading threads. */
+    public static final int DEFAULT_LOADERS = Runtime.getRuntime().availableProcessors();
+
+    /** The default number of classes that may be in flight between scanning and visualizing. */
+    public static final int DEFAULT_QUEUE = 256;
+
+    /**
+     * Creates a loading stage that loads classes via the supplied class loader.
+     */
+    public ClassLoadingStage (ClassLoader loader)
+    {
+        _loader = loader;
+    }
+
+    /**
+     * Chains this stage onto the supplied class name enumeration.
+     *
+     * @param loaders the number of threads that will load classes.
+     * @param queue the maximum number of classes that will be scanned or loaded ahead of the
+     * consumer of the returned iterator.
+     */
+    public Iterator<Class<?>> load (Iterator<String> names, int loaders, int queue)
+    {
+        return new Pipeline<String,Class<?>>("viztool-loader", names, this, loaders, queue);
+    }
+
+    // from interface Pipeline.Stage
+    public Class<?> process (String cname)
+    {
+        // skip inner classes, the visualizations pick those up themselves
+        if (cname.indexOf("$") != -1) {
+            return null;
+        }
+        Stats.Probe probe = Stats.start(Stats.LOAD);
+        Events.Event event = Events.begin(Events.LOAD);
+        try {
+            // we only need the class for introspection, so we don't initialize it
+            Class<?> clazz = Class.forName(cname, false, _loader);
+            Stats.count(Stats.CLASSES_LOADED);
+            return clazz;
+        } catch (Throwable t) {
+            warning("Unable to introspect class [class=" + cname + ", error=" + t + "].");
+            return null;
+        } finally {
+            event.commit(cname);
+            probe.stop();
+        }
+    }
+
+    /**
+     * Reports a class that could not be loaded. This is called on a loading thread.
+     */
+    protected void warning (String message)
+    {
+        Log.warning(message);
+    }
+
+    protected ClassLoader _loader;
+}
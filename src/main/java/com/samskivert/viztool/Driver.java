@@ -5,14 +5,30 @@
 
 package com.samskivert.viztool;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import com.samskivert.swing.util.SwingUtil;
 import com.samskivert.viztool.clenum.*;
 
+import com.samskivert.viztool.daemon.VizDaemon;
+import com.samskivert.viztool.depend.DependencyVisualizer;
+import com.samskivert.viztool.hierarchy.HierarchyVisualizer;
+import com.samskivert.viztool.model.ClassModel;
+import com.samskivert.viztool.server.TileServer;
+import com.samskivert.viztool.shard.ShardCoordinator;
 import com.samskivert.viztool.summary.SummaryVisualizer;
 import com.samskivert.viztool.util.FontPicker;
+import com.samskivert.viztool.util.PageStore;
+import com.samskivert.viztool.util.Stats;
 
 /**
  * The application driver. This class parses the command line arguments
@@ -30,10 +46,43 @@ public class Driver
         // parse our arguments
         String pkgroot = "";
         String regexp = null;
-        boolean print = false;
+        boolean print = false, incremental = false, canvas = false;
+        String pngdir = null, pagestore = null, stats = null, mode = "sum";
+        int daemon = -1, connect = -1, serve = -1, shards = 0, fit = 0;
+        int loaders = ClassLoadingStage.DEFAULT_LOADERS;
+        int queue = ClassLoadingStage.DEFAULT_QUEUE;
+        int measurers = SummaryVisualizer.DEFAULT_MEASURERS;
         for (int i = 0; i < args.length; i++) {
             if (args[i].equals("-print")) {
                 print = true;
+            } else if (args[i].equals("-canvas")) {
+                canvas = true;
+            } else if (args[i].equals("-incremental")) {
+                incremental = true;
+            } else if (args[i].equals("-mode") && i+1 < args.length) {
+                mode = args[++i];
+            } else if (args[i].equals("-daemon") && i+1 < args.length) {
+                daemon = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-connect") && i+1 < args.length) {
+                connect = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-fit") && i+1 < args.length) {
+                fit = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-shards") && i+1 < args.length) {
+                shards = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-serve") && i+1 < args.length) {
+                serve = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-png") && i+1 < args.length) {
+                pngdir = args[++i];
+            } else if (args[i].equals("-stats") && i+1 < args.length) {
+                stats = args[++i];
+            } else if (args[i].equals("-pagestore") && i+1 < args.length) {
+                pagestore = args[++i];
+            } else if (args[i].equals("-loaders") && i+1 < args.length) {
+                loaders = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-queue") && i+1 < args.length) {
+                queue = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-measurers") && i+1 < args.length) {
+                measurers = Integer.parseInt(args[++i]);
             } else if (regexp == null) {
                 regexp = args[i];
             }
@@ -41,6 +90,73 @@ public class Driver
 
         // run ourselves on the classpath
         String classpath = System.getProperty("java.class.path");
+
+        // serve requests from a warm process if so requested
+        if (daemon >= 0) {
+            VizDaemon vd = new VizDaemon(
+                Arrays.asList(classpath.split(File.pathSeparator)));
+            try {
+                vd.register();
+            } catch (Exception e) {
+                Log.warning("Unable to register daemon MBean [error=" + e + "].");
+            }
+            try {
+                vd.serve(daemon);
+            } catch (IOException ioe) {
+                Log.warning("Daemon failed [port=" + daemon + ", error=" + ioe + "].");
+                System.exit(-1);
+            }
+            return;
+        }
+
+        // or hand our visualization off to such a process
+        if (connect >= 0) {
+            if (pngdir == null) {
+                System.err.println("-connect requires -png.");
+                System.exit(-1);
+            }
+            Map<String,String> request = new HashMap<String,String>();
+            request.put("classes", regexp);
+            request.put("pkgroot", pkgroot);
+            request.put("visualizer", mode.equals("hier") ? "hierarchy" :
+                        (mode.equals("dep") ? "dependency" : "summary"));
+            request.put("output", new File(pngdir).getAbsolutePath());
+            try {
+                String reply = VizDaemon.send(connect, "render", request);
+                if (!reply.startsWith("ok")) {
+                    System.err.println("Daemon failed: " + reply);
+                    System.exit(-1);
+                }
+            } catch (IOException ioe) {
+                Log.warning("Unable to contact daemon [port=" + connect + ", error=" + ioe + "].");
+                System.exit(-1);
+            }
+            return;
+        }
+
+        // or lay it out in worker processes and merge their pages
+        if (shards > 0) {
+            if (pngdir == null) {
+                System.err.println("-shards requires -png.");
+                System.exit(-1);
+            }
+            if (mode.equals("dep")) {
+                // the dependency graph spans packages, so it can't be laid out in pieces
+                System.err.println("-shards does not support the dep mode.");
+                System.exit(-1);
+            }
+            try {
+                new ShardCoordinator(mode, regexp, pkgroot, shards).export(new File(pngdir));
+            } catch (IOException ioe) {
+                Log.warning("Sharded visualization failed [error=" + ioe + "].");
+                System.exit(-1);
+            }
+            return;
+        }
+
+        // collect statistics on the run if so requested
+        Stats.setEnabled(stats != null);
+
         // System.err.println("Scanning " + classpath + ".");
         ClassEnumerator clenum = new ClassEnumerator(classpath);
 
@@ -50,7 +166,7 @@ public class Driver
         }
 
         // initialize the font picker
-        FontPicker.init(print);
+        FontPicker.init(print || pngdir != null || serve >= 0);
 
         // and finally generate the visualization
         FilterEnumerator fenum = null;
@@ -62,28 +178,113 @@ public class Driver
             System.exit(-1);
         }
 
-        List<Class<?>> classes = new ArrayList<Class<?>>();
-        while (fenum.hasNext()) {
-            String cname = fenum.next();
-            // skip inner classes, the visualizations pick those up
-            // themselves
-            if (cname.indexOf("$") != -1) {
-                continue;
+        // several modes are written from one scan of the classpath, each into its own directory
+        String[] modes = mode.split(",");
+        if (modes.length > 1) {
+            if (pngdir == null) {
+                System.err.println("Multiple modes require -png.");
+                System.exit(-1);
             }
-            try {
-                classes.add(Class.forName(cname));
-            } catch (Throwable t) {
-                Log.warning("Unable to introspect class [class=" + cname +
-                            ", error=" + t + "].");
+            List<Visualization> vizs = new ArrayList<Visualization>();
+            for (String vmode : modes) {
+                Visualization viz = new Visualization();
+                viz.setVisualizer(getVisualizerClass(vmode).getName());
+                viz.setPkgroot(pkgroot);
+                viz.setClasses(regexp);
+                viz.setOutput(new File(pngdir, vmode));
+                viz.setFormat(Visualization.PNG);
+                viz.setIncremental(incremental);
+                viz.setFit(fit);
+                vizs.add(viz);
+            }
+            writeAll(vizs, fenum, classpath, loaders, queue);
+            writeStats(stats);
+            return;
+        }
+
+        // a visualization fit to its pages must be laid out all at once
+        if (fit > 0) {
+            incremental = false;
+        }
+
+        // an incremental visualization fills its pages in order, so it needs sorted classes
+        Iterator<String> names = fenum;
+        if (incremental) {
+            List<String> sorted = new ArrayList<String>();
+            while (fenum.hasNext()) {
+                sorted.add(fenum.next());
             }
+            Collections.sort(sorted);
+            names = sorted.iterator();
+        }
+
+        // load the matching classes while the enumerator is still scanning, in isolation from
+        // our own classes; the visualizer introspects them as they arrive
+        IsolatedClassLoader loader = null;
+        try {
+            loader = new IsolatedClassLoader(Arrays.asList(classpath.split(File.pathSeparator)));
+        } catch (MalformedURLException mue) {
+            Log.warning("Invalid classpath [classpath=" + classpath + ", error=" + mue + "].");
+            System.exit(-1);
         }
+        Iterator<Class<?>> classes = new ClassLoadingStage(loader).load(names, loaders, queue);
 
-        // Visualizer viz = new HierarchyVisualizer(pkgroot, penum);
-        Visualizer viz = new SummaryVisualizer();
+        Visualizer viz;
+        if (mode.equals("hier")) {
+            viz = new HierarchyVisualizer();
+        } else if (mode.equals("dep")) {
+            viz = new DependencyVisualizer();
+        } else {
+            SummaryVisualizer sviz = new SummaryVisualizer();
+            sviz.setMeasureThreads(measurers);
+            sviz.setIncremental(incremental);
+            viz = sviz;
+        }
         viz.setPackageRoot(pkgroot);
-        viz.setClasses(classes.iterator());
+        viz.setClasses(classes);
+
+        // once the classes are introspected, we let them (and their loader) be collected; an
+        // incremental visualizer introspects its classes as it lays them out, however
+        boolean lazy = incremental && (viz instanceof SummaryVisualizer);
+        if (!lazy) {
+            loader.release();
+            loader = null;
+            classes = null;
+        }
 
-        if (print) {
+        // keep laid out pages on disk rather than in memory if so requested
+        if (pagestore != null) {
+            try {
+                viz.setPageStore(new PageStore(new File(pagestore), PageStore.DEFAULT_CACHE));
+            } catch (IOException ioe) {
+                Log.warning("Unable to create page store [file=" + pagestore +
+                            ", error=" + ioe + "].");
+                System.exit(-1);
+            }
+        }
+
+        if (serve >= 0) {
+            try {
+                new TileServer(viz, TileServer.DEFAULT_RENDERERS, TileServer.DEFAULT_CACHE).
+                    start(serve);
+            } catch (IOException ioe) {
+                Log.warning("Unable to serve visualization [port=" + serve +
+                            ", error=" + ioe + "].");
+                System.exit(-1);
+            }
+
+        } else if (pngdir != null) {
+            try {
+                ImageExporter exporter = new ImageExporter(
+                    new File(pngdir), ImageExporter.DEFAULT_SCALE);
+                exporter.setFitPages(fit);
+                exporter.export(viz);
+            } catch (Exception e) {
+                e.printStackTrace(System.err);
+            }
+            writeStats(stats);
+
+        } else if (print) {
             try {
                 if (!PrintUtil.print(viz, null)) {
                     Log.info("Printing cancelled.");
@@ -91,21 +292,108 @@ public class Driver
             } catch (Exception e) {
                 e.printStackTrace(System.err);
             }
+            writeStats(stats);
             // printing starts up the AWT threads, so we have to explicitly exit at this point
             System.exit(0);
 
         } else {
-            VizFrame frame = new VizFrame(viz);
+            VizFrame frame = new VizFrame(viz, canvas);
             frame.pack();
             SwingUtil.centerWindow(frame);
             frame.setVisible(true);
         }
     }
 
+    /**
+     * Loads the supplied classes (once) and writes all of the supplied visualizations of them.
+     */
+    protected static void writeAll (List<Visualization> vizs, Iterator<String> names,
+                                    String classpath, int loaders, int queue)
+    {
+        List<String> sorted = new ArrayList<String>();
+        while (names.hasNext()) {
+            sorted.add(names.next());
+        }
+        Collections.sort(sorted);
+
+        IsolatedClassLoader loader = null;
+        try {
+            loader = new IsolatedClassLoader(Arrays.asList(classpath.split(File.pathSeparator)));
+        } catch (MalformedURLException mue) {
+            Log.warning("Invalid classpath [classpath=" + classpath + ", error=" + mue + "].");
+            System.exit(-1);
+        }
+        List<Class<?>> classes = new ArrayList<Class<?>>();
+        for (Iterator<Class<?>> iter = new ClassLoadingStage(loader).load(
+                 sorted.iterator(), loaders, queue); iter.hasNext(); ) {
+            classes.add(iter.next());
+        }
+
+        try {
+            Visualization.renderAll(vizs, classes, new ClassModel(false), vizs.size());
+        } catch (Exception e) {
+            e.printStackTrace(System.err);
+        } finally {
+            loader.release();
+        }
+    }
+
+    /**
+     * Writes the statistics collected during the run to the specified file, if one was
+     * specified.
+     */
+    protected static void writeStats (String file)
+    {
+        if (file == null) {
+            return;
+        }
+        try {
+            Stats.write(new File(file));
+        } catch (IOException ioe) {
+            Log.warning("Unable to write statistics [file=" + file + ", error=" + ioe + "].");
+        }
+    }
+
+    /**
+     * Returns the class of the visualizer for the specified mode.
+     */
+    protected static Class<? extends Visualizer> getVisualizerClass (String mode)
+    {
+        if (mode.equals("hier")) {
+            return HierarchyVisualizer.class;
+        } else if (mode.equals("dep")) {
+            return DependencyVisualizer.class;
+        } else {
+            return SummaryVisualizer.class;
+        }
+    }
+
     protected static final String USAGE =
-        "Usage: Driver [-mode hier|sum] [-print] package_regexp " +
-        "[package_root]\n" +
+        "Usage: Driver [-mode hier|sum|dep|hier,sum] [-print] [-png dir] [-canvas] " +
+        "[-incremental] [-loaders N] [-queue N] [-measurers N] [-pagestore file] [-stats file] " +
+        "[-connect port] [-serve port] [-shards N] [-fit N] package_regexp [package_root]\n" +
+        "       Driver -daemon port\n" +
         "       hier = class hierarchy visualization\n" +
-        "       sum = class summary visualization\n"
+        "       sum = class summary visualization\n" +
+        "       dep = class dependency visualization\n" +
+        "       hier,sum = both visualizations from one scan, written (with -png) into\n" +
+        "                  the hier and sum subdirectories of the output directory (any\n" +
+        "                  of the modes may be so combined)\n" +
+        "       -png = write pages as PNG images into the specified directory\n" +
+        "       -canvas = display all pages on a zoomable canvas rather than one at a time\n" +
+        "       -incremental = write pages as they are laid out rather than holding them all\n" +
+        "       -loaders = number of threads loading classes\n" +
+        "       -queue = number of classes scanned or loaded ahead of the visualizer\n" +
+        "       -measurers = number of threads measuring class summaries\n" +
+        "       -pagestore = keep laid out pages in the specified file rather than in memory\n" +
+        "       -stats = write per-phase timings and counts (as JSON) to the specified file\n" +
+        "                when printing or writing images\n" +
+        "       -daemon = serve visualization requests on the specified local port, keeping\n" +
+        "                 enumerated classes, class records and text layouts warm\n" +
+        "       -connect = have the daemon on the specified local port write the PNG images\n" +
+        "       -serve = serve the visualization to web browsers on the specified local port\n" +
+        "       -fit = scale the visualization (with -png) to fit in N pages\n" +
+        "       -shards = lay out the packages in N worker processes and merge their pages\n" +
+        "                 (with -png), writing an index of the classes on each page\n"
         ;
 }
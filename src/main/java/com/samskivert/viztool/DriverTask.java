@@ -6,12 +6,18 @@
 package com.samskivert.viztool;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.TreeSet;
 
 import org.apache.tools.ant.AntClassLoader;
 import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
 import org.apache.tools.ant.Task;
 
 import org.apache.tools.ant.types.CommandlineJava;
@@ -22,7 +28,12 @@ import com.samskivert.swing.util.SwingUtil;
 import com.samskivert.viztool.clenum.ClassEnumerator;
 import com.samskivert.viztool.clenum.FilterEnumerator;
 import com.samskivert.viztool.clenum.RegexpEnumerator;
+import com.samskivert.viztool.model.ClassModel;
+import com.samskivert.viztool.util.Fingerprint;
 import com.samskivert.viztool.util.FontPicker;
+import com.samskivert.viztool.util.PageStore;
+import com.samskivert.viztool.util.Pipeline;
+import com.samskivert.viztool.util.Stats;
 
 /**
  * The viztool ant task. It takes the following arguments:
@@ -31,11 +42,32 @@ import com.samskivert.viztool.util.FontPicker;
  * pkgroot = the base package from which names will be shortened
  * classes = a regular expression matching the classes to be visualized
  * visualizer = the classname of the visualizer to be used
+ * output = (optional) the file or directory to which the visualization is written
+ * format = (optional) print (the default) or png (writes page images into the output directory)
+ * incremental = (optional) write pages as they are laid out rather than holding them all
+ * loaders = (optional) the number of threads used to load classes
+ * queue = (optional) the number of classes that may be loaded ahead of the visualizer
+ * pagestore = (optional) a file in which to keep laid out pages rather than holding them in memory
+ * stats = (optional) a file to which per-phase timings and counts are written (as JSON)
+ * cache = (optional) whether the classes scanned, loaded and introspected are shared with the
+ *   other viztool tasks in the build that use the same classpath (true by default)
+ * force = (optional) write the output even if it is up to date (false by default)
+ * fit = (optional) scale the visualization to fit in this many pages (png only)
  * </pre>
  *
  * The task should contain an embedded &lt;classpath&gt; element to
  * provide the classpath over which we will iterate, looking for matching
  * classes.
+ *
+ * <p> A fingerprint of the output (see {@link Fingerprint}) is kept beside it. If neither the
+ * visualized classes nor the task's settings have changed since the output was written, the task
+ * does nothing.
+ *
+ * <p> Several visualizations can be generated from a single scan of the classpath by nesting
+ * &lt;visualization&gt; elements (see {@link Visualization}), each with its own visualizer,
+ * classes, exclude, pkgroot, output, format and incremental attributes. Those not given default
+ * to the task's. The classes matched by any of them are loaded and introspected once and the
+ * visualizations are then laid out and written concurrently.
  */
 public class DriverTask extends Task
 {
@@ -64,6 +96,95 @@ public class DriverTask extends Task
         _output = output;
     }
 
+    /**
+     * Configures the output format: <code>print</code> (the default) or <code>png</code>, in
+     * which case the output is a directory into which page images are written.
+     */
+    public void setFormat (String format)
+    {
+        _format = format;
+    }
+
+    /**
+     * Configures whether pages are written as soon as they are laid out (for visualizers that
+     * support it).
+     */
+    public void setIncremental (boolean incremental)
+    {
+        _incremental = incremental;
+    }
+
+    /**
+     * Configures the number of threads used to load classes.
+     */
+    public void setLoaders (int loaders)
+    {
+        _loaders = loaders;
+    }
+
+    /**
+     * Configures the number of classes that may be scanned or loaded ahead of the visualizer.
+     */
+    public void setQueue (int queue)
+    {
+        _queue = queue;
+    }
+
+    /**
+     * Configures a file in which laid out pages are kept rather than holding them in memory.
+     */
+    public void setPagestore (File pagestore)
+    {
+        _pagestore = pagestore;
+    }
+
+    /**
+     * Configures a file to which statistics on the run (per-phase timings, allocation and item
+     * counts) are written, as JSON, once the visualization has been written.
+     */
+    public void setStats (File stats)
+    {
+        _stats = stats;
+    }
+
+    /**
+     * Configures whether what is learned about our classpath is kept (and what was learned by
+     * earlier tasks with the same classpath is reused) for the duration of the build.
+     */
+    public void setCache (boolean cache)
+    {
+        _cache = cache;
+    }
+
+    /**
+     * Configures whether the visualization is written even if the output is up to date: if
+     * neither the visualized classes nor the task's settings have changed since it was written.
+     */
+    public void setForce (boolean force)
+    {
+        _force = force;
+    }
+
+    /**
+     * Adds a visualization to be generated from the same scan of the classpath as the others.
+     * Its settings default to those of the task.
+     */
+    public Visualization createVisualization ()
+    {
+        Visualization viz = createDefaultVisualization();
+        _visualizations.add(viz);
+        return viz;
+    }
+
+    /**
+     * Configures the number of pages into which a PNG visualization is fit (by scaling it up or
+     * down), or zero (the default) to leave it unscaled.
+     */
+    public void setFit (int fit)
+    {
+        _fit = fit;
+    }
+
     public Path createClasspath ()
     {
         return _cmdline.createClasspath(getProject()).createPath();
@@ -74,6 +195,12 @@ public class DriverTask extends Task
      */
     public void execute () throws BuildException
     {
+        // generate many visualizations from one scan if so requested
+        if (!_visualizations.isEmpty()) {
+            executeAll();
+            return;
+        }
+
         // make sure everything was set up properly
         ensureSet(_vizclass, "Must specify the visualizer class via the 'visualizer' attribute.");
         ensureSet(_pkgroot, "Must specify the package root via the 'pkgroot' attribute.");
@@ -81,15 +208,36 @@ public class DriverTask extends Task
         Path classpath = _cmdline.getClasspath();
         ensureSet(classpath, "Must provide a <classpath> subelement " +
                   "describing the classpath to be searched for classes.");
+        boolean png = "png".equals(_format);
+        if (png) {
+            ensureSet(_output, "Must specify the output directory via the 'output' attribute.");
+        } else if (!"print".equals(_format)) {
+            throw new BuildException("Unknown output format '" + _format + "'.");
+        }
+
+        // collect statistics on the run if so requested
+        Stats.setEnabled(_stats != null);
 
         // initialize the font picker
         FontPicker.init(_output != null);
 
-        // create the classloader we'll use to load the visualized classes
-        ClassLoader cl = new AntClassLoader(null, getProject(), classpath, false);
+        // create the classloader we'll use to load the visualized classes and scan the classpath,
+        // or reuse those of an earlier task with the same classpath
+        ClassLoader cl;
+        Iterator<String> clenum;
+        ClassModel model = null;
+        if (_cache) {
+            BuildCache cache = BuildCache.get(getProject(), classpath);
+            cache.refresh();
+            cl = cache.getLoader();
+            clenum = cache.getClasses().iterator();
+            model = cache.getModel();
+        } else {
+            cl = new AntClassLoader(null, getProject(), classpath, false);
+            clenum = new ClassEnumerator(classpath.toString());
+        }
 
-        // scan the classpath and determine which classes will be visualized
-        ClassEnumerator clenum = new ClassEnumerator(classpath.toString());
+        // determine which classes will be visualized
         FilterEnumerator fenum = null;
         try {
             fenum = new RegexpEnumerator(_classes, _exclude, clenum);
@@ -98,22 +246,41 @@ public class DriverTask extends Task
                                      ", exclude=" + _exclude + "].", e);
         }
 
-        List<Class<?>> classes = new ArrayList<Class<?>>();
-        while (fenum.hasNext()) {
-            String cname = fenum.next();
-            // skip inner classes, the visualizations pick those up
-            // themselves
-            if (cname.indexOf("$") != -1) {
-                continue;
+        // an incremental visualization fills its pages in order, so it needs sorted classes, and
+        // we need all of the classes up front to check whether our output is up to date
+        Iterator<String> names = fenum;
+        boolean check = (_output != null && !_force);
+        String fingerprint = null;
+        if (_incremental || check) {
+            List<String> matched = new ArrayList<String>();
+            while (fenum.hasNext()) {
+                matched.add(fenum.next());
             }
-            try {
-                classes.add(cl.loadClass(cname));
-            } catch (Throwable t) {
-                log("Unable to introspect class [class=" + cname +
-                    ", error=" + t + "].");
+            if (_incremental) {
+                Collections.sort(matched);
+            }
+            names = matched.iterator();
+
+            if (check) {
+                File fpfile = getFingerprintFile(_output);
+                fingerprint = fingerprint(cl, createDefaultVisualization(), matched);
+                if (_output.exists() && fingerprint.equals(Fingerprint.read(fpfile))) {
+                    log("Visualization in '" + _output.getPath() + "' is up to date.");
+                    return;
+                }
+                // if we fail to write our output, it mustn't be considered up to date
+                fpfile.delete();
             }
         }
 
+        // load the matching classes while the enumerator is still scanning; the visualizer
+        // introspects them as they arrive
+        ClassLoadingStage stage = new ClassLoadingStage(cl) {
+            protected void warning (String message) {
+                log(message);
+            }
+        };
+
 //         // remove the packages on our exclusion list
 //         String expkg = System.getProperty("exclude");
 //         if (expkg != null) {
@@ -131,8 +298,28 @@ public class DriverTask extends Task
             throw new BuildException("Unable to instantiate visualizer: " + _vizclass, t);
         }
 
+        if (_incremental && _fit == 0 && viz instanceof IncrementalVisualizer) {
+            ((IncrementalVisualizer)viz).setIncremental(true);
+        }
+        if (model != null) {
+            viz.setModel(model);
+        }
         viz.setPackageRoot(_pkgroot);
-        viz.setClasses(classes.iterator());
+        Iterator<Class<?>> classes = stage.load(names, _loaders, _queue);
+        try {
+            viz.setClasses(classes);
+        } catch (RuntimeException re) {
+            // don't leave the loading threads waiting for us to take their classes
+            Pipeline.close(classes);
+            throw re;
+        }
+        if (_pagestore != null) {
+            try {
+                viz.setPageStore(new PageStore(_pagestore, PageStore.DEFAULT_CACHE));
+            } catch (IOException ioe) {
+                throw new BuildException("Unable to create page store: " + _pagestore, ioe);
+            }
+        }
 
         // if no output file was specified, pop up a window
         if (_output == null) {
@@ -151,6 +338,16 @@ public class DriverTask extends Task
                 }
             }
 
+        } else if (png) {
+            try {
+                log("Writing visualization pages to '" + _output.getPath() + "'.");
+                ImageExporter exporter = new ImageExporter(_output, ImageExporter.DEFAULT_SCALE);
+                exporter.setFitPages(_fit);
+                exporter.export(viz);
+            } catch (Exception e) {
+                throw new BuildException("Error writing visualization.", e);
+            }
+
         } else {
             try {
                 log("Generating visualization to '" + _output.getPath() + "'.");
@@ -159,6 +356,195 @@ public class DriverTask extends Task
                 throw new BuildException("Error printing visualization.", e);
             }
         }
+
+        if (fingerprint != null) {
+            writeFingerprint(_output, fingerprint);
+        }
+        writeStats();
+    }
+
+    /**
+     * Generates all of our nested visualizations from a single scan of our classpath.
+     */
+    protected void executeAll ()
+        throws BuildException
+    {
+        Path classpath = _cmdline.getClasspath();
+        ensureSet(classpath, "Must provide a <classpath> subelement " +
+                  "describing the classpath to be searched for classes.");
+        for (Visualization viz : _visualizations) {
+            ensureSet(viz.getVisualizer(), "Must specify the visualizer class of " + viz + ".");
+            ensureSet(viz.getClasses(), "Must specify the class regexp of " + viz + ".");
+            ensureSet(viz.getOutput(), "Must specify the output of " + viz + ".");
+            if (!Visualization.PNG.equals(viz.getFormat()) &&
+                !Visualization.PRINT.equals(viz.getFormat())) {
+                throw new BuildException("Unknown output format '" + viz.getFormat() + "'.");
+            }
+        }
+
+        Stats.setEnabled(_stats != null);
+        FontPicker.init(true);
+
+        ClassLoader cl;
+        List<String> names;
+        ClassModel model;
+        if (_cache) {
+            BuildCache cache = BuildCache.get(getProject(), classpath);
+            cache.refresh();
+            cl = cache.getLoader();
+            names = cache.getClasses();
+            model = cache.getModel();
+        } else {
+            cl = new AntClassLoader(null, getProject(), classpath, false);
+            names = new ArrayList<String>();
+            for (Iterator<String> iter = new ClassEnumerator(classpath.toString());
+                 iter.hasNext(); ) {
+                names.add(iter.next());
+            }
+            model = new ClassModel(false);
+        }
+
+        // determine which classes each visualization depicts, skipping those that are up to
+        // date, and load every class depicted by any of them, once
+        List<Visualization> stale = new ArrayList<Visualization>();
+        List<String> fingerprints = new ArrayList<String>();
+        TreeSet<String> union = new TreeSet<String>();
+        for (Visualization viz : _visualizations) {
+            List<String> matched = new ArrayList<String>();
+            try {
+                for (String name : names) {
+                    if (viz.matches(name)) {
+                        matched.add(name);
+                    }
+                }
+            } catch (Exception e) {
+                throw new BuildException("Invalid package regular expression [classes=" +
+                                         viz.getClasses() + ", exclude=" + viz.getExclude() +
+                                         "].", e);
+            }
+            String fingerprint = null;
+            if (!_force) {
+                File fpfile = getFingerprintFile(viz.getOutput());
+                fingerprint = fingerprint(cl, viz, matched);
+                if (viz.getOutput().exists() && fingerprint.equals(Fingerprint.read(fpfile))) {
+                    log("Visualization in '" + viz.getOutput().getPath() + "' is up to date.");
+                    continue;
+                }
+                fpfile.delete();
+            }
+            stale.add(viz);
+            fingerprints.add(fingerprint);
+            union.addAll(matched);
+        }
+        if (stale.isEmpty()) {
+            return;
+        }
+
+        ClassLoadingStage stage = new ClassLoadingStage(cl) {
+            protected void warning (String message) {
+                log(message);
+            }
+        };
+        List<Class<?>> classes = new ArrayList<Class<?>>();
+        Iterator<Class<?>> loaded = stage.load(union.iterator(), _loaders, _queue);
+        try {
+            while (loaded.hasNext()) {
+                classes.add(loaded.next());
+            }
+        } finally {
+            Pipeline.close(loaded);
+        }
+
+        try {
+            log("Writing " + stale.size() + " visualizations.");
+            Visualization.renderAll(stale, classes, model, stale.size());
+        } catch (Exception e) {
+            throw new BuildException("Error writing visualizations.", e);
+        }
+
+        for (int ii = 0; ii < stale.size(); ii++) {
+            if (fingerprints.get(ii) != null) {
+                writeFingerprint(stale.get(ii).getOutput(), fingerprints.get(ii));
+            }
+        }
+        writeStats();
+    }
+
+    /**
+     * Creates a visualization with the settings of this task.
+     */
+    protected Visualization createDefaultVisualization ()
+    {
+        Visualization viz = new Visualization();
+        viz.setVisualizer(_vizclass);
+        viz.setPkgroot(_pkgroot);
+        viz.setClasses(_classes);
+        viz.setExclude(_exclude);
+        viz.setOutput(_output);
+        viz.setFormat(_format);
+        viz.setIncremental(_incremental);
+        viz.setFit(_fit);
+        return viz;
+    }
+
+    /**
+     * Computes the fingerprint of a visualization's output: that of the classes it depicts and
+     * of the settings that affect how it depicts them.
+     */
+    protected String fingerprint (ClassLoader cl, Visualization viz, List<String> classes)
+        throws BuildException
+    {
+        Fingerprint fp = new Fingerprint();
+        fp.add(FINGERPRINT_VERSION);
+        fp.add(viz.getVisualizer());
+        fp.add(viz.getPkgroot());
+        fp.add(viz.getFormat());
+        fp.add(String.valueOf(viz.isIncremental()));
+        if (viz.getFit() > 0) {
+            fp.add("fit=" + viz.getFit());
+        }
+        for (String name : classes) {
+            InputStream in = cl.getResourceAsStream(name.replace('.', '/') + ".class");
+            try {
+                if (in == null) {
+                    fp.add(name);
+                } else {
+                    fp.addClass(name, in);
+                }
+            } catch (IOException ioe) {
+                throw new BuildException("Unable to read class file: " + name, ioe);
+            }
+        }
+        return fp.toHex();
+    }
+
+    /**
+     * Returns the file, beside the supplied output, in which its fingerprint is kept.
+     */
+    protected File getFingerprintFile (File output)
+    {
+        return new File(output.getPath() + ".fingerprint");
+    }
+
+    protected void writeFingerprint (File output, String fingerprint)
+    {
+        try {
+            Fingerprint.write(getFingerprintFile(output), fingerprint);
+        } catch (IOException ioe) {
+            log("Unable to write fingerprint: " + ioe, Project.MSG_WARN);
+        }
+    }
+
+    protected void writeStats ()
+        throws BuildException
+    {
+        if (_stats != null) {
+            try {
+                Stats.write(_stats);
+            } catch (IOException ioe) {
+                throw new BuildException("Unable to write statistics: " + _stats, ioe);
+            }
+        }
     }
 
     protected void ensureSet (Object value, String errmsg)
@@ -173,6 +559,20 @@ public class DriverTask extends Task
     protected String _pkgroot;
     protected String _classes, _exclude;
     protected File _output;
+    protected String _format = "print";
+    protected boolean _incremental;
+    protected int _loaders = ClassLoadingStage.DEFAULT_LOADERS;
+    protected int _queue = ClassLoadingStage.DEFAULT_QUEUE;
+    protected File _pagestore;
+    protected File _stats;
+    protected boolean _cache = true;
+    protected boolean _force;
+    protected int _fit;
+    protected List<Visualization> _visualizations = new ArrayList<Visualization>();
+
+    /** Changed whenever a change to viztool changes its visualizations, so that visualizations
+     * written by an earlier version are not considered up to date. */
+    protected static final String FINGERPRINT_VERSION = "1";
 
     // use use this for accumulating our classpath
     protected CommandlineJava _cmdline = new CommandlineJava();
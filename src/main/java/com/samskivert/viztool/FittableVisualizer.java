@@ -0,0 +1,35 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool;
+
+import java.awt.Graphics2D;
+
+/**
+ * A visualizer that can count the pages it would occupy at a given page size without laying
+ * itself out (and recording its pages), so that the {@link PageFitter} can cheaply try many page
+ * sizes in search of the largest scale at which the visualization fits in a given number of
+ * pages.
+ */
+public interface FittableVisualizer extends Visualizer
+{
+    /**
+     * Measures the elements of the visualization for the supplied graphics, just as {@link
+     * #layout} would. This must be called before {@link #countPages} and again whenever the
+     * fonts or spacing used by the visualization change.
+     */
+    public void measure (Graphics2D gfx);
+
+    /**
+     * Returns the number of pages of the specified dimensions that the visualization would
+     * occupy, using the measurements of the last call to {@link #measure}. Nothing is recorded,
+     * but the visualization must be laid out again before it is painted.
+     *
+     * @return the number of pages, {@link Integer#MAX_VALUE} if some element of the
+     * visualization is too large for a page of these dimensions, or -1 if the visualizer can't
+     * count its pages (because it operates incrementally, say).
+     */
+    public int countPages (Graphics2D gfx, double width, double height);
+}
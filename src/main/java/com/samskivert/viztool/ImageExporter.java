@@ -0,0 +1,342 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.imageio.ImageIO;
+
+import com.samskivert.viztool.util.Outline;
+import com.samskivert.viztool.util.SearchIndex;
+import com.samskivert.viztool.util.Stats;
+
+/**
+ * Renders the pages of a visualization to PNG files (named <code>page-0001.png</code> and so on)
+ * in an output directory. Incremental visualizers have their pages written as soon as they are
+ * laid out.
+ *
+ * <p> A manifest (<code>manifest.txt</code>) is written alongside the pages, which lists each
+ * page's file, the content hash of the page (see {@link Outline#getContentHash}) and the fully
+ * qualified names of the packages and classes it depicts (from the visualization's {@link
+ * SearchIndex}). When exporting into a directory that holds the manifest of an earlier export,
+ * pages whose content hash is unchanged are not rendered again. Page files beyond the end of the
+ * new visualization are deleted whether or not there is such a manifest; no other files are.
+ *
+ * <p> A table of contents (<code>toc.txt</code>) is also written, which lists the classes,
+ * members and packages in the visualization's {@link SearchIndex} along with their pages.
+ */
+public class ImageExporter implements PageSink
+{
+    /** The default number of pixels per point (yielding 144 dpi images). */
+    public static final double DEFAULT_SCALE = 2;
+
+    /** The name of the file in the output directory in which the pages are listed. */
+    public static final String MANIFEST = "manifest.txt";
+
+    /** The name of the file in the output directory to which the table of contents is written. */
+    public static final String CONTENTS = "toc.txt";
+
+    /**
+     * Creates an exporter that will write pages to the specified directory.
+     *
+     * @param scale the number of pixels per point (1 yields 72 dpi images).
+     */
+    public ImageExporter (File outdir, double scale)
+    {
+        _outdir = outdir;
+        _scale = scale;
+    }
+
+    /**
+     * Configures the exporter to scale visualizations (up or down) so that each fits in the
+     * specified number of pages, or not to scale them if the number is zero. Only {@link
+     * FittableVisualizer}s can be scaled, and they are laid out all at once even if they could
+     * be laid out incrementally.
+     */
+    public void setFitPages (int pages)
+    {
+        _fitPages = pages;
+    }
+
+    /**
+     * Lays out the supplied visualization and writes all of its pages.
+     */
+    public void export (Visualizer viz)
+        throws IOException
+    {
+        if (!_outdir.isDirectory() && !_outdir.mkdirs()) {
+            throw new IOException("Unable to create output directory '" + _outdir + "'.");
+        }
+        _entries.clear();
+        _written.clear();
+        _fit = 1;
+
+        Graphics2D gfx = createLayoutGraphics();
+        PageFitter fitter = null;
+        try {
+            if (_fitPages > 0 && viz instanceof FittableVisualizer) {
+                fitter = new PageFitter(_fitPages);
+                _fit = fitter.fit((FittableVisualizer)viz, gfx,
+                                  PAGE_WIDTH - 2*MARGIN, PAGE_HEIGHT - 2*MARGIN);
+            }
+
+            // if we fail partway through, the old manifest must not vouch for the pages we
+            // rewrote (the scale is part of the manifest, so we read it once that is known)
+            _previous = readManifest();
+            new File(_outdir, MANIFEST).delete();
+
+            if (fitter == null && viz instanceof IncrementalVisualizer) {
+                ((IncrementalVisualizer)viz).layout(
+                    gfx, MARGIN, MARGIN, PAGE_WIDTH - 2*MARGIN, PAGE_HEIGHT - 2*MARGIN, this);
+            } else {
+                // a scaled visualization is laid out on correspondingly scaled pages
+                viz.layout(gfx, MARGIN / _fit, MARGIN / _fit,
+                           (PAGE_WIDTH - 2*MARGIN) / _fit, (PAGE_HEIGHT - 2*MARGIN) / _fit);
+                for (int ii = 0, ll = viz.getPageCount(); ii < ll; ii++) {
+                    pageReady(viz, ii);
+                }
+            }
+        } finally {
+            gfx.dispose();
+            if (fitter != null) {
+                fitter.restore();
+            }
+        }
+
+        // remove the pages of any earlier export that are no longer part of the visualization
+        File[] files = _outdir.listFiles();
+        for (int ii = 0, ll = (files == null) ? 0 : files.length; ii < ll; ii++) {
+            String name = files[ii].getName();
+            if (pageIndex(name) >= 0 && !_written.contains(name)) {
+                files[ii].delete();
+            }
+        }
+
+        SearchIndex index = viz.getSearchIndex();
+        writeManifest(index);
+        if (index != null) {
+            index.writeContents(new File(_outdir, CONTENTS));
+        }
+    }
+
+    /**
+     * Lays out the supplied visualization just as {@link #export} would, but writes nothing. This
+     * is used to lay out pages that will be stored and written elsewhere.
+     */
+    public void layout (Visualizer viz)
+    {
+        Graphics2D gfx = createLayoutGraphics();
+        try {
+            viz.layout(gfx, MARGIN, MARGIN, PAGE_WIDTH - 2*MARGIN, PAGE_HEIGHT - 2*MARGIN);
+        } finally {
+            gfx.dispose();
+        }
+    }
+
+    // from interface PageSink
+    public void pageReady (Visualizer viz, int pageIndex)
+        throws IOException
+    {
+        String name = pageName(pageIndex);
+        File file = new File(_outdir, name);
+        Outline outline = viz.getOutline(pageIndex);
+        String hash = (outline == null) ? NO_HASH : Long.toHexString(outline.getContentHash());
+        while (_entries.size() <= pageIndex) {
+            _entries.add(null);
+        }
+        _entries.set(pageIndex, name + "\t" + hash);
+        _written.add(name);
+
+        if (!hash.equals(NO_HASH) && hash.equals(_previous.get(name)) && file.exists()) {
+            Stats.count(Stats.PAGES_UNCHANGED);
+            return;
+        }
+
+        BufferedImage image = new BufferedImage(
+            (int)Math.ceil(PAGE_WIDTH * _scale), (int)Math.ceil(PAGE_HEIGHT * _scale),
+            BufferedImage.TYPE_INT_RGB);
+        Graphics2D gfx = image.createGraphics();
+        try {
+            gfx.setColor(Color.white);
+            gfx.fillRect(0, 0, image.getWidth(), image.getHeight());
+            configure(gfx);
+            if (_fit != 1) {
+                gfx.scale(_fit, _fit);
+            }
+            viz.paint(gfx, pageIndex);
+        } finally {
+            gfx.dispose();
+        }
+        ImageIO.write(image, "png", file);
+    }
+
+    /**
+     * Returns the name of the file to which the specified page is written.
+     */
+    public static String pageName (int pageIndex)
+    {
+        return String.format("page-%04d.png", pageIndex+1);
+    }
+
+    /**
+     * Returns the index of the page written to the named file (see {@link #pageName}), or -1 if
+     * the name is not that of a page.
+     */
+    public static int pageIndex (String name)
+    {
+        if (!name.startsWith("page-") || !name.endsWith(".png")) {
+            return -1;
+        }
+        try {
+            int pageIndex = Integer.parseInt(name.substring(5, name.length()-4)) - 1;
+            return (pageIndex >= 0 && pageName(pageIndex).equals(name)) ? pageIndex : -1;
+        } catch (NumberFormatException nfe) {
+            return -1;
+        }
+    }
+
+    /**
+     * Reads the page hashes from the manifest of a previous export into our output directory.
+     * Returns an empty map if there is no such manifest, it can't be read, or it was written at a
+     * different scale (or by a different version of viztool).
+     */
+    protected Map<String,String> readManifest ()
+    {
+        Map<String,String> hashes = new HashMap<String,String>();
+        File file = new File(_outdir, MANIFEST);
+        if (!file.exists()) {
+            return hashes;
+        }
+        try {
+            BufferedReader in = new BufferedReader(new FileReader(file));
+            try {
+                if (!manifestHeader().equals(in.readLine())) {
+                    return hashes;
+                }
+                for (String line; (line = in.readLine()) != null; ) {
+                    String[] fields = line.split("\t", 3);
+                    if (fields.length >= 2) {
+                        hashes.put(fields[0], fields[1]);
+                    }
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException ioe) {
+            hashes.clear();
+        }
+        return hashes;
+    }
+
+    /**
+     * Writes the manifest of the pages exported into our output directory, listing the packages
+     * and classes on each page from the supplied index (which may be null).
+     */
+    protected void writeManifest (SearchIndex index)
+        throws IOException
+    {
+        List<List<String>> names = (index == null) ? new ArrayList<List<String>>() :
+            index.getNamesByPage(SearchIndex.PACKAGE, SearchIndex.CLASS);
+        PrintWriter out = new PrintWriter(new FileWriter(new File(_outdir, MANIFEST)));
+        try {
+            out.println(manifestHeader());
+            for (int ii = 0, ll = _entries.size(); ii < ll; ii++) {
+                if (_entries.get(ii) == null) {
+                    continue;
+                }
+                out.print(_entries.get(ii));
+                List<String> pnames = (ii < names.size()) ?
+                    names.get(ii) : Collections.<String>emptyList();
+                for (String name : pnames) {
+                    out.print("\t" + name);
+                }
+                out.println();
+            }
+        } finally {
+            out.close();
+        }
+        if (out.checkError()) {
+            throw new IOException("Unable to write page manifest.");
+        }
+    }
+
+    /**
+     * Returns the first line of our manifest, which identifies everything other than a page's
+     * contents that affects its image.
+     */
+    protected String manifestHeader ()
+    {
+        return "viztool pages " + MANIFEST_VERSION + " scale=" + _scale +
+            (_fit == 1 ? "" : " fit=" + _fit);
+    }
+
+    /**
+     * Creates a graphics in which to lay things out, configured just like those we render with.
+     */
+    protected Graphics2D createLayoutGraphics ()
+    {
+        BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        return configure(scratch.createGraphics());
+    }
+
+    protected Graphics2D configure (Graphics2D gfx)
+    {
+        gfx.scale(_scale, _scale);
+        gfx.setColor(Color.black);
+        gfx.setStroke(new BasicStroke(0.1f));
+        gfx.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                             RenderingHints.VALUE_ANTIALIAS_ON);
+        gfx.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                             RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        return gfx;
+    }
+
+    protected File _outdir;
+    protected double _scale;
+
+    /** The number of pages into which visualizations are fit, or zero. */
+    protected int _fitPages;
+
+    /** The scale at which the visualization being exported is rendered to fit its pages. */
+    protected double _fit = 1;
+
+    /** The content hash of each page written by the previous export, by file name. */
+    protected Map<String,String> _previous = new HashMap<String,String>();
+
+    /** The manifest entry for each page of this export. */
+    protected List<String> _entries = new ArrayList<String>();
+
+    /** The names of the files of this export's pages. */
+    protected Set<String> _written = new HashSet<String>();
+
+    /** Changed whenever a change to how pages are rendered changes their images. */
+    protected static final String MANIFEST_VERSION = "1";
+
+    /** Recorded in place of the hash of a page that has no outline (and is always rendered). */
+    protected static final String NO_HASH = "-";
+
+    // these match the page format used when printing
+    protected static final double PAGE_WIDTH = 72*8.5;
+    protected static final double PAGE_HEIGHT = 72*11;
+    protected static final double MARGIN = 72*0.5;
+}
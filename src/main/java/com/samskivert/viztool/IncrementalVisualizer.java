@@ -0,0 +1,36 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool;
+
+import java.awt.Graphics2D;
+import java.io.IOException;
+
+/**
+ * A visualizer that can lay itself out a page at a time, handing each page off to be rendered as
+ * soon as it is complete rather than laying out the entire visualization before anything can be
+ * rendered.
+ */
+public interface IncrementalVisualizer extends Visualizer
+{
+    /**
+     * Configures the visualizer to operate incrementally (or not). An incremental visualizer
+     * holds on to the iterator supplied to {@link #setClasses} and only pulls classes from it as
+     * they are needed to fill pages during a call to {@link #layout(Graphics2D,double,double,
+     * double,double,PageSink)}. Pages are discarded once they have been handed to the sink, so
+     * they cannot be repainted later. This must be configured prior to the call to {@link
+     * #setClasses}.
+     */
+    public void setIncremental (boolean incremental);
+
+    /**
+     * Lays out the visualization in pages with the specified dimensions, handing each page to the
+     * supplied sink as soon as it is complete. A visualizer that is not configured to operate
+     * incrementally will lay out all of its pages and then hand them to the sink in order.
+     */
+    public void layout (Graphics2D gfx, double x, double y, double width, double height,
+                        PageSink sink)
+        throws IOException;
+}
@@ -0,0 +1,71 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+
+/**
+ * Loads the classes to be visualized from a list of classpath components, in isolation from the
+ * classes of viztool itself (and of whatever else is on viztool's classpath). Only the classes of
+ * the platform are shared. Once the visualized classes have been introspected, the loader is
+ * {@link #release}d and it and all of the classes it loaded can be garbage collected.
+ *
+ * <p> The loader is registered as parallel capable, so that classes can be loaded by many
+ * threads at once (see {@link ClassLoadingStage}) rather than one at a time.
+ */
+public class IsolatedClassLoader extends URLClassLoader
+{
+    /**
+     * Creates a loader that loads classes from the supplied classpath components (jar files and
+     * directories).
+     */
+    public IsolatedClassLoader (List<String> components)
+        throws MalformedURLException
+    {
+        super(toURLs(components), getPlatformLoader());
+    }
+
+    /**
+     * Releases the resources (open jar files) held by this loader. Classes can no longer be loaded
+     * once it has been released.
+     */
+    public void release ()
+    {
+        try {
+            close();
+        } catch (IOException ioe) {
+            Log.warning("Failed to release class loader [error=" + ioe + "].");
+        }
+    }
+
+    protected static URL[] toURLs (List<String> components)
+        throws MalformedURLException
+    {
+        URL[] urls = new URL[components.size()];
+        for (int ii = 0; ii < urls.length; ii++) {
+            urls[ii] = new File(components.get(ii)).toURI().toURL();
+        }
+        return urls;
+    }
+
+    /**
+     * Returns the loader of the platform's classes: the parent of the system class loader (which
+     * loads the application's classes).
+     */
+    protected static ClassLoader getPlatformLoader ()
+    {
+        return ClassLoader.getSystemClassLoader().getParent();
+    }
+
+    static {
+        registerAsParallelCapable();
+    }
+}
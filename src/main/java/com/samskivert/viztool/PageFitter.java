@@ -0,0 +1,139 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool;
+
+import java.awt.Graphics2D;
+
+import com.samskivert.viztool.util.LayoutUtil;
+
+/**
+ * Finds the largest scale at which a visualization fits in a given number of pages.
+ *
+ * <p> Scaling a visualization (its fonts and spacing alike) by some factor lays it out just as
+ * laying out the unscaled visualization on pages shrunk by that factor would, so the fitter
+ * measures the visualization's text once and then counts the pages it would occupy on pages of
+ * various sizes (see {@link FittableVisualizer#countPages}), which requires no further
+ * measurement. The visualization is then laid out on pages of the chosen size and rendered
+ * scaled up (or down) to fill the real pages.
+ *
+ * <p> If the visualization must be shrunk to fit, the fitter also tries it with tighter spacing
+ * (the spacing constants of {@link LayoutUtil}), which costs one more measurement, and keeps
+ * whichever spacing allows the larger scale. The chosen spacing remains in effect until {@link
+ * #restore} is called, which must be done once the visualization has been rendered. The spacing
+ * constants are shared by every visualization in the VM, so no other visualization may be laid
+ * out or rendered from the time a visualization is fit until the fitter is restored (see {@link
+ * Visualization#renderAll}), and the spacing is always restored to the defaults.
+ */
+public class PageFitter
+{
+    /** The smallest scale that will be considered. */
+    public static final double MIN_SCALE = 1/8.0;
+
+    /** The largest scale that will be considered. */
+    public static final double MAX_SCALE = 8;
+
+    /**
+     * Creates a fitter that will fit visualizations in the specified number of pages.
+     */
+    public PageFitter (int pages)
+    {
+        _pages = Math.max(pages, 1);
+    }
+
+    /**
+     * Returns the largest scale at which the supplied visualization fits in our number of pages
+     * of the specified dimensions, or {@link #MIN_SCALE} if it does not fit even at that scale.
+     * The visualization should be laid out on pages of the specified dimensions divided by the
+     * returned scale and rendered at that scale.
+     */
+    public double fit (FittableVisualizer viz, Graphics2D gfx, double width, double height)
+    {
+        viz.measure(gfx);
+        if (viz.countPages(gfx, width, height) < 0) {
+            Log.warning("Visualization can't be fit to pages [viz=" + viz + "].");
+            return 1;
+        }
+
+        double best = 0, bestSpacing = 1;
+        for (double spacing : SPACINGS) {
+            setSpacing(spacing);
+            viz.measure(gfx);
+            double scale = search(viz, gfx, width, height);
+            if (scale > best) {
+                best = scale;
+                bestSpacing = spacing;
+            }
+            // no need to tighten things up if we fit at full size
+            if (best >= 1) {
+                break;
+            }
+        }
+        setSpacing(bestSpacing);
+        Log.info("Fit visualization [pages=" + _pages + ", scale=" + best +
+                 ", spacing=" + bestSpacing + ", counts=" + _counts + "].");
+        return best;
+    }
+
+    /**
+     * Restores the spacing constants to their defaults.
+     */
+    public void restore ()
+    {
+        setSpacing(1);
+    }
+
+    /**
+     * Searches (by bisection, as the page count shrinks as the pages grow) for the largest scale
+     * at which the visualization fits.
+     */
+    protected double search (FittableVisualizer viz, Graphics2D gfx, double width, double height)
+    {
+        if (fits(viz, gfx, width, height, MAX_SCALE)) {
+            return MAX_SCALE;
+        }
+        if (!fits(viz, gfx, width, height, MIN_SCALE)) {
+            return MIN_SCALE;
+        }
+        // search over the log of the scale, so that we get within a fixed ratio of the best
+        double lo = Math.log(MIN_SCALE), hi = Math.log(MAX_SCALE);
+        while (hi - lo > TOLERANCE) {
+            double mid = (lo + hi) / 2;
+            if (fits(viz, gfx, width, height, Math.exp(mid))) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+        return Math.exp(lo);
+    }
+
+    protected boolean fits (FittableVisualizer viz, Graphics2D gfx, double width, double height,
+                            double scale)
+    {
+        _counts++;
+        int pages = viz.countPages(gfx, width / scale, height / scale);
+        return pages >= 0 && pages <= _pages;
+    }
+
+    /**
+     * Scales the spacing constants of {@link LayoutUtil} from their defaults.
+     */
+    protected void setSpacing (double spacing)
+    {
+        LayoutUtil.HEADER_BORDER = LayoutUtil.DEFAULT_HEADER_BORDER * spacing;
+        LayoutUtil.GAP = LayoutUtil.DEFAULT_GAP * spacing;
+        LayoutUtil.SUBORDINATE_INSET = LayoutUtil.DEFAULT_SUBORDINATE_INSET * spacing;
+    }
+
+    protected int _pages;
+    protected int _counts;
+
+    /** The factors by which the spacing constants are scaled, in order of preference. */
+    protected static final double[] SPACINGS = { 1, 0.5 };
+
+    /** The precision of the search: within one percent of the best scale. */
+    protected static final double TOLERANCE = Math.log(1.01);
+}
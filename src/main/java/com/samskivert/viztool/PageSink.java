@@ -0,0 +1,24 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool;
+
+import java.io.IOException;
+
+/**
+ * Receives the pages of a visualization as they are finalized.
+ *
+ * @see IncrementalVisualizer
+ */
+public interface PageSink
+{
+    /**
+     * Called when the specified page of the supplied visualization has been laid out and will no
+     * longer change. The sink should render the page (via {@link Visualizer#paint}) before
+     * returning as the visualizer may discard the page once this method returns.
+     */
+    public void pageReady (Visualizer viz, int pageIndex)
+        throws IOException;
+}
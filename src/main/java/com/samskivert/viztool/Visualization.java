@@ -0,0 +1,287 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+import com.samskivert.viztool.model.ClassModel;
+
+/**
+ * Describes one of several visualizations generated from a single scan of a classpath: the
+ * visualizer to use, the classes it depicts and where it is written. The drivers load the classes
+ * matched by all of their visualizations once and then {@link #renderAll} of them, sharing the
+ * loaded classes and their introspected records between them.
+ */
+public class Visualization
+{
+    /** The output format in which each page is written as an image into the output directory. */
+    public static final String PNG = "png";
+
+    /** The output format in which the visualization is printed. */
+    public static final String PRINT = "print";
+
+    /**
+     * Configures the classname of the visualizer to be used.
+     */
+    public void setVisualizer (String vizclass)
+    {
+        _vizclass = vizclass;
+    }
+
+    /**
+     * Configures the base package from which names will be shortened.
+     */
+    public void setPkgroot (String pkgroot)
+    {
+        _pkgroot = pkgroot;
+    }
+
+    /**
+     * Configures a regular expression matching the classes to be visualized.
+     */
+    public void setClasses (String classes)
+    {
+        _classes = classes;
+        _pattern = null;
+    }
+
+    /**
+     * Configures a regular expression matching classes to be excluded from the visualization.
+     */
+    public void setExclude (String exclude)
+    {
+        _exclude = exclude;
+        _expattern = null;
+    }
+
+    /**
+     * Configures the file or directory to which the visualization is written.
+     */
+    public void setOutput (File output)
+    {
+        _output = output;
+    }
+
+    /**
+     * Configures the output format: {@link #PRINT} or {@link #PNG}.
+     */
+    public void setFormat (String format)
+    {
+        _format = format;
+    }
+
+    /**
+     * Configures whether pages are written as soon as they are laid out (for visualizers that
+     * support it).
+     */
+    public void setIncremental (boolean incremental)
+    {
+        _incremental = incremental;
+    }
+
+    /**
+     * Configures the number of pages into which the visualization is fit (by scaling it up or
+     * down), or zero to leave it unscaled. Only applies to the {@link #PNG} format.
+     */
+    public void setFit (int fit)
+    {
+        _fit = fit;
+    }
+
+    public String getVisualizer ()
+    {
+        return _vizclass;
+    }
+
+    public String getPkgroot ()
+    {
+        return _pkgroot;
+    }
+
+    public String getClasses ()
+    {
+        return _classes;
+    }
+
+    public String getExclude ()
+    {
+        return _exclude;
+    }
+
+    public File getOutput ()
+    {
+        return _output;
+    }
+
+    public String getFormat ()
+    {
+        return _format;
+    }
+
+    public boolean isIncremental ()
+    {
+        return _incremental;
+    }
+
+    public int getFit ()
+    {
+        return _fit;
+    }
+
+    /**
+     * Returns true if the named class is depicted by this visualization.
+     *
+     * @exception java.util.regex.PatternSyntaxException if our class or exclusion regular
+     * expression is invalid.
+     */
+    public boolean matches (String cname)
+    {
+        if (_pattern == null) {
+            _pattern = Pattern.compile(_classes);
+            _expattern = (_exclude == null) ? null : Pattern.compile(_exclude);
+        }
+        return _pattern.matcher(cname).matches() &&
+            (_expattern == null || !_expattern.matcher(cname).matches());
+    }
+
+    /**
+     * Creates this visualization's visualizer and supplies it with those of the supplied classes
+     * that it depicts. The classes are expected in order of name.
+     */
+    public Visualizer createVisualizer (List<Class<?>> classes, ClassModel model)
+        throws Exception
+    {
+        Visualizer viz = (Visualizer)
+            Class.forName(_vizclass).getDeclaredConstructor().newInstance();
+        // a visualization fit to its pages must be laid out all at once
+        if (_incremental && _fit == 0 && viz instanceof IncrementalVisualizer) {
+            ((IncrementalVisualizer)viz).setIncremental(true);
+        }
+        if (model != null) {
+            viz.setModel(model);
+        }
+        List<Class<?>> matched = new ArrayList<Class<?>>();
+        for (Class<?> clazz : classes) {
+            if (matches(clazz.getName())) {
+                matched.add(clazz);
+            }
+        }
+        viz.setPackageRoot(_pkgroot);
+        viz.setClasses(matched.iterator());
+        return viz;
+    }
+
+    /**
+     * Lays out the supplied visualizer and writes it to our output in our format.
+     */
+    public void write (Visualizer viz)
+        throws Exception
+    {
+        if (PNG.equals(_format)) {
+            ImageExporter exporter = new ImageExporter(_output, ImageExporter.DEFAULT_SCALE);
+            exporter.setFitPages(_fit);
+            exporter.export(viz);
+        } else if (PRINT.equals(_format)) {
+            PrintUtil.print(viz, _output);
+        } else {
+            throw new IllegalArgumentException("Unknown output format '" + _format + "'.");
+        }
+    }
+
+    /**
+     * Returns true if this visualization is scaled to fit in a number of pages when written.
+     */
+    public boolean isFit ()
+    {
+        return PNG.equals(_format) && _fit > 0;
+    }
+
+    public String toString ()
+    {
+        return "[visualizer=" + _vizclass + ", classes=" + _classes + ", output=" + _output + "]";
+    }
+
+    /**
+     * Creates and writes each of the supplied visualizations, all of them at once, on up to the
+     * specified number of threads. A visualization that is fit to its pages may change the
+     * spacing with which every visualization is laid out (see {@link PageFitter}), so it is
+     * created and written while no other visualization is.
+     *
+     * @param classes the classes from which each visualization selects those it depicts, in order
+     * of name.
+     * @param model the model in which the visualizations share the records of the classes, or
+     * null if each should introspect its classes itself.
+     *
+     * @exception Exception the failure of the first visualization (in the order supplied) that
+     * could not be written, thrown once all of the others have been written.
+     */
+    public static void renderAll (List<Visualization> vizs, final List<Class<?>> classes,
+                                  final ClassModel model, int threads)
+        throws Exception
+    {
+        ExecutorService exec = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(threads, vizs.size())));
+        try {
+            List<Future<?>> results = new ArrayList<Future<?>>();
+            for (final Visualization viz : vizs) {
+                results.add(exec.submit(new Callable<Void>() {
+                    public Void call () throws Exception {
+                        Lock lock = viz.isFit() ? _spacingLock.writeLock() :
+                            _spacingLock.readLock();
+                        lock.lock();
+                        try {
+                            viz.write(viz.createVisualizer(classes, model));
+                        } finally {
+                            lock.unlock();
+                        }
+                        return null;
+                    }
+                }));
+            }
+
+            Exception failure = null;
+            for (int ii = 0; ii < results.size(); ii++) {
+                try {
+                    results.get(ii).get();
+                } catch (ExecutionException ee) {
+                    if (failure == null) {
+                        failure = new Exception("Failed to write " + vizs.get(ii) + ".",
+                                                ee.getCause());
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+    protected String _vizclass;
+    protected String _pkgroot = "";
+    protected String _classes, _exclude;
+    protected File _output;
+    protected String _format = PRINT;
+    protected boolean _incremental;
+    protected int _fit;
+
+    protected Pattern _pattern, _expattern;
+
+    /** Held exclusively while a visualization that is fit to its pages is created and written,
+     * and shared while any other visualization is (see {@link #renderAll}). */
+    protected static final ReentrantReadWriteLock _spacingLock = new ReentrantReadWriteLock();
+}
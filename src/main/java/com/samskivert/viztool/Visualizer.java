@@ -9,6 +9,11 @@ import java.awt.Graphics2D;
 import java.awt.print.Printable;
 import java.util.Iterator;
 
+import com.samskivert.viztool.model.ClassModel;
+import com.samskivert.viztool.util.Outline;
+import com.samskivert.viztool.util.PageStore;
+import com.samskivert.viztool.util.SearchIndex;
+
 /**
  * The interface via which the driver accesses whichever visualizer is
  * desired for a particular invocation.
@@ -27,11 +32,31 @@ public interface Visualizer extends Printable
      */
     public void setClasses (Iterator<Class<?>> iterator);
 
+    /**
+     * Configures the model into which the classes supplied to {@link #setClasses} are
+     * introspected. Records already in the model are reused, so a model shared by successive
+     * visualizations of the same classes saves introspecting them again. Each visualizer requests
+     * the records it needs (with or without class members) regardless of how the model was
+     * created, so one model can serve visualizers of different kinds. If no model is configured,
+     * each call to {@link #setClasses} introspects into a new model.
+     */
+    public void setModel (ClassModel model);
+
+    /**
+     * Configures the visualization to keep its laid out pages in the supplied store rather than
+     * in memory (or in memory, if the store is null). This should be called before {@link
+     * #layout}.
+     */
+    public void setPageStore (PageStore store);
+
     /**
      * Requests that the visualization lay itself out in pages with the
      * specified dimensions. Subsequent calls to {@link #print} or {@link
      * #paint} will assume that things are laid out according to the most
-     * recent call to this method.
+     * recent call to this method. If the calling thread is interrupted, the
+     * layout may be abandoned part way through (leaving the thread's
+     * interrupted status set), in which case the visualization must be laid
+     * out again before it is painted.
      */
     public void layout (Graphics2D gfx, double x, double y,
                         double width, double height);
@@ -41,6 +66,20 @@ public interface Visualizer extends Printable
      */
     public void paint (Graphics2D gfx, int pageIndex);
 
+    /**
+     * Returns an outline of the specified page (the bounds and names of the elements on it),
+     * which can be rendered in place of the page when it is shown at a small scale. Returns null
+     * if the visualization has not been laid out or has no such page.
+     */
+    public Outline getOutline (int pageIndex);
+
+    /**
+     * Returns the index of the elements of the visualization's pages (its classes, their members
+     * and its packages), which is built as the visualization is laid out. Returns null if the
+     * visualization has not been laid out.
+     */
+    public SearchIndex getSearchIndex ();
+
     /**
      * Returns the number of pages occupied by the visualization.
      */
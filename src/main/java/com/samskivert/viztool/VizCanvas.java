@@ -0,0 +1,734 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool;
+
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.print.PrinterJob;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.*;
+
+import com.samskivert.util.LRUHashMap;
+import com.samskivert.viztool.util.Outline;
+import com.samskivert.viztool.util.SearchIndex;
+
+/**
+ * Displays all of the pages of a visualization on a single scrollable, zoomable canvas. The
+ * canvas is rendered in tiles, on background threads, and the tiles are cached so that panning
+ * and zooming only blit images on the AWT thread. Pages are rendered in full only at scales at
+ * which their text is legible; at smaller scales each page is depicted by its {@link Outline}:
+ * a box for each element, labeled with the element's name where there is room. While a tile is
+ * being rendered, the canvas shows a scaled version of a cached tile from another zoom level or,
+ * failing that, blank pages.
+ *
+ * <p> The visualization is laid out once, on a background thread, and each page's display list
+ * is replayed under the transform of every zoom level (rather than being recorded anew for each
+ * level), so changing levels costs only the rendering of new tiles. Printing lays the visualizer
+ * out for the printer's pages, so the canvas discards its layout (and its tiles) while printing
+ * and lays the visualization out anew afterwards.
+ *
+ * <p> The mouse wheel zooms in and out (around the mouse pointer) and dragging pans. An element
+ * found via a search is centered in the view, zoomed in far enough to be legible, and highlighted.
+ */
+public class VizCanvas extends JComponent
+    implements Scrollable
+{
+    /**
+     * Constructs a canvas for displaying a particular visualization.
+     */
+    public VizCanvas (Visualizer viz)
+    {
+        _viz = viz;
+        setOpaque(true);
+
+        MouseAdapter mouser = new MouseAdapter() {
+            public void mousePressed (MouseEvent event) {
+                _dragStart = event.getPoint();
+            }
+            public void mouseDragged (MouseEvent event) {
+                JViewport viewport = getViewport();
+                if (viewport != null && _dragStart != null) {
+                    Point pos = viewport.getViewPosition();
+                    pos.translate(_dragStart.x - event.getX(), _dragStart.y - event.getY());
+                    setViewPosition(viewport, pos);
+                }
+            }
+        };
+        addMouseListener(mouser);
+        addMouseMotionListener(mouser);
+        addMouseWheelListener(new MouseWheelListener() {
+            public void mouseWheelMoved (MouseWheelEvent event) {
+                zoom(-event.getWheelRotation(), event.getPoint());
+            }
+        });
+
+        _executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread (Runnable task) {
+                Thread thread = new Thread(task, "viz-canvas-layout");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        // create the threads that render our tiles
+        int threads = Math.min(MAX_RENDERERS,
+                               Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+        for (int ii = 0; ii < threads; ii++) {
+            Thread renderer = new Thread("viz-tile-" + ii) {
+                public void run () {
+                    renderTiles();
+                }
+            };
+            renderer.setDaemon(true);
+            renderer.start();
+        }
+    }
+
+    /**
+     * Returns the visualizer we're displaying.
+     */
+    public Visualizer getVisualizer ()
+    {
+        return _viz;
+    }
+
+    /**
+     * Zooms in (for positive steps) or out (for negative steps) by the specified number of zoom
+     * levels, keeping the point under the supplied canvas coordinates (or under the center of
+     * the view, if the coordinates are null) fixed.
+     */
+    public void zoom (int steps, Point anchor)
+    {
+        int level = Math.max(MIN_LEVEL, Math.min(MAX_LEVEL, _level + steps));
+        if (level == _level) {
+            return;
+        }
+
+        JViewport viewport = getViewport();
+        Point pos = (viewport == null) ? new Point() : viewport.getViewPosition();
+        if (anchor == null) {
+            Rectangle view = getVisibleRect();
+            anchor = new Point((int)view.getCenterX(), (int)view.getCenterY());
+        }
+
+        // our old requests are no longer relevant
+        clearQueue();
+
+        double ratio = getScale(level) / getScale(_level);
+        _level = level;
+        revalidate();
+        if (viewport != null) {
+            viewport.setViewSize(getPreferredSize());
+            setViewPosition(viewport, new Point(
+                                (int)Math.round((anchor.x * ratio) - (anchor.x - pos.x)),
+                                (int)Math.round((anchor.y * ratio) - (anchor.y - pos.y))));
+        }
+        repaint();
+    }
+
+    /**
+     * Scrolls the supplied element (found in our visualization's {@link SearchIndex}) to the
+     * center of the view, zooming in if need be so that the element is legible, and highlights
+     * it.
+     */
+    public void showMatch (SearchIndex.Match match)
+    {
+        _highlight = match;
+        if (_columns == 0) {
+            return; // we'll show it once we've been laid out
+        }
+        int level = _level;
+        while (getScale(level) < DETAIL_SCALE && level < MAX_LEVEL) {
+            level++;
+        }
+        zoom(level - _level, null);
+
+        JViewport viewport = getViewport();
+        if (viewport != null) {
+            Rectangle2D hbounds = getHighlightBounds();
+            Dimension extent = viewport.getExtentSize();
+            setViewPosition(viewport, new Point(
+                                (int)Math.round(hbounds.getCenterX() - extent.width/2.0),
+                                (int)Math.round(hbounds.getCenterY() - extent.height/2.0)));
+        }
+        repaint();
+    }
+
+    /**
+     * Prints the visualization via the supplied job. Printing lays the visualizer out for the
+     * printer's pages, so we discard our layout and the tiles rendered from it, run the job on
+     * our layout thread and then lay the visualization out anew. This is called on the AWT
+     * thread.
+     */
+    public void print (final PrinterJob job)
+    {
+        discardLayout();
+        final int layoutGen = _layoutGeneration;
+        _executor.submit(new Runnable() {
+            public void run () {
+                try {
+                    synchronized (_viz) {
+                        job.print();
+                    }
+                } catch (Throwable t) {
+                    Log.warning("Failed to print visualization [error=" + t + "].");
+                    Log.logStackTrace(t);
+                }
+                layoutPages(layoutGen);
+            }
+        });
+    }
+
+    /**
+     * Returns the number of pixels per point at our current zoom level.
+     */
+    public double getScale ()
+    {
+        return getScale(_level);
+    }
+
+    public void doLayout ()
+    {
+        super.doLayout();
+
+        // we lay the visualization out once, when we're first laid out ourselves; its pages are
+        // always the same size, regardless of our size or scale
+        if (_layingOut) {
+            return;
+        }
+        _layingOut = true;
+        final int layoutGen = _layoutGeneration;
+        _executor.submit(new Runnable() {
+            public void run () {
+                layoutPages(layoutGen);
+            }
+        });
+    }
+
+    public void paintComponent (Graphics g)
+    {
+        Graphics2D gfx = (Graphics2D)g;
+        Rectangle clip = gfx.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        gfx.setColor(BACKGROUND);
+        gfx.fill(clip);
+        if (_columns == 0) {
+            // let the user know that we're still laying out
+            if (_layingOut) {
+                gfx.setColor(Color.white);
+                gfx.drawString(
+                    BUSY_TEXT, BUSY_BORDER, BUSY_BORDER + gfx.getFontMetrics().getAscent());
+            }
+            return;
+        }
+
+        int tx1 = clip.x / TILE_SIZE, tx2 = (clip.x + clip.width - 1) / TILE_SIZE;
+        int ty1 = clip.y / TILE_SIZE, ty2 = (clip.y + clip.height - 1) / TILE_SIZE;
+        for (int ty = ty1; ty <= ty2; ty++) {
+            for (int tx = tx1; tx <= tx2; tx++) {
+                BufferedImage tile = _tiles.get(tileKey(_level, tx, ty));
+                if (tile != null) {
+                    gfx.drawImage(tile, tx*TILE_SIZE, ty*TILE_SIZE, null);
+                } else {
+                    queueTile(_level, tx, ty);
+                    paintStandIn(gfx, tx, ty);
+                }
+            }
+        }
+
+        // highlight the element that the user last found (atop the tiles, which are shared by
+        // all searches)
+        if (_highlight != null) {
+            Rectangle2D hbounds = getHighlightBounds();
+            gfx.setColor(HIGHLIGHT_FILL);
+            gfx.fill(hbounds);
+            gfx.setColor(HIGHLIGHT);
+            gfx.setStroke(new BasicStroke(HIGHLIGHT_WIDTH));
+            gfx.draw(new Rectangle2D.Double(
+                         hbounds.getX() - HIGHLIGHT_WIDTH, hbounds.getY() - HIGHLIGHT_WIDTH,
+                         hbounds.getWidth() + 2*HIGHLIGHT_WIDTH,
+                         hbounds.getHeight() + 2*HIGHLIGHT_WIDTH));
+        }
+    }
+
+    public Dimension getPreferredSize ()
+    {
+        if (_columns == 0) {
+            return getPreferredScrollableViewportSize();
+        }
+        double scale = getScale();
+        return new Dimension((int)Math.ceil(getCanvasWidth() * scale),
+                             (int)Math.ceil(getCanvasHeight() * scale));
+    }
+
+    // documentation inherited from interface
+    public Dimension getPreferredScrollableViewportSize ()
+    {
+        return new Dimension((int)PAGE_WIDTH, (int)PAGE_HEIGHT);
+    }
+
+    // documentation inherited from interface
+    public int getScrollableUnitIncrement (Rectangle visibleRect, int orientation, int direction)
+    {
+        return TILE_SIZE/8;
+    }
+
+    // documentation inherited from interface
+    public int getScrollableBlockIncrement (Rectangle visibleRect, int orientation, int direction)
+    {
+        return (orientation == SwingConstants.VERTICAL) ? visibleRect.height : visibleRect.width;
+    }
+
+    // documentation inherited from interface
+    public boolean getScrollableTracksViewportWidth ()
+    {
+        return false;
+    }
+
+    // documentation inherited from interface
+    public boolean getScrollableTracksViewportHeight ()
+    {
+        return false;
+    }
+
+    /**
+     * Lays out the visualization and then arranges its pages on the AWT thread, unless our layout
+     * has since been discarded. This is called on our layout thread.
+     */
+    protected void layoutPages (final int layoutGen)
+    {
+        final int pages;
+        try {
+            // lay things out with a graphics configured just like those of our tiles; the
+            // visualizer is also used to print, so we hold its lock while we work with it
+            BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+            Graphics2D gfx = configure(scratch.createGraphics());
+            synchronized (_viz) {
+                try {
+                    _viz.layout(gfx, MARGIN, MARGIN, PAGE_WIDTH - 2*MARGIN, PAGE_HEIGHT - 2*MARGIN);
+                } finally {
+                    gfx.dispose();
+                }
+                pages = _viz.getPageCount();
+            }
+            // sort the search index now rather than when it's first searched
+            SearchIndex index = _viz.getSearchIndex();
+            if (index != null) {
+                index.sort();
+            }
+        } catch (Throwable t) {
+            Log.warning("Failed to lay out visualization [error=" + t + "].");
+            Log.logStackTrace(t);
+            return;
+        }
+
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run () {
+                if (layoutGen != _layoutGeneration) {
+                    return; // the visualizer has been laid out for something else since
+                }
+                // arrange the pages in a roughly square grid
+                int count = Math.max(pages, 1);
+                _columns = Math.max(
+                    1, (int)Math.ceil(Math.sqrt(count * PAGE_HEIGHT / PAGE_WIDTH)));
+                _rows = (count + _columns - 1) / _columns;
+                revalidate();
+                JViewport viewport = getViewport();
+                if (viewport != null) {
+                    viewport.setViewSize(getPreferredSize());
+                }
+                repaint();
+                // a match found while we were laying out can now be shown
+                if (_highlight != null) {
+                    showMatch(_highlight);
+                }
+            }
+        });
+    }
+
+    /**
+     * Discards our layout and every tile rendered from it, until the visualization is next laid
+     * out by {@link #layoutPages}. Tiles being rendered when the layout is discarded are discarded
+     * when they are done. This is called on the AWT thread.
+     */
+    protected void discardLayout ()
+    {
+        _layoutGeneration++;
+        _columns = _rows = 0;
+        clearQueue();
+        _tiles.clear();
+        revalidate();
+        JViewport viewport = getViewport();
+        if (viewport != null) {
+            viewport.setViewSize(getPreferredSize());
+        }
+        repaint();
+    }
+
+    /**
+     * Paints something in place of a tile that has not yet been rendered: the corresponding
+     * parts of any cached tiles from the nearest coarser zoom level that has some, or else the
+     * bare pages.
+     */
+    protected void paintStandIn (Graphics2D gfx, int tx, int ty)
+    {
+        Rectangle area = new Rectangle(tx*TILE_SIZE, ty*TILE_SIZE, TILE_SIZE, TILE_SIZE);
+        Graphics2D sgfx = (Graphics2D)gfx.create();
+        try {
+            sgfx.clip(area);
+
+            // start with the bare pages
+            double scale = getScale();
+            sgfx.setColor(Color.white);
+            for (int page = 0, pages = _viz.getPageCount(); page < pages; page++) {
+                Rectangle prect = new Rectangle(
+                    (int)Math.floor(getPageX(page) * scale),
+                    (int)Math.floor(getPageY(page) * scale),
+                    (int)Math.ceil(PAGE_WIDTH * scale), (int)Math.ceil(PAGE_HEIGHT * scale));
+                if (prect.intersects(area)) {
+                    sgfx.fill(prect);
+                }
+            }
+
+            // then look for a coarser rendering of this area
+            for (int level = _level-1; level >= Math.max(MIN_LEVEL, _level-STAND_IN_LEVELS);
+                 level--) {
+                double ratio = getScale(level) / scale;
+                int ox1 = (int)Math.floor(area.x * ratio) / TILE_SIZE;
+                int ox2 = (int)Math.floor((area.x + area.width - 1) * ratio) / TILE_SIZE;
+                int oy1 = (int)Math.floor(area.y * ratio) / TILE_SIZE;
+                int oy2 = (int)Math.floor((area.y + area.height - 1) * ratio) / TILE_SIZE;
+                boolean found = false;
+                for (int oy = oy1; oy <= oy2; oy++) {
+                    for (int ox = ox1; ox <= ox2; ox++) {
+                        BufferedImage tile = _tiles.get(tileKey(level, ox, oy));
+                        if (tile == null) {
+                            continue;
+                        }
+                        Graphics2D tgfx = (Graphics2D)sgfx.create();
+                        tgfx.scale(1/ratio, 1/ratio);
+                        tgfx.drawImage(tile, ox*TILE_SIZE, oy*TILE_SIZE, null);
+                        tgfx.dispose();
+                        found = true;
+                    }
+                }
+                if (found) {
+                    break;
+                }
+            }
+        } finally {
+            sgfx.dispose();
+        }
+    }
+
+    /**
+     * Queues up the specified tile to be rendered, if it is not already queued or being rendered.
+     */
+    protected void queueTile (int level, int tx, int ty)
+    {
+        Long key = tileKey(level, tx, ty);
+        if (!_pending.add(key)) {
+            return;
+        }
+        synchronized (_queue) {
+            _queue.add(new int[] { level, tx, ty, _layoutGeneration });
+            _queue.notify();
+        }
+    }
+
+    /**
+     * Discards all queued tile requests.
+     */
+    protected void clearQueue ()
+    {
+        synchronized (_queue) {
+            for (int[] req : _queue) {
+                _pending.remove(tileKey(req[0], req[1], req[2]));
+            }
+            _queue.clear();
+        }
+    }
+
+    /**
+     * The main loop of our tile rendering threads.
+     */
+    protected void renderTiles ()
+    {
+        while (true) {
+            int[] req;
+            synchronized (_queue) {
+                while (_queue.isEmpty()) {
+                    try {
+                        _queue.wait();
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                }
+                // render the most recently requested tiles first
+                req = _queue.remove(_queue.size()-1);
+            }
+
+            final int level = req[0], tx = req[1], ty = req[2], layoutGen = req[3];
+            BufferedImage tile = null;
+            try {
+                tile = renderTile(level, tx, ty);
+            } catch (Throwable t) {
+                Log.warning("Failed to render tile [level=" + level + ", x=" + tx +
+                            ", y=" + ty + ", error=" + t + "].");
+            }
+
+            final BufferedImage ftile = tile;
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run () {
+                    tileRendered(level, tx, ty, layoutGen, ftile);
+                }
+            });
+        }
+    }
+
+    /**
+     * Renders the specified tile. This is called on a tile rendering thread.
+     */
+    protected BufferedImage renderTile (int level, int tx, int ty)
+    {
+        // our layout may be discarded (on the AWT thread) while we render
+        int columns = _columns;
+        if (columns == 0) {
+            return null;
+        }
+        BufferedImage tile = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+        Graphics2D gfx = tile.createGraphics();
+        try {
+            gfx.setColor(BACKGROUND);
+            gfx.fillRect(0, 0, TILE_SIZE, TILE_SIZE);
+            gfx.setClip(0, 0, TILE_SIZE, TILE_SIZE);
+
+            // render every page that overlaps the tile
+            double scale = getScale(level);
+            gfx.translate(-tx*TILE_SIZE, -ty*TILE_SIZE);
+            gfx.scale(scale, scale);
+            Rectangle area = gfx.getClipBounds();
+            for (int page = 0, pages = _viz.getPageCount(); page < pages; page++) {
+                double px = getPageX(page, columns), py = getPageY(page, columns);
+                if (!area.intersects(px, py, PAGE_WIDTH, PAGE_HEIGHT)) {
+                    continue;
+                }
+                Graphics2D pgfx = (Graphics2D)gfx.create();
+                try {
+                    pgfx.translate(px, py);
+                    pgfx.clipRect(0, 0, (int)PAGE_WIDTH, (int)PAGE_HEIGHT);
+                    pgfx.setColor(Color.white);
+                    pgfx.fillRect(0, 0, (int)PAGE_WIDTH, (int)PAGE_HEIGHT);
+                    configure(pgfx);
+                    if (scale >= DETAIL_SCALE) {
+                        _viz.paint(pgfx, page);
+                    } else {
+                        Outline outline = _viz.getOutline(page);
+                        if (outline != null) {
+                            outline.paint(pgfx);
+                        }
+                    }
+                } finally {
+                    pgfx.dispose();
+                }
+            }
+        } finally {
+            gfx.dispose();
+        }
+        return tile;
+    }
+
+    /**
+     * Called on the AWT thread when a tile has been rendered (or failed to render, in which case
+     * the tile will be null) from the specified layout.
+     */
+    protected void tileRendered (int level, int tx, int ty, int layoutGen, BufferedImage tile)
+    {
+        Long key = tileKey(level, tx, ty);
+        _pending.remove(key);
+        if (layoutGen != _layoutGeneration) {
+            // the tile may have been rendered from some other layout; paint it anew
+            if (level == _level) {
+                repaint(tx*TILE_SIZE, ty*TILE_SIZE, TILE_SIZE, TILE_SIZE);
+            }
+            return;
+        }
+        if (tile == null) {
+            return;
+        }
+        // tiles from other zoom levels are kept around to stand in for unrendered tiles
+        _tiles.put(key, tile);
+        if (level == _level) {
+            repaint(tx*TILE_SIZE, ty*TILE_SIZE, TILE_SIZE, TILE_SIZE);
+        }
+    }
+
+    protected Graphics2D configure (Graphics2D gfx)
+    {
+        gfx.setColor(Color.black);
+        gfx.setStroke(new BasicStroke(0.1f));
+        gfx.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                             RenderingHints.VALUE_ANTIALIAS_ON);
+        gfx.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                             RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        return gfx;
+    }
+
+    /**
+     * Returns the bounds of the highlighted element in our (scaled) coordinates.
+     */
+    protected Rectangle2D getHighlightBounds ()
+    {
+        double scale = getScale();
+        Rectangle2D bounds = _highlight.bounds;
+        return new Rectangle2D.Double(
+            (getPageX(_highlight.page) + bounds.getX()) * scale,
+            (getPageY(_highlight.page) + bounds.getY()) * scale,
+            bounds.getWidth() * scale, bounds.getHeight() * scale);
+    }
+
+    protected JViewport getViewport ()
+    {
+        Container parent = getParent();
+        return (parent instanceof JViewport) ? (JViewport)parent : null;
+    }
+
+    /**
+     * Moves the supplied viewport to the specified position, keeping it within our bounds.
+     */
+    protected void setViewPosition (JViewport viewport, Point pos)
+    {
+        Dimension size = viewport.getViewSize(), extent = viewport.getExtentSize();
+        pos.x = Math.max(0, Math.min(pos.x, size.width - extent.width));
+        pos.y = Math.max(0, Math.min(pos.y, size.height - extent.height));
+        viewport.setViewPosition(pos);
+    }
+
+    protected double getPageX (int page)
+    {
+        return getPageX(page, _columns);
+    }
+
+    protected double getPageY (int page)
+    {
+        return getPageY(page, _columns);
+    }
+
+    protected double getCanvasWidth ()
+    {
+        return GAP + _columns * (PAGE_WIDTH + GAP);
+    }
+
+    protected double getCanvasHeight ()
+    {
+        return GAP + _rows * (PAGE_HEIGHT + GAP);
+    }
+
+    /**
+     * Returns the number of pixels per point at the specified zoom level. Each level is a factor
+     * of the square root of two away from its neighbors.
+     */
+    protected static double getScale (int level)
+    {
+        return Math.pow(2, level / 2.0);
+    }
+
+    protected static double getPageX (int page, int columns)
+    {
+        return GAP + (page % columns) * (PAGE_WIDTH + GAP);
+    }
+
+    protected static double getPageY (int page, int columns)
+    {
+        return GAP + (page / columns) * (PAGE_HEIGHT + GAP);
+    }
+
+    protected static Long tileKey (int level, int tx, int ty)
+    {
+        return ((long)(level - MIN_LEVEL) << 56) | ((long)tx << 28) | ty;
+    }
+
+    protected Visualizer _viz;
+
+    /** Our current zoom level (see {@link #getScale(int)}). */
+    protected int _level = 0;
+
+    /** The dimensions of our grid of pages (zero until we've been laid out). */
+    protected int _columns, _rows;
+
+    /** Whether we've started laying out the visualization. Only accessed on the AWT thread. */
+    protected boolean _layingOut;
+
+    /** Incremented every time our layout is discarded, so that tiles rendered from other layouts
+     * can be discarded too. Only accessed on the AWT thread. */
+    protected int _layoutGeneration;
+
+    /** The thread on which we lay out and print. */
+    protected ExecutorService _executor;
+
+    /** The element found by the user's latest search, or null. */
+    protected SearchIndex.Match _highlight;
+
+    /** The point at which the mouse was pressed, for dragging. */
+    protected Point _dragStart;
+
+    /** Our rendered tiles, for all zoom levels. Only accessed on the AWT thread. */
+    protected LRUHashMap<Long,BufferedImage> _tiles = new LRUHashMap<Long,BufferedImage>(MAX_TILES);
+
+    /** The keys of the tiles that are queued or being rendered. Only accessed on the AWT thread. */
+    protected HashSet<Long> _pending = new HashSet<Long>();
+
+    /** Tiles waiting to be rendered (level, x, y and layout generation). */
+    protected ArrayList<int[]> _queue = new ArrayList<int[]>();
+
+    /** The size (in pixels) of our square tiles. */
+    protected static final int TILE_SIZE = 256;
+
+    /** The maximum number of tiles we keep cached (64MB worth). */
+    protected static final int MAX_TILES = 256;
+
+    /** The maximum number of tile rendering threads. */
+    protected static final int MAX_RENDERERS = 4;
+
+    /** The range of zoom levels: 1/64th to four times actual size. */
+    protected static final int MIN_LEVEL = -12, MAX_LEVEL = 4;
+
+    /** The number of coarser levels searched for a stand-in for an unrendered tile. */
+    protected static final int STAND_IN_LEVELS = 6;
+
+    /** The scale at and above which pages are rendered in full rather than outlined. */
+    protected static final double DETAIL_SCALE = 0.7;
+
+    /** The dimensions of a page and of its margins, in points (matching those printed). */
+    protected static final double PAGE_WIDTH = 72*8.5;
+    protected static final double PAGE_HEIGHT = 72*11;
+    protected static final double MARGIN = 72*0.5;
+
+    /** The space between pages, in points. */
+    protected static final double GAP = 72*0.25;
+
+    protected static final Color BACKGROUND = new Color(0x808080);
+
+    protected static final String BUSY_TEXT = "Laying out...";
+    protected static final int BUSY_BORDER = 4;
+
+    /** The colors and width (in pixels) with which found elements are highlighted. */
+    protected static final Color HIGHLIGHT = new Color(0xFF8000);
+    protected static final Color HIGHLIGHT_FILL = new Color(0xFF, 0x80, 0x00, 0x30);
+    protected static final float HIGHLIGHT_WIDTH = 2;
+}
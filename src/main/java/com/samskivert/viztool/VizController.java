@@ -9,6 +9,9 @@ import java.awt.event.ActionEvent;
 import java.awt.print.*;
 
 import com.samskivert.swing.*;
+import com.samskivert.swing.event.CommandEvent;
+
+import com.samskivert.viztool.util.SearchIndex;
 
 /**
  * The viz controller manages the user interface and effects actions that
@@ -22,6 +25,16 @@ public class VizController extends Controller
     /** The action command for moving backward one page. */
     public static final String BACKWARD_PAGE = "backward_page";
 
+    /** The action command for zooming in on the canvas. */
+    public static final String ZOOM_IN = "zoom_in";
+
+    /** The action command for zooming out of the canvas. */
+    public static final String ZOOM_OUT = "zoom_out";
+
+    /** The action command for showing (and highlighting) an element found via a search. The
+     * action's argument is the {@link SearchIndex.Match} to be shown. */
+    public static final String SHOW_MATCH = "show_match";
+
     /** The action command for printing. */
     public static final String PRINT = "print";
 
@@ -29,8 +42,20 @@ public class VizController extends Controller
     public static final String QUIT = "quit";
 
     public VizController (VizPanel vpanel)
+    {
+        this(vpanel, vpanel.getVisualizer());
+    }
+
+    public VizController (VizCanvas vcanvas)
+    {
+        this(null, vcanvas.getVisualizer());
+        _vcanvas = vcanvas;
+    }
+
+    protected VizController (VizPanel vpanel, Visualizer viz)
     {
         _vpanel = vpanel;
+        _viz = viz;
 
         // create a print job in case we need to print
         _job = PrinterJob.getPrinterJob();
@@ -61,12 +86,25 @@ public class VizController extends Controller
             }
             return true;
 
+        } else if (cmd.equals(ZOOM_IN) || cmd.equals(ZOOM_OUT)) {
+            _vcanvas.zoom(cmd.equals(ZOOM_IN) ? 1 : -1, null);
+            return true;
+
+        } else if (cmd.equals(SHOW_MATCH)) {
+            SearchIndex.Match match = (SearchIndex.Match)((CommandEvent)action).getArgument();
+            if (_vpanel != null) {
+                _vpanel.showMatch(match);
+            } else {
+                _vcanvas.showMatch(match);
+            }
+            return true;
+
         } else if (cmd.equals(PRINT)) {
             // create a pageable to be used by our print job that does the
             // right thing
             Pageable pable = new Pageable() {
                 public int getNumberOfPages () {
-                    return _vpanel.getVisualizer().getPageCount();
+                    return _viz.getPageCount();
                 }
 
                 public PageFormat getPageFormat (int pageIndex) {
@@ -74,18 +112,19 @@ public class VizController extends Controller
                 }
 
                 public Printable getPrintable (int pageIndex) {
-                    return _vpanel.getVisualizer();
+                    return _viz;
                 }
             };
             _job.setPageable(pable);
 
-            // pop up a dialog to control printing
+            // pop up a dialog to control printing; printing lays the visualizer out for the
+            // printer's pages, so our view does the printing, off the AWT thread, and then lays
+            // the visualizer out anew for itself
             if (_job.printDialog()) {
-                try {
-                    // invoke the printing process
-                    _job.print();
-                } catch (PrinterException pe) {
-                    pe.printStackTrace(System.err);
+                if (_vpanel != null) {
+                    _vpanel.print(_job);
+                } else {
+                    _vcanvas.print(_job);
                 }
             }
             return true;
@@ -98,6 +137,8 @@ public class VizController extends Controller
     }
 
     protected VizPanel _vpanel;
+    protected VizCanvas _vcanvas;
+    protected Visualizer _viz;
     protected PrinterJob _job;
     protected PageFormat _format;
 
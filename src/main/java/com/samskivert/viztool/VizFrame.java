@@ -7,8 +7,11 @@ package com.samskivert.viztool;
 
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
+import javax.swing.JComponent;
 import javax.swing.JFrame;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JScrollPane;
 
 import com.samskivert.swing.*;
 
@@ -18,6 +21,15 @@ import com.samskivert.swing.*;
 public class VizFrame extends JFrame
 {
     public VizFrame (Visualizer viz)
+    {
+        this(viz, false);
+    }
+
+    /**
+     * Creates a frame that displays the supplied visualization one page at a time or, if
+     * <code>canvas</code> is true, displays all of its pages on a zoomable canvas.
+     */
+    public VizFrame (Visualizer viz, boolean canvas)
     {
         super("viztool");
 
@@ -25,34 +37,34 @@ public class VizFrame extends JFrame
         setDefaultCloseOperation(EXIT_ON_CLOSE);
 
         // create our controller and panel for displaying visualizations
-        VizPanel vpanel = new VizPanel(viz);
-        VizController vctrl = new VizController(vpanel);
+        JComponent vpanel;
+        VizController vctrl;
+        if (canvas) {
+            VizCanvas vcanvas = new VizCanvas(viz);
+            vctrl = new VizController(vcanvas);
+            vpanel = new JScrollPane(vcanvas);
+        } else {
+            VizPanel panel = new VizPanel(viz);
+            vctrl = new VizController(panel);
+            vpanel = panel;
+        }
 
-        // create some control buttons
+        // create a search field and some control buttons
         GroupLayout gl = new HGroupLayout(GroupLayout.NONE);
         gl.setJustification(GroupLayout.RIGHT);
         JPanel bpanel = new JPanel(gl);
-        JButton btn;
 
-        btn = new JButton("Print");
-        btn.setActionCommand(VizController.PRINT);
-        btn.addActionListener(VizController.DISPATCHER);
-        bpanel.add(btn);
-
-        btn = new JButton("Previous page");
-        btn.setActionCommand(VizController.BACKWARD_PAGE);
-        btn.addActionListener(VizController.DISPATCHER);
-        bpanel.add(btn);
-
-        btn = new JButton("Next page");
-        btn.setActionCommand(VizController.FORWARD_PAGE);
-        btn.addActionListener(VizController.DISPATCHER);
-        bpanel.add(btn);
-
-        btn = new JButton("Quit");
-        btn.setActionCommand(VizController.QUIT);
-        btn.addActionListener(VizController.DISPATCHER);
-        bpanel.add(btn);
+        bpanel.add(new JLabel("Find:"));
+        bpanel.add(new VizSearchField(viz));
+        addButton(bpanel, "Print", VizController.PRINT);
+        if (canvas) {
+            addButton(bpanel, "Zoom out", VizController.ZOOM_OUT);
+            addButton(bpanel, "Zoom in", VizController.ZOOM_IN);
+        } else {
+            addButton(bpanel, "Previous page", VizController.BACKWARD_PAGE);
+            addButton(bpanel, "Next page", VizController.FORWARD_PAGE);
+        }
+        addButton(bpanel, "Quit", VizController.QUIT);
 
         // create a content pane to contain everything
         JPanel content = new ContentPanel(vctrl);
@@ -65,6 +77,14 @@ public class VizFrame extends JFrame
         setContentPane(content);
     }
 
+    protected static void addButton (JPanel bpanel, String label, String command)
+    {
+        JButton btn = new JButton(label);
+        btn.setActionCommand(command);
+        btn.addActionListener(VizController.DISPATCHER);
+        bpanel.add(btn);
+    }
+
     protected static final class ContentPanel extends JPanel
         implements ControllerProvider
     {
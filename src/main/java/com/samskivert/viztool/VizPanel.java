@@ -6,11 +6,32 @@
 package com.samskivert.viztool;
 
 import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.print.PrinterJob;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import javax.swing.*;
 
+import com.samskivert.viztool.util.SearchIndex;
+
 /**
  * A very simple UI element for displaying visualizations on screen.
+ *
+ * <p> The visualization is laid out (to fit the panel) and its pages are rendered on a background
+ * thread, so that laying out a large visualization does not freeze the user interface. Layouts
+ * are requested once a burst of resizes has settled down, a request that is superseded by a newer
+ * one is abandoned (a layout in progress is interrupted, which the visualizers check between the
+ * elements they lay out), and the results of a superseded request are discarded. Layouts and
+ * page renderings are superseded separately: a new layout supersedes everything, but a new page
+ * supersedes only the rendering of another page, and is rendered after (and from) any layout
+ * still pending. Until the latest request completes, the panel continues to display the
+ * previously rendered page, along with an indication that it is busy; the new page is swapped in
+ * once it is completely rendered.
  */
 public class VizPanel extends JPanel
 {
@@ -25,20 +46,69 @@ public class VizPanel extends JPanel
         // set the font
         Font font = new Font("Courier", Font.PLAIN, 10);
         setFont(font);
+
+        _relayout = new Timer(LAYOUT_DELAY, new ActionListener() {
+            public void actionPerformed (ActionEvent event) {
+                requestLayout();
+            }
+        });
+        _relayout.setRepeats(false);
+
+        _executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread (Runnable task) {
+                Thread thread = new Thread(task, "viz-layout");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
     }
 
     public void doLayout ()
     {
         super.doLayout();
-        Graphics2D gfx = (Graphics2D)getGraphics();
-        Rectangle2D bounds = getBounds();
-        _viz.layout(gfx, 0, 0, bounds.getWidth(), bounds.getHeight());
+
+        // lay ourselves out immediately the first time, but otherwise wait for a burst of
+        // resizes to settle down before relaying out
+        if (_image == null && _pendingLayout == null) {
+            requestLayout();
+        } else {
+            _relayout.restart();
+        }
     }
 
     public void paintComponent (Graphics g)
     {
         super.paintComponent(g);
-        _viz.paint((Graphics2D)g, _currentPage);
+        if (_image != null) {
+            g.drawImage(_image, 0, 0, null);
+        }
+
+        // highlight the element that the user last found, if it's on this page
+        if (_highlight != null && _highlight.page == _currentPage) {
+            Graphics2D gfx = (Graphics2D)g;
+            Rectangle2D bounds = _highlight.bounds;
+            gfx.setColor(HIGHLIGHT_FILL);
+            gfx.fill(bounds);
+            gfx.setColor(HIGHLIGHT);
+            gfx.setStroke(new BasicStroke(HIGHLIGHT_WIDTH));
+            gfx.draw(new Rectangle2D.Double(
+                          bounds.getX() - HIGHLIGHT_WIDTH, bounds.getY() - HIGHLIGHT_WIDTH,
+                          bounds.getWidth() + 2*HIGHLIGHT_WIDTH,
+                          bounds.getHeight() + 2*HIGHLIGHT_WIDTH));
+        }
+
+        // let the user know if we're working on a new layout
+        if (_busy) {
+            FontMetrics fm = g.getFontMetrics();
+            int width = fm.stringWidth(BUSY_TEXT) + 2*BUSY_BORDER;
+            int height = fm.getHeight() + 2*BUSY_BORDER;
+            int x = getWidth() - width - BUSY_BORDER, y = BUSY_BORDER;
+            g.setColor(BUSY_BACKGROUND);
+            g.fillRect(x, y, width, height);
+            g.setColor(Color.black);
+            g.drawRect(x, y, width-1, height-1);
+            g.drawString(BUSY_TEXT, x + BUSY_BORDER, y + BUSY_BORDER + fm.getAscent());
+        }
     }
 
     public Dimension getPreferredSize ()
@@ -53,7 +123,7 @@ public class VizPanel extends JPanel
      */
     public int getPageCount ()
     {
-        return _viz.getPageCount();
+        return _pageCount;
     }
 
     /**
@@ -63,17 +133,72 @@ public class VizPanel extends JPanel
      */
     public void setPage (int pageno)
     {
-        if (pageno < _viz.getPageCount()) {
+        if (pageno < _pageCount) {
             _currentPage = pageno;
-            repaint();
+            // a page rendering that hasn't started yet needn't bother, but a pending layout must
+            // go ahead; our new page will be rendered from it, as our tasks are run in order
+            if (_pendingRender != null) {
+                _pendingRender.cancel(false);
+            }
+            final int layoutGen = _layoutGeneration, renderGen = ++_renderGeneration;
+            _pendingRender = submit(layoutGen, renderGen, new Runnable() {
+                public void run () {
+                    render(layoutGen, renderGen);
+                }
+            });
 
         } else {
             Log.warning("Requested to display invalid page " +
                         "[pageno=" + pageno +
-                        ", pages=" + _viz.getPageCount() + "].");
+                        ", pages=" + _pageCount + "].");
+        }
+    }
+
+    /**
+     * Displays the page on which the supplied element (found in our visualization's {@link
+     * SearchIndex}) appears and highlights the element. The highlight is cleared when the
+     * visualization is next laid out, as the element will likely have moved.
+     */
+    public void showMatch (SearchIndex.Match match)
+    {
+        _highlight = match;
+        if (match.page == _currentPage) {
+            repaint();
+        } else {
+            setPage(match.page);
         }
     }
 
+    /**
+     * Prints the visualization via the supplied job. Printing lays the visualizer out for the
+     * printer's pages, so the job is run on our layout thread (where no page of ours can be
+     * rendered from the printer's layout) and we then lay the visualizer out anew. This is called
+     * on the AWT thread.
+     */
+    public void print (final PrinterJob job)
+    {
+        _executor.submit(new Runnable() {
+            public void run () {
+                try {
+                    synchronized (_viz) {
+                        job.print();
+                    }
+                } catch (Throwable t) {
+                    Log.warning("Failed to print visualization [error=" + t + "].");
+                    Log.logStackTrace(t);
+                } finally {
+                    // renderings queued behind us have no layout of ours to render from
+                    _layoutWidth = 0;
+                }
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run () {
+                        requestLayout();
+                    }
+                });
+            }
+        });
+    }
+
     /**
      * Returns the index of the page that we're currently displaying.
      */
@@ -90,10 +215,207 @@ public class VizPanel extends JPanel
         return _viz;
     }
 
+    /**
+     * Requests that the visualization be laid out anew for our current size.
+     */
+    protected void requestLayout ()
+    {
+        _relayout.stop();
+        _highlight = null;
+        final int width = getWidth(), height = getHeight();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+
+        // a new layout supersedes any layout in progress as well as any layout or rendering that
+        // hasn't started yet
+        if (_pendingLayout != null) {
+            _pendingLayout.cancel(true);
+        }
+        if (_pendingRender != null) {
+            _pendingRender.cancel(false);
+            _pendingRender = null;
+        }
+        final int layoutGen = ++_layoutGeneration, renderGen = ++_renderGeneration;
+        _pendingLayout = submit(layoutGen, renderGen, new Runnable() {
+            public void run () {
+                layoutPages(layoutGen, renderGen, width, height);
+            }
+        });
+    }
+
+    /**
+     * Submits the supplied task (of the specified layout and render generations) to our layout
+     * thread. This is called on the AWT thread.
+     */
+    protected Future<?> submit (final int layoutGen, final int renderGen, final Runnable task)
+    {
+        _busy = true;
+        Future<?> pending = _executor.submit(new Runnable() {
+            public void run () {
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    // a layout that was interrupted because it was superseded may fail
+                    if (layoutGen == _layoutGeneration) {
+                        Log.warning("Failed to lay out or render visualization " +
+                                    "[error=" + t + "].");
+                        Log.logStackTrace(t);
+                    }
+                    publish(layoutGen, renderGen, null, -1, 0);
+                }
+            }
+        });
+        repaint();
+        return pending;
+    }
+
+    /**
+     * Lays out the visualization and renders the current page. This is called on our layout
+     * thread.
+     */
+    protected void layoutPages (int layoutGen, int renderGen, int width, int height)
+    {
+        if (layoutGen != _layoutGeneration) {
+            return; // we've been superseded
+        }
+
+        // the visualizer is also used to print, so we hold its lock while we work with it
+        synchronized (_viz) {
+            // our previous layout is gone, whether or not we finish this one
+            _layoutWidth = 0;
+            Graphics2D gfx = newImage(width, height).createGraphics();
+            try {
+                _viz.layout(gfx, 0, 0, width, height);
+            } finally {
+                gfx.dispose();
+            }
+            if (Thread.interrupted()) {
+                return; // we were superseded part way through, the next layout is queued
+            }
+            // sort the search index now rather than when it's first searched on the AWT thread
+            SearchIndex index = _viz.getSearchIndex();
+            if (index != null) {
+                index.sort();
+            }
+            _layoutWidth = width;
+            _layoutHeight = height;
+        }
+        render(layoutGen, renderGen);
+    }
+
+    /**
+     * Renders the current page of the most recent layout and hands it to the AWT thread to be
+     * displayed. This is called on our layout thread.
+     */
+    protected void render (int layoutGen, int renderGen)
+    {
+        if (renderGen != _renderGeneration || _layoutWidth == 0) {
+            return; // we've been superseded or have yet to be laid out
+        }
+
+        final BufferedImage image = newImage(_layoutWidth, _layoutHeight);
+        final int pages, pageno;
+        synchronized (_viz) {
+            pages = _viz.getPageCount();
+            pageno = Math.max(0, Math.min(_currentPage, pages-1));
+            Graphics2D gfx = image.createGraphics();
+            try {
+                _viz.paint(gfx, pageno);
+            } finally {
+                gfx.dispose();
+            }
+        }
+
+        publish(layoutGen, renderGen, image, pages, pageno);
+    }
+
+    /**
+     * Swaps in the results of a task, if it has not been superseded, on the AWT thread. A null
+     * image indicates that the task failed, in which case we continue to display our old results.
+     * We remain busy if the task was rendered from a layout that has since been superseded.
+     */
+    protected void publish (final int layoutGen, final int renderGen, final BufferedImage image,
+                            final int pages, final int pageno)
+    {
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run () {
+                // only the most recent rendering gets to swap in its results
+                if (renderGen != _renderGeneration) {
+                    return;
+                }
+                if (image != null) {
+                    _image = image;
+                    _pageCount = pages;
+                    _currentPage = pageno;
+                }
+                _pendingRender = null;
+                if (layoutGen == _layoutGeneration) {
+                    _busy = false;
+                    _pendingLayout = null;
+                }
+                repaint();
+            }
+        });
+    }
+
+    /**
+     * Creates an image into which we render, cleared to our background color.
+     */
+    protected BufferedImage newImage (int width, int height)
+    {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D gfx = image.createGraphics();
+        gfx.setColor(getBackground());
+        gfx.fillRect(0, 0, width, height);
+        gfx.dispose();
+        return image;
+    }
+
     protected Visualizer _viz;
-    protected int _currentPage = 0;
+    protected volatile int _currentPage = 0;
+
+    /** The number of pages in, and a rendering of the current page of, our latest layout. */
+    protected int _pageCount = -1;
+    protected BufferedImage _image;
+
+    /** The element found by the user's latest search, or null. */
+    protected SearchIndex.Match _highlight;
+
+    /** Fires once a burst of resizes has settled down. */
+    protected Timer _relayout;
+
+    /** The thread on which we lay out and render. */
+    protected ExecutorService _executor;
+
+    /** Our most recently submitted layout and render tasks, if they've yet to complete. */
+    protected Future<?> _pendingLayout, _pendingRender;
+
+    /** Incremented every time a layout is submitted, so that superseded layouts can be ignored. */
+    protected volatile int _layoutGeneration;
+
+    /** Incremented every time a layout or page rendering is submitted, likewise. */
+    protected volatile int _renderGeneration;
+
+    /** Whether or not we're waiting for a task to complete. */
+    protected boolean _busy;
+
+    /** The dimensions of our most recent layout. Only accessed on our layout thread. */
+    protected int _layoutWidth, _layoutHeight;
 
     // our preferred size is one page at 72 pixels per inch
     protected static final int PAGE_WIDTH = (int)(72 * 8.5);
     protected static final int PAGE_HEIGHT = (int)(72 * 11.0);
+
+    /** The number of milliseconds for which resizing must pause before we relay out. */
+    protected static final int LAYOUT_DELAY = 250;
+
+    /** The colors and width (in pixels) with which found elements are highlighted. */
+    protected static final Color HIGHLIGHT = new Color(0xFF8000);
+    protected static final Color HIGHLIGHT_FILL = new Color(0xFF, 0x80, 0x00, 0x30);
+    protected static final float HIGHLIGHT_WIDTH = 2;
+
+    protected static final String BUSY_TEXT = "Laying out...";
+    protected static final int BUSY_BORDER = 4;
+    protected static final Color BUSY_BACKGROUND = new Color(0xFFFFE0);
 }
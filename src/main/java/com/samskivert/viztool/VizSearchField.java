@@ -0,0 +1,160 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.FocusAdapter;
+import java.awt.event.FocusEvent;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+
+import javax.swing.JList;
+import javax.swing.JPopupMenu;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import javax.swing.ListSelectionModel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+import com.samskivert.swing.Controller;
+import com.samskivert.viztool.util.SearchIndex;
+
+/**
+ * A text field via which the user can find a class, member or package in a visualization. As the
+ * user types, the elements whose names start with the text typed thus far are listed above the
+ * field; choosing one (by clicking on it or selecting it with the arrow keys and pressing return)
+ * posts a {@link VizController#SHOW_MATCH} action with the chosen {@link SearchIndex.Match}.
+ */
+public class VizSearchField extends JTextField
+{
+    /**
+     * Creates a field that searches the supplied visualization.
+     */
+    public VizSearchField (Visualizer viz)
+    {
+        super(COLUMNS);
+        _viz = viz;
+
+        _results.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        _results.setFocusable(false);
+        _results.addMouseListener(new MouseAdapter() {
+            public void mouseClicked (MouseEvent event) {
+                showMatch(_results.locationToIndex(event.getPoint()));
+            }
+        });
+        _popup.setFocusable(false);
+        _popup.add(new JScrollPane(_results));
+
+        getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate (DocumentEvent event) {
+                updateResults();
+            }
+            public void removeUpdate (DocumentEvent event) {
+                updateResults();
+            }
+            public void changedUpdate (DocumentEvent event) {
+                updateResults();
+            }
+        });
+        addKeyListener(new KeyAdapter() {
+            public void keyPressed (KeyEvent event) {
+                switch (event.getKeyCode()) {
+                case KeyEvent.VK_DOWN:
+                    moveSelection(1);
+                    break;
+                case KeyEvent.VK_UP:
+                    moveSelection(-1);
+                    break;
+                case KeyEvent.VK_ESCAPE:
+                    _popup.setVisible(false);
+                    break;
+                }
+            }
+        });
+        addActionListener(new ActionListener() {
+            public void actionPerformed (ActionEvent event) {
+                showMatch(Math.max(_results.getSelectedIndex(), 0));
+            }
+        });
+        addFocusListener(new FocusAdapter() {
+            public void focusLost (FocusEvent event) {
+                _popup.setVisible(false);
+            }
+        });
+    }
+
+    /**
+     * Looks up the elements that match our text and lists them above the field.
+     */
+    protected void updateResults ()
+    {
+        SearchIndex index = _viz.getSearchIndex();
+        String prefix = getText().trim();
+        if (index == null || prefix.length() == 0) {
+            _popup.setVisible(false);
+            return;
+        }
+
+        List<SearchIndex.Match> matches = index.find(prefix, MAX_RESULTS);
+        _results.setListData(matches.toArray(new SearchIndex.Match[matches.size()]));
+        if (matches.isEmpty()) {
+            _popup.setVisible(false);
+            return;
+        }
+        _results.setSelectedIndex(0);
+        _results.setVisibleRowCount(Math.min(matches.size(), VISIBLE_RESULTS));
+        _popup.pack();
+        if (isShowing()) {
+            // we sit at the bottom of our frame, so the results are shown above us
+            _popup.show(this, 0, -_popup.getPreferredSize().height);
+        }
+    }
+
+    /**
+     * Moves the selection in the list of results up or down.
+     */
+    protected void moveSelection (int delta)
+    {
+        int count = _results.getModel().getSize();
+        if (count > 0) {
+            int index = Math.max(0, Math.min(count-1, _results.getSelectedIndex() + delta));
+            _results.setSelectedIndex(index);
+            _results.ensureIndexIsVisible(index);
+        }
+    }
+
+    /**
+     * Shows the specified result (if there is such a result) and hides the results.
+     */
+    protected void showMatch (int index)
+    {
+        if (index < 0 || index >= _results.getModel().getSize()) {
+            return;
+        }
+        _popup.setVisible(false);
+        Controller.postAction(
+            this, VizController.SHOW_MATCH, _results.getModel().getElementAt(index));
+    }
+
+    protected Visualizer _viz;
+
+    /** The elements that match our text, and the popup that displays them. */
+    protected JList<SearchIndex.Match> _results = new JList<SearchIndex.Match>();
+    protected JPopupMenu _popup = new JPopupMenu();
+
+    /** The width of the field, in columns. */
+    protected static final int COLUMNS = 20;
+
+    /** The maximum number of elements listed. */
+    protected static final int MAX_RESULTS = 50;
+
+    /** The number of elements listed without scrolling. */
+    protected static final int VISIBLE_RESULTS = 12;
+}
@@ -11,6 +11,9 @@ import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
+import com.samskivert.viztool.util.Events;
+import com.samskivert.viztool.util.Stats;
+
 /**
  * The class enumerator is supplied with a classpath which it decomposes
  * and enumerates over all of the classes available via those classpath
@@ -40,8 +43,10 @@ public class ClassEnumerator implements Iterator<String>
      */
     public ClassEnumerator (List<String> classpath)
     {
+        Stats.Probe probe = Stats.start(Stats.SCAN);
         // decompose the path and select enumerators for each component
         List<ComponentEnumerator> enums = new ArrayList<ComponentEnumerator>();
+        List<String> components = new ArrayList<String>();
 
         for (String component : classpath) {
             // locate an enumerator for this token
@@ -54,6 +59,7 @@ public class ClassEnumerator implements Iterator<String>
                 try {
                     // construct an enumerator to enumerate this component and put it on our list
                     enums.add(cenum.enumerate(component));
+                    components.add(component);
                 } catch (EnumerationException ee) {
                     // if there was a problem creating an enumerator for said component, create a
                     // warning to that effect
@@ -65,9 +71,11 @@ public class ClassEnumerator implements Iterator<String>
         // convert our list into an array
         _enums = new ComponentEnumerator[enums.size()];
         enums.toArray(_enums);
+        _components = components.toArray(new String[components.size()]);
 
         // scan to the first class
         scanToNextClass();
+        probe.stop();
     }
 
     /**
@@ -122,9 +130,12 @@ public class ClassEnumerator implements Iterator<String>
     // from interface Iterator<String>
     public String next ()
     {
+        Stats.Probe probe = Stats.start(Stats.SCAN);
         String clazz = _nextClass;
         _nextClass = null;
         scanToNextClass();
+        Stats.count(Stats.CLASSES_SCANNED);
+        probe.stop();
         return clazz;
     }
 
@@ -143,15 +154,22 @@ public class ClassEnumerator implements Iterator<String>
         if (_enumidx < _enums.length) {
             // grab the current enumerator
             ComponentEnumerator cenum = _enums[_enumidx];
+            if (_event == null) {
+                _event = Events.begin(Events.ENUMERATE);
+                _enumerated = 0;
+            }
 
             // if it has more classes
             if (cenum.hasMoreClasses()) {
                 // get the next one
                 _nextClass = cenum.nextClass();
+                _enumerated++;
                 return;
 
             } else {
                 // otherwise try the next enum
+                _event.commit(_components[_enumidx], _enumerated, 0);
+                _event = null;
                 _enumidx++;
                 scanToNextClass();
             }
@@ -161,6 +179,13 @@ public class ClassEnumerator implements Iterator<String>
     protected ComponentEnumerator[] _enums;
     protected int _enumidx;
     protected String _nextClass;
+
+    /** The classpath component enumerated by each of our enumerators. */
+    protected String[] _components;
+
+    /** The event tracking the enumeration of the current component and its classes so far. */
+    protected Events.Event _event;
+    protected int _enumerated;
     protected List<String> _warnings = new ArrayList<String>();
 
     protected static List<ComponentEnumerator> _enumerators = new ArrayList<ComponentEnumerator>();
@@ -0,0 +1,164 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool.daemon;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.samskivert.viztool.Log;
+import com.samskivert.viztool.clenum.ClassEnumerator;
+
+/**
+ * Remembers the classes enumerated from each component of a classpath, along with a stamp
+ * describing the state of the component on disk when it was enumerated, so that a component need
+ * only be enumerated again if it has changed. A jar or zip file's stamp is derived from its size
+ * and modification time. A directory's stamp is derived from the names, sizes and modification
+ * times of all of the files beneath it, which requires walking the directory tree but is much
+ * cheaper than loading and introspecting its classes anew.
+ */
+public class ComponentCache
+{
+    /**
+     * Brings the cache up to date with the supplied components, enumerating those that are new or
+     * have changed since they were last enumerated and forgetting those that are no longer listed.
+     *
+     * @return the names of the classes that were (or are now) in components that changed; records
+     * of these classes must be discarded.
+     */
+    public synchronized List<String> refresh (List<String> components)
+    {
+        List<String> changed = new ArrayList<String>();
+        Map<String,Entry> entries = new HashMap<String,Entry>();
+        for (String component : components) {
+            long stamp = stamp(new File(component));
+            Entry entry = _entries.get(component);
+            if (entry != null && entry.stamp == stamp) {
+                _hits++;
+            } else {
+                _misses++;
+                if (entry != null) {
+                    changed.addAll(entry.classes);
+                }
+                entry = enumerate(component, stamp);
+                changed.addAll(entry.classes);
+            }
+            entries.put(component, entry);
+        }
+
+        // the classes of components that have been dropped have changed as well
+        for (Map.Entry<String,Entry> old : _entries.entrySet()) {
+            if (!entries.containsKey(old.getKey())) {
+                changed.addAll(old.getValue().classes);
+            }
+        }
+
+        _entries = entries;
+        _components = new ArrayList<String>(components);
+        return changed;
+    }
+
+    /**
+     * Returns the names of all of the classes in all of our components, in classpath order, as of
+     * the last call to {@link #refresh}.
+     */
+    public synchronized List<String> getClasses ()
+    {
+        List<String> classes = new ArrayList<String>();
+        for (String component : _components) {
+            classes.addAll(_entries.get(component).classes);
+        }
+        return classes;
+    }
+
+    /**
+     * Forgets all of our enumerations.
+     */
+    public synchronized void clear ()
+    {
+        _entries.clear();
+        _components.clear();
+    }
+
+    /** Returns the number of components we have enumerated. */
+    public synchronized int getComponentCount ()
+    {
+        return _entries.size();
+    }
+
+    /** Returns the total number of classes in our components. */
+    public synchronized int getClassCount ()
+    {
+        int count = 0;
+        for (Entry entry : _entries.values()) {
+            count += entry.classes.size();
+        }
+        return count;
+    }
+
+    /** Returns the number of times a component was found to be unchanged. */
+    public synchronized long getHits ()
+    {
+        return _hits;
+    }
+
+    /** Returns the number of times a component had to be enumerated. */
+    public synchronized long getMisses ()
+    {
+        return _misses;
+    }
+
+    /** The enumerated classes of a component and the component's stamp at the time. */
+    protected static class Entry
+    {
+        public long stamp;
+        public List<String> classes;
+    }
+
+    protected Entry enumerate (String component, long stamp)
+    {
+        Entry entry = new Entry();
+        entry.stamp = stamp;
+        entry.classes = new ArrayList<String>();
+        ClassEnumerator clenum = new ClassEnumerator(Collections.singletonList(component));
+        for (String warning : clenum.getWarningStrings()) {
+            Log.warning(warning);
+        }
+        while (clenum.hasNext()) {
+            entry.classes.add(clenum.next());
+        }
+        return entry;
+    }
+
+    /**
+     * Computes a stamp that changes whenever the supplied file (or any file beneath it, if it is
+     * a directory) is added, removed or modified.
+     */
+    protected static long stamp (File file)
+    {
+        if (!file.exists()) {
+            return 0;
+        }
+        long stamp = file.lastModified() * 31 + file.length();
+        File[] children = file.listFiles();
+        if (children != null) {
+            Arrays.sort(children);
+            for (File child : children) {
+                stamp = stamp * 31 + child.getName().hashCode();
+                stamp = stamp * 31 + stamp(child);
+            }
+        }
+        return stamp;
+    }
+
+    protected Map<String,Entry> _entries = new HashMap<String,Entry>();
+    protected List<String> _components = new ArrayList<String>();
+    protected long _hits, _misses;
+}
@@ -0,0 +1,451 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool.daemon;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.ObjectName;
+
+import com.samskivert.viztool.ClassLoadingStage;
+import com.samskivert.viztool.ImageExporter;
+import com.samskivert.viztool.IsolatedClassLoader;
+import com.samskivert.viztool.Log;
+import com.samskivert.viztool.Visualizer;
+import com.samskivert.viztool.clenum.RegexpEnumerator;
+import com.samskivert.viztool.depend.DependencyVisualizer;
+import com.samskivert.viztool.hierarchy.HierarchyVisualizer;
+import com.samskivert.viztool.model.ClassModel;
+import com.samskivert.viztool.summary.SummaryVisualizer;
+import com.samskivert.viztool.util.FontPicker;
+import com.samskivert.viztool.util.LayoutUtil;
+import com.samskivert.viztool.util.Pipeline;
+
+/**
+ * A long-lived process that renders visualizations on request, keeping everything it can warm
+ * between requests: the classes enumerated from each classpath component, the loaded classes,
+ * the introspected class records and the shaped text. Before each request, the classpath
+ * components are checked for changes; the classes of changed components are enumerated and
+ * loaded anew and their records (and those of their subclasses) are discarded, while everything
+ * else is reused.
+ *
+ * <p> The daemon listens on a port on the loopback interface. A client sends a command on a line
+ * of its own, followed by the command's arguments as <code>name=value</code> lines and a blank
+ * line, and the daemon replies with a single line starting with <code>ok</code> or
+ * <code>error</code>. The commands are:
+ *
+ * <pre>
+ * render = renders a visualization, taking the arguments:
+ *   classes = a regular expression matching the classes to be visualized
+ *   exclude = (optional) a regular expression matching classes to be excluded
+ *   pkgroot = (optional) the base package from which names will be shortened
+ *   visualizer = (optional) summary (the default), hierarchy, dependency or the classname of a
+ *                visualizer
+ *   format = (optional) png, the only supported format
+ *   output = the directory into which page images are written
+ *   replies with ok followed by the number of pages written
+ * stats = replies with ok followed by the statistics reported by the daemon's MBean
+ * clear = discards all cached data
+ * shutdown = stops the daemon
+ * </pre>
+ *
+ * Requests are rendered one at a time. The daemon's cache sizes and hit rates are also available
+ * via JMX, from the {@link VizDaemonMBean} registered as {@link #MBEAN_NAME}.
+ */
+public class VizDaemon implements VizDaemonMBean
+{
+    /** The port on which the daemon listens by default. */
+    public static final int DEFAULT_PORT = 7341;
+
+    /** The name under which the daemon's MBean is registered. */
+    public static final String MBEAN_NAME = "com.samskivert.viztool:type=VizDaemon";
+
+    /** The number of text layouts cached by default. */
+    public static final int DEFAULT_LAYOUT_CACHE = 1 << 16;
+
+    /**
+     * Sends a command (and its arguments) to the daemon listening on the specified port and
+     * returns its reply.
+     */
+    public static String send (int port, String command, Map<String,String> args)
+        throws IOException
+    {
+        Socket socket = new Socket(InetAddress.getByName(null), port);
+        try {
+            PrintWriter out = new PrintWriter(
+                new OutputStreamWriter(socket.getOutputStream(), "UTF-8"));
+            out.print(command + "\n");
+            for (Map.Entry<String,String> arg : args.entrySet()) {
+                out.print(arg.getKey() + "=" + arg.getValue() + "\n");
+            }
+            out.print("\n");
+            out.flush();
+            BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), "UTF-8"));
+            String reply = in.readLine();
+            if (reply == null) {
+                throw new IOException("Daemon closed the connection without replying.");
+            }
+            return reply;
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Creates a daemon that visualizes classes from the supplied classpath components.
+     */
+    public VizDaemon (List<String> classpath)
+    {
+        _classpath = classpath;
+    }
+
+    /**
+     * Registers this daemon's MBean with the platform MBean server.
+     */
+    public void register ()
+        throws Exception
+    {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(MBEAN_NAME));
+    }
+
+    /**
+     * Listens for and handles requests on the specified port (on the loopback interface) until a
+     * shutdown command is received.
+     */
+    public void serve (int port)
+        throws IOException
+    {
+        // we only ever render images and we cache text layouts across requests
+        FontPicker.init(true);
+        LayoutUtil.setLayoutCacheSize(DEFAULT_LAYOUT_CACHE);
+
+        _server = new ServerSocket(port, 50, InetAddress.getByName(null));
+        Log.info("viztool daemon listening [port=" + port + "].");
+        while (true) {
+            final Socket socket;
+            try {
+                socket = _server.accept();
+            } catch (SocketException se) {
+                if (_server.isClosed()) {
+                    break; // we've been shut down
+                }
+                throw se;
+            }
+
+            // handle each connection on its own thread so that statistics can be had while we're
+            // rendering; renders themselves happen one at a time
+            Thread handler = new Thread("viztool-request") {
+                public void run () {
+                    handle(socket);
+                }
+            };
+            handler.setDaemon(true);
+            handler.start();
+        }
+        Log.info("viztool daemon shut down.");
+    }
+
+    /**
+     * Renders a visualization, as described by the supplied request arguments, and returns the
+     * number of pages written.
+     */
+    public synchronized int render (Map<String,String> args)
+        throws Exception
+    {
+        String classes = require(args, "classes");
+        String output = require(args, "output");
+        String format = get(args, "format", "png");
+        if (!format.equals("png")) {
+            throw new Exception("Unsupported format '" + format + "'.");
+        }
+
+        long start = System.currentTimeMillis();
+        refresh();
+
+        // select the classes to be visualized from our cached enumerations and load them (from
+        // our loader, which will have kept them loaded from earlier requests)
+        Iterator<String> names = new RegexpEnumerator(
+            classes, args.get("exclude"), _components.getClasses().iterator());
+        ClassLoadingStage stage = new ClassLoadingStage(_loader);
+        Iterator<Class<?>> loaded = stage.load(
+            names, ClassLoadingStage.DEFAULT_LOADERS, ClassLoadingStage.DEFAULT_QUEUE);
+
+        Visualizer viz = createVisualizer(get(args, "visualizer", "summary"));
+        viz.setModel(_model);
+        viz.setPackageRoot(get(args, "pkgroot", ""));
+        try {
+            viz.setClasses(loaded);
+        } catch (RuntimeException re) {
+            // don't leave the loading threads waiting for us to take their classes
+            Pipeline.close(loaded);
+            throw re;
+        }
+        new ImageExporter(new File(output), ImageExporter.DEFAULT_SCALE).export(viz);
+
+        _lastRenderMillis = System.currentTimeMillis() - start;
+        return viz.getPageCount();
+    }
+
+    // from interface VizDaemonMBean
+    public long getRequests ()
+    {
+        return _requests.get();
+    }
+
+    // from interface VizDaemonMBean
+    public long getFailures ()
+    {
+        return _failures.get();
+    }
+
+    // from interface VizDaemonMBean
+    public long getLastRenderMillis ()
+    {
+        return _lastRenderMillis;
+    }
+
+    // from interface VizDaemonMBean
+    public int getComponents ()
+    {
+        return _components.getComponentCount();
+    }
+
+    // from interface VizDaemonMBean
+    public int getComponentClasses ()
+    {
+        return _components.getClassCount();
+    }
+
+    // from interface VizDaemonMBean
+    public long getComponentHits ()
+    {
+        return _components.getHits();
+    }
+
+    // from interface VizDaemonMBean
+    public long getComponentMisses ()
+    {
+        return _components.getMisses();
+    }
+
+    // from interface VizDaemonMBean
+    public int getModelRecords ()
+    {
+        return _model.size();
+    }
+
+    // from interface VizDaemonMBean
+    public long getModelHits ()
+    {
+        return _model.getHits();
+    }
+
+    // from interface VizDaemonMBean
+    public long getModelMisses ()
+    {
+        return _model.getMisses();
+    }
+
+    // from interface VizDaemonMBean
+    public int getTextLayouts ()
+    {
+        return LayoutUtil.getLayoutCacheSize();
+    }
+
+    // from interface VizDaemonMBean
+    public long getTextLayoutHits ()
+    {
+        return LayoutUtil.getLayoutCacheHits();
+    }
+
+    // from interface VizDaemonMBean
+    public long getTextLayoutMisses ()
+    {
+        return LayoutUtil.getLayoutCacheMisses();
+    }
+
+    // from interface VizDaemonMBean
+    public synchronized void clearCaches ()
+    {
+        _components.clear();
+        _model = new ClassModel(true);
+        if (_loader != null) {
+            _loader.release();
+            _loader = null;
+        }
+        LayoutUtil.setLayoutCacheSize(DEFAULT_LAYOUT_CACHE);
+    }
+
+    /**
+     * Returns our statistics as a list of <code>name=value</code> pairs.
+     */
+    public String getStats ()
+    {
+        return "requests=" + getRequests() + " failures=" + getFailures() +
+            " lastRenderMillis=" + getLastRenderMillis() + " components=" + getComponents() +
+            " componentClasses=" + getComponentClasses() + " componentHits=" +
+            getComponentHits() + " componentMisses=" + getComponentMisses() + " modelRecords=" +
+            getModelRecords() + " modelHits=" + getModelHits() + " modelMisses=" +
+            getModelMisses() + " textLayouts=" + getTextLayouts() + " textLayoutHits=" +
+            getTextLayoutHits() + " textLayoutMisses=" + getTextLayoutMisses();
+    }
+
+    /**
+     * Brings our enumerations up to date with the classpath, discarding the records of classes in
+     * changed components and creating a new class loader if any component changed.
+     */
+    protected void refresh ()
+        throws IOException
+    {
+        List<String> changed = _components.refresh(_classpath);
+        if (changed.isEmpty() && _loader != null) {
+            return;
+        }
+
+        int removed = _model.invalidate(changed);
+        if (removed > 0) {
+            Log.info("Classpath changed [classes=" + changed.size() + ", discarded=" + removed +
+                     "].");
+        }
+
+        // classes can't be unloaded individually, so we load them all anew from a new loader
+        // and let the old one be collected; this loads the classes of unchanged components
+        // again, but their records are reused
+        if (_loader != null) {
+            _loader.release();
+        }
+        _loader = new IsolatedClassLoader(_classpath);
+    }
+
+    /**
+     * Handles a single connection: reads a request, handles it and sends our reply.
+     */
+    protected void handle (Socket socket)
+    {
+        try {
+            BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), "UTF-8"));
+            PrintWriter out = new PrintWriter(
+                new OutputStreamWriter(socket.getOutputStream(), "UTF-8"));
+            String command = in.readLine();
+            Map<String,String> args = new HashMap<String,String>();
+            for (String line = in.readLine(); line != null && line.length() > 0;
+                 line = in.readLine()) {
+                int eidx = line.indexOf('=');
+                if (eidx > 0) {
+                    args.put(line.substring(0, eidx), line.substring(eidx+1));
+                }
+            }
+
+            out.print(handle(command, args) + "\n");
+            out.flush();
+        } catch (IOException ioe) {
+            Log.warning("Failed to handle request [error=" + ioe + "].");
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ioe) {
+                // nothing doing
+            }
+        }
+    }
+
+    /**
+     * Handles a command and returns our reply.
+     */
+    protected String handle (String command, Map<String,String> args)
+    {
+        if ("render".equals(command)) {
+            _requests.incrementAndGet();
+            try {
+                return "ok " + render(args);
+            } catch (Throwable t) {
+                _failures.incrementAndGet();
+                Log.warning("Failed to render [args=" + args + ", error=" + t + "].");
+                Log.logStackTrace(t);
+                return "error " + t.getMessage();
+            }
+
+        } else if ("stats".equals(command)) {
+            return "ok " + getStats();
+
+        } else if ("clear".equals(command)) {
+            clearCaches();
+            return "ok";
+
+        } else if ("shutdown".equals(command)) {
+            try {
+                _server.close();
+            } catch (IOException ioe) {
+                return "error " + ioe.getMessage();
+            }
+            return "ok";
+
+        } else {
+            return "error Unknown command '" + command + "'.";
+        }
+    }
+
+    protected Visualizer createVisualizer (String visualizer)
+        throws Exception
+    {
+        if (visualizer.equals("summary")) {
+            return new SummaryVisualizer();
+        } else if (visualizer.equals("hierarchy")) {
+            return new HierarchyVisualizer();
+        } else if (visualizer.equals("dependency")) {
+            return new DependencyVisualizer();
+        } else {
+            return (Visualizer)Class.forName(visualizer).getDeclaredConstructor().newInstance();
+        }
+    }
+
+    protected static String get (Map<String,String> args, String name, String defval)
+    {
+        String value = args.get(name);
+        return (value == null) ? defval : value;
+    }
+
+    protected static String require (Map<String,String> args, String name)
+        throws Exception
+    {
+        String value = args.get(name);
+        if (value == null) {
+            throw new Exception("Missing required argument '" + name + "'.");
+        }
+        return value;
+    }
+
+    /** The components of the classpath from which we visualize classes. */
+    protected List<String> _classpath;
+
+    /** The classes enumerated from each of our classpath components. */
+    protected ComponentCache _components = new ComponentCache();
+
+    /** The loader from which we load classes, which is replaced when the classpath changes. */
+    protected IsolatedClassLoader _loader;
+
+    /** The records of the classes we've visualized, shared by all of our visualizations. */
+    protected ClassModel _model = new ClassModel(true);
+
+    protected ServerSocket _server;
+    protected AtomicLong _requests = new AtomicLong(), _failures = new AtomicLong();
+    protected volatile long _lastRenderMillis;
+}
@@ -0,0 +1,55 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool.daemon;
+
+/**
+ * The management interface of the {@link VizDaemon}, which reports the sizes and effectiveness
+ * of its caches.
+ */
+public interface VizDaemonMBean
+{
+    /** Returns the number of render requests handled. */
+    public long getRequests ();
+
+    /** Returns the number of render requests that failed. */
+    public long getFailures ();
+
+    /** Returns the number of milliseconds taken by the most recent render request. */
+    public long getLastRenderMillis ();
+
+    /** Returns the number of classpath components whose classes are cached. */
+    public int getComponents ();
+
+    /** Returns the number of classes in the cached components. */
+    public int getComponentClasses ();
+
+    /** Returns the number of times a component was found to be unchanged. */
+    public long getComponentHits ();
+
+    /** Returns the number of times a component had to be enumerated. */
+    public long getComponentMisses ();
+
+    /** Returns the number of class records in the model. */
+    public int getModelRecords ();
+
+    /** Returns the number of record requests satisfied by the model. */
+    public long getModelHits ();
+
+    /** Returns the number of record requests that required a class to be introspected. */
+    public long getModelMisses ();
+
+    /** Returns the number of text layouts in the text layout cache. */
+    public int getTextLayouts ();
+
+    /** Returns the number of text layouts found in the text layout cache. */
+    public long getTextLayoutHits ();
+
+    /** Returns the number of text layouts that were not found in the text layout cache. */
+    public long getTextLayoutMisses ();
+
+    /** Discards all cached enumerations, class records and text layouts. */
+    public void clearCaches ();
+}
@@ -0,0 +1,139 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool.depend;
+
+import java.awt.Font;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.Rectangle2D;
+
+import com.samskivert.viztool.layout.Element;
+import com.samskivert.viztool.util.DisplayList;
+import com.samskivert.viztool.util.FontPicker;
+import com.samskivert.viztool.util.LayoutUtil;
+import com.samskivert.viztool.util.RenderUtil;
+import com.samskivert.viztool.util.SearchIndex;
+
+/**
+ * Displays one strongly connected component of a dependency graph: the names of its classes in a
+ * box, headed by the size of the cycle if the component has more than one class, and followed by
+ * the number of components it uses and is used by.
+ */
+public class ComponentBox
+    implements Element
+{
+    /**
+     * Creates a box for the component with the supplied classes.
+     *
+     * @param classes the fully qualified names of the classes, in the order to be displayed.
+     * @param names the names to be displayed for the classes.
+     * @param uses the number of other components used by the component.
+     * @param usedBy the number of other components that use the component.
+     */
+    public ComponentBox (String[] classes, String[] names, int uses, int usedBy)
+    {
+        _classes = classes;
+        _names = names;
+        _counts = "uses " + uses + ", used by " + usedBy;
+    }
+
+    // documentation inherited
+    public String getName ()
+    {
+        return _names[0];
+    }
+
+    // documentation inherited
+    public Rectangle2D getBounds ()
+    {
+        return _bounds;
+    }
+
+    // documentation inherited
+    public void setBounds (double x, double y, double width, double height)
+    {
+        _bounds.setRect(x, y, width, height);
+    }
+
+    /**
+     * Returns the page on which this box is rendered.
+     */
+    public int getPage ()
+    {
+        return _page;
+    }
+
+    /**
+     * Sets the page on which this box is rendered.
+     */
+    public void setPage (int page)
+    {
+        _page = page;
+    }
+
+    /**
+     * Determines how much space we'll need to display our component when rendered with the
+     * supplied font render context.
+     */
+    public void layout (FontRenderContext frc)
+    {
+        Rectangle2D bounds = new Rectangle2D.Double();
+        if (_classes.length > 1) {
+            bounds = LayoutUtil.accomodate(bounds, FontPicker.getDeclaresFont(), frc, false, 0,
+                                           getCycleText());
+        }
+        bounds = LayoutUtil.accomodate(bounds, FontPicker.getClassFont(), frc,
+                                       _classes.length > 1, 0, _names);
+        bounds = LayoutUtil.accomodate(bounds, FontPicker.getDeclaresFont(), frc, true,
+                                       LayoutUtil.SUBORDINATE_INSET, _counts);
+        _bounds.setRect(_bounds.getX(), _bounds.getY(),
+                        bounds.getWidth() + 2*LayoutUtil.HEADER_BORDER,
+                        bounds.getHeight() + 2*LayoutUtil.HEADER_BORDER);
+    }
+
+    /**
+     * Records the rendering of this box into the specified display list, at the position assigned
+     * by {@link #setBounds}, and notes its classes in the list's search index entries.
+     */
+    public void render (DisplayList list)
+    {
+        FontRenderContext frc = list.getFontRenderContext();
+        list.begin(_names[0]);
+        double x = _bounds.getX() + LayoutUtil.HEADER_BORDER;
+        double y = _bounds.getY() + LayoutUtil.HEADER_BORDER;
+
+        if (_classes.length > 1) {
+            Rectangle2D bnds = RenderUtil.renderString(
+                list, frc, FontPicker.getDeclaresFont(), false, x, y, getCycleText());
+            y += bnds.getHeight();
+        }
+        Font font = FontPicker.getClassFont();
+        Rectangle2D bnds = RenderUtil.renderStrings(
+            list, frc, font, _classes.length > 1, x, y, _names);
+        y += bnds.getHeight();
+        RenderUtil.renderString(list, frc, FontPicker.getDeclaresFont(), true,
+                                x + LayoutUtil.SUBORDINATE_INSET, y, _counts);
+        list.draw(_bounds);
+
+        for (String cname : _classes) {
+            list.index(SearchIndex.CLASS, null, cname, _bounds, SearchIndex.getClassKeys(cname));
+        }
+        list.end();
+    }
+
+    protected String getCycleText ()
+    {
+        return "cycle of " + _classes.length;
+    }
+
+    /** The full and displayed names of our classes. */
+    protected String[] _classes, _names;
+
+    /** Our description of the component's dependencies. */
+    protected String _counts;
+
+    protected Rectangle2D _bounds = new Rectangle2D.Double();
+    protected int _page;
+}
@@ -0,0 +1,374 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool.depend;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.samskivert.viztool.model.ClassRecord;
+import com.samskivert.viztool.model.SymbolTable;
+
+/**
+ * A directed graph over nodes numbered from zero, stored in compressed sparse row form: the
+ * targets of all of the edges, ordered by source node, in one int array, and the offset of each
+ * node's first edge in another. A graph of a hundred thousand classes with a few million
+ * references between them thus occupies a few tens of megabytes, and no objects beyond its two
+ * arrays.
+ *
+ * <p> A graph of the references between a set of classes is built via {@link #build}. Its
+ * strongly connected components (the sets of classes that reference one another, directly or
+ * indirectly) are found via {@link #findComponents}, the acyclic graph of the references between
+ * those components via {@link #condense}, and a layering of that graph via {@link #layers}.
+ */
+public class DependencyGraph
+{
+    /**
+     * Creates a graph from its edge arrays.
+     *
+     * @param offsets the offset into <code>targets</code> of the first edge of each node, followed
+     * by the total number of edges.
+     * @param targets the target of each edge, grouped by source node.
+     */
+    public DependencyGraph (int[] offsets, int[] targets)
+    {
+        _offsets = offsets;
+        _targets = targets;
+    }
+
+    /**
+     * Builds the graph of the references between the supplied classes: node <em>n</em> is the
+     * class of the <em>n</em>th record, and it has an edge to each of the other classes that it
+     * names as its superclass or one of its interfaces, or in the signature of one of its public
+     * members (field types, return types, parameter types and declared exceptions). Array types
+     * reference their element types. References to classes outside of the supplied set are
+     * ignored, as are duplicate references.
+     */
+    public static DependencyGraph build (List<ClassRecord> records)
+    {
+        int nodes = records.size();
+        Map<String,Integer> ids = new HashMap<String,Integer>();
+        for (int ii = 0; ii < nodes; ii++) {
+            ids.put(records.get(ii).getName(), ii);
+        }
+
+        int[] offsets = new int[nodes+1];
+        int[] targets = new int[Math.max(16, nodes*4)];
+        int edges = 0;
+
+        // the node named by each symbol (-1 if none), resolved as we encounter the symbols, and
+        // the last node to have referenced each node, so that we can skip duplicate references
+        SymbolResolver resolver = new SymbolResolver(ids);
+        int[] referrer = new int[nodes];
+        Arrays.fill(referrer, -1);
+
+        for (int ii = 0; ii < nodes; ii++) {
+            offsets[ii] = edges;
+            ClassRecord record = records.get(ii);
+            resolver.reset(record.getSymbols());
+            referrer[ii] = ii; // we don't reference ourselves
+
+            int[] refs = getReferences(record);
+            for (int rr = 0; rr < refs.length; rr++) {
+                int target = resolver.resolve(refs[rr]);
+                if (target < 0 || referrer[target] == ii) {
+                    continue;
+                }
+                referrer[target] = ii;
+                if (edges == targets.length) {
+                    int[] ntargets = new int[edges*2];
+                    System.arraycopy(targets, 0, ntargets, 0, edges);
+                    targets = ntargets;
+                }
+                targets[edges++] = target;
+            }
+        }
+        offsets[nodes] = edges;
+
+        // trim our targets to size
+        int[] ntargets = new int[edges];
+        System.arraycopy(targets, 0, ntargets, 0, edges);
+        return new DependencyGraph(offsets, ntargets);
+    }
+
+    /**
+     * Returns the number of nodes in this graph.
+     */
+    public int getNodeCount ()
+    {
+        return _offsets.length - 1;
+    }
+
+    /**
+     * Returns the number of edges in this graph.
+     */
+    public int getEdgeCount ()
+    {
+        return _targets.length;
+    }
+
+    /**
+     * Returns the offset (into the edges of this graph) of the first edge of the specified node.
+     * The node's edges are those from this offset up to the first edge of the next node.
+     */
+    public int getFirstEdge (int node)
+    {
+        return _offsets[node];
+    }
+
+    /**
+     * Returns the offset just past the last edge of the specified node.
+     */
+    public int getEndEdge (int node)
+    {
+        return _offsets[node+1];
+    }
+
+    /**
+     * Returns the target of the edge at the specified offset.
+     */
+    public int getTarget (int edge)
+    {
+        return _targets[edge];
+    }
+
+    /**
+     * Finds the strongly connected components of this graph, via Tarjan's algorithm (iteratively,
+     * so that long chains of references can't overflow the stack).
+     *
+     * @return the component of each node. Components are numbered in the order in which they
+     * are completed, which is a reverse topological order: every edge between two components
+     * leads from the higher numbered component to the lower.
+     */
+    public int[] findComponents ()
+    {
+        int nodes = getNodeCount();
+        int[] component = new int[nodes];
+        int[] index = new int[nodes], low = new int[nodes];
+        Arrays.fill(index, -1);
+
+        // the stack of visited nodes not yet assigned to components (a node is on it if it has
+        // an index but no component), and the stack of nodes being explored along with the next
+        // edge of each to be explored
+        int[] stack = new int[nodes], path = new int[nodes], next = new int[nodes];
+        int sdepth = 0, pdepth = 0, visited = 0, components = 0;
+        Arrays.fill(component, -1);
+
+        for (int root = 0; root < nodes; root++) {
+            if (index[root] >= 0) {
+                continue;
+            }
+            index[root] = low[root] = visited++;
+            stack[sdepth++] = root;
+            path[pdepth] = root;
+            next[pdepth++] = _offsets[root];
+
+            while (pdepth > 0) {
+                int node = path[pdepth-1];
+                int edge = next[pdepth-1];
+                if (edge < _offsets[node+1]) {
+                    next[pdepth-1] = edge+1;
+                    int target = _targets[edge];
+                    if (index[target] < 0) {
+                        // explore the target
+                        index[target] = low[target] = visited++;
+                        stack[sdepth++] = target;
+                        path[pdepth] = target;
+                        next[pdepth++] = _offsets[target];
+                    } else if (component[target] < 0) {
+                        // the target is on the stack, and thus part of our component
+                        low[node] = Math.min(low[node], index[target]);
+                    }
+                    continue;
+                }
+
+                // we've explored all of this node's edges; if it's the root of a component, pop
+                // the component off of the stack
+                if (low[node] == index[node]) {
+                    int member;
+                    do {
+                        member = stack[--sdepth];
+                        component[member] = components;
+                    } while (member != node);
+                    components++;
+                }
+
+                // and return to the node from which we explored this one
+                pdepth--;
+                if (pdepth > 0) {
+                    int parent = path[pdepth-1];
+                    low[parent] = Math.min(low[parent], low[node]);
+                }
+            }
+        }
+        return component;
+    }
+
+    /**
+     * Returns the graph of the edges between the supplied components of this graph (as found by
+     * {@link #findComponents}): node <em>c</em> of the returned graph is component <em>c</em>,
+     * and it has an edge to each other component to which any of its members has an edge.
+     */
+    public DependencyGraph condense (int[] component)
+    {
+        int nodes = getNodeCount(), components = 0;
+        for (int ii = 0; ii < nodes; ii++) {
+            components = Math.max(components, component[ii]+1);
+        }
+
+        // gather the members of each component
+        int[] mstarts = new int[components+1];
+        for (int ii = 0; ii < nodes; ii++) {
+            mstarts[component[ii]+1]++;
+        }
+        for (int cc = 0; cc < components; cc++) {
+            mstarts[cc+1] += mstarts[cc];
+        }
+        int[] members = new int[nodes], fill = new int[components];
+        for (int ii = 0; ii < nodes; ii++) {
+            int cc = component[ii];
+            members[mstarts[cc] + fill[cc]++] = ii;
+        }
+
+        // then note the distinct components referenced by the members of each
+        int[] offsets = new int[components+1];
+        int[] targets = new int[Math.max(16, _targets.length)];
+        int[] referrer = new int[components];
+        Arrays.fill(referrer, -1);
+        int edges = 0;
+        for (int cc = 0; cc < components; cc++) {
+            offsets[cc] = edges;
+            referrer[cc] = cc;
+            for (int mm = mstarts[cc]; mm < mstarts[cc+1]; mm++) {
+                int node = members[mm];
+                for (int ee = _offsets[node]; ee < _offsets[node+1]; ee++) {
+                    int target = component[_targets[ee]];
+                    if (referrer[target] != cc) {
+                        referrer[target] = cc;
+                        targets[edges++] = target;
+                    }
+                }
+            }
+        }
+        offsets[components] = edges;
+
+        int[] ntargets = new int[edges];
+        System.arraycopy(targets, 0, ntargets, 0, edges);
+        return new DependencyGraph(offsets, ntargets);
+    }
+
+    /**
+     * Assigns each node of this graph, which must be acyclic with every edge leading from a
+     * higher numbered node to a lower (as does a graph returned by {@link #condense}), to a
+     * layer: nodes with no edges are in layer zero, and every other node is in the layer above
+     * the highest layer of the nodes to which it has edges. Every edge thus leads to a lower
+     * layer.
+     */
+    public int[] layers ()
+    {
+        int nodes = getNodeCount();
+        int[] layer = new int[nodes];
+        for (int ii = 0; ii < nodes; ii++) {
+            int max = -1;
+            for (int ee = _offsets[ii]; ee < _offsets[ii+1]; ee++) {
+                max = Math.max(max, layer[_targets[ee]]);
+            }
+            layer[ii] = max + 1;
+        }
+        return layer;
+    }
+
+    /**
+     * Returns the symbols of the types referenced by the supplied record.
+     */
+    protected static int[] getReferences (ClassRecord record)
+    {
+        int count = record.getInterfaceCount() + 1;
+        for (int ii = 0, ll = record.getMemberCount(); ii < ll; ii++) {
+            count += 1 + record.getParameterCount(ii) + record.getExceptionCount(ii);
+        }
+
+        int[] refs = new int[count];
+        int rr = 0;
+        ClassRecord parent = record.getSuperclass();
+        refs[rr++] = (parent == null) ? -1 : parent.getNameSymbol();
+        for (int ii = 0, ll = record.getInterfaceCount(); ii < ll; ii++) {
+            refs[rr++] = record.getInterface(ii);
+        }
+        for (int ii = 0, ll = record.getMemberCount(); ii < ll; ii++) {
+            refs[rr++] = record.getMemberType(ii);
+            for (int pp = 0, pl = record.getParameterCount(ii); pp < pl; pp++) {
+                refs[rr++] = record.getParameterType(ii, pp);
+            }
+            for (int xx = 0, xl = record.getExceptionCount(ii); xx < xl; xx++) {
+                refs[rr++] = record.getExceptionType(ii, xx);
+            }
+        }
+        return refs;
+    }
+
+    /**
+     * Maps type name symbols to the nodes of the classes they name, caching the mapping for each
+     * symbol table (records from one model share a table).
+     */
+    protected static class SymbolResolver
+    {
+        public SymbolResolver (Map<String,Integer> ids)
+        {
+            _ids = ids;
+        }
+
+        /**
+         * Prepares to resolve symbols from the supplied table.
+         */
+        public void reset (SymbolTable symbols)
+        {
+            if (symbols != _symbols) {
+                _symbols = symbols;
+                _nodes = new int[0];
+            }
+        }
+
+        /**
+         * Returns the node of the class named by the supplied symbol (or of its element type, if
+         * it names an array type), or -1 if the symbol names no class in the graph.
+         */
+        public int resolve (int symbol)
+        {
+            if (symbol < 0) {
+                return -1;
+            }
+            if (symbol >= _nodes.length) {
+                int[] nodes = new int[Math.max(symbol+1, _symbols.size())];
+                System.arraycopy(_nodes, 0, nodes, 0, _nodes.length);
+                Arrays.fill(nodes, _nodes.length, nodes.length, UNRESOLVED);
+                _nodes = nodes;
+            }
+            if (_nodes[symbol] == UNRESOLVED) {
+                String name = _symbols.get(symbol);
+                while (name.endsWith("[]")) {
+                    name = name.substring(0, name.length()-2);
+                }
+                Integer node = _ids.get(name);
+                _nodes[symbol] = (node == null) ? -1 : node;
+            }
+            return _nodes[symbol];
+        }
+
+        protected Map<String,Integer> _ids;
+        protected SymbolTable _symbols;
+        protected int[] _nodes = new int[0];
+
+        protected static final int UNRESOLVED = -2;
+    }
+
+    /** The offset of each node's first edge, followed by the number of edges. */
+    protected int[] _offsets;
+
+    /** The target of each edge. */
+    protected int[] _targets;
+}
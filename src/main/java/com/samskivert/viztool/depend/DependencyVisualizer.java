@@ -0,0 +1,435 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool.depend;
+
+import java.awt.BasicStroke;
+import java.awt.Graphics2D;
+import java.awt.Graphics;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.print.PageFormat;
+import java.awt.print.PrinterException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import com.samskivert.viztool.Visualizer;
+import com.samskivert.viztool.model.ClassModel;
+import com.samskivert.viztool.model.ClassRecord;
+import com.samskivert.viztool.util.DisplayList;
+import com.samskivert.viztool.util.Events;
+import com.samskivert.viztool.util.Outline;
+import com.samskivert.viztool.util.PageLists;
+import com.samskivert.viztool.util.PageStore;
+import com.samskivert.viztool.util.SearchIndex;
+import com.samskivert.viztool.util.Stats;
+
+/**
+ * The dependency visualizer displays the references between classes (via their superclasses,
+ * interfaces and the signatures of their public members) as a layered graph. Classes that
+ * reference one another, directly or indirectly, are grouped into a single box (a cycle), and the
+ * boxes are arranged in rows such that every box uses only boxes in the rows below it: the
+ * classes that use nothing else in the visualization are at the bottom, and those that nothing
+ * else uses tend toward the top. Within a row, boxes are ordered to sit above those they use.
+ *
+ * <p> The graph is held in int arrays (see {@link DependencyGraph}), so that visualizations of
+ * a hundred thousand classes with millions of references can be analyzed in seconds. Lines are
+ * drawn for the references between boxes on the same page (up to a limit per page); every box
+ * notes the number of boxes it uses and is used by.
+ */
+public class DependencyVisualizer implements Visualizer
+{
+    // documentation inherited
+    public void setPackageRoot (String pkgroot)
+    {
+        _pkgroot = pkgroot;
+    }
+
+    // documentation inherited
+    public void setPageStore (PageStore store)
+    {
+        _store = store;
+    }
+
+    // documentation inherited
+    public void setModel (ClassModel model)
+    {
+        _model = model;
+    }
+
+    // documentation inherited
+    public void setClasses (Iterator<Class<?>> iter)
+    {
+        Stats.Probe probe = Stats.start(Stats.SET_CLASSES);
+        ClassModel model = (_model != null) ? _model : new ClassModel(true);
+        List<ClassRecord> records = new ArrayList<ClassRecord>();
+        while (iter.hasNext()) {
+            records.add(model.getRecord(iter.next(), true));
+        }
+        // order the classes by name so that the visualization doesn't depend on the order in
+        // which they were enumerated
+        Collections.sort(records, new Comparator<ClassRecord>() {
+            public int compare (ClassRecord r1, ClassRecord r2) {
+                return r1.getName().compareTo(r2.getName());
+            }
+        });
+
+        // find the cycles among the classes and the layers of the graph of cycles
+        DependencyGraph graph = DependencyGraph.build(records);
+        int[] component = graph.findComponents();
+        _graph = graph.condense(component);
+        int[] layer = _graph.layers();
+        int count = _graph.getNodeCount();
+
+        // gather the (sorted) classes of each component, and count the components using each
+        List<List<String>> members = new ArrayList<List<String>>(count);
+        for (int cc = 0; cc < count; cc++) {
+            members.add(new ArrayList<String>(1));
+        }
+        for (int ii = 0; ii < component.length; ii++) {
+            members.get(component[ii]).add(records.get(ii).getName());
+        }
+        int[] usedBy = new int[count];
+        for (int ee = 0, ll = _graph.getEdgeCount(); ee < ll; ee++) {
+            usedBy[_graph.getTarget(ee)]++;
+        }
+
+        _boxes = new ComponentBox[count];
+        for (int cc = 0; cc < count; cc++) {
+            List<String> classes = members.get(cc);
+            String[] names = new String[classes.size()];
+            for (int ii = 0; ii < names.length; ii++) {
+                names[ii] = name(classes.get(ii));
+            }
+            _boxes[cc] = new ComponentBox(
+                classes.toArray(new String[names.length]), names,
+                _graph.getEndEdge(cc) - _graph.getFirstEdge(cc), usedBy[cc]);
+        }
+
+        _order = order(layer);
+        _layer = layer;
+        probe.stop();
+    }
+
+    /**
+     * Lays out and renders the rows of component boxes that make up this dependency
+     * visualization.
+     */
+    public int print (Graphics g, PageFormat pf, int pageIndex) throws PrinterException
+    {
+        Graphics2D gfx = (Graphics2D)g;
+
+        // adjust the stroke
+        gfx.setStroke(new BasicStroke(0.1f));
+
+        // only relay things out if the page format has changed
+        if (!pf.equals(_format)) {
+            layout(gfx, pf.getImageableX(), pf.getImageableY(),
+                   pf.getImageableWidth(), pf.getImageableHeight());
+            _format = pf;
+        }
+
+        // make sure we're rendering a page that has something on it
+        DisplayList list = getDisplayList(pageIndex, gfx.getFontRenderContext());
+        if (list == null || list.size() == 0) {
+            return NO_SUCH_PAGE;
+        }
+
+        paint(gfx, list, pageIndex);
+        return PAGE_EXISTS;
+    }
+
+    public void layout (Graphics2D gfx, double x, double y, double width, double height)
+    {
+        // we're no longer laid out for the page format with which we last printed
+        _format = null;
+
+        Stats.Probe probe = Stats.start(Stats.LAYOUT);
+        FontRenderContext frc = gfx.getFontRenderContext();
+        for (ComponentBox box : _boxes) {
+            box.layout(frc);
+        }
+
+        // place the boxes in rows, starting a new row for each layer and whenever a row is full,
+        // and a new page whenever a row won't fit on the page
+        double rx = x, ry = y, rheight = 0;
+        int pageno = 0, rowLayer = -1;
+        for (int cc : _order) {
+            ComponentBox box = _boxes[cc];
+            Rectangle2D bounds = box.getBounds();
+            double bwidth = bounds.getWidth(), bheight = bounds.getHeight();
+            if (_layer[cc] != rowLayer || (rx > x && rx + bwidth > x + width)) {
+                // references are drawn between layers, so we leave room for them there
+                if (rowLayer != -1) {
+                    ry += rheight + ((_layer[cc] == rowLayer) ? BOX_GAP : LAYER_GAP);
+                }
+                rx = x;
+                rheight = 0;
+                rowLayer = _layer[cc];
+            }
+            if (ry > y && ry + bheight > y + height) {
+                rx = x;
+                ry = y;
+                rheight = 0;
+                pageno++;
+            }
+            box.setBounds(rx, ry, bwidth, bheight);
+            box.setPage(pageno);
+            rx += bwidth + BOX_GAP;
+            rheight = Math.max(rheight, bheight);
+        }
+
+        // note the range of our ordered boxes on each page
+        _pageCount = pageno+1;
+        _pageStarts = new int[_pageCount+1];
+        for (int cc : _order) {
+            _pageStarts[_boxes[cc].getPage()+1]++;
+        }
+        for (int pp = 0; pp < _pageCount; pp++) {
+            _pageStarts[pp+1] += _pageStarts[pp];
+        }
+
+        // and record the display list for each page
+        _lists = new PageLists(_store);
+        for (int ii = 0; ii < _pageCount; ii++) {
+            _lists.add(record(ii, frc));
+        }
+        probe.stop();
+    }
+
+    public void paint (Graphics2D gfx, int pageIndex)
+    {
+        DisplayList list = getDisplayList(pageIndex, gfx.getFontRenderContext());
+        if (list != null) {
+            paint(gfx, list, pageIndex);
+        }
+    }
+
+    /**
+     * Returns the number of pages occupied by this visualization. This is only valid after a call
+     * to {@link #layout}.
+     *
+     * @return the page count or -1 if we've not yet been laid out.
+     */
+    public int getPageCount ()
+    {
+        return _pageCount;
+    }
+
+    // documentation inherited from interface
+    public Outline getOutline (int pageIndex)
+    {
+        return (_lists == null) ? null : _lists.getOutline(pageIndex);
+    }
+
+    // documentation inherited from interface
+    public SearchIndex getSearchIndex ()
+    {
+        return (_lists == null) ? null : _lists.getSearchIndex();
+    }
+
+    /**
+     * Replays the supplied display list of the specified page.
+     */
+    protected void paint (Graphics2D gfx, DisplayList list, int pageIndex)
+    {
+        Stats.Probe probe = Stats.start(Stats.RENDER);
+        Events.Event event = Events.begin(Events.RENDER);
+        list.replay(gfx);
+        event.commit("dependency", pageIndex, list.size());
+        Stats.count(Stats.PAGES_RENDERED);
+        probe.stop();
+    }
+
+    /**
+     * Returns the display list for the specified page, rerecording it if it was recorded for a
+     * font render context other than the one supplied, or loading it from our page store.
+     * Returns null if we've not been laid out or have no such page.
+     */
+    protected synchronized DisplayList getDisplayList (int pageIndex, FontRenderContext frc)
+    {
+        DisplayList list = (_lists == null) ? null : _lists.get(pageIndex, frc);
+        if (list != null && !list.isCompatible(frc)) {
+            _lists.set(pageIndex, list = record(pageIndex, frc));
+        }
+        return list;
+    }
+
+    /**
+     * Orders the components for layout: by layer, from the top layer down, and within each layer
+     * by the mean position of the components they use in the layers below (their barycenter),
+     * so that references tend to run straight down the page. The bottom layer, whose components
+     * use nothing, is ordered by name.
+     */
+    protected int[] order (final int[] layer)
+    {
+        int count = layer.length;
+        Integer[] order = new Integer[count];
+        for (int cc = 0; cc < count; cc++) {
+            order[cc] = cc;
+        }
+        // order by layer (from the bottom up) and then by name, which gives the bottom layer its
+        // final order and orders ties within the layers above it
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare (Integer c1, Integer c2) {
+                int rv = layer[c1] - layer[c2];
+                return (rv != 0) ? rv : _boxes[c1].getName().compareTo(_boxes[c2].getName());
+            }
+        });
+
+        // assign positions to each layer in turn, each ordered by its barycenters in the
+        // (already positioned) layers below
+        final double[] position = new double[count];
+        for (int start = 0, end; start < count; start = end) {
+            end = start;
+            while (end < count && layer[order[end]] == layer[order[start]]) {
+                end++;
+            }
+            if (layer[order[start]] > 0) {
+                for (int ii = start; ii < end; ii++) {
+                    int cc = order[ii];
+                    double sum = 0;
+                    int first = _graph.getFirstEdge(cc), last = _graph.getEndEdge(cc);
+                    for (int ee = first; ee < last; ee++) {
+                        sum += position[_graph.getTarget(ee)];
+                    }
+                    position[cc] = sum / (last - first);
+                }
+                // a stable sort preserves the name order of equal barycenters
+                Arrays.sort(order, start, end, new Comparator<Integer>() {
+                    public int compare (Integer c1, Integer c2) {
+                        return Double.compare(position[c1], position[c2]);
+                    }
+                });
+            }
+            for (int ii = start; ii < end; ii++) {
+                position[order[ii]] = (ii - start + 0.5) / (end - start);
+            }
+        }
+
+        // lay out from the top layer down
+        int[] result = new int[count];
+        int rr = 0;
+        for (int end = count, start; end > 0; end = start) {
+            start = end;
+            while (start > 0 && layer[order[start-1]] == layer[order[end-1]]) {
+                start--;
+            }
+            for (int ii = start; ii < end; ii++) {
+                result[rr++] = order[ii];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Records the rendering of the boxes on the specified page, and of the references between
+     * them.
+     */
+    protected DisplayList record (int pageIndex, FontRenderContext frc)
+    {
+        DisplayList list = new DisplayList(frc);
+        int start = _pageStarts[pageIndex], end = _pageStarts[pageIndex+1];
+        for (int ii = start; ii < end; ii++) {
+            _boxes[_order[ii]].render(list);
+        }
+
+        // draw the references between boxes on this page, from the bottom of the user to the top
+        // of the used (which is always in a lower row)
+        list.begin();
+        int edges = 0;
+        for (int ii = start; ii < end && edges < MAX_PAGE_EDGES; ii++) {
+            int cc = _order[ii];
+            Rectangle2D from = _boxes[cc].getBounds();
+            for (int ee = _graph.getFirstEdge(cc), ll = _graph.getEndEdge(cc);
+                 ee < ll && edges < MAX_PAGE_EDGES; ee++) {
+                ComponentBox target = _boxes[_graph.getTarget(ee)];
+                if (target.getPage() != pageIndex) {
+                    continue;
+                }
+                Rectangle2D to = target.getBounds();
+                drawReference(list, from.getCenterX(), from.getMaxY(),
+                              to.getCenterX(), to.getY());
+                edges++;
+            }
+        }
+        list.end();
+        return list;
+    }
+
+    /**
+     * Draws a line with an arrowhead at its end.
+     */
+    protected static void drawReference (
+        DisplayList list, double x1, double y1, double x2, double y2)
+    {
+        list.draw(new Line2D.Double(x1, y1, x2, y2));
+        double length = Math.hypot(x2 - x1, y2 - y1);
+        if (length == 0) {
+            return;
+        }
+        double ux = (x2 - x1) / length, uy = (y2 - y1) / length;
+        double bx = x2 - ux * ARROW_SIZE, by = y2 - uy * ARROW_SIZE;
+        double hw = ARROW_SIZE / 3;
+        GeneralPath head = new GeneralPath();
+        head.moveTo((float)(bx - uy * hw), (float)(by + ux * hw));
+        head.lineTo((float)x2, (float)y2);
+        head.lineTo((float)(bx + uy * hw), (float)(by - ux * hw));
+        list.draw(head);
+    }
+
+    /**
+     * Shortens a fully qualified class name relative to the package root.
+     */
+    protected String name (String cname)
+    {
+        if (_pkgroot != null && _pkgroot.length() > 0 && cname.startsWith(_pkgroot)) {
+            return "." + cname.substring(_pkgroot.length());
+        }
+        return cname;
+    }
+
+    protected String _pkgroot;
+
+    /** The model configured via {@link #setModel}, if any. */
+    protected ClassModel _model;
+
+    /** The graph of the references between our components (cycles of classes). */
+    protected DependencyGraph _graph;
+
+    /** The box and layer of each component. */
+    protected ComponentBox[] _boxes;
+    protected int[] _layer;
+
+    /** The components in the order in which they're laid out, and the offset into that order of
+     * the first component on each page (followed by the number of components). */
+    protected int[] _order, _pageStarts;
+
+    protected int _pageCount = -1;
+
+    /** The display list for each of our pages. */
+    protected PageLists _lists;
+
+    /** The store in which we keep our pages, or null if we keep them in memory. */
+    protected PageStore _store;
+
+    protected PageFormat _format;
+
+    /** The space between boxes (in a row and between the rows of a layer), and between layers
+     * (in which references are drawn). */
+    protected static final double BOX_GAP = 72/8, LAYER_GAP = 72/2;
+
+    /** The length of the arrowheads on reference lines. */
+    protected static final double ARROW_SIZE = 4;
+
+    /** The maximum number of references drawn on a page, beyond which they'd be illegible. */
+    protected static final int MAX_PAGE_EDGES = 2000;
+}
@@ -11,9 +11,11 @@ import java.awt.font.FontRenderContext;
 import java.awt.geom.*;
 import java.util.ArrayList;
 
+import com.samskivert.viztool.util.DisplayList;
 import com.samskivert.viztool.util.FontPicker;
 import com.samskivert.viztool.util.LayoutUtil;
 import com.samskivert.viztool.util.RenderUtil;
+import com.samskivert.viztool.util.SearchIndex;
 
 /**
  * The cascading chain visualizer lays out chains in a standard cascading format that looks
@@ -78,8 +80,11 @@ public class CascadingChainVisualizer
     }
 
     // docs inherited from interface
-    public void renderChain (Chain chain, Graphics2D gfx)
+    public void renderChain (Chain chain, DisplayList list)
     {
+        // group our subtree so that it can be skipped entirely when it isn't being repainted
+        list.begin(chain.getName());
+
         // figure out where we'll be rendering
         Rectangle2D bounds = chain.getBounds();
         double x = bounds.getX() + LayoutUtil.HEADER_BORDER;
@@ -87,10 +92,10 @@ public class CascadingChainVisualizer
         double maxwid = 0;
 
         // draw the name
-        FontRenderContext frc = gfx.getFontRenderContext();
+        FontRenderContext frc = list.getFontRenderContext();
         Font font = chain.getRoot().isInterface() ?
             FontPicker.getInterfaceFont() : FontPicker.getClassFont();
-        Rectangle2D bnds = RenderUtil.renderString(gfx, frc, font, false, x, y, chain.getName());
+        Rectangle2D bnds = RenderUtil.renderString(list, frc, font, false, x, y, chain.getName());
         maxwid = Math.max(maxwid, bnds.getWidth() + 2*LayoutUtil.HEADER_BORDER);
         y += bnds.getHeight();
 
@@ -98,7 +103,7 @@ public class CascadingChainVisualizer
         if (chain.inPackage()) {
             // render the implemented interfaces
             String[] impls = chain.getImplementsNames();
-            bnds = RenderUtil.renderStrings(gfx, frc, FontPicker.getImplementsFont(),
+            bnds = RenderUtil.renderStrings(list, frc, FontPicker.getImplementsFont(),
                                             true, x + LayoutUtil.SUBORDINATE_INSET, y, impls);
             maxwid = Math.max(maxwid, bnds.getWidth() + 2*LayoutUtil.HEADER_BORDER +
                               LayoutUtil.SUBORDINATE_INSET);
@@ -106,7 +111,7 @@ public class CascadingChainVisualizer
 
             // render the declared inner classes
             String[] decls = chain.getDeclaresNames();
-            bnds = RenderUtil.renderStrings(gfx, frc, FontPicker.getDeclaresFont(),
+            bnds = RenderUtil.renderStrings(list, frc, FontPicker.getDeclaresFont(),
                                             true, x + LayoutUtil.SUBORDINATE_INSET, y, decls);
             maxwid = Math.max(maxwid, bnds.getWidth() + 2*LayoutUtil.HEADER_BORDER +
                               LayoutUtil.SUBORDINATE_INSET);
@@ -119,7 +124,13 @@ public class CascadingChainVisualizer
         // stroke a box that will contain the name
         Rectangle2D outline = new Rectangle2D.Double(
             bounds.getX(), bounds.getY(), maxwid, y - bounds.getY());
-        gfx.draw(outline);
+        list.draw(outline);
+
+        // out of package classes are only shown for context, so they're found in their packages
+        if (chain.inPackage()) {
+            String cname = chain.getRootName();
+            list.index(SearchIndex.CLASS, null, cname, outline, SearchIndex.getClassKeys(cname));
+        }
 
         // keep track of the bottom
         double height = y;
@@ -145,19 +156,20 @@ public class CascadingChainVisualizer
                 path.moveTo((float)(x + half), (float)ly);
             }
 
-            gfx.draw(path);
+            list.draw(path);
         }
 
-        // translate the gfx so that 0,0 is at our origin
-        gfx.translate(x, y);
+        // translate so that 0,0 is at our origin
+        list.translate(x, y);
 
         // now render the kids
         for (int i = 0; i < kids.size(); i++) {
             Chain kid = (Chain)kids.get(i);
-            renderChain(kid, gfx);
+            renderChain(kid, list);
         }
 
         // undo our prior translation
-        gfx.translate(-x, -y);
+        list.translate(-x, -y);
+        list.end();
     }
 }
@@ -10,6 +10,8 @@ import java.awt.Graphics2D;
 import java.awt.geom.Rectangle2D;
 
 import com.samskivert.viztool.layout.Element;
+import com.samskivert.viztool.model.ClassRecord;
+import com.samskivert.viztool.model.SymbolTable;
 
 /**
  * A chain is used by the hierarchy visualizer to represent inheritance
@@ -20,7 +22,7 @@ public class Chain implements Element
     /**
      * Constructs a chain with the specified class as its root.
      */
-    public Chain (String name, Class<?> root, boolean inpkg)
+    public Chain (String name, ClassRecord root, boolean inpkg)
     {
         _name = name;
         _root = root;
@@ -37,9 +39,9 @@ public class Chain implements Element
     }
 
     /**
-     * Returns the class that forms the root of this chain.
+     * Returns the record of the class that forms the root of this chain.
      */
-    public Class<?> getRoot ()
+    public ClassRecord getRoot ()
     {
         return _root;
     }
@@ -81,27 +83,53 @@ public class Chain implements Element
     }
 
     /**
-     * Returns the names of the interfaces implemented by this class.
+     * Returns the names of the interfaces implemented by this class. The array is computed once
+     * and shared, so it should <em>not</em> be modified.
      */
     public String[] getImplementsNames ()
     {
-        Class<?>[] ifaces = _root.getInterfaces();
-        String[] names = new String[ifaces.length];
-        String pkg = ChainUtil.pkgFromClass(_root.getName());
-
-        for (int i = 0; i < ifaces.length; i++) {
-            String name = ifaces[i].getName();
-            String ipkg = ChainUtil.pkgFromClass(name);
-            if (pkg.equals(ipkg)) {
-                names[i] = ChainUtil.nameFromClass(name);
-            } else {
-                names[i] = removeOverlap(pkg, name);
-            }
-        }
+        return getNames().implementsNames;
+    }
+
+    /**
+     * Returns the names of the inner classes declared by this class (excluding anonymous inner
+     * classes). The array is computed once and shared, so it should <em>not</em> be modified.
+     */
+    public String[] getDeclaresNames ()
+    {
+        return getNames().declaresNames;
+    }
 
+    /**
+     * Returns our derived names, computing them if we've not already done so.
+     */
+    protected Names getNames ()
+    {
+        // if two threads race to get here first, they'll just compute identical names
+        Names names = _names;
+        if (names == null) {
+            _names = names = new Names(_root);
+        }
         return names;
     }
 
+    /**
+     * Returns true if the supplied inner class name (with its outer class name removed) is that of
+     * an anonymous class, which javac names with a number.
+     */
+    protected static boolean isAnonymous (String name)
+    {
+        if (name.length() == 0) {
+            return false;
+        }
+        for (int i = 0, ll = name.length(); i < ll; i++) {
+            if (!Character.isDigit(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     protected static String removeOverlap (String pkg, String name)
     {
         // strip off package elements until we've eliminated all but one
@@ -134,40 +162,6 @@ public class Chain implements Element
         }
     }
 
-    /**
-     * Returns the names of the inner classes declared by this class.
-     */
-    public String[] getDeclaresNames ()
-    {
-        Class<?>[] decls = _root.getDeclaredClasses();
-        ArrayList<String> names = new ArrayList<String>();
-
-        for (int i = 0; i < decls.length; i++) {
-            String name = decls[i].getName();
-
-            // strip off anything up to and including the dollar
-            int didx = name.indexOf("$");
-            if (didx != -1) {
-                name = name.substring(didx+1);
-            }
-
-            // if this inner class name is a number, it's an anonymous
-            // class and we want to skip it
-            try {
-                Integer.parseInt(name);
-                continue;
-            } catch (NumberFormatException nfe) {
-            }
-
-            // otherwise it passes the test
-            names.add(name);
-        }
-
-        String[] anames = new String[names.size()];
-        names.toArray(anames);
-        return anames;
-    }
-
     /**
      * Returns a <code>Rectangle2D</code> instance representing the size
      * of this chain (and all contained subchains).
@@ -320,14 +314,17 @@ public class Chain implements Element
 
     protected Chain createOverflowChain ()
     {
-        return new Chain(_name, _root, _inpkg);
+        Chain oflow = new Chain(_name, _root, _inpkg);
+        // our overflow describes the same class, so it can share our names
+        oflow._names = _names;
+        return oflow;
     }
 
     /**
      * Adds a child to this chain. The specified class is assumed to
      * directly inherit from the class that is the root of this chain.
      */
-    public void addClass (String name, Class<?> child)
+    public void addClass (String name, ClassRecord child)
     {
         // we assume that the addition of a derived class is only done for
         // classes that are in the package we're visualizing. out of
@@ -344,9 +341,9 @@ public class Chain implements Element
      * it is a registered child of this chain. Returns null if no child
      * chain of this chain contains the specified target class.
      */
-    public Chain getChain (Class<?> target)
+    public Chain getChain (ClassRecord target)
     {
-        if (_root.equals(target)) {
+        if (_root == target) {
             return this;
         }
 
@@ -366,7 +363,7 @@ public class Chain implements Element
         if (other == null) {
             return false;
         } else if (other instanceof Chain) {
-            return ((Chain)other)._root.equals(_root);
+            return ((Chain)other)._root == _root;
         } else {
             return false;
         }
@@ -388,10 +385,54 @@ public class Chain implements Element
         }
     }
 
+    /** The names displayed beneath a chain's class name, derived from its root class. */
+    protected static class Names
+    {
+        public final String[] implementsNames;
+        public final String[] declaresNames;
+
+        public Names (ClassRecord root)
+        {
+            SymbolTable syms = root.getSymbols();
+            String pkg = ChainUtil.pkgFromClass(root.getName());
+
+            implementsNames = new String[root.getInterfaceCount()];
+            for (int i = 0; i < implementsNames.length; i++) {
+                String name = syms.get(root.getInterface(i));
+                String ipkg = ChainUtil.pkgFromClass(name);
+                if (pkg.equals(ipkg)) {
+                    implementsNames[i] = ChainUtil.nameFromClass(name);
+                } else {
+                    implementsNames[i] = removeOverlap(pkg, name);
+                }
+            }
+
+            ArrayList<String> decls = new ArrayList<String>();
+            for (int i = 0, ll = root.getDeclaredClassCount(); i < ll; i++) {
+                String name = syms.get(root.getDeclaredClass(i));
+
+                // strip off anything up to and including the dollar
+                int didx = name.indexOf("$");
+                if (didx != -1) {
+                    name = name.substring(didx+1);
+                }
+
+                // we skip anonymous inner classes
+                if (!isAnonymous(name)) {
+                    decls.add(name);
+                }
+            }
+            declaresNames = decls.toArray(new String[decls.size()]);
+        }
+    }
+
     protected String _name;
-    protected Class<?> _root;
+    protected ClassRecord _root;
     protected boolean _inpkg;
 
+    /** Our derived names, computed when first needed. */
+    protected volatile Names _names;
+
     protected ArrayList<Chain> _children = new ArrayList<Chain>();
     protected Rectangle2D _bounds = new Rectangle2D.Double();
 }
@@ -5,6 +5,7 @@
 
 package com.samskivert.viztool.hierarchy;
 
+import java.awt.Font;
 import java.awt.Graphics2D;
 import java.awt.geom.GeneralPath;
 import java.awt.geom.Rectangle2D;
@@ -13,7 +14,12 @@ import java.util.*;
 
 import com.samskivert.viztool.layout.ElementLayout;
 import com.samskivert.viztool.layout.PackedColumnElementLayout;
+import com.samskivert.viztool.model.ClassRecord;
+import com.samskivert.viztool.util.DisplayList;
+import com.samskivert.viztool.util.Events;
 import com.samskivert.viztool.util.FontPicker;
+import com.samskivert.viztool.util.LayoutUtil;
+import com.samskivert.viztool.util.SearchIndex;
 
 /**
  * A chain group is used to group together all of the classes from a
@@ -25,7 +31,7 @@ public class ChainGroup
      * Constructs a chain group for a particular package with the specified package root and an
      * iterator that is configured only to return classes from the specified package.
      */
-    public ChainGroup (String pkgroot, String pkg, Iterator<Class<?>> iter)
+    public ChainGroup (String pkgroot, String pkg, Iterator<ClassRecord> iter)
     {
         // keep track of the package
         _pkg = pkg;
@@ -92,9 +98,11 @@ public class ChainGroup
      */
     public ChainGroup layout (Graphics2D gfx, double pageWidth, double pageHeight)
     {
+        Events.Event event = Events.begin(Events.CHAIN_GROUP);
+
         // we'll need room to incorporate our title
-        TextLayout layout = new TextLayout(_pkg, FontPicker.getTitleFont(),
-                                           gfx.getFontRenderContext());
+        TextLayout layout = LayoutUtil.createLayout(_pkg, FontPicker.getTitleFont(),
+                                                    gfx.getFontRenderContext());
 
         // we let the title stick halfway up out of our rectangular
         // bounding box
@@ -137,23 +145,28 @@ public class ChainGroup
             for (Chain oflow : overflow) {
                 _roots.remove(oflow);
             }
+            event.commit(_pkg, _roots.size(), overflow.size());
             return new ChainGroup(_pkg, overflow);
         }
 
+        event.commit(_pkg, _roots.size(), 0);
         return null;
     }
 
     /**
-     * Renders the chains in this group to the supplied graphics object.
-     * This function requires that <code>layout</code> has previously been
-     * called to lay out the group's chains.
+     * Records the rendering of the chains in this group into the supplied
+     * display list. This function requires that <code>layout</code> has
+     * previously been called to lay out the group's chains.
      *
      * @see #layout
      */
-    public void render (Graphics2D gfx, double x, double y)
+    public void render (DisplayList list, double x, double y)
     {
-        TextLayout layout = new TextLayout(_pkg, FontPicker.getTitleFont(),
-                                           gfx.getFontRenderContext());
+        list.begin(_pkg);
+        list.index(SearchIndex.PACKAGE, null, _pkg, new Rectangle2D.Double(
+                       x, y, _size.getWidth(), _size.getHeight()), _pkg);
+        Font font = FontPicker.getTitleFont();
+        TextLayout layout = LayoutUtil.createLayout(_pkg, font, list.getFontRenderContext());
 
         // we let the title stick halfway up out of our rectangular
         // bounding box
@@ -162,7 +175,7 @@ public class ChainGroup
         double dy = -tbounds.getY();
 
         // print our title
-        layout.draw(gfx, (float)(x + BORDER + 2), (float)(y + dy));
+        list.drawText(_pkg, font, layout, (float)(x + BORDER + 2), (float)(y + dy));
 
         // shift everything down by the ascent of the title
         y += titleAscent;
@@ -170,16 +183,16 @@ public class ChainGroup
         // translate to our rendering area
         double cx = x + BORDER;
         double cy = y + BORDER;
-        gfx.translate(cx, cy);
+        list.translate(cx, cy);
 
         // render our chains
         ChainVisualizer renderer = new CascadingChainVisualizer();
         for (Chain chain : _roots) {
-            renderer.renderChain(chain, gfx);
+            renderer.renderChain(chain, list);
         }
 
         // undo the translation
-        gfx.translate(-cx, -cy);
+        list.translate(-cx, -cy);
 
         // print our border box
         double height = _size.getHeight() - titleAscent;
@@ -191,7 +204,8 @@ public class ChainGroup
                     (float)(y + height));
         path.lineTo((float)(x + _size.getWidth()), (float)y);
         path.lineTo((float)(x + BORDER + layout.getAdvance() + 4), (float)y);
-        gfx.draw(path);
+        list.draw(path);
+        list.end();
     }
 
     public Chain getRoot (int index)
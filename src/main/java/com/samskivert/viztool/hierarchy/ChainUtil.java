@@ -11,6 +11,7 @@ import java.util.Iterator;
 import java.util.List;
 
 import com.samskivert.viztool.Log;
+import com.samskivert.viztool.model.ClassRecord;
 
 /**
  * Chain related utility functions.
@@ -24,7 +25,7 @@ public class ChainUtil
      *
      * @return a list containing all of the root chains.
      */
-    public static List<Chain> buildChains (String pkgroot, String pkg, Iterator<Class<?>> iter)
+    public static List<Chain> buildChains (String pkgroot, String pkg, Iterator<ClassRecord> iter)
     {
         List<Chain> roots = new ArrayList<Chain>();
         computeRoots(pkgroot, pkg, iter, roots);
@@ -37,7 +38,7 @@ public class ChainUtil
      *
      * @return the matching chain or null if no chain could be found.
      */
-    public static Chain getChain (List<Chain> roots, Class<?> target)
+    public static Chain getChain (List<Chain> roots, ClassRecord target)
     {
         // figure out which of our root chains (if any) contains the specified class
         for (Chain root : roots) {
@@ -65,10 +66,10 @@ public class ChainUtil
      * representation of those classes.
      */
     protected static void computeRoots (
-        String pkgroot, String pkg, Iterator<Class<?>> iter, List<Chain> roots)
+        String pkgroot, String pkg, Iterator<ClassRecord> iter, List<Chain> roots)
     {
         while (iter.hasNext()) {
-            Class<?> clazz = iter.next();
+            ClassRecord clazz = iter.next();
             String name = clazz.getName();
             // skip classes not in the package in question
             if (!name.startsWith(pkg) || name.substring(pkg.length()+1).indexOf(".") != -1) {
@@ -83,14 +84,14 @@ public class ChainUtil
      * inheritance properties.
      */
     protected static void insertClass (
-        List<Chain> roots, String pkgroot, Class<?> target, boolean outpkg)
+        List<Chain> roots, String pkgroot, ClassRecord target, boolean outpkg)
     {
         // insert the parent of this class into the hierarchy
-        Class<?> parent = target.getSuperclass();
+        ClassRecord parent = target.getSuperclass();
         String name = generateName(target, pkgroot, outpkg);
 
         // if we have no parent, we want to insert ourselves as a root class
-        if (parent == null || parent.equals(Object.class)) {
+        if (parent == null || parent.getName().equals("java.lang.Object")) {
             insertRoot(roots, name, target, true);
 
         } else {
@@ -129,7 +130,7 @@ public class ChainUtil
         }
     }
 
-    protected static String generateName (Class<?> target, String pkgroot, boolean outpkg)
+    protected static String generateName (ClassRecord target, String pkgroot, boolean outpkg)
     {
         String name;
         if (outpkg) {
@@ -164,7 +165,7 @@ public class ChainUtil
     }
 
     protected static boolean insertRoot (List<Chain> roots, String name,
-                                         Class<?> root, boolean inpkg)
+                                         ClassRecord root, boolean inpkg)
     {
         Chain chroot = new Chain(name, root, inpkg);
         // make sure no chain already exists for this root
@@ -7,6 +7,8 @@ package com.samskivert.viztool.hierarchy;
 
 import java.awt.Graphics2D;
 
+import com.samskivert.viztool.util.DisplayList;
+
 /**
  * The chain visualizer is used to compute the dimensions of chains and their children in
  * preparation for rendering and then to perform said rendering.
@@ -26,11 +28,11 @@ public interface ChainVisualizer
     public void layoutChain (Chain chain, Graphics2D gfx);
 
     /**
-     * Renders the specified chain (and its subchains) based on the layout information (dimensions)
-     * already computed for this chain.
+     * Records the rendering of the specified chain (and its subchains) based on the layout
+     * information (dimensions) already computed for this chain.
      *
      * @param chain the chain to be rendered.
-     * @param gfx the graphics context in which to render the chain.
+     * @param list the display list into which to record the rendering.
      */
-    public void renderChain (Chain chain, Graphics2D gfx);
+    public void renderChain (Chain chain, DisplayList list);
 }
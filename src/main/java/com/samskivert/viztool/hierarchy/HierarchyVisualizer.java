@@ -8,20 +8,28 @@ package com.samskivert.viztool.hierarchy;
 import java.awt.BasicStroke;
 import java.awt.Graphics2D;
 import java.awt.Graphics;
+import java.awt.font.FontRenderContext;
 import java.awt.geom.Rectangle2D;
 import java.awt.print.*;
 import java.util.*;
 
-import com.samskivert.util.CollectionUtil;
-
-import com.samskivert.viztool.Visualizer;
+import com.samskivert.viztool.FittableVisualizer;
+import com.samskivert.viztool.model.ClassModel;
+import com.samskivert.viztool.model.ClassRecord;
+import com.samskivert.viztool.util.DisplayList;
+import com.samskivert.viztool.util.Outline;
+import com.samskivert.viztool.util.PageLists;
+import com.samskivert.viztool.util.PageStore;
+import com.samskivert.viztool.util.SearchIndex;
+import com.samskivert.viztool.util.Events;
+import com.samskivert.viztool.util.Stats;
 
 /**
  * The hierarchy visualizer displays inheritance hierarchies in a compact
  * representation so that an entire package can be displayed on a single
  * page (or small number of pages).
  */
-public class HierarchyVisualizer implements Visualizer
+public class HierarchyVisualizer implements FittableVisualizer
 {
     // documentation inherited
     public void setPackageRoot (String pkgroot)
@@ -30,15 +38,31 @@ public class HierarchyVisualizer implements Visualizer
     }
 
     // documentation inherited
-    public void setClasses (Iterator<Class<?>> iter)
+    public void setPageStore (PageStore store)
     {
-        // dump all the classes into an array list so that we can repeatedly scan through the list
-        CollectionUtil.addAll(_classes, iter);
+        _store = store;
+    }
 
-        // compile a list of all packages in our collection
+    // documentation inherited
+    public void setModel (ClassModel model)
+    {
+        _model = model;
+    }
+
+    // documentation inherited
+    public void setClasses (Iterator<Class<?>> iter)
+    {
+        // introspect all the classes into a list of records so that we can repeatedly scan
+        // through the list (without holding on to the classes themselves)
+        Stats.Probe probe = Stats.start(Stats.SET_CLASSES);
+        ClassModel model = (_model != null) ? _model : new ClassModel(false);
+        _records = new ArrayList<ClassRecord>();
         Set<String> pkgset = new HashSet<String>();
-        for (Class<?> cl : _classes) {
-            pkgset.add(ChainUtil.pkgFromClass(cl.getName()));
+        while (iter.hasNext()) {
+            ClassRecord record = model.getRecord(iter.next(), false);
+            _records.add(record);
+            // compile a list of all packages in our collection
+            pkgset.add(ChainUtil.pkgFromClass(record.getName()));
         }
 
         // sort our package names
@@ -47,10 +71,37 @@ public class HierarchyVisualizer implements Visualizer
         // System.err.println("Scanned " + _packages.length + " packages.");
 
         // now create chain groups for each package
-        _groups = new ArrayList<ChainGroup>();
-        for (String pkg : _packages) {
-            _groups.add(new ChainGroup(_pkgroot, pkg, _classes.iterator()));
+        _groups = createGroups();
+        probe.stop();
+    }
+
+    // documentation inherited
+    public void measure (Graphics2D gfx)
+    {
+        // our chains are measured as they're laid out
+    }
+
+    // documentation inherited
+    public int countPages (Graphics2D gfx, double width, double height)
+    {
+        // laying out chain groups splits them up, so we lay out a fresh set
+        List<ChainGroup> groups = createGroups();
+        double y = 0;
+        int pageno = 0;
+        for (int ii = 0; ii < groups.size(); ii++) {
+            ChainGroup group = groups.get(ii);
+            ChainGroup ngrp = group.layout(gfx, width, height);
+            if (ngrp != null) {
+                groups.add(ii+1, ngrp);
+            }
+            Rectangle2D bounds = group.getBounds();
+            if ((y > 0) && (y + bounds.getHeight() > height)) {
+                y = 0;
+                pageno++;
+            }
+            y += (bounds.getHeight() + GAP);
         }
+        return pageno+1;
     }
 
     /**
@@ -66,35 +117,43 @@ public class HierarchyVisualizer implements Visualizer
 
         // only relay things out if the page format has changed
         if (!pf.equals(_format)) {
-            // keep this around
-            _format = pf;
-
-            // and do the layout
             layout(gfx, pf.getImageableX(), pf.getImageableY(),
                    pf.getImageableWidth(), pf.getImageableHeight());
+
+            // keep this around
+            _format = pf;
         }
 
-        // render the groups on the requested page
-        int rendered = 0;
-        for (ChainGroup group : _groups) {
-            if (group.getPage() != pageIndex) {
-                continue; // skip groups not on this page
-            }
-            Rectangle2D bounds = group.getBounds();
-            group.render(gfx, bounds.getX(), bounds.getY());
-            rendered++;
+        // make sure we're rendering a page that has something on it
+        DisplayList list = getDisplayList(pageIndex, gfx.getFontRenderContext());
+        if (list == null || list.size() == 0) {
+            return NO_SUCH_PAGE;
         }
 
-        return (rendered > 0) ? PAGE_EXISTS : NO_SUCH_PAGE;
+        // replay the requested page
+        Stats.Probe probe = Stats.start(Stats.RENDER);
+        Events.Event event = Events.begin(Events.RENDER);
+        list.replay(gfx);
+        event.commit("hierarchy", pageIndex, list.size());
+        Stats.count(Stats.PAGES_RENDERED);
+        probe.stop();
+        return PAGE_EXISTS;
     }
 
     public void layout (Graphics2D gfx, double x, double y, double width, double height)
     {
+        // we're no longer laid out for the page format with which we last printed
+        _format = null;
+
+        Stats.Probe probe = Stats.start(Stats.LAYOUT);
         double starty = y;
         int pageno = 0;
 
         // lay out our groups
         for (int ii = 0; ii < _groups.size(); ii++) {
+            if (Thread.currentThread().isInterrupted()) {
+                return; // we've been abandoned
+            }
             ChainGroup group = _groups.get(ii);
             // lay out the group in question
             ChainGroup ngrp = group.layout(gfx, width, height);
@@ -122,17 +181,29 @@ public class HierarchyVisualizer implements Visualizer
 
         // our page count is one more than the highest page number
         _pageCount = pageno+1;
+
+        // and record the display list for each page
+        _lists = new PageLists(_store);
+        for (int ii = 0; ii < _pageCount; ii++) {
+            if (Thread.currentThread().isInterrupted()) {
+                return; // we've been abandoned
+            }
+            _lists.add(record(ii, gfx.getFontRenderContext()));
+        }
+        probe.stop();
     }
 
     public void paint (Graphics2D gfx, int pageIndex)
     {
-        // render the groups on the requested page
-        for (ChainGroup group : _groups) {
-            if (group.getPage() != pageIndex) {
-                continue; // skip groups not on this page
-            }
-            Rectangle2D bounds = group.getBounds();
-            group.render(gfx, bounds.getX(), bounds.getY());
+        // replay the requested page
+        DisplayList list = getDisplayList(pageIndex, gfx.getFontRenderContext());
+        if (list != null) {
+            Stats.Probe probe = Stats.start(Stats.RENDER);
+            Events.Event event = Events.begin(Events.RENDER);
+            list.replay(gfx);
+            event.commit("hierarchy", pageIndex, list.size());
+            Stats.count(Stats.PAGES_RENDERED);
+            probe.stop();
         }
     }
 
@@ -147,13 +218,78 @@ public class HierarchyVisualizer implements Visualizer
         return _pageCount;
     }
 
+    // documentation inherited from interface
+    public Outline getOutline (int pageIndex)
+    {
+        return (_lists == null) ? null : _lists.getOutline(pageIndex);
+    }
+
+    // documentation inherited from interface
+    public SearchIndex getSearchIndex ()
+    {
+        return (_lists == null) ? null : _lists.getSearchIndex();
+    }
+
+    /**
+     * Returns the display list for the specified page, rerecording it if it was recorded for a
+     * font render context other than the one supplied, or loading it from our page store.
+     * Returns null if we've not been laid out or have no such page.
+     */
+    protected synchronized DisplayList getDisplayList (int pageIndex, FontRenderContext frc)
+    {
+        DisplayList list = (_lists == null) ? null : _lists.get(pageIndex, frc);
+        if (list != null && !list.isCompatible(frc)) {
+            _lists.set(pageIndex, list = record(pageIndex, frc));
+        }
+        return list;
+    }
+
+    /**
+     * Creates a chain group for each of our packages from our class records.
+     */
+    protected List<ChainGroup> createGroups ()
+    {
+        List<ChainGroup> groups = new ArrayList<ChainGroup>();
+        for (String pkg : _packages) {
+            groups.add(new ChainGroup(_pkgroot, pkg, _records.iterator()));
+        }
+        return groups;
+    }
+
+    /**
+     * Records the rendering of the groups on the specified page.
+     */
+    protected DisplayList record (int pageIndex, FontRenderContext frc)
+    {
+        DisplayList list = new DisplayList(frc);
+        for (ChainGroup group : _groups) {
+            if (group.getPage() != pageIndex) {
+                continue; // skip groups not on this page
+            }
+            Rectangle2D bounds = group.getBounds();
+            group.render(list, bounds.getX(), bounds.getY());
+        }
+        return list;
+    }
+
     protected String _pkgroot;
-    protected List<Class<?>> _classes = new ArrayList<Class<?>>();
+
+    /** The model configured via {@link #setModel}, if any. */
+    protected ClassModel _model;
 
     protected String[] _packages;
+
+    /** The records of the classes we visualize. */
+    protected List<ClassRecord> _records;
     protected List<ChainGroup> _groups;
     protected int _pageCount = -1;
 
+    /** The display list for each of our pages. */
+    protected PageLists _lists;
+
+    /** The store in which we keep our pages, or null if we keep them in memory. */
+    protected PageStore _store;
+
     protected PageFormat _format;
 
     protected static final int GAP = 72/4;
@@ -0,0 +1,179 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool.model;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.samskivert.viztool.util.Events;
+import com.samskivert.viztool.util.Stats;
+
+/**
+ * Creates and tracks the {@link ClassRecord}s for a visualization. Each class (and each of its
+ * superclasses) is introspected once and all of the records share a single {@link SymbolTable}.
+ * The model may be used by multiple threads, and may be shared by successive visualizations (see
+ * {@link com.samskivert.viztool.Visualizer#setModel}) so that classes are only introspected once.
+ */
+public class ClassModel
+{
+    /**
+     * Creates a model.
+     *
+     * @param members whether the records for visualized classes should include information on
+     * their public members. Records created for superclasses never include members.
+     */
+    public ClassModel (boolean members)
+    {
+        _members = members;
+    }
+
+    /**
+     * Returns the record for the supplied class, introspecting it if necessary.
+     */
+    public ClassRecord getRecord (Class<?> clazz)
+    {
+        return getRecord(clazz, _members);
+    }
+
+    /**
+     * Returns true if the records of visualized classes include information on their members.
+     */
+    public boolean hasMembers ()
+    {
+        return _members;
+    }
+
+    /**
+     * Removes the records for the named classes (which will be reintrospected when next
+     * requested), along with the records of any of their subclasses (whose records refer to the
+     * removed records). This is used when the classes may have changed.
+     *
+     * @return the number of records removed.
+     */
+    public synchronized int invalidate (Collection<String> names)
+    {
+        boolean[] stale = new boolean[_records.length];
+        boolean any = false;
+        for (String name : names) {
+            // a name that was never interned can't have a record, and needn't become a symbol
+            int symbol = _symbols.find(name);
+            if (symbol >= 0 && symbol < stale.length && _records[symbol] != null) {
+                stale[symbol] = any = true;
+            }
+        }
+        if (!any) {
+            return 0;
+        }
+
+        int removed = 0;
+        for (int ii = 0; ii < _records.length; ii++) {
+            for (ClassRecord rec = _records[ii]; rec != null; rec = rec.getSuperclass()) {
+                if (stale[rec.getNameSymbol()]) {
+                    _records[ii] = null;
+                    removed++;
+                    break;
+                }
+            }
+        }
+        _size -= removed;
+        return removed;
+    }
+
+    /**
+     * Returns the number of requests for a record that were satisfied by an existing record.
+     */
+    public long getHits ()
+    {
+        return _hits.get();
+    }
+
+    /**
+     * Returns the number of requests for a record that required a class to be introspected.
+     */
+    public long getMisses ()
+    {
+        return _misses.get();
+    }
+
+    /**
+     * Returns the symbol table shared by this model's records.
+     */
+    public SymbolTable getSymbols ()
+    {
+        return _symbols;
+    }
+
+    /**
+     * Returns the number of records in this model.
+     */
+    public synchronized int size ()
+    {
+        return _size;
+    }
+
+    /**
+     * Returns the record for the supplied class, introspecting it if necessary. A record that was
+     * created without members is replaced by one with members if they are requested, while a
+     * record with members is returned whether or not they are requested, so a model can be
+     * shared by visualizations that need members and those that don't.
+     */
+    public ClassRecord getRecord (Class<?> clazz, boolean members)
+    {
+        int name = _symbols.intern(clazz.getName());
+        ClassRecord record = lookup(name);
+        if (record != null && (record.hasMembers() || !members)) {
+            _hits.incrementAndGet();
+            return record;
+        }
+        _misses.incrementAndGet();
+
+        // introspect outside of our lock so that multiple threads can introspect at once; if two
+        // threads race to create the same record, the first one to finish wins
+        Class<?> parent = clazz.getSuperclass();
+        ClassRecord precord = (parent == null) ? null : getRecord(parent, false);
+        Stats.Probe probe = Stats.start(Stats.INTROSPECT);
+        Events.Event event = Events.begin(Events.INTROSPECT);
+        ClassRecord nrecord = new ClassRecord(clazz, precord, members, _symbols);
+        event.commit(clazz.getName(), nrecord.getMemberCount(), 0);
+        Stats.count(Stats.CLASSES_INTROSPECTED);
+        probe.stop();
+
+        synchronized (this) {
+            record = lookup(name);
+            if (record != null && (record.hasMembers() || !members)) {
+                return record;
+            }
+            // if we're adding members to an existing record, we do so in place, as the records
+            // of its subclasses refer to it
+            if (record != null) {
+                record.adoptMembers(nrecord);
+                return record;
+            }
+            _size++;
+            if (name >= _records.length) {
+                ClassRecord[] records = new ClassRecord[Math.max(name+1, _records.length*2)];
+                System.arraycopy(_records, 0, records, 0, _records.length);
+                _records = records;
+            }
+            _records[name] = nrecord;
+            return nrecord;
+        }
+    }
+
+    protected synchronized ClassRecord lookup (int name)
+    {
+        return (name < _records.length) ? _records[name] : null;
+    }
+
+    protected boolean _members;
+    protected SymbolTable _symbols = new SymbolTable();
+
+    /** Our records, indexed by the symbol of their class name. */
+    protected ClassRecord[] _records = new ClassRecord[256];
+    protected int _size;
+
+    protected AtomicLong _hits = new AtomicLong(), _misses = new AtomicLong();
+}
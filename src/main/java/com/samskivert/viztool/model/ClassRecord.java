@@ -0,0 +1,401 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool.model;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * An immutable summary of everything the visualizations need to know about a class: its name,
+ * superclass, interfaces, declared inner classes and (optionally) its public members. Names are
+ * stored as symbols in the {@link SymbolTable} of the {@link ClassModel} that created the record
+ * (save for the class's own name, which is sorted and compared too often to be rebuilt from its
+ * symbol on every use) and the record holds no reference to the class itself, so that loaded
+ * classes (and their class loaders) can be garbage collected as soon as they have been
+ * introspected.
+ *
+ * <p> The one exception to immutability is that a record created without members may later be
+ * given them by its model. They arrive all at once, via a single volatile field, so a record may
+ * still be read from any thread without locking.
+ *
+ * <p> Type names are stored in source form (<code>java.lang.String[]</code> rather than
+ * <code>[Ljava.lang.String;</code>). Members are stored in a canonical order: public fields, then
+ * public constructors, then public methods, each sorted by name with static members after
+ * non-static members (and overloads ordered by signature).
+ */
+public class ClassRecord
+{
+    /** The kind of a field member. */
+    public static final int FIELD = 0;
+
+    /** The kind of a constructor member. */
+    public static final int CONSTRUCTOR = 1;
+
+    /** The kind of a method member. */
+    public static final int METHOD = 2;
+
+    /**
+     * Returns the source form of the name of the supplied type.
+     */
+    public static String typeName (Class<?> type)
+    {
+        if (!type.isArray()) {
+            return type.getName();
+        }
+        StringBuilder buf = new StringBuilder();
+        while (type.isArray()) {
+            buf.append("[]");
+            type = type.getComponentType();
+        }
+        return buf.insert(0, type.getName()).toString();
+    }
+
+    /**
+     * Returns the fully qualified name of this class.
+     */
+    public String getName ()
+    {
+        return _nameText;
+    }
+
+    /**
+     * Returns the symbol for the fully qualified name of this class.
+     */
+    public int getNameSymbol ()
+    {
+        return _name;
+    }
+
+    /**
+     * Returns true if this record describes an interface.
+     */
+    public boolean isInterface ()
+    {
+        return _interface;
+    }
+
+    /**
+     * Returns the record for the superclass of this class, or null if it has no superclass.
+     */
+    public ClassRecord getSuperclass ()
+    {
+        return _superclass;
+    }
+
+    /**
+     * Returns the number of interfaces directly implemented by this class.
+     */
+    public int getInterfaceCount ()
+    {
+        return _interfaces.length;
+    }
+
+    /**
+     * Returns the symbol for the fully qualified name of the specified interface.
+     */
+    public int getInterface (int index)
+    {
+        return _interfaces[index];
+    }
+
+    /**
+     * Returns the number of inner classes declared by this class.
+     */
+    public int getDeclaredClassCount ()
+    {
+        return _declared.length;
+    }
+
+    /**
+     * Returns the symbol for the fully qualified name of the specified declared inner class.
+     */
+    public int getDeclaredClass (int index)
+    {
+        return _declared[index];
+    }
+
+    /**
+     * Returns true if this record includes information on the class's public members.
+     */
+    public boolean hasMembers ()
+    {
+        return _members != null;
+    }
+
+    /**
+     * Returns the number of public members described by this record.
+     */
+    public int getMemberCount ()
+    {
+        Members members = _members;
+        return (members == null) ? 0 : members.offsets.length;
+    }
+
+    /**
+     * Returns the kind ({@link #FIELD}, {@link #CONSTRUCTOR} or {@link #METHOD}) of the specified
+     * member.
+     */
+    public int getMemberKind (int index)
+    {
+        Members members = _members;
+        return members.values[members.offsets[index]];
+    }
+
+    /**
+     * Returns the modifiers of the specified member.
+     */
+    public int getMemberModifiers (int index)
+    {
+        Members members = _members;
+        return members.values[members.offsets[index]+1];
+    }
+
+    /**
+     * Returns the symbol for the name of the specified member.
+     */
+    public int getMemberName (int index)
+    {
+        Members members = _members;
+        return members.values[members.offsets[index]+2];
+    }
+
+    /**
+     * Returns the symbol for the type of the specified field or the return type of the specified
+     * method. Returns -1 for constructors.
+     */
+    public int getMemberType (int index)
+    {
+        Members members = _members;
+        return members.values[members.offsets[index]+3];
+    }
+
+    /**
+     * Returns the number of parameters taken by the specified constructor or method.
+     */
+    public int getParameterCount (int index)
+    {
+        Members members = _members;
+        return members.values[members.offsets[index]+4];
+    }
+
+    /**
+     * Returns the symbol for the type of the specified parameter of the specified member.
+     */
+    public int getParameterType (int index, int param)
+    {
+        Members members = _members;
+        return members.values[members.offsets[index]+5+param];
+    }
+
+    /**
+     * Returns the number of exceptions declared by the specified constructor or method.
+     */
+    public int getExceptionCount (int index)
+    {
+        Members members = _members;
+        int[] values = members.values;
+        int off = members.offsets[index];
+        return values[off+5+values[off+4]];
+    }
+
+    /**
+     * Returns the symbol for the type of the specified exception of the specified member.
+     */
+    public int getExceptionType (int index, int exception)
+    {
+        Members members = _members;
+        int[] values = members.values;
+        int off = members.offsets[index];
+        return values[off+6+values[off+4]+exception];
+    }
+
+    /**
+     * Returns the symbol table in which this record's names are stored.
+     */
+    public SymbolTable getSymbols ()
+    {
+        return _symbols;
+    }
+
+    public String toString ()
+    {
+        return "[name=" + getName() + ", members=" + getMemberCount() + "]";
+    }
+
+    /**
+     * Creates a record for the supplied class. Records are created via {@link ClassModel}.
+     */
+    protected ClassRecord (Class<?> clazz, ClassRecord superclass, boolean members,
+                           SymbolTable symbols)
+    {
+        _symbols = symbols;
+        _nameText = clazz.getName();
+        _name = symbols.intern(_nameText);
+        _interface = clazz.isInterface();
+        _superclass = superclass;
+
+        Class<?>[] ifaces = clazz.getInterfaces();
+        _interfaces = new int[ifaces.length];
+        for (int ii = 0; ii < ifaces.length; ii++) {
+            _interfaces[ii] = symbols.intern(ifaces[ii].getName());
+        }
+
+        // if an inner class can't be resolved, we just leave it out
+        Class<?>[] decls;
+        try {
+            decls = clazz.getDeclaredClasses();
+        } catch (LinkageError le) {
+            decls = NO_TYPES;
+        }
+        _declared = new int[decls.length];
+        for (int ii = 0; ii < decls.length; ii++) {
+            _declared[ii] = symbols.intern(decls[ii].getName());
+        }
+
+        if (members) {
+            IntBuffer buf = new IntBuffer(), offsets = new IntBuffer();
+            introspectMembers(clazz, buf, offsets);
+            _members = new Members(buf.toArray(), offsets.toArray());
+        }
+    }
+
+    /**
+     * Takes on the members of the supplied record (of the same class, introspected with members).
+     * This is called by the model, with its lock held, to add members to a record without
+     * replacing it. The members are published all at once, so readers see either none of them or
+     * all of them.
+     */
+    protected void adoptMembers (ClassRecord other)
+    {
+        _members = other._members;
+    }
+
+    protected void introspectMembers (Class<?> clazz, IntBuffer buf, IntBuffer offsets)
+    {
+        Field[] fields = clazz.getDeclaredFields();
+        Arrays.sort(fields, MEMBER_ORDER);
+        for (Field field : fields) {
+            if ((field.getModifiers() & Modifier.PUBLIC) != 0) {
+                offsets.add(buf.size);
+                addMember(buf, FIELD, field, field.getType(), NO_TYPES, NO_TYPES);
+            }
+        }
+
+        Constructor<?>[] ctors = clazz.getConstructors();
+        Arrays.sort(ctors, MEMBER_ORDER);
+        for (Constructor<?> ctor : ctors) {
+            offsets.add(buf.size);
+            addMember(buf, CONSTRUCTOR, ctor, null, ctor.getParameterTypes(),
+                      ctor.getExceptionTypes());
+        }
+
+        Method[] methods = clazz.getDeclaredMethods();
+        Arrays.sort(methods, MEMBER_ORDER);
+        for (Method method : methods) {
+            if ((method.getModifiers() & Modifier.PUBLIC) != 0) {
+                offsets.add(buf.size);
+                addMember(buf, METHOD, method, method.getReturnType(),
+                          method.getParameterTypes(), method.getExceptionTypes());
+            }
+        }
+    }
+
+    protected void addMember (IntBuffer buf, int kind, Member member, Class<?> type,
+                              Class<?>[] ptypes, Class<?>[] etypes)
+    {
+        buf.add(kind);
+        buf.add(member.getModifiers());
+        buf.add(_symbols.intern(member.getName()));
+        buf.add(type == null ? -1 : _symbols.intern(typeName(type)));
+        buf.add(ptypes.length);
+        for (Class<?> ptype : ptypes) {
+            buf.add(_symbols.intern(typeName(ptype)));
+        }
+        buf.add(etypes.length);
+        for (Class<?> etype : etypes) {
+            buf.add(_symbols.intern(typeName(etype)));
+        }
+    }
+
+    /** The public members of a class. Each member is encoded as: kind, modifiers, name, type,
+     * parameter count, parameter types, exception count, exception types. */
+    protected static class Members
+    {
+        /** The encoded members, end to end. */
+        public final int[] values;
+
+        /** The offset of each member in {@link #values}. */
+        public final int[] offsets;
+
+        public Members (int[] values, int[] offsets)
+        {
+            this.values = values;
+            this.offsets = offsets;
+        }
+    }
+
+    /** A minimal growable int array used while introspecting. */
+    protected static class IntBuffer
+    {
+        public int[] values = new int[32];
+        public int size;
+
+        public void add (int value)
+        {
+            if (size == values.length) {
+                int[] nvalues = new int[size*2];
+                System.arraycopy(values, 0, nvalues, 0, size);
+                values = nvalues;
+            }
+            values[size++] = value;
+        }
+
+        public int[] toArray ()
+        {
+            int[] copy = new int[size];
+            System.arraycopy(values, 0, copy, 0, size);
+            return copy;
+        }
+    }
+
+    protected final SymbolTable _symbols;
+    protected final int _name;
+    protected final String _nameText;
+    protected final boolean _interface;
+    protected final ClassRecord _superclass;
+    protected final int[] _interfaces;
+    protected final int[] _declared;
+
+    /** Our public members, or null if they were not introspected. */
+    protected volatile Members _members;
+
+    protected static final Class<?>[] NO_TYPES = new Class<?>[0];
+
+    /** Sorts members alphabetically with statics after non-statics. */
+    protected static final Comparator<Member> MEMBER_ORDER = new Comparator<Member>() {
+        public int compare (Member m1, Member m2) {
+            int s1 = m1.getModifiers() & Modifier.STATIC;
+            int s2 = m2.getModifiers() & Modifier.STATIC;
+
+            // if one's static and one isn't...
+            if (s1 + s2 == Modifier.STATIC) {
+                // put the statics after the non-statics
+                return s1 - s2;
+
+            } else {
+                // otherwise compare names, falling back to the full signature for overloads so
+                // that we don't depend on the order in which reflection reports them
+                int diff = m1.getName().compareTo(m2.getName());
+                return (diff != 0) ? diff : m1.toString().compareTo(m2.toString());
+            }
+        }
+    };
+}
@@ -0,0 +1,155 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool.model;
+
+import java.util.Arrays;
+
+/**
+ * Interns strings (type names, member names and the like) as integer symbols. The characters of
+ * every symbol are stored end to end in a single shared buffer, so a symbol costs a few bytes of
+ * characters and an offset rather than a <code>String</code> object and its backing array. The
+ * table is safe for use by multiple threads.
+ */
+public class SymbolTable
+{
+    /**
+     * Returns the symbol for the supplied text, adding it to the table if necessary.
+     */
+    public synchronized int intern (String text)
+    {
+        int hash = text.hashCode();
+        int mask = _table.length-1;
+        for (int slot = hash & mask; ; slot = (slot+1) & mask) {
+            int sym = _table[slot];
+            if (sym == EMPTY) {
+                sym = add(text, hash);
+                _table[slot] = sym;
+                if (_count > _table.length/2) {
+                    rehash();
+                }
+                return sym;
+            }
+            if (_hashes[sym] == hash && matches(sym, text)) {
+                return sym;
+            }
+        }
+    }
+
+    /**
+     * Returns the symbol for the supplied text, or -1 if it has not been added to the table.
+     */
+    public synchronized int find (String text)
+    {
+        int hash = text.hashCode();
+        int mask = _table.length-1;
+        for (int slot = hash & mask; ; slot = (slot+1) & mask) {
+            int sym = _table[slot];
+            if (sym == EMPTY || (_hashes[sym] == hash && matches(sym, text))) {
+                return sym;
+            }
+        }
+    }
+
+    /**
+     * Returns the text of the specified symbol.
+     */
+    public synchronized String get (int symbol)
+    {
+        int start = _offsets[symbol];
+        return new String(_chars, start, _offsets[symbol+1] - start);
+    }
+
+    /**
+     * Returns the number of symbols in this table.
+     */
+    public synchronized int size ()
+    {
+        return _count;
+    }
+
+    /**
+     * Returns the number of characters stored in this table.
+     */
+    public synchronized int characters ()
+    {
+        return _offsets[_count];
+    }
+
+    protected int add (String text, int hash)
+    {
+        int start = _offsets[_count], end = start + text.length();
+        if (end > _chars.length) {
+            char[] chars = new char[Math.max(end, _chars.length*2)];
+            System.arraycopy(_chars, 0, chars, 0, start);
+            _chars = chars;
+        }
+        text.getChars(0, text.length(), _chars, start);
+
+        if (_count+2 > _offsets.length) {
+            int[] offsets = new int[_offsets.length*2];
+            System.arraycopy(_offsets, 0, offsets, 0, _count+1);
+            _offsets = offsets;
+            int[] hashes = new int[_hashes.length*2];
+            System.arraycopy(_hashes, 0, hashes, 0, _count);
+            _hashes = hashes;
+        }
+        _hashes[_count] = hash;
+        _offsets[++_count] = end;
+        return _count-1;
+    }
+
+    protected boolean matches (int symbol, String text)
+    {
+        int start = _offsets[symbol], length = _offsets[symbol+1] - start;
+        if (length != text.length()) {
+            return false;
+        }
+        for (int ii = 0; ii < length; ii++) {
+            if (_chars[start+ii] != text.charAt(ii)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected void rehash ()
+    {
+        int[] table = newTable(_table.length*2);
+        int mask = table.length-1;
+        for (int sym = 0; sym < _count; sym++) {
+            int slot = _hashes[sym] & mask;
+            while (table[slot] != EMPTY) {
+                slot = (slot+1) & mask;
+            }
+            table[slot] = sym;
+        }
+        _table = table;
+    }
+
+    /** The characters of all of our symbols, end to end. */
+    protected char[] _chars = new char[4096];
+
+    /** The offset of each symbol in the character buffer (and the end of the last symbol). */
+    protected int[] _offsets = new int[256];
+
+    /** The hash code of each symbol. */
+    protected int[] _hashes = new int[256];
+
+    /** An open addressed hash table mapping hash codes to symbols. */
+    protected int[] _table = newTable(512);
+
+    /** The number of symbols in the table. */
+    protected int _count;
+
+    protected static int[] newTable (int size)
+    {
+        int[] table = new int[size];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+
+    protected static final int EMPTY = -1;
+}
@@ -0,0 +1,470 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool.server;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import com.samskivert.util.LRUHashMap;
+import com.samskivert.viztool.Log;
+import com.samskivert.viztool.Visualizer;
+import com.samskivert.viztool.util.Outline;
+
+/**
+ * Serves a visualization to web browsers. The visualization is laid out once, when the server is
+ * started, and its pages are then served as square PNG tiles at a range of zoom levels. Tiles are
+ * rendered on demand, by as many threads as there are concurrent requests (up to a limit), and are
+ * kept in a cache bounded by the size of their encoded images. Each page is recorded once, at
+ * startup, and its display list is replayed for its tiles at every zoom level. Requests for a
+ * tile that is already being rendered wait for that rendering rather than starting another. Each
+ * tile has an ETag, so browsers can revalidate their cached tiles without them being rendered or
+ * sent again.
+ *
+ * <p> The server listens only on the loopback interface and answers the following requests:
+ *
+ * <pre>
+ * /                         = a page that displays the visualization at a selectable zoom level
+ * /index.json               = the page and tile geometry, and the bounds and name of every element
+ *                             (package, class and so on) on every page
+ * /tile/page/zoom/x/y.png   = a tile of a page at a zoom level, of which there are
+ *                             ceil(612 * 2^zoom / 256) across and ceil(792 * 2^zoom / 256) down
+ * </pre>
+ */
+public class TileServer
+{
+    /** The port on which the server listens by default. */
+    public static final int DEFAULT_PORT = 7342;
+
+    /** The size (in pixels) of our square tiles. */
+    public static final int TILE_SIZE = 256;
+
+    /** The range of zoom levels; a page is rendered at 2^zoom pixels per point. */
+    public static final int MIN_ZOOM = -2, MAX_ZOOM = 3;
+
+    /** The default number of tile rendering threads. */
+    public static final int DEFAULT_RENDERERS = Runtime.getRuntime().availableProcessors();
+
+    /** The default size (in bytes of encoded images) of the tile cache. */
+    public static final int DEFAULT_CACHE = 64 << 20;
+
+    /**
+     * Creates a server for the supplied visualization, which must have had its classes set but
+     * need not have been laid out.
+     *
+     * @param renderers the maximum number of requests handled (and tiles rendered) at once.
+     * @param cacheBytes the maximum total size of the cached tile images.
+     */
+    public TileServer (Visualizer viz, int renderers, int cacheBytes)
+    {
+        _viz = viz;
+        _renderers = renderers;
+        _tiles = new LRUHashMap<String,byte[]>(cacheBytes, new LRUHashMap.ItemSizer<byte[]>() {
+            public int computeSize (byte[] tile) {
+                return tile.length;
+            }
+        });
+    }
+
+    /**
+     * Lays out our visualization and starts serving it on the specified port (on the loopback
+     * interface). Requests are handled on the server's own threads; this method returns once the
+     * server is listening.
+     */
+    public void start (int port)
+        throws IOException
+    {
+        // lay things out with a graphics configured just like those we'll render with, and
+        // record each page while we're at it; a page's display list is replayed under the scale
+        // of every zoom level, so tile threads need never rerecord (and wait on) a page
+        BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        Graphics2D gfx = configure(scratch.createGraphics());
+        try {
+            _viz.layout(gfx, MARGIN, MARGIN, PAGE_WIDTH - 2*MARGIN, PAGE_HEIGHT - 2*MARGIN);
+            for (int ii = 0, ll = _viz.getPageCount(); ii < ll; ii++) {
+                _viz.paint(gfx, ii);
+            }
+        } finally {
+            gfx.dispose();
+        }
+
+        // our tiles are valid for as long as this layout is, so our ETags identify the layout
+        _layoutId = Long.toHexString(System.currentTimeMillis());
+
+        _executor = Executors.newFixedThreadPool(_renderers);
+        _server = HttpServer.create(new InetSocketAddress(InetAddress.getByName(null), port), 0);
+        _server.setExecutor(_executor);
+        _server.createContext("/", new HttpHandler() {
+            public void handle (HttpExchange exchange) throws IOException {
+                try {
+                    dispatch(exchange);
+                } catch (Throwable t) {
+                    Log.warning("Failed to handle request [uri=" + exchange.getRequestURI() +
+                                ", error=" + t + "].");
+                    Log.logStackTrace(t);
+                    send(exchange, 500, "text/plain", "Internal error.".getBytes("UTF-8"));
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        _server.start();
+        Log.info("Serving visualization [url=http://localhost:" + port + "/, pages=" +
+                 _viz.getPageCount() + "].");
+    }
+
+    /**
+     * Stops serving our visualization.
+     */
+    public void stop ()
+    {
+        _server.stop(0);
+        _executor.shutdown();
+    }
+
+    /** Returns the number of tile requests answered from the tile cache. */
+    public long getCacheHits ()
+    {
+        return _hits.get();
+    }
+
+    /** Returns the number of tiles rendered. */
+    public long getTilesRendered ()
+    {
+        return _rendered.get();
+    }
+
+    /** Returns the number of tile requests that waited for another request's rendering. */
+    public long getCoalesced ()
+    {
+        return _coalesced.get();
+    }
+
+    /** Returns the number of tile requests answered with "not modified." */
+    public long getNotModified ()
+    {
+        return _notModified.get();
+    }
+
+    protected void dispatch (HttpExchange exchange)
+        throws IOException
+    {
+        String path = exchange.getRequestURI().getPath();
+        if (path.equals("/")) {
+            send(exchange, 200, "text/html; charset=UTF-8", VIEWER.getBytes("UTF-8"));
+        } else if (path.equals("/index.json")) {
+            send(exchange, 200, "application/json", getIndex().getBytes("UTF-8"));
+        } else if (path.startsWith("/tile/") && path.endsWith(".png")) {
+            serveTile(exchange, path.substring("/tile/".length(), path.length() - ".png".length()));
+        } else {
+            send(exchange, 404, "text/plain", "Not found.".getBytes("UTF-8"));
+        }
+    }
+
+    protected void serveTile (HttpExchange exchange, String spec)
+        throws IOException
+    {
+        // parse and validate the page, zoom level and tile coordinates
+        String[] bits = spec.split("/");
+        int page, zoom, tx, ty;
+        try {
+            if (bits.length != 4) {
+                throw new NumberFormatException();
+            }
+            page = Integer.parseInt(bits[0]);
+            zoom = Integer.parseInt(bits[1]);
+            tx = Integer.parseInt(bits[2]);
+            ty = Integer.parseInt(bits[3]);
+        } catch (NumberFormatException nfe) {
+            send(exchange, 400, "text/plain", "Malformed tile.".getBytes("UTF-8"));
+            return;
+        }
+        if (page < 0 || page >= _viz.getPageCount() || zoom < MIN_ZOOM || zoom > MAX_ZOOM ||
+            tx < 0 || tx >= getTiles(PAGE_WIDTH, zoom) ||
+            ty < 0 || ty >= getTiles(PAGE_HEIGHT, zoom)) {
+            send(exchange, 404, "text/plain", "No such tile.".getBytes("UTF-8"));
+            return;
+        }
+
+        // a tile never changes for a given layout, so we can answer a conditional request
+        // without so much as looking in our cache
+        String key = page + "/" + zoom + "/" + tx + "/" + ty;
+        String etag = "\"" + _layoutId + "/" + key + "\"";
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            _notModified.incrementAndGet();
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+
+        byte[] tile;
+        try {
+            tile = getTile(key, page, zoom, tx, ty);
+        } catch (ExecutionException ee) {
+            Log.warning("Failed to render tile [tile=" + key + ", error=" + ee.getCause() + "].");
+            Log.logStackTrace(ee.getCause());
+            send(exchange, 500, "text/plain", "Failed to render tile.".getBytes("UTF-8"));
+            return;
+        } catch (InterruptedException ie) {
+            send(exchange, 503, "text/plain", "Interrupted.".getBytes("UTF-8"));
+            return;
+        }
+        send(exchange, 200, "image/png", tile);
+    }
+
+    /**
+     * Returns the encoded image of the specified tile from our cache, from a rendering of the
+     * tile already in progress or by rendering it on the calling thread.
+     */
+    protected byte[] getTile (final String key, final int page, final int zoom,
+                              final int tx, final int ty)
+        throws ExecutionException, InterruptedException
+    {
+        synchronized (_tiles) {
+            byte[] tile = _tiles.get(key);
+            if (tile != null) {
+                _hits.incrementAndGet();
+                return tile;
+            }
+        }
+
+        FutureTask<byte[]> task = new FutureTask<byte[]>(new Callable<byte[]>() {
+            public byte[] call () throws IOException {
+                return renderTile(page, zoom, tx, ty);
+            }
+        });
+        FutureTask<byte[]> running = _rendering.putIfAbsent(key, task);
+        if (running != null) {
+            _coalesced.incrementAndGet();
+            return running.get();
+        }
+
+        try {
+            task.run();
+            byte[] tile = task.get();
+            synchronized (_tiles) {
+                _tiles.put(key, tile);
+            }
+            return tile;
+        } finally {
+            _rendering.remove(key);
+        }
+    }
+
+    /**
+     * Renders and encodes the specified tile.
+     */
+    protected byte[] renderTile (int page, int zoom, int tx, int ty)
+        throws IOException
+    {
+        double scale = Math.pow(2, zoom);
+        BufferedImage tile = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+        Graphics2D gfx = tile.createGraphics();
+        try {
+            // anything beyond the edge of the page is left in the background color
+            gfx.setColor(BACKGROUND);
+            gfx.fillRect(0, 0, TILE_SIZE, TILE_SIZE);
+            gfx.translate(-tx*TILE_SIZE, -ty*TILE_SIZE);
+            gfx.scale(scale, scale);
+            gfx.clip(new Rectangle2D.Double(0, 0, PAGE_WIDTH, PAGE_HEIGHT));
+            gfx.setColor(Color.white);
+            gfx.fill(new Rectangle2D.Double(0, 0, PAGE_WIDTH, PAGE_HEIGHT));
+            configure(gfx);
+
+            // text is illegible at small scales, so we just outline the page
+            if (scale >= DETAIL_SCALE) {
+                _viz.paint(gfx, page);
+            } else {
+                Outline outline = _viz.getOutline(page);
+                if (outline != null) {
+                    outline.paint(gfx);
+                }
+            }
+        } finally {
+            gfx.dispose();
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(tile, "png", out);
+        _rendered.incrementAndGet();
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns our index: the geometry of our pages and tiles and the bounds (in points) and name
+     * of each element on each page.
+     */
+    protected String getIndex ()
+    {
+        StringBuilder buf = new StringBuilder();
+        buf.append("{\"pageWidth\": ").append(PAGE_WIDTH);
+        buf.append(", \"pageHeight\": ").append(PAGE_HEIGHT);
+        buf.append(", \"tileSize\": ").append(TILE_SIZE);
+        buf.append(", \"minZoom\": ").append(MIN_ZOOM);
+        buf.append(", \"maxZoom\": ").append(MAX_ZOOM);
+        buf.append(", \"pages\": [");
+        for (int ii = 0, ll = _viz.getPageCount(); ii < ll; ii++) {
+            buf.append(ii == 0 ? "\n  " : ",\n  ").append("{\"page\": ").append(ii);
+            buf.append(", \"elements\": [");
+            Outline outline = _viz.getOutline(ii);
+            for (int ee = 0, ss = (outline == null) ? 0 : outline.size(); ee < ss; ee++) {
+                Rectangle2D bounds = outline.getBounds(ee);
+                buf.append(ee == 0 ? "" : ", ").append("{\"name\": ");
+                quote(buf, outline.getLabel(ee));
+                buf.append(", \"x\": ").append((float)bounds.getX());
+                buf.append(", \"y\": ").append((float)bounds.getY());
+                buf.append(", \"width\": ").append((float)bounds.getWidth());
+                buf.append(", \"height\": ").append((float)bounds.getHeight()).append("}");
+            }
+            buf.append("]}");
+        }
+        buf.append("\n]}\n");
+        return buf.toString();
+    }
+
+    protected static void quote (StringBuilder buf, String text)
+    {
+        buf.append('"');
+        for (int ii = 0, ll = text.length(); ii < ll; ii++) {
+            char c = text.charAt(ii);
+            if (c == '"' || c == '\\') {
+                buf.append('\\').append(c);
+            } else if (c < ' ') {
+                buf.append(String.format("\\u%04x", (int)c));
+            } else {
+                buf.append(c);
+            }
+        }
+        buf.append('"');
+    }
+
+    protected static void send (HttpExchange exchange, int status, String type, byte[] body)
+        throws IOException
+    {
+        exchange.getResponseHeaders().set("Content-Type", type);
+        exchange.sendResponseHeaders(status, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    /**
+     * Returns the number of tiles needed to span the specified number of points at the specified
+     * zoom level.
+     */
+    protected static int getTiles (double points, int zoom)
+    {
+        return (int)Math.ceil(points * Math.pow(2, zoom) / TILE_SIZE);
+    }
+
+    protected static Graphics2D configure (Graphics2D gfx)
+    {
+        gfx.setColor(Color.black);
+        gfx.setStroke(new BasicStroke(0.1f));
+        gfx.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                             RenderingHints.VALUE_ANTIALIAS_ON);
+        gfx.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                             RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        return gfx;
+    }
+
+    protected Visualizer _viz;
+    protected int _renderers;
+    protected String _layoutId;
+    protected HttpServer _server;
+    protected ExecutorService _executor;
+
+    /** Our rendered (and encoded) tiles. */
+    protected LRUHashMap<String,byte[]> _tiles;
+
+    /** The tiles currently being rendered. */
+    protected ConcurrentHashMap<String,FutureTask<byte[]>> _rendering =
+        new ConcurrentHashMap<String,FutureTask<byte[]>>();
+
+    protected AtomicLong _hits = new AtomicLong(), _rendered = new AtomicLong();
+    protected AtomicLong _coalesced = new AtomicLong(), _notModified = new AtomicLong();
+
+    /** The scale at and above which pages are rendered in full rather than outlined. */
+    protected static final double DETAIL_SCALE = 0.7;
+
+    /** The dimensions of a page and of its margins, in points (matching those printed). */
+    protected static final double PAGE_WIDTH = 72*8.5;
+    protected static final double PAGE_HEIGHT = 72*11;
+    protected static final double MARGIN = 72*0.5;
+
+    protected static final Color BACKGROUND = new Color(0x808080);
+
+    /** A page that lays out the tiles of every page at the zoom level chosen by the user. */
+    protected static final String VIEWER =
+        "<!DOCTYPE html>\n<html><head><title>viztool</title><style>\n" +
+        "body { background: #808080; margin: 0; font-family: sans-serif; }\n" +
+        "#bar { background: #eee; padding: 4px; position: sticky; top: 0; }\n" +
+        ".page { display: inline-block; margin: 9px; line-height: 0; vertical-align: top; }\n" +
+        ".page img { display: inline-block; }\n" +
+        "</style></head><body>\n" +
+        "<div id=\"bar\">Zoom <select id=\"zoom\"></select> <span id=\"info\"></span></div>\n" +
+        "<div id=\"pages\"></div>\n<script>\n" +
+        "var index;\n" +
+        "function show () {\n" +
+        "  var zoom = +document.getElementById('zoom').value, scale = Math.pow(2, zoom);\n" +
+        "  var cols = Math.ceil(index.pageWidth * scale / index.tileSize);\n" +
+        "  var rows = Math.ceil(index.pageHeight * scale / index.tileSize);\n" +
+        "  var pages = document.getElementById('pages');\n" +
+        "  pages.innerHTML = '';\n" +
+        "  index.pages.forEach(function (page) {\n" +
+        "    var div = document.createElement('div');\n" +
+        "    div.className = 'page';\n" +
+        "    div.style.width = (cols * index.tileSize) + 'px';\n" +
+        "    div.style.height = Math.ceil(index.pageHeight * scale) + 'px';\n" +
+        "    div.style.overflow = 'hidden';\n" +
+        "    div.title = page.elements.map(function (e) { return e.name; }).join(', ');\n" +
+        "    for (var y = 0; y < rows; y++) for (var x = 0; x < cols; x++) {\n" +
+        "      var img = document.createElement('img');\n" +
+        "      img.loading = 'lazy';\n" +
+        "      img.width = img.height = index.tileSize;\n" +
+        "      img.src = '/tile/' + page.page + '/' + zoom + '/' + x + '/' + y + '.png';\n" +
+        "      div.appendChild(img);\n" +
+        "    }\n" +
+        "    pages.appendChild(div);\n" +
+        "  });\n" +
+        "}\n" +
+        "fetch('/index.json').then(function (r) { return r.json(); }).then(function (i) {\n" +
+        "  index = i;\n" +
+        "  var zoom = document.getElementById('zoom');\n" +
+        "  for (var z = i.minZoom; z <= i.maxZoom; z++) {\n" +
+        "    var opt = document.createElement('option');\n" +
+        "    opt.value = z; opt.text = Math.round(Math.pow(2, z) * 100) + '%';\n" +
+        "    opt.selected = (z == 0);\n" +
+        "    zoom.appendChild(opt);\n" +
+        "  }\n" +
+        "  zoom.onchange = show;\n" +
+        "  document.getElementById('info').textContent = i.pages.length + ' pages';\n" +
+        "  show();\n" +
+        "});\n" +
+        "</script></body></html>\n";
+}
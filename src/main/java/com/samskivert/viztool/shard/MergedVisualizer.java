@@ -0,0 +1,218 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool.shard;
+
+import java.awt.BasicStroke;
+import java.awt.Graphics2D;
+import java.awt.Graphics;
+import java.awt.print.PageFormat;
+import java.awt.print.PrinterException;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.samskivert.viztool.Log;
+import com.samskivert.viztool.Visualizer;
+import com.samskivert.viztool.model.ClassModel;
+import com.samskivert.viztool.util.DisplayList;
+import com.samskivert.viztool.util.Events;
+import com.samskivert.viztool.util.Outline;
+import com.samskivert.viztool.util.PageStore;
+import com.samskivert.viztool.util.SearchIndex;
+import com.samskivert.viztool.util.Stats;
+
+/**
+ * Presents the fragments written by the workers of a sharded visualization as a single
+ * visualization, whose pages are those of the first fragment followed by those of the second and
+ * so on. The pages were laid out by the workers, so this visualizer has no classes of its own and
+ * laying it out does nothing; it can only be painted, printed or exported.
+ */
+public class MergedVisualizer implements Visualizer
+{
+    /**
+     * Opens the supplied fragments (see {@link ShardWorker}), in order.
+     */
+    public MergedVisualizer (List<File> fragments)
+        throws IOException
+    {
+        try {
+            for (File fragment : fragments) {
+                PageStore store = PageStore.open(
+                    ShardWorker.pagesFile(fragment), PageStore.DEFAULT_CACHE);
+                _stores.add(store);
+                int first = _outlines.size();
+                readOutlines(ShardWorker.outlinesFile(fragment));
+                readIndex(ShardWorker.indexFile(fragment), first);
+                if (store.getPageCount() != _outlines.size() - first) {
+                    throw new IOException("Fragment is incomplete [fragment=" + fragment + "].");
+                }
+                _firsts.add(first);
+            }
+        } catch (IOException ioe) {
+            close();
+            throw ioe;
+        }
+    }
+
+    /**
+     * Closes the fragments. The visualizer can't be painted thereafter.
+     */
+    public void close ()
+    {
+        for (PageStore store : _stores) {
+            try {
+                store.close();
+            } catch (IOException ioe) {
+                Log.warning("Unable to close fragment [error=" + ioe + "].");
+            }
+        }
+        _stores.clear();
+    }
+
+    // documentation inherited
+    public void setPackageRoot (String pkgroot)
+    {
+        // the workers took care of this
+    }
+
+    // documentation inherited
+    public void setClasses (Iterator<Class<?>> iterator)
+    {
+        // the workers took care of this
+    }
+
+    // documentation inherited
+    public void setModel (ClassModel model)
+    {
+        // the workers took care of this
+    }
+
+    // documentation inherited
+    public void setPageStore (PageStore store)
+    {
+        // our pages are already in stores
+    }
+
+    // documentation inherited
+    public void layout (Graphics2D gfx, double x, double y, double width, double height)
+    {
+        // the workers took care of this
+    }
+
+    // documentation inherited
+    public void paint (Graphics2D gfx, int pageIndex)
+    {
+        DisplayList list = getDisplayList(pageIndex, gfx);
+        if (list != null) {
+            Stats.Probe probe = Stats.start(Stats.RENDER);
+            Events.Event event = Events.begin(Events.RENDER);
+            list.replay(gfx);
+            event.commit("merged", pageIndex, list.size());
+            Stats.count(Stats.PAGES_RENDERED);
+            probe.stop();
+        }
+    }
+
+    // documentation inherited
+    public int print (Graphics g, PageFormat pf, int pageIndex)
+        throws PrinterException
+    {
+        Graphics2D gfx = (Graphics2D)g;
+        gfx.setStroke(new BasicStroke(0.1f));
+        if (pageIndex < 0 || pageIndex >= getPageCount()) {
+            return NO_SUCH_PAGE;
+        }
+        paint(gfx, pageIndex);
+        return PAGE_EXISTS;
+    }
+
+    // documentation inherited
+    public Outline getOutline (int pageIndex)
+    {
+        return (pageIndex < 0 || pageIndex >= _outlines.size()) ? null : _outlines.get(pageIndex);
+    }
+
+    // documentation inherited
+    public SearchIndex getSearchIndex ()
+    {
+        return _index;
+    }
+
+    // documentation inherited
+    public int getPageCount ()
+    {
+        return _outlines.size();
+    }
+
+    /**
+     * Returns the display list for the specified (global) page, decoded from its fragment, or
+     * null if there is no such page or it could not be read.
+     */
+    protected DisplayList getDisplayList (int pageIndex, Graphics2D gfx)
+    {
+        if (pageIndex < 0 || pageIndex >= _outlines.size()) {
+            return null;
+        }
+        int fidx = _firsts.size()-1;
+        while (_firsts.get(fidx) > pageIndex) {
+            fidx--;
+        }
+        try {
+            return _stores.get(fidx).getPage(
+                pageIndex - _firsts.get(fidx), gfx.getFontRenderContext());
+        } catch (IOException ioe) {
+            Log.warning("Unable to load page [page=" + pageIndex + ", error=" + ioe + "].");
+            return null;
+        }
+    }
+
+    protected void readOutlines (File file)
+        throws IOException
+    {
+        DataInputStream in = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(file)));
+        try {
+            for (int ii = 0, ll = in.readInt(); ii < ll; ii++) {
+                _outlines.add(Outline.read(in));
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Adds the elements of a fragment's search index to ours, offsetting their pages by the
+     * supplied (global) index of the fragment's first page.
+     */
+    protected void readIndex (File file, int first)
+        throws IOException
+    {
+        DataInputStream in = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(file)));
+        try {
+            _index.read(in, first);
+        } finally {
+            in.close();
+        }
+    }
+
+    /** The page store of each fragment. */
+    protected List<PageStore> _stores = new ArrayList<PageStore>();
+
+    /** The global index of the first page of each fragment. */
+    protected List<Integer> _firsts = new ArrayList<Integer>();
+
+    /** The outline of every page. */
+    protected List<Outline> _outlines = new ArrayList<Outline>();
+
+    /** The search index of all of the fragments. */
+    protected SearchIndex _index = new SearchIndex();
+}
@@ -0,0 +1,222 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool.shard;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.samskivert.viztool.ImageExporter;
+import com.samskivert.viztool.Log;
+import com.samskivert.viztool.clenum.ClassEnumerator;
+import com.samskivert.viztool.clenum.RegexpEnumerator;
+import com.samskivert.viztool.util.SearchIndex;
+
+/**
+ * Generates a visualization too large for one process by splitting its packages into shards
+ * (see {@link ShardPlan}) and laying out each shard in its own worker process (see {@link
+ * ShardWorker}), all of them at once. Once every worker has finished, the coordinator merges
+ * their pages into a single set of PNG pages, numbered from the first page of the first shard
+ * to the last page of the last, and writes a class index (<code>index.txt</code>), which lists
+ * the pages on which each package and class appears.
+ *
+ * <p> Each shard starts on a new page, so a sharded visualization may have a few more pages
+ * than one laid out by a single process. Otherwise the pages are those that a single process
+ * would lay out, and the same classes always yield the same pages, no matter how long each worker
+ * takes.
+ */
+public class ShardCoordinator
+{
+    /** The name of the file in the output directory to which the class index is written. */
+    public static final String INDEX = "index.txt";
+
+    /**
+     * Creates a coordinator for a visualization of the classes on our classpath.
+     *
+     * @param mode <code>hier</code> or <code>sum</code>, as for the driver.
+     * @param regexp a regular expression matching the classes to be visualized.
+     * @param pkgroot the base package from which names will be shortened.
+     * @param shards the number of worker processes.
+     */
+    public ShardCoordinator (String mode, String regexp, String pkgroot, int shards)
+    {
+        _mode = mode;
+        _regexp = regexp;
+        _pkgroot = pkgroot;
+        _shards = Math.max(shards, 1);
+    }
+
+    /**
+     * Lays out the visualization in worker processes and writes its merged pages, and its class
+     * index, to the supplied directory.
+     */
+    public void export (File outdir)
+        throws IOException
+    {
+        // scan the classpath to plan the shards; the workers will scan it again for themselves,
+        // but it's loading and laying out the classes that takes the time
+        String classpath = System.getProperty("java.class.path");
+        List<String> names = new ArrayList<String>();
+        for (RegexpEnumerator iter = new RegexpEnumerator(
+                 _regexp, null, new ClassEnumerator(classpath)); iter.hasNext(); ) {
+            names.add(iter.next());
+        }
+        List<List<String>> plan = ShardPlan.partition(names, _shards);
+
+        File workdir = File.createTempFile("viztool-shards", "");
+        if (!workdir.delete() || !workdir.mkdir()) {
+            throw new IOException("Unable to create shard directory '" + workdir + "'.");
+        }
+        MergedVisualizer merged = null;
+        try {
+            // start all of the workers, then wait for every one of them
+            List<File> fragments = new ArrayList<File>();
+            List<Process> workers = new ArrayList<Process>();
+            try {
+                for (int ii = 0; ii < plan.size(); ii++) {
+                    File fragment = new File(workdir, "shard-" + ii);
+                    File pkgfile = new File(workdir, "shard-" + ii + ".packages");
+                    writeLines(pkgfile, plan.get(ii));
+                    fragments.add(fragment);
+                    workers.add(startWorker(ii, classpath, pkgfile, fragment));
+                }
+                for (int ii = 0; ii < workers.size(); ii++) {
+                    int code = workers.get(ii).waitFor();
+                    if (code != 0) {
+                        throw new IOException("Shard " + ii + " failed [exit=" + code + "].");
+                    }
+                }
+            } catch (InterruptedException ie) {
+                throw new IOException("Interrupted while waiting for shards.");
+            } finally {
+                for (Process worker : workers) {
+                    worker.destroy(); // a no-op for those that have exited
+                }
+            }
+
+            merged = new MergedVisualizer(fragments);
+            new ImageExporter(outdir, ImageExporter.DEFAULT_SCALE).export(merged);
+            writeIndex(new File(outdir, INDEX), merged);
+            Log.info("Merged shards [shards=" + plan.size() + ", classes=" + names.size() +
+                     ", pages=" + merged.getPageCount() + "].");
+
+        } finally {
+            if (merged != null) {
+                merged.close();
+            }
+            File[] files = workdir.listFiles();
+            for (int ii = 0; files != null && ii < files.length; ii++) {
+                files[ii].delete();
+            }
+            workdir.delete();
+        }
+    }
+
+    /**
+     * Starts the worker for the specified shard, in a JVM like our own, with its output relayed
+     * to ours.
+     */
+    protected Process startWorker (final int shard, String classpath, File pkgfile, File fragment)
+        throws IOException
+    {
+        String java = System.getProperty("java.home") + File.separator + "bin" +
+            File.separator + "java";
+        ProcessBuilder builder = new ProcessBuilder(
+            java, "-Djava.awt.headless=true", "-cp", classpath, ShardWorker.class.getName(),
+            _mode, _regexp, _pkgroot, pkgfile.getPath(), fragment.getPath());
+        builder.redirectErrorStream(true);
+        final Process process = builder.start();
+
+        Thread relay = new Thread("viztool-shard-" + shard) {
+            public void run () {
+                try {
+                    BufferedReader in = new BufferedReader(
+                        new InputStreamReader(process.getInputStream()));
+                    for (String line; (line = in.readLine()) != null; ) {
+                        System.err.println("[shard " + shard + "] " + line);
+                    }
+                } catch (IOException ioe) {
+                    // the process went away, which is reported via its exit code
+                }
+            }
+        };
+        relay.setDaemon(true);
+        relay.start();
+        return process;
+    }
+
+    /**
+     * Writes the index of the merged visualization: the fully qualified name of each class (from
+     * the merged {@link SearchIndex}) and of each of their packages, in order of name, followed by
+     * the (one-based) numbers of the pages on which it appears, separated by tabs.
+     */
+    protected void writeIndex (File file, MergedVisualizer merged)
+        throws IOException
+    {
+        Map<String,List<Integer>> index = new TreeMap<String,List<Integer>>();
+        List<List<String>> classes = merged.getSearchIndex().getNamesByPage(SearchIndex.CLASS);
+        for (int ii = 0, ll = classes.size(); ii < ll; ii++) {
+            for (String cname : classes.get(ii)) {
+                addPage(index, cname, ii+1);
+                int didx = cname.lastIndexOf('.');
+                if (didx != -1) {
+                    addPage(index, cname.substring(0, didx), ii+1);
+                }
+            }
+        }
+
+        List<String> lines = new ArrayList<String>();
+        for (Map.Entry<String,List<Integer>> entry : index.entrySet()) {
+            StringBuilder line = new StringBuilder(entry.getKey());
+            for (Integer page : entry.getValue()) {
+                line.append("\t").append(page);
+            }
+            lines.add(line.toString());
+        }
+        writeLines(file, lines);
+    }
+
+    /**
+     * Notes that the named element appears on the specified page, which is no earlier than any
+     * page previously noted for the element.
+     */
+    protected static void addPage (Map<String,List<Integer>> index, String name, int page)
+    {
+        List<Integer> pages = index.get(name);
+        if (pages == null) {
+            index.put(name, pages = new ArrayList<Integer>());
+        }
+        if (pages.isEmpty() || pages.get(pages.size()-1) != page) {
+            pages.add(page);
+        }
+    }
+
+    protected static void writeLines (File file, List<String> lines)
+        throws IOException
+    {
+        PrintWriter out = new PrintWriter(new FileWriter(file));
+        try {
+            for (String line : lines) {
+                out.println(line);
+            }
+        } finally {
+            out.close();
+        }
+        if (out.checkError()) {
+            throw new IOException("Unable to write '" + file + "'.");
+        }
+    }
+
+    protected String _mode, _regexp, _pkgroot;
+    protected int _shards;
+}
@@ -0,0 +1,68 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool.shard;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Splits the packages of a visualization into shards, each of which is laid out by its own
+ * worker process. Each shard is a run of consecutive packages (in order of name) and the shards
+ * hold roughly equal numbers of classes. The split depends only on the names of the classes, so
+ * the same classes are always split the same way, and concatenating the shards' pages in order
+ * yields the packages in the same order as a visualization laid out by a single process.
+ */
+public class ShardPlan
+{
+    /**
+     * Splits the packages of the supplied classes into (at most) the specified number of shards.
+     * Inner classes are ignored, as the visualizers pick those up via their declaring classes.
+     *
+     * @return the names of the packages in each shard, in order.
+     */
+    public static List<List<String>> partition (Collection<String> classes, int shards)
+    {
+        Map<String,Integer> counts = new TreeMap<String,Integer>();
+        int total = 0;
+        for (String cname : classes) {
+            if (cname.indexOf("$") != -1) {
+                continue;
+            }
+            String pkg = packageOf(cname);
+            Integer count = counts.get(pkg);
+            counts.put(pkg, (count == null) ? 1 : count+1);
+            total++;
+        }
+
+        // move on to the next shard once this one has its share of the classes
+        List<List<String>> plan = new ArrayList<List<String>>();
+        List<String> shard = null;
+        long placed = 0;
+        for (Map.Entry<String,Integer> entry : counts.entrySet()) {
+            if (shard == null) {
+                plan.add(shard = new ArrayList<String>());
+            }
+            shard.add(entry.getKey());
+            placed += entry.getValue();
+            if (plan.size() < shards && placed * shards >= (long)total * plan.size()) {
+                shard = null;
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Returns the package of the named class (the empty string for the default package).
+     */
+    public static String packageOf (String cname)
+    {
+        int ldidx = cname.lastIndexOf(".");
+        return (ldidx == -1) ? "" : cname.substring(0, ldidx);
+    }
+}
@@ -0,0 +1,183 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool.shard;
+
+import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import com.samskivert.viztool.ClassLoadingStage;
+import com.samskivert.viztool.ImageExporter;
+import com.samskivert.viztool.IsolatedClassLoader;
+import com.samskivert.viztool.Log;
+import com.samskivert.viztool.Visualizer;
+import com.samskivert.viztool.clenum.ClassEnumerator;
+import com.samskivert.viztool.hierarchy.HierarchyVisualizer;
+import com.samskivert.viztool.summary.SummaryVisualizer;
+import com.samskivert.viztool.util.FontPicker;
+import com.samskivert.viztool.util.Outline;
+import com.samskivert.viztool.util.PageStore;
+
+/**
+ * Lays out one shard of a sharded visualization (see {@link ShardCoordinator}). The worker scans
+ * its classpath for the classes in its shard's packages, loads and lays them out just as the
+ * driver would for PNG output, and writes the resulting pages to a fragment: a sealed {@link
+ * PageStore} (<code>fragment.pages</code>), the outlines of its pages
+ * (<code>fragment.outlines</code>) and its search index (<code>fragment.index</code>). It is
+ * invoked by the coordinator like so:
+ *
+ * <pre>
+ * ShardWorker mode class_regexp package_root package_list_file fragment
+ * </pre>
+ */
+public class ShardWorker
+{
+    public static void main (String[] args)
+    {
+        if (args.length != 5) {
+            System.err.println(
+                "Usage: ShardWorker hier|sum class_regexp package_root package_list fragment");
+            System.exit(-1);
+        }
+
+        try {
+            File fragment = new File(args[4]);
+            int pages = layout(args[0], args[1], args[2], readPackages(new File(args[3])),
+                               pagesFile(fragment), outlinesFile(fragment), indexFile(fragment));
+            Log.info("Laid out shard [fragment=" + fragment + ", pages=" + pages + "].");
+        } catch (Exception e) {
+            Log.warning("Shard failed [fragment=" + args[4] + ", error=" + e + "].");
+            e.printStackTrace(System.err);
+            System.exit(1);
+        }
+        // the loading and layout threads may linger
+        System.exit(0);
+    }
+
+    /**
+     * Returns the file in which the pages of the supplied fragment are stored.
+     */
+    public static File pagesFile (File fragment)
+    {
+        return new File(fragment.getPath() + ".pages");
+    }
+
+    /**
+     * Returns the file in which the outlines of the supplied fragment's pages are stored.
+     */
+    public static File outlinesFile (File fragment)
+    {
+        return new File(fragment.getPath() + ".outlines");
+    }
+
+    /**
+     * Returns the file in which the search index of the supplied fragment is stored.
+     */
+    public static File indexFile (File fragment)
+    {
+        return new File(fragment.getPath() + ".index");
+    }
+
+    /**
+     * Lays out the classes on our classpath that match the supplied expression and are in one of
+     * the supplied packages, and writes their pages, outlines and search index to the supplied
+     * files.
+     *
+     * @return the number of pages laid out.
+     */
+    protected static int layout (String mode, String regexp, String pkgroot,
+                                 Set<String> packages, File pagesFile, File outlinesFile,
+                                 File indexFile)
+        throws IOException
+    {
+        FontPicker.init(true);
+
+        String classpath = System.getProperty("java.class.path");
+        Pattern pattern = Pattern.compile(regexp);
+        List<String> names = new ArrayList<String>();
+        for (ClassEnumerator clenum = new ClassEnumerator(classpath); clenum.hasNext(); ) {
+            String cname = clenum.next();
+            if (packages.contains(ShardPlan.packageOf(cname)) &&
+                pattern.matcher(cname).matches()) {
+                names.add(cname);
+            }
+        }
+        Collections.sort(names);
+
+        IsolatedClassLoader loader = new IsolatedClassLoader(
+            Arrays.asList(classpath.split(File.pathSeparator)));
+        Visualizer viz = mode.equals("hier") ?
+            new HierarchyVisualizer() : new SummaryVisualizer();
+        viz.setPackageRoot(pkgroot);
+        viz.setClasses(new ClassLoadingStage(loader).load(
+                           names.iterator(), ClassLoadingStage.DEFAULT_LOADERS,
+                           ClassLoadingStage.DEFAULT_QUEUE));
+        loader.release();
+
+        PageStore store = new PageStore(pagesFile, PageStore.DEFAULT_CACHE);
+        try {
+            viz.setPageStore(store);
+            new ImageExporter(null, ImageExporter.DEFAULT_SCALE).layout(viz);
+            if (store.getPageCount() != viz.getPageCount()) {
+                throw new IOException("Unable to store every page [stored=" +
+                                      store.getPageCount() + ", pages=" +
+                                      viz.getPageCount() + "].");
+            }
+            store.seal();
+        } finally {
+            store.close();
+        }
+
+        DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(outlinesFile)));
+        try {
+            out.writeInt(viz.getPageCount());
+            for (int ii = 0, ll = viz.getPageCount(); ii < ll; ii++) {
+                Outline outline = viz.getOutline(ii);
+                if (outline == null) {
+                    throw new IOException("Missing outline [page=" + ii + "].");
+                }
+                outline.write(out);
+            }
+        } finally {
+            out.close();
+        }
+
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+        try {
+            viz.getSearchIndex().write(out);
+        } finally {
+            out.close();
+        }
+        return viz.getPageCount();
+    }
+
+    protected static Set<String> readPackages (File file)
+        throws IOException
+    {
+        Set<String> packages = new HashSet<String>();
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            for (String line; (line = in.readLine()) != null; ) {
+                packages.add(line);
+            }
+        } finally {
+            in.close();
+        }
+        return packages;
+    }
+}
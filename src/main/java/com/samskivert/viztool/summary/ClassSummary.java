@@ -11,20 +11,14 @@ import java.awt.font.FontRenderContext;
 import java.awt.geom.Line2D;
 import java.awt.geom.Rectangle2D;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
-import java.lang.reflect.Member;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
-
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Comparator;
-
 import com.samskivert.viztool.layout.Element;
+import com.samskivert.viztool.model.ClassRecord;
+import com.samskivert.viztool.util.DisplayList;
 import com.samskivert.viztool.util.FontPicker;
 import com.samskivert.viztool.util.LayoutUtil;
 import com.samskivert.viztool.util.RenderUtil;
+import com.samskivert.viztool.util.SearchIndex;
+import com.samskivert.viztool.util.Stats;
 
 /**
  * A class summary displays information about a particular class (specifically, the interfaces it
@@ -37,94 +31,10 @@ public class ClassSummary
     /**
      * Constructs a class summary for the specified class.
      */
-    public ClassSummary (Class<?> subject, SummaryVisualizer viz)
+    public ClassSummary (ClassRecord subject, SummaryVisualizer viz)
     {
         _viz = viz;
         _subject = subject;
-        _name = _viz.name(_subject);
-
-        // obtain information on our subject class
-        Class<?> parent = _subject.getSuperclass();
-        if (parent != null && !parent.equals(Object.class)) {
-            _parentName = _viz.name(parent);
-        }
-
-        // get the implemented interfaces
-        Class<?>[] interfaces = _subject.getInterfaces();
-        int icount = interfaces.length;
-        _interfaces = new String[icount];
-        for (int i = 0; i < icount; i++) {
-            _interfaces[i] = _viz.name(interfaces[i]);
-        }
-
-        // create a comparator that we can use to sort the fields and methods alphabetically and by
-        // staticness
-        Comparator<Member> comp = new Comparator<Member>() {
-            public int compare (Member m1, Member m2) {
-                int s1 = m1.getModifiers() & Modifier.STATIC;
-                int s2 = m2.getModifiers() & Modifier.STATIC;
-
-                // if one's static and one isn't...
-                if (s1 + s2 == Modifier.STATIC) {
-                    // put the statics after the non-statics
-                    return s1 - s2;
-
-                } else {
-                    // otherwise compare names
-                    return m1.getName().compareTo(m2.getName());
-                }
-            }
-
-            public boolean equals (Object other) {
-                return (other == this);
-            }
-        };
-
-        // get the public fields
-        Field[] fields = _subject.getDeclaredFields();
-        Arrays.sort(fields, comp);
-        ArrayList<String> fsigtypes = new ArrayList<String>();
-        ArrayList<String> fsigs = new ArrayList<String>();
-        for (int i = 0; i < fields.length; i++) {
-            Field f = fields[i];
-            if ((f.getModifiers() & Modifier.PUBLIC) != 0) {
-                fsigtypes.add(genFieldTypeSig(f));
-                fsigs.add(f.getName());
-            }
-        }
-        _fieldTypes = new String[fsigtypes.size()];
-        fsigtypes.toArray(_fieldTypes);
-        _fields = new String[fsigs.size()];
-        fsigs.toArray(_fields);
-
-        // get the public constructors and methods
-        ArrayList<String> sigrets = new ArrayList<String>();
-        ArrayList<String> sigs = new ArrayList<String>();
-        Constructor<?>[] ctors = _subject.getConstructors();
-        for (int i = 0; i < ctors.length; i++) {
-            Constructor<?> c = ctors[i];
-            // make sure it's public
-            if ((c.getModifiers() & Modifier.PUBLIC) != 0 &&
-                // skip the zero argument constructor because it's
-                // uninteresting
-                c.getParameterTypes().length > 0) {
-                sigrets.add(" ");
-                sigs.add(genConstructorSig(c));
-            }
-        }
-        Method[] methods = _subject.getDeclaredMethods();
-        Arrays.sort(methods, comp);
-        for (int i = 0; i < methods.length; i++) {
-            Method m = methods[i];
-            if ((m.getModifiers() & Modifier.PUBLIC) != 0) {
-                sigrets.add(genMethodRetSig(m));
-                sigs.add(genMethodSig(m));
-            }
-        }
-        _methodReturns = new String[sigrets.size()];
-        sigrets.toArray(_methodReturns);
-        _methods = new String[sigs.size()];
-        sigs.toArray(_methods);
     }
 
     /**
@@ -134,34 +44,44 @@ public class ClassSummary
      */
     public void layout (Graphics2D gfx)
     {
-        FontRenderContext frc = gfx.getFontRenderContext();
+        layout(gfx.getFontRenderContext());
+    }
+
+    /**
+     * Determines how much space we'll need to visualize our subject class when rendered with the
+     * supplied font render context. This may be called on any thread.
+     */
+    public void layout (FontRenderContext frc)
+    {
+        Stats.Probe probe = Stats.start(Stats.MEASURE);
+        Text text = format();
 
         // the header will be the name of this class surrounded by N points of space and a box
         Rectangle2D bounds = LayoutUtil.getTextBox(
             _subject.isInterface() ? FontPicker.getInterfaceFont() : FontPicker.getClassFont(),
-            frc, false, _name);
+            frc, false, text.name);
         double spacing = 0;
 
         // add our parent class if we've got one
-        if (_parentName != null) {
-            String subtext = "extends " + _parentName;
+        if (text.parentName != null) {
+            String subtext = "extends " + text.parentName;
             bounds = LayoutUtil.accomodate(bounds, FontPicker.getDeclaresFont(), frc,
                                            true, LayoutUtil.SUBORDINATE_INSET, subtext);
         }
 
         // add our interfaces
         bounds = LayoutUtil.accomodate(bounds, FontPicker.getImplementsFont(), frc,
-                                       true, LayoutUtil.SUBORDINATE_INSET, _interfaces);
+                                       true, LayoutUtil.SUBORDINATE_INSET, text.interfaces);
 
         // add our fields
         bounds = LayoutUtil.accomodate(
-            bounds, FontPicker.getClassFont(), frc, true, 0, _fieldTypes, _fields);
-        spacing += (_fields.length > 0) ? 2*LayoutUtil.HEADER_BORDER : 0;
+            bounds, FontPicker.getClassFont(), frc, true, 0, text.fieldTypes, text.fields);
+        spacing += (text.fields.length > 0) ? 2*LayoutUtil.HEADER_BORDER : 0;
 
         // add our constructors and methods
         bounds = LayoutUtil.accomodate(
-            bounds, FontPicker.getClassFont(), frc, true, 0, _methodReturns, _methods);
-        spacing += (_methods.length > 0) ? 2*LayoutUtil.HEADER_BORDER : 0;
+            bounds, FontPicker.getClassFont(), frc, true, 0, text.methodReturns, text.methods);
+        spacing += (text.methods.length > 0) ? 2*LayoutUtil.HEADER_BORDER : 0;
 
         // incorporate space for the gaps
         bounds.setRect(bounds.getX(), bounds.getY(),
@@ -169,39 +89,46 @@ public class ClassSummary
 
         // grab the new bounds
         _bounds = bounds;
+        probe.stop();
     }
 
     /**
-     * Renders this class summary to the specified graphics context.
+     * Records the rendering of this class summary into the specified display list, and notes the
+     * summary and each of its members in the list's search index entries.
      */
-    public void render (Graphics2D gfx)
+    public void render (DisplayList list)
     {
+        Text text = format();
+
         // figure out where we'll be rendering
         Rectangle2D bounds = getBounds();
+        list.begin(text.name);
+        String cname = _subject.getName();
+        list.index(SearchIndex.CLASS, null, cname, bounds, SearchIndex.getClassKeys(cname));
         double x = bounds.getX() + LayoutUtil.HEADER_BORDER;
         double y = bounds.getY() + LayoutUtil.HEADER_BORDER;
         double maxwid = 0, sy1 = 0, sy2 = 0;
 
         // draw the name
-        FontRenderContext frc = gfx.getFontRenderContext();
+        FontRenderContext frc = list.getFontRenderContext();
         Font font = _subject.isInterface() ?
             FontPicker.getInterfaceFont() : FontPicker.getClassFont();
-        Rectangle2D bnds = RenderUtil.renderString(gfx, frc, font, false, x, y, _name);
+        Rectangle2D bnds = RenderUtil.renderString(list, frc, font, false, x, y, text.name);
         maxwid = Math.max(maxwid, bnds.getWidth() + 2*LayoutUtil.HEADER_BORDER);
         y += bnds.getHeight();
 
         // render the parent classname
-        if (_parentName != null) {
-            bnds = RenderUtil.renderString(gfx, frc, FontPicker.getDeclaresFont(), true,
-                                           x + LayoutUtil.SUBORDINATE_INSET, y, _parentName);
+        if (text.parentName != null) {
+            bnds = RenderUtil.renderString(list, frc, FontPicker.getDeclaresFont(), true,
+                                           x + LayoutUtil.SUBORDINATE_INSET, y, text.parentName);
             maxwid = Math.max(maxwid, bnds.getWidth() + 2*LayoutUtil.HEADER_BORDER +
                               LayoutUtil.SUBORDINATE_INSET);
             y += bnds.getHeight();
         }
 
         // render our implemented interfaces
-        bnds = RenderUtil.renderStrings(gfx, frc, FontPicker.getImplementsFont(), true,
-                                        x + LayoutUtil.SUBORDINATE_INSET, y, _interfaces);
+        bnds = RenderUtil.renderStrings(list, frc, FontPicker.getImplementsFont(), true,
+                                        x + LayoutUtil.SUBORDINATE_INSET, y, text.interfaces);
         maxwid = Math.max(maxwid, bnds.getWidth() + 2*LayoutUtil.HEADER_BORDER +
                           LayoutUtil.SUBORDINATE_INSET);
         y += bnds.getHeight();
@@ -209,42 +136,55 @@ public class ClassSummary
         // stroke a box that contains the header
         Rectangle2D outline = new Rectangle2D.Double(
             bounds.getX(), bounds.getY(), maxwid, y + LayoutUtil.HEADER_BORDER - bounds.getY());
-        gfx.draw(outline);
+        list.draw(outline);
 
         // leave space for a separator
-        if (_fields.length > 0) {
+        if (text.fields.length > 0) {
             y += LayoutUtil.HEADER_BORDER;
             sy1 = y;
             y += LayoutUtil.HEADER_BORDER;
         }
 
         // render our fields
-        bnds = RenderUtil.renderStrings(
-            gfx, frc, FontPicker.getClassFont(), false, x, y, _fieldTypes, _fields);
+        Rectangle2D[] rows = new Rectangle2D[text.fields.length];
+        bnds = RenderUtil.renderStrings(list, frc, FontPicker.getClassFont(), false, x, y,
+                                        text.fieldTypes, text.fields, rows);
         maxwid = Math.max(maxwid, bnds.getWidth() + 2*LayoutUtil.HEADER_BORDER);
         y += bnds.getHeight();
+        for (int ii = 0; ii < rows.length; ii++) {
+            list.index(SearchIndex.MEMBER, cname, text.fields[ii], rows[ii], text.fields[ii]);
+        }
 
         // leave space for a separator
-        if (_methods.length > 0) {
+        if (text.methods.length > 0) {
             y += LayoutUtil.HEADER_BORDER;
             sy2 = y;
             y += LayoutUtil.HEADER_BORDER;
         }
 
         // render our constructors and methods
-        bnds = RenderUtil.renderStrings(
-            gfx, frc, FontPicker.getClassFont(), false, x, y, _methodReturns, _methods);
+        rows = new Rectangle2D[text.methods.length];
+        bnds = RenderUtil.renderStrings(list, frc, FontPicker.getClassFont(), false, x, y,
+                                        text.methodReturns, text.methods, rows);
         maxwid = Math.max(maxwid, bnds.getWidth() + 2*LayoutUtil.HEADER_BORDER);
         y += bnds.getHeight();
+        for (int ii = 0; ii < rows.length; ii++) {
+            // constructors are found via the name of their class
+            String mname = text.methodNames[ii];
+            if (mname != null) {
+                list.index(SearchIndex.MEMBER, cname, mname, rows[ii], mname);
+            }
+        }
 
         // draw our separators now that we know how wide things are
         double x1 = bounds.getX(), x2 = x1 + maxwid;
         if (sy1 > 0) {
-            gfx.draw(new Line2D.Double(x1, sy1, x2, sy1));
+            list.draw(new Line2D.Double(x1, sy1, x2, sy1));
         }
         if (sy2 > 0) {
-            gfx.draw(new Line2D.Double(x1, sy2, x2, sy2));
+            list.draw(new Line2D.Double(x1, sy2, x2, sy2));
         }
+        list.end();
     }
 
     // documentation inherited
@@ -253,6 +193,14 @@ public class ClassSummary
         return _subject.getName();
     }
 
+    /**
+     * Returns the record of the class we summarize.
+     */
+    public ClassRecord getSubject ()
+    {
+        return _subject;
+    }
+
     // documentation inherited
     public Rectangle2D getBounds ()
     {
@@ -266,85 +214,108 @@ public class ClassSummary
     }
 
     /**
-     * Generates a signature for the type of the supplied field.
+     * Formats the text displayed by this summary. The strings come from our visualizer's name
+     * table, so this allocates only the arrays that hold them.
      */
-    public String genFieldTypeSig (Field field)
+    protected Text format ()
     {
-        StringBuffer buf = new StringBuffer();
-        if ((field.getModifiers() & Modifier.STATIC) != 0) {
-            buf.append("static ");
+        NameTable names = _viz.getNames();
+        Text text = new Text();
+        text.name = names.type(_subject.getNameSymbol());
+
+        // obtain information on our subject class
+        ClassRecord parent = _subject.getSuperclass();
+        if (parent != null && !parent.getName().equals("java.lang.Object")) {
+            text.parentName = names.type(parent.getNameSymbol());
         }
-        buf.append(_viz.name(field.getType())).append(" ");
-        return buf.toString();
-    }
 
-    /**
-     * Generates a signature for the supplied constructor.
-     */
-    public String genConstructorSig (Constructor<?> ctor)
-    {
-        StringBuffer buf = new StringBuffer();
-        buf.append(_viz.name(ctor.getDeclaringClass())).append(" (");
-        Class<?>[] ptypes = ctor.getParameterTypes();
-        for (int i = 0; i < ptypes.length; i++) {
-            if (i > 0) {
-                buf.append(", ");
+        // get the implemented interfaces
+        int icount = _subject.getInterfaceCount();
+        text.interfaces = new String[icount];
+        for (int i = 0; i < icount; i++) {
+            text.interfaces[i] = names.type(_subject.getInterface(i));
+        }
+
+        // count up the public fields, constructors and methods that we'll display
+        int fcount = 0, mcount = 0, members = _subject.getMemberCount();
+        for (int i = 0; i < members; i++) {
+            switch (_subject.getMemberKind(i)) {
+            case ClassRecord.FIELD:
+                fcount++;
+                break;
+            case ClassRecord.CONSTRUCTOR:
+                // skip the zero argument constructor because it's uninteresting
+                if (_subject.getParameterCount(i) > 0) {
+                    mcount++;
+                }
+                break;
+            case ClassRecord.METHOD:
+                mcount++;
+                break;
             }
-            buf.append(_viz.name(ptypes[i]));
         }
-        buf.append(")");
-        Class<?>[] etypes = ctor.getExceptionTypes();
-        if (etypes.length > 0) {
-            buf.append(" throws ");
-            for (int i = 0; i < etypes.length; i++) {
-                if (i > 0) {
-                    buf.append(", ");
+
+        // and format them (they come to us already sorted)
+        text.fieldTypes = new String[fcount];
+        text.fields = new String[fcount];
+        text.methodReturns = new String[mcount];
+        text.methods = new String[mcount];
+        text.methodNames = new String[mcount];
+        fcount = mcount = 0;
+        for (int i = 0; i < members; i++) {
+            switch (_subject.getMemberKind(i)) {
+            case ClassRecord.FIELD:
+                text.fieldTypes[fcount] = genFieldTypeSig(i);
+                text.fields[fcount++] = names.text(_subject.getMemberName(i));
+                break;
+
+            case ClassRecord.CONSTRUCTOR:
+                if (_subject.getParameterCount(i) > 0) {
+                    text.methodReturns[mcount] = " ";
+                    text.methods[mcount++] = genConstructorSig(i);
                 }
-                buf.append(_viz.name(etypes[i]));
+                break;
+
+            case ClassRecord.METHOD:
+                text.methodReturns[mcount] = genMethodRetSig(i);
+                text.methodNames[mcount] = names.text(_subject.getMemberName(i));
+                text.methods[mcount++] = genMethodSig(i);
+                break;
             }
         }
-        return buf.toString();
+        return text;
     }
 
     /**
-     * Generates a signature for the return value of the supplied method.
+     * Returns the signature for the type of the specified field.
      */
-    public String genMethodRetSig (Method method)
+    public String genFieldTypeSig (int member)
     {
-        StringBuffer buf = new StringBuffer();
-        if ((method.getModifiers() & Modifier.STATIC) != 0) {
-            buf.append("static ");
-        }
-        buf.append(_viz.name(method.getReturnType()));
-        return buf.toString();
+        return _viz.getNames().fieldType(_subject, member);
     }
 
     /**
-     * Generates a signature for the supplied method (minus return type).
+     * Returns the signature for the specified constructor.
      */
-    public String genMethodSig (Method method)
+    public String genConstructorSig (int member)
     {
-        StringBuffer buf = new StringBuffer();
-        buf.append(method.getName()).append(" (");
-        Class<?>[] ptypes = method.getParameterTypes();
-        for (int i = 0; i < ptypes.length; i++) {
-            if (i > 0) {
-                buf.append(", ");
-            }
-            buf.append(_viz.name(ptypes[i]));
-        }
-        buf.append(")");
-        Class<?>[] etypes = method.getExceptionTypes();
-        if (etypes.length > 0) {
-            buf.append(" throws ");
-            for (int i = 0; i < etypes.length; i++) {
-                if (i > 0) {
-                    buf.append(", ");
-                }
-                buf.append(_viz.name(etypes[i]));
-            }
-        }
-        return buf.toString();
+        return _viz.getNames().signature(_subject, member);
+    }
+
+    /**
+     * Returns the signature for the return value of the specified method.
+     */
+    public String genMethodRetSig (int member)
+    {
+        return _viz.getNames().returnType(_subject, member);
+    }
+
+    /**
+     * Returns the signature for the specified method (minus return type).
+     */
+    public String genMethodSig (int member)
+    {
+        return _viz.getNames().signature(_subject, member);
     }
 
     public String toString ()
@@ -357,31 +328,37 @@ public class ClassSummary
     protected SummaryVisualizer _viz;
 
     /** The class for which we're generating a summary visualization. */
-    protected Class<?> _subject;
+    protected ClassRecord _subject;
+
+    /** Our bounds. */
+    protected Rectangle2D _bounds = new Rectangle2D.Double();
 
-    /** The cleaned up name of the class we're summarizing. */
-    protected String _name;
+    /** The text displayed by a summary. We format this when needed rather than holding on to it
+     * for the lifetime of the summary. */
+    protected static class Text
+    {
+        /** The cleaned up name of the class we're summarizing. */
+        public String name;
 
-    /** The name of our parent class or null if we don't have an
-     * interesting parent class. */
-    protected String _parentName;
+        /** The name of our parent class or null if we don't have an interesting parent class. */
+        public String parentName;
 
-    /** The names of interfaces that we implement. */
-    protected String[] _interfaces;
+        /** The names of interfaces that we implement. */
+        public String[] interfaces;
 
-    /** The types of our public fields. */
-    protected String[] _fieldTypes;
+        /** The types of our public fields. */
+        public String[] fieldTypes;
 
-    /** The names of our public fields. */
-    protected String[] _fields;
+        /** The names of our public fields. */
+        public String[] fields;
 
-    /** The return types of our public constructors and methods. */
-    protected String[] _methodReturns;
+        /** The return types of our public constructors and methods. */
+        public String[] methodReturns;
 
-    /** The signatures of our public constructors and methods (minus
-     * return type). */
-    protected String[] _methods;
+        /** The signatures of our public constructors and methods (minus return type). */
+        public String[] methods;
 
-    /** Our bounds. */
-    protected Rectangle2D _bounds = new Rectangle2D.Double();
+        /** The names of our public methods (null for constructors). */
+        public String[] methodNames;
+    }
 }
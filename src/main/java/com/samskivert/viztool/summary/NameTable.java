@@ -0,0 +1,320 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool.summary;
+
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+
+import com.samskivert.viztool.model.ClassRecord;
+import com.samskivert.viztool.model.SymbolTable;
+
+/**
+ * Memoizes the text displayed by a {@link SummaryVisualizer}'s class summaries. Each type is
+ * formatted (via {@link SummaryVisualizer#name(String)}) only once, and members with identical
+ * signatures (the many <code>equals (Object)</code> methods, say) share a single signature string,
+ * so summaries can be formatted over and over again (every time they are laid out or rendered)
+ * without allocating new strings. A name table is tied to the symbol table of the records it
+ * formats and to the configuration of its visualizer at the time it was created. It is safe for
+ * use by multiple threads.
+ */
+public class NameTable
+{
+    /**
+     * Creates a name table for records whose names are stored in the supplied symbol table.
+     */
+    public NameTable (SummaryVisualizer viz, SymbolTable symbols)
+    {
+        _viz = viz;
+        _symbols = symbols;
+    }
+
+    /**
+     * Returns the unadorned text of the specified symbol.
+     */
+    public synchronized String text (int symbol)
+    {
+        _lookups++;
+        _texts = ensure(_texts, symbol);
+        String text = _texts[symbol];
+        if (text == null) {
+            _texts[symbol] = text = _symbols.get(symbol);
+            _created++;
+        }
+        return text;
+    }
+
+    /**
+     * Returns the formatted name of the specified type symbol.
+     */
+    public synchronized String type (int symbol)
+    {
+        _lookups++;
+        _types = ensure(_types, symbol);
+        String type = _types[symbol];
+        if (type == null) {
+            _types[symbol] = type = _viz.name(_symbols.get(symbol));
+            _created++;
+        }
+        return type;
+    }
+
+    /**
+     * Returns the text displayed for the type of the specified field: the formatted type, preceded
+     * by <code>static</code> if appropriate and followed by a space.
+     */
+    public synchronized String fieldType (ClassRecord record, int member)
+    {
+        return memberType(record, member, true);
+    }
+
+    /**
+     * Returns the text displayed for the return type of the specified method: the formatted type,
+     * preceded by <code>static</code> if appropriate.
+     */
+    public synchronized String returnType (ClassRecord record, int member)
+    {
+        return memberType(record, member, false);
+    }
+
+    /**
+     * Returns the signature (minus return type) of the specified constructor or method.
+     */
+    public synchronized String signature (ClassRecord record, int member)
+    {
+        _lookups++;
+
+        // hash the parts of the signature that determine its text
+        int head = head(record, member), hash = head;
+        int pcount = record.getParameterCount(member);
+        hash = hash*31 + pcount;
+        for (int ii = 0; ii < pcount; ii++) {
+            hash = hash*31 + record.getParameterType(member, ii);
+        }
+        int ecount = record.getExceptionCount(member);
+        hash = hash*31 + ecount;
+        for (int ii = 0; ii < ecount; ii++) {
+            hash = hash*31 + record.getExceptionType(member, ii);
+        }
+
+        // look for an existing identical signature
+        int mask = _table.length-1, slot = (hash ^ (hash >>> 16)) & mask;
+        for (; _table[slot] != EMPTY; slot = (slot+1) & mask) {
+            int sig = _table[slot];
+            if (_sigHashes[sig] == hash && matches(_sigKeys[sig], head, record, member)) {
+                return _sigs[sig];
+            }
+        }
+
+        // none, so create one
+        int sig = _sigCount++;
+        if (sig == _sigs.length) {
+            String[] sigs = new String[sig*2];
+            System.arraycopy(_sigs, 0, sigs, 0, sig);
+            _sigs = sigs;
+            int[][] keys = new int[sig*2][];
+            System.arraycopy(_sigKeys, 0, keys, 0, sig);
+            _sigKeys = keys;
+            int[] hashes = new int[sig*2];
+            System.arraycopy(_sigHashes, 0, hashes, 0, sig);
+            _sigHashes = hashes;
+        }
+        _sigs[sig] = formatSignature(record, member);
+        _sigKeys[sig] = key(head, record, member);
+        _sigHashes[sig] = hash;
+        _table[slot] = sig;
+        if (_sigCount > _table.length/2) {
+            rehash();
+        }
+        _created++;
+        return _sigs[sig];
+    }
+
+    /**
+     * Returns the number of name lookups performed via this table.
+     */
+    public synchronized int getLookups ()
+    {
+        return _lookups;
+    }
+
+    /**
+     * Returns the number of strings this table has created in satisfying those lookups.
+     */
+    public synchronized int getCreated ()
+    {
+        return _created;
+    }
+
+    public synchronized String toString ()
+    {
+        return "[lookups=" + _lookups + ", created=" + _created +
+            ", signatures=" + _sigCount + "]";
+    }
+
+    protected String memberType (ClassRecord record, int member, boolean field)
+    {
+        _lookups++;
+        boolean isStatic = (record.getMemberModifiers(member) & Modifier.STATIC) != 0;
+        int symbol = record.getMemberType(member);
+        int variant = (isStatic ? 1 : 0) + (field ? 2 : 0);
+        String[] types = _memberTypes[variant] = ensure(_memberTypes[variant], symbol);
+        String type = types[symbol];
+        if (type == null) {
+            StringBuilder buf = new StringBuilder();
+            if (isStatic) {
+                buf.append("static ");
+            }
+            buf.append(type(symbol));
+            if (field) {
+                buf.append(" ");
+            }
+            types[symbol] = type = buf.toString();
+            _created++;
+        }
+        return type;
+    }
+
+    protected String formatSignature (ClassRecord record, int member)
+    {
+        StringBuilder buf = new StringBuilder();
+        if (record.getMemberKind(member) == ClassRecord.CONSTRUCTOR) {
+            buf.append(type(record.getNameSymbol()));
+        } else {
+            buf.append(text(record.getMemberName(member)));
+        }
+        buf.append(" (");
+        for (int ii = 0, ll = record.getParameterCount(member); ii < ll; ii++) {
+            if (ii > 0) {
+                buf.append(", ");
+            }
+            buf.append(type(record.getParameterType(member, ii)));
+        }
+        buf.append(")");
+        int ecount = record.getExceptionCount(member);
+        if (ecount > 0) {
+            buf.append(" throws ");
+            for (int ii = 0; ii < ecount; ii++) {
+                if (ii > 0) {
+                    buf.append(", ");
+                }
+                buf.append(type(record.getExceptionType(member, ii)));
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Returns the first element of a signature's key: the symbol of the name that starts it and
+     * whether that name is a (formatted) class name or a method name.
+     */
+    protected static int head (ClassRecord record, int member)
+    {
+        boolean ctor = (record.getMemberKind(member) == ClassRecord.CONSTRUCTOR);
+        int name = ctor ? record.getNameSymbol() : record.getMemberName(member);
+        return name*2 + (ctor ? 1 : 0);
+    }
+
+    /**
+     * Creates the key that identifies a signature: its head, parameter count, parameter types,
+     * exception count and exception types.
+     */
+    protected static int[] key (int head, ClassRecord record, int member)
+    {
+        int pcount = record.getParameterCount(member);
+        int ecount = record.getExceptionCount(member);
+        int[] key = new int[3 + pcount + ecount];
+        key[0] = head;
+        key[1] = pcount;
+        for (int ii = 0; ii < pcount; ii++) {
+            key[2+ii] = record.getParameterType(member, ii);
+        }
+        key[2+pcount] = ecount;
+        for (int ii = 0; ii < ecount; ii++) {
+            key[3+pcount+ii] = record.getExceptionType(member, ii);
+        }
+        return key;
+    }
+
+    protected static boolean matches (int[] key, int head, ClassRecord record, int member)
+    {
+        int pcount = record.getParameterCount(member);
+        int ecount = record.getExceptionCount(member);
+        if (key[0] != head || key[1] != pcount || key.length != 3 + pcount + ecount ||
+            key[2+pcount] != ecount) {
+            return false;
+        }
+        for (int ii = 0; ii < pcount; ii++) {
+            if (key[2+ii] != record.getParameterType(member, ii)) {
+                return false;
+            }
+        }
+        for (int ii = 0; ii < ecount; ii++) {
+            if (key[3+pcount+ii] != record.getExceptionType(member, ii)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected void rehash ()
+    {
+        int[] table = newTable(_table.length*2);
+        int mask = table.length-1;
+        for (int sig = 0; sig < _sigCount; sig++) {
+            int hash = _sigHashes[sig], slot = (hash ^ (hash >>> 16)) & mask;
+            while (table[slot] != EMPTY) {
+                slot = (slot+1) & mask;
+            }
+            table[slot] = sig;
+        }
+        _table = table;
+    }
+
+    /**
+     * Returns the supplied array or a larger copy of it if it can't hold the specified symbol.
+     */
+    protected String[] ensure (String[] values, int symbol)
+    {
+        if (values == null) {
+            return new String[Math.max(_symbols.size(), symbol+1)];
+        } else if (symbol < values.length) {
+            return values;
+        }
+        String[] nvalues = new String[Math.max(values.length*2, symbol+1)];
+        System.arraycopy(values, 0, nvalues, 0, values.length);
+        return nvalues;
+    }
+
+    protected SummaryVisualizer _viz;
+    protected SymbolTable _symbols;
+
+    /** Symbol text and formatted type names, indexed by symbol. */
+    protected String[] _texts, _types;
+
+    /** Formatted field and return types, indexed by field/static variant and then by symbol. */
+    protected String[][] _memberTypes = new String[4][];
+
+    /** Our shared signatures, the keys that identify them and the hash codes of those keys. */
+    protected String[] _sigs = new String[256];
+    protected int[][] _sigKeys = new int[256][];
+    protected int[] _sigHashes = new int[256];
+    protected int _sigCount;
+
+    /** An open addressed hash table mapping signature keys to signatures. */
+    protected int[] _table = newTable(512);
+
+    /** Statistics on our effectiveness. */
+    protected int _lookups, _created;
+
+    protected static int[] newTable (int size)
+    {
+        int[] table = new int[size];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+
+    protected static final int EMPTY = -1;
+}
@@ -8,38 +8,90 @@ package com.samskivert.viztool.summary;
 import java.awt.BasicStroke;
 import java.awt.Graphics2D;
 import java.awt.Graphics;
+import java.awt.font.FontRenderContext;
 import java.awt.geom.Rectangle2D;
 
 import java.awt.print.PageFormat;
 import java.awt.print.PrinterException;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
+import com.samskivert.viztool.FittableVisualizer;
+import com.samskivert.viztool.IncrementalVisualizer;
 import com.samskivert.viztool.Log;
-import com.samskivert.viztool.Visualizer;
+import com.samskivert.viztool.PageSink;
 import com.samskivert.viztool.layout.PackedColumnElementLayout;
+import com.samskivert.viztool.model.ClassModel;
+import com.samskivert.viztool.model.ClassRecord;
+import com.samskivert.viztool.util.DisplayList;
+import com.samskivert.viztool.util.Outline;
+import com.samskivert.viztool.util.PageLists;
+import com.samskivert.viztool.util.PageStore;
+import com.samskivert.viztool.util.SearchIndex;
+import com.samskivert.viztool.util.Pipeline;
+import com.samskivert.viztool.util.Events;
+import com.samskivert.viztool.util.Stats;
 
 /**
  * The summary visualizer displays summaries of the enumerated classes.
+ *
+ * <p> Summaries are independent of one another, so the summary visualizer can operate
+ * incrementally: when so configured it introspects, measures and packs summaries only as they're
+ * needed to fill the next page and discards each page once it has been rendered. Only a page or so
+ * of summaries is held in memory regardless of the number of classes being visualized. Classes
+ * should be supplied in order of name, which is the order in which they are arranged on the pages.
+ * Unlike a regular layout, which can backfill a page with any later summary that fits, an
+ * incremental layout only backfills from the summaries that overflowed the current page.
+ *
+ * <p> Each page is recorded into a {@link DisplayList} when it is laid out, and painting or
+ * printing the page just replays that list.
  */
-public class SummaryVisualizer implements Visualizer
+public class SummaryVisualizer implements IncrementalVisualizer, FittableVisualizer
 {
+    /** The default number of threads used to measure summaries. */
+    public static final int DEFAULT_MEASURERS = Runtime.getRuntime().availableProcessors();
+
     // documentation inherited
     public void setPackageRoot (String pkgroot)
     {
         _pkgroot = pkgroot;
+        _names = null;
+    }
+
+    // documentation inherited
+    public void setIncremental (boolean incremental)
+    {
+        _incremental = incremental;
     }
 
     public void setClasses (Iterator<Class<?>> iter)
     {
         // remove any old summaries
         _summaries.clear();
+        _model = (_sharedModel != null) ? _sharedModel : new ClassModel(true);
+        _names = null;
+
+        // if we're operating incrementally, we'll create summaries as we need them
+        if (_incremental) {
+            _classes = iter;
+            return;
+        }
 
         // create the new summaries
+        Stats.Probe probe = Stats.start(Stats.SET_CLASSES);
         while (iter.hasNext()) {
-            _summaries.add(new ClassSummary(iter.next(), this));
+            _summaries.add(new ClassSummary(_model.getRecord(iter.next(), true), this));
         }
+        probe.stop();
+    }
+
+    // documentation inherited
+    public void setModel (ClassModel model)
+    {
+        _sharedModel = model;
     }
 
     /**
@@ -50,6 +102,21 @@ public class SummaryVisualizer implements Visualizer
     public void setDisplayPackageNames (boolean displayPackageNames)
     {
         _displayPackageNames = displayPackageNames;
+        _names = null;
+    }
+
+    // documentation inherited
+    public void setPageStore (PageStore store)
+    {
+        _store = store;
+    }
+
+    /**
+     * Configures the number of threads used to measure the class summaries during layout.
+     */
+    public void setMeasureThreads (int measureThreads)
+    {
+        _measureThreads = measureThreads;
     }
 
     /**
@@ -57,10 +124,24 @@ public class SummaryVisualizer implements Visualizer
      */
     public void layout (Graphics2D gfx, double x, double y, double width, double height)
     {
+        // we're no longer laid out for the page format with which we last printed
+        _format = null;
+
+        // if we're incremental, lay out everything we've yet to lay out and keep it around
+        if (_incremental) {
+            try {
+                layout(gfx, x, y, width, height, null);
+            } catch (IOException ioe) {
+                // not possible without a sink
+            }
+            return;
+        }
+
         // first layout all of our summaries (giving them dimensions)
-        for (int i = 0; i < _summaries.size(); i++) {
-            ClassSummary sum = _summaries.get(i);
-            sum.layout(gfx);
+        Stats.Probe probe = Stats.start(Stats.LAYOUT);
+        measure(gfx.getFontRenderContext());
+        if (Thread.currentThread().isInterrupted()) {
+            return; // we've been abandoned
         }
 
         // now arrange our summaries onto pages
@@ -71,11 +152,17 @@ public class SummaryVisualizer implements Visualizer
         elay.setSortByHeight(false);
 
         while (list.size() > 0) {
+            if (Thread.currentThread().isInterrupted()) {
+                return; // we've been abandoned
+            }
+
             // lay out the elements that fit on this page
+            Events.Event event = Events.begin(Events.SUMMARY_PAGE);
             elay.layout(list, width, height, next);
 
             // remove the overflowed elements from the list for this page
             list.removeAll(next);
+            event.commit(firstName(list), _pages.size(), list.size());
 
             // append this page to the pages list
             _pages.add(list);
@@ -87,13 +174,227 @@ public class SummaryVisualizer implements Visualizer
 
         // finally adjust all of the bounds of the class summaries by the
         // x and y offset of the page
-        for (int i = 0; i < _summaries.size(); i++) {
-            ClassSummary sum = _summaries.get(i);
+        offset(_summaries, x, y);
+
+        // and record the display list for each page
+        _lists = new PageLists(_store);
+        for (ArrayList<ClassSummary> page : _pages) {
+            if (Thread.currentThread().isInterrupted()) {
+                return; // we've been abandoned
+            }
+            _lists.add(record(page, gfx.getFontRenderContext()));
+        }
+        probe.stop();
+        Log.debug("Laid out summaries [pages=" + _pages.size() + ", names=" + _names + "].");
+    }
+
+    // documentation inherited
+    public void layout (Graphics2D gfx, double x, double y, double width, double height,
+                        PageSink sink)
+        throws IOException
+    {
+        if (!_incremental) {
+            layout(gfx, x, y, width, height);
+            for (int ii = 0; ii < _pages.size(); ii++) {
+                sink.pageReady(this, ii);
+            }
+            return;
+        }
+
+        // our classes can only be streamed through once
+        if (_classes == null) {
+            Log.warning("Incremental visualization can only be laid out once.");
+            return;
+        }
+
+        // introspect and measure the summaries on our measuring threads as we need them (the
+        // time spent rendering pages into the sink is included in that of the layout)
+        Stats.Probe probe = Stats.start(Stats.LAYOUT);
+        Iterator<ClassSummary> sums = summarize(_classes, gfx.getFontRenderContext());
+        _classes = null;
+        _pages = new ArrayList<ArrayList<ClassSummary>>();
+        _lists = new PageLists(_store);
+
+        PackedColumnElementLayout elay = new PackedColumnElementLayout();
+        elay.setSortByHeight(false);
+        double pageArea = width * height;
+
+        ArrayList<ClassSummary> pending = new ArrayList<ClassSummary>();
+        double area = 0;
+        Events.Event event = null;
+        try {
+            while (true) {
+                if (event == null) {
+                    event = Events.begin(Events.SUMMARY_PAGE);
+                }
+
+                // pull in summaries until we have more than could possibly fit on a page
+                while (area <= pageArea && sums.hasNext()) {
+                    area += append(pending, sums.next());
+                }
+                if (pending.isEmpty()) {
+                    break;
+                }
+
+                // lay out the pending summaries; if they all fit, there may be room for more
+                ArrayList<ClassSummary> next = new ArrayList<ClassSummary>();
+                elay.layout(pending, width, height, next);
+                if (next.isEmpty() && sums.hasNext()) {
+                    area += append(pending, sums.next());
+                    continue;
+                }
+
+                // otherwise, this page is complete
+                pending.removeAll(next);
+                offset(pending, x, y);
+                int pageIndex = _pages.size();
+                event.commit(firstName(pending), pageIndex, pending.size());
+                event = null;
+                _pages.add(pending);
+                _lists.add(record(pending, gfx.getFontRenderContext()));
+                if (sink != null) {
+                    sink.pageReady(this, pageIndex);
+                    // the sink has rendered the page, so we can let it go
+                    _pages.set(pageIndex, null);
+                    _lists.set(pageIndex, null);
+                }
+
+                // the overflow starts off the next page
+                pending = next;
+                area = 0;
+                for (ClassSummary sum : pending) {
+                    area += sum.getBounds().getWidth() * sum.getBounds().getHeight();
+                }
+            }
+        } finally {
+            // if we stopped early (due to a failing sink, say), stop introspecting as well
+            Pipeline.close(sums);
+        }
+        probe.stop();
+    }
+
+    // documentation inherited
+    public void measure (Graphics2D gfx)
+    {
+        if (!_incremental) {
+            measure(gfx.getFontRenderContext());
+        }
+    }
+
+    // documentation inherited
+    public int countPages (Graphics2D gfx, double width, double height)
+    {
+        // an incremental visualizer doesn't have its summaries until it lays them out
+        if (_incremental) {
+            return -1;
+        }
+        for (ClassSummary sum : _summaries) {
+            Rectangle2D b = sum.getBounds();
+            if (b.getWidth() > width || b.getHeight() > height) {
+                return Integer.MAX_VALUE;
+            }
+        }
+
+        // arrange the summaries just as layout does, but record nothing
+        PackedColumnElementLayout elay = new PackedColumnElementLayout();
+        elay.setSortByHeight(false);
+        ArrayList<ClassSummary> list = new ArrayList<ClassSummary>(_summaries);
+        int pages = 0;
+        while (list.size() > 0) {
+            ArrayList<ClassSummary> next = new ArrayList<ClassSummary>();
+            elay.layout(list, width, height, next);
+            list = next;
+            pages++;
+        }
+        return pages;
+    }
+
+    /**
+     * Returns an iterator over summaries of the supplied classes, measured for the supplied font
+     * render context. The summaries are created on our measuring threads.
+     */
+    protected Iterator<ClassSummary> summarize (
+        Iterator<Class<?>> classes, final FontRenderContext frc)
+    {
+        Pipeline.Stage<Class<?>,ClassSummary> stage = new Pipeline.Stage<Class<?>,ClassSummary>() {
+            public ClassSummary process (Class<?> clazz) {
+                ClassSummary sum = new ClassSummary(
+                    _model.getRecord(clazz, true), SummaryVisualizer.this);
+                sum.layout(frc);
+                return sum;
+            }
+        };
+        return new Pipeline<Class<?>,ClassSummary>(
+            "viztool-summarize", classes, stage, _measureThreads, STREAM_WINDOW);
+    }
+
+    /**
+     * Returns the name of the first class in the supplied list of summaries (for reporting).
+     */
+    protected static String firstName (List<ClassSummary> sums)
+    {
+        return sums.isEmpty() ? null : sums.get(0).getName();
+    }
+
+    /**
+     * Appends the supplied summary to the list and returns the area it occupies.
+     */
+    protected static double append (List<ClassSummary> list, ClassSummary sum)
+    {
+        list.add(sum);
+        Rectangle2D b = sum.getBounds();
+        return b.getWidth() * b.getHeight();
+    }
+
+    /**
+     * Offsets the bounds of the supplied summaries by the specified amount.
+     */
+    protected static void offset (List<ClassSummary> sums, double x, double y)
+    {
+        for (ClassSummary sum : sums) {
             Rectangle2D b = sum.getBounds();
             sum.setBounds(b.getX()+x, b.getY()+y, b.getWidth(), b.getHeight());
         }
     }
 
+    /**
+     * Measures all of our summaries. Summaries are measured independently of one another, so we
+     * spread them across our measuring threads. If the calling thread is interrupted, we stop
+     * measuring, leaving the remaining summaries unmeasured.
+     */
+    protected void measure (final FontRenderContext frc)
+    {
+        if (_measureThreads <= 1) {
+            for (ClassSummary sum : _summaries) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                sum.layout(frc);
+            }
+            return;
+        }
+
+        Pipeline.Stage<ClassSummary,ClassSummary> stage =
+            new Pipeline.Stage<ClassSummary,ClassSummary>() {
+            public ClassSummary process (ClassSummary sum) {
+                sum.layout(frc);
+                return sum;
+            }
+        };
+        Iterator<ClassSummary> measured = new Pipeline<ClassSummary,ClassSummary>(
+            "viztool-measure", _summaries.iterator(), stage, _measureThreads, _summaries.size());
+        try {
+            while (measured.hasNext()) {
+                measured.next();
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+            }
+        } finally {
+            Pipeline.close(measured);
+        }
+    }
+
     /**
      * Lays out and renders each of the classes that make up this package
      * summary visualization.
@@ -105,27 +406,30 @@ public class SummaryVisualizer implements Visualizer
 
         // relay things out if the page format has changed or if we've never been laid out
         if (!pf.equals(_format) || _pages == null) {
-            // keep this around
-            _format = pf;
-
-            // and do the layout
             layout(gfx, pf.getImageableX(), pf.getImageableY(),
                    pf.getImageableWidth(), pf.getImageableHeight());
+
+            // keep this around
+            _format = pf;
         }
 
         // adjust the stroke
         gfx.setStroke(new BasicStroke(0.1f));
 
         // make sure we're rendering a page that we have
-        if (pageIndex < 0 || pageIndex >= _pages.size()) {
+        DisplayList list = (pageIndex < 0 || pageIndex >= _pages.size()) ? null :
+            getDisplayList(pageIndex, gfx.getFontRenderContext());
+        if (list == null) {
             return NO_SUCH_PAGE;
         }
 
-        // render the summaries on the requested page
-        ArrayList<?> list = _pages.get(pageIndex);
-        for (int i = 0; i < list.size(); i++) {
-            ((ClassSummary)list.get(i)).render(gfx);
-        }
+        // replay the requested page
+        Stats.Probe probe = Stats.start(Stats.RENDER);
+        Events.Event event = Events.begin(Events.RENDER);
+        list.replay(gfx);
+        event.commit("summary", pageIndex, list.size());
+        Stats.count(Stats.PAGES_RENDERED);
+        probe.stop();
         return PAGE_EXISTS;
     }
 
@@ -147,14 +451,61 @@ public class SummaryVisualizer implements Visualizer
             return;
         }
 
+        // incremental pages are discarded once they've been handed off
+        DisplayList list = getDisplayList(pageIndex, gfx.getFontRenderContext());
+        if (list == null) {
+            Log.info("Requested to render discarded page [index=" + pageIndex + "].");
+            return;
+        }
+
         // adjust the stroke
         gfx.setStroke(new BasicStroke(0.1f));
 
-        // render the summaries on the requested page
-        ArrayList<?> list = _pages.get(pageIndex);
-        for (int i = 0; i < list.size(); i++) {
-            ((ClassSummary)list.get(i)).render(gfx);
+        // replay the requested page
+        Stats.Probe probe = Stats.start(Stats.RENDER);
+        Events.Event event = Events.begin(Events.RENDER);
+        list.replay(gfx);
+        event.commit("summary", pageIndex, list.size());
+        Stats.count(Stats.PAGES_RENDERED);
+        probe.stop();
+    }
+
+    // documentation inherited from interface
+    public Outline getOutline (int pageIndex)
+    {
+        return (_lists == null) ? null : _lists.getOutline(pageIndex);
+    }
+
+    // documentation inherited from interface
+    public SearchIndex getSearchIndex ()
+    {
+        return (_lists == null) ? null : _lists.getSearchIndex();
+    }
+
+    /**
+     * Returns the display list for the specified page, rerecording it if it was recorded for a
+     * font render context other than the one supplied, or loading it from our page store. Returns
+     * null if the page was discarded.
+     */
+    protected synchronized DisplayList getDisplayList (int pageIndex, FontRenderContext frc)
+    {
+        DisplayList list = _lists.get(pageIndex, frc);
+        if (list != null && !list.isCompatible(frc)) {
+            _lists.set(pageIndex, list = record(_pages.get(pageIndex), frc));
+        }
+        return list;
+    }
+
+    /**
+     * Records the rendering of the supplied page of summaries.
+     */
+    protected DisplayList record (List<ClassSummary> page, FontRenderContext frc)
+    {
+        DisplayList list = new DisplayList(frc);
+        for (ClassSummary sum : page) {
+            sum.render(list);
         }
+        return list;
     }
 
     /**
@@ -168,17 +519,37 @@ public class SummaryVisualizer implements Visualizer
         return (_pages == null) ? -1 : _pages.size();
     }
 
+    /**
+     * Returns the table via which our summaries obtain their (formatted) names and signatures.
+     * The table is recreated whenever our classes or naming configuration change.
+     */
+    public synchronized NameTable getNames ()
+    {
+        if (_names == null) {
+            _names = new NameTable(this, _model.getSymbols());
+        }
+        return _names;
+    }
+
     /**
      * Cleans up a fully qualified class name according to our
      * configuration and the package root.
      */
     public String name (Class<?> clazz)
     {
-        if (clazz.isArray()) {
-            return name(clazz.getComponentType()) + "[]";
+        return name(ClassRecord.typeName(clazz));
+    }
+
+    /**
+     * Cleans up a fully qualified type name (in source form, as supplied by {@link ClassRecord})
+     * according to our configuration and the package root.
+     */
+    public String name (String name)
+    {
+        if (name.endsWith("[]")) {
+            return name(name.substring(0, name.length()-2)) + "[]";
         }
 
-        String name = clazz.getName();
         if (_displayPackageNames) {
             if (name.startsWith(_pkgroot)) {
                 return "." + name.substring(_pkgroot.length());
@@ -195,10 +566,31 @@ public class SummaryVisualizer implements Visualizer
     }
 
     protected String _pkgroot = "";
+    protected ClassModel _model;
+
+    /** The model configured via {@link #setModel}, if any. */
+    protected ClassModel _sharedModel;
+    protected NameTable _names;
     protected ArrayList<ClassSummary> _summaries = new ArrayList<ClassSummary>();
     protected ArrayList<ArrayList<ClassSummary>> _pages;
+
+    /** The display list for each of our pages. */
+    protected PageLists _lists;
+
+    /** The store in which we keep our pages, or null if we keep them in memory. */
+    protected PageStore _store;
     protected PageFormat _format;
     protected boolean _displayPackageNames = false;
+    protected int _measureThreads = DEFAULT_MEASURERS;
+
+    /** Whether we're operating incrementally. */
+    protected boolean _incremental;
+
+    /** The classes yet to be summarized when we're operating incrementally. */
+    protected Iterator<Class<?>> _classes;
+
+    /** The number of summaries that may be prepared ahead of an incremental layout. */
+    protected static final int STREAM_WINDOW = 64;
 
     protected static final int GAP = 72/4;
 }
@@ -0,0 +1,685 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool.util;
+
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.font.FontRenderContext;
+import java.awt.font.TextLayout;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A retained sequence of rendering primitives (shaped text, stroked shapes and translations) that
+ * makes up a laid out page. The visualizers record a page's display list once, when it is laid
+ * out, and then replay it into whatever graphics context needs the page (the screen, a printer, an
+ * image) without running any of their layout or formatting logic again.
+ *
+ * <p> Text is recorded as {@link TextLayout}s, which are shaped for the font render context with
+ * which the list was recorded. A list should only be replayed into a graphics context with a
+ * compatible font render context (see {@link #isCompatible}); the visualizers rerecord a page for
+ * any other context. A list recorded at one scale is compatible with contexts at any other, so a
+ * page recorded once can be replayed under the transforms of every zoom level of a viewer. Because
+ * the list also retains the text and font of each of its text runs, it can be written out and
+ * read back in by a {@link PageStore}.
+ */
+public class DisplayList
+{
+    /**
+     * Creates an empty display list whose text will be shaped for the supplied context.
+     */
+    public DisplayList (FontRenderContext frc)
+    {
+        _frc = frc;
+    }
+
+    /**
+     * Returns the font render context for which this list's text is shaped.
+     */
+    public FontRenderContext getFontRenderContext ()
+    {
+        return _frc;
+    }
+
+    /**
+     * Returns true if this list can be faithfully replayed into a graphics context with the
+     * supplied font render context. The contexts' transforms are not compared: text shaped for
+     * one scale and replayed under another is scaled along with the rest of the page (keeping the
+     * advances with which it was laid out), whereas reshaping it would change its extent and let
+     * it overflow the boxes that were sized for it. Only the antialiasing and fractional metrics
+     * with which the text was shaped must match.
+     */
+    public boolean isCompatible (FontRenderContext frc)
+    {
+        return _frc.isAntiAliased() == frc.isAntiAliased() &&
+            _frc.usesFractionalMetrics() == frc.usesFractionalMetrics();
+    }
+
+    /**
+     * Records the drawing of the supplied text in the supplied font with its origin at the
+     * specified coordinates.
+     */
+    public void drawText (String text, Font font, float x, float y)
+    {
+        drawText(text, font, LayoutUtil.createLayout(text, font, _frc), x, y);
+    }
+
+    /**
+     * Records the drawing of the supplied text with its origin at the specified coordinates. The
+     * caller supplies the text already shaped (with this list's font render context) as well as
+     * the text and font from which it was shaped.
+     */
+    public void drawText (String text, Font font, TextLayout layout, float x, float y)
+    {
+        add(TEXT, new Text(text, font, layout), x, y);
+    }
+
+    /**
+     * Records the stroking of the outline of the supplied shape. The shape must not be modified
+     * after it is recorded.
+     */
+    public void draw (Shape shape)
+    {
+        add(DRAW, shape, 0, 0);
+    }
+
+    /**
+     * Records a translation of the origin of subsequently recorded primitives.
+     */
+    public void translate (double dx, double dy)
+    {
+        add(TRANSLATE, null, dx, dy);
+        _tx += dx;
+        _ty += dy;
+    }
+
+    /**
+     * Starts an unlabeled group of primitives.
+     *
+     * @see #begin(String)
+     */
+    public void begin ()
+    {
+        begin(null);
+    }
+
+    /**
+     * Starts a group of primitives, such as those that render a single element. When the list is
+     * replayed into a clipped graphics context, a group whose primitives all lie outside the clip
+     * is skipped altogether. Groups may be nested, and any translations recorded in a group must
+     * be undone before the group is ended.
+     *
+     * @param label the name of the element rendered by the group (which is shown in place of the
+     * group's primitives in the list's {@link #getOutline outline}), or null.
+     */
+    public void begin (String label)
+    {
+        if (_depth == _open.length) {
+            int[] open = new int[_depth*2];
+            System.arraycopy(_open, 0, open, 0, _depth);
+            _open = open;
+        }
+        _open[_depth++] = _size;
+        add(BEGIN, label, 0, 0);
+    }
+
+    /**
+     * Ends the most recently begun group.
+     */
+    public void end ()
+    {
+        int start = _open[--_depth];
+        // note the end of the group in the group's start so that we can skip straight to it
+        _coords[2*start] = _size;
+        add(END, null, 0, 0);
+    }
+
+    /**
+     * Notes an element of the page that should be entered into the visualization's {@link
+     * SearchIndex} when the page is laid out. Entries are not primitives: they're not replayed,
+     * hashed or stored, just held until they're transferred to the index via {@link #indexTo}.
+     *
+     * @param kind the kind of element (see {@link SearchIndex#add}).
+     * @param owner the full name of the class of which the element is a member, or null.
+     * @param name the name of the element.
+     * @param bounds the bounds of the element, in the current (translated) coordinates.
+     * @param keys the names under which the element can be found.
+     */
+    public void index (int kind, String owner, String name, Rectangle2D bounds, String... keys)
+    {
+        if (_entries == null) {
+            _entries = new ArrayList<Entry>();
+        }
+        _entries.add(new Entry(kind, owner, name, bounds.getX() + _tx, bounds.getY() + _ty,
+                               bounds.getWidth(), bounds.getHeight(), keys));
+    }
+
+    /**
+     * Adds the elements noted via {@link #index} to the supplied search index (if it is
+     * non-null), as elements of the specified page, and forgets about them.
+     */
+    public void indexTo (SearchIndex index, int pageIndex)
+    {
+        if (_entries != null && index != null) {
+            for (Entry entry : _entries) {
+                index.add(entry.kind, entry.owner, entry.name, pageIndex, entry.x, entry.y,
+                          entry.width, entry.height, entry.keys);
+            }
+        }
+        _entries = null;
+    }
+
+    /**
+     * Returns the number of primitives in this list.
+     */
+    public int size ()
+    {
+        return _size;
+    }
+
+    /**
+     * Renders this list's primitives into the supplied graphics context, in the order in which
+     * they were recorded. Any translations are undone before this method returns.
+     *
+     * <p> If the graphics context is clipped, only the primitives that intersect the clip are
+     * rendered: the list's top-level primitives and groups are located via a spatial index and
+     * nested groups outside the clip are skipped, so the cost of a partial repaint is
+     * proportional to the area being repainted.
+     */
+    public void replay (Graphics2D gfx)
+    {
+        Rectangle clip = gfx.getClipBounds();
+        if (clip == null) {
+            replay(gfx, 0, _size, null, null);
+            return;
+        }
+
+        Index index = getIndex();
+        if (clip.contains(index.extent)) {
+            replay(gfx, 0, _size, null, null);
+            return;
+        }
+
+        for (int entry : index.query(clip)) {
+            double tx = index.translations[2*entry], ty = index.translations[2*entry+1];
+            if (tx != 0 || ty != 0) {
+                gfx.translate(tx, ty);
+            }
+            replay(gfx, index.starts[entry], index.ends[entry], clip, index);
+            if (tx != 0 || ty != 0) {
+                gfx.translate(-tx, -ty);
+            }
+        }
+    }
+
+    /**
+     * Replays the specified range of primitives, skipping groups that lie outside the supplied
+     * clip (if one is supplied along with our index).
+     */
+    protected void replay (Graphics2D gfx, int start, int end, Rectangle clip, Index index)
+    {
+        double tx = 0, ty = 0;
+        for (int ii = start; ii < end; ii++) {
+            double x = _coords[2*ii], y = _coords[2*ii+1];
+            switch (_ops[ii]) {
+            case TEXT:
+                ((Text)_objects[ii]).layout.draw(gfx, (float)x, (float)y);
+                break;
+            case DRAW:
+                gfx.draw((Shape)_objects[ii]);
+                break;
+            case TRANSLATE:
+                gfx.translate(x, y);
+                tx += x;
+                ty += y;
+                break;
+            case BEGIN:
+                if (clip != null && !index.intersects(ii, clip)) {
+                    // skip to the end of this group
+                    ii = (int)x;
+                }
+                break;
+            }
+        }
+        if (tx != 0 || ty != 0) {
+            gfx.translate(-tx, -ty);
+        }
+    }
+
+    /**
+     * Returns an outline of this list: the bounds and label of each of its labeled groups. The
+     * outline can be rendered far more cheaply than the list itself and is used to depict the
+     * list's page at scales at which its details would not be legible.
+     */
+    public Outline getOutline ()
+    {
+        Index index = getIndex();
+        int count = 0;
+        for (int ii = 0; ii < _size; ii++) {
+            if (_ops[ii] == BEGIN && _objects[ii] != null) {
+                count++;
+            }
+        }
+
+        float[] bounds = new float[4*count];
+        String[] labels = new String[count];
+        int oo = 0;
+        for (int ii = 0; ii < _size; ii++) {
+            if (_ops[ii] != BEGIN || _objects[ii] == null) {
+                continue;
+            }
+            double x1 = index._groups[4*ii], y1 = index._groups[4*ii+1];
+            double x2 = index._groups[4*ii+2], y2 = index._groups[4*ii+3];
+            if (x1 > x2) {
+                x1 = y1 = x2 = y2 = 0; // an empty group
+            }
+            bounds[4*oo] = (float)x1;
+            bounds[4*oo+1] = (float)y1;
+            bounds[4*oo+2] = (float)(x2 - x1);
+            bounds[4*oo+3] = (float)(y2 - y1);
+            labels[oo++] = (String)_objects[ii];
+        }
+        return new Outline(bounds, labels, getContentHash());
+    }
+
+    /**
+     * Returns a hash of everything this list draws: its text (and the fonts in which it is
+     * drawn), shapes, translations and labeled groups, along with their coordinates. The hash
+     * depends on nothing but those, so a page laid out identically in another run of viztool (or
+     * with another font render context) has the same hash.
+     */
+    public long getContentHash ()
+    {
+        long hash = FNV_OFFSET;
+        float[] coords = new float[6];
+        for (int ii = 0; ii < _size; ii++) {
+            hash = mix(hash, _ops[ii]);
+            hash = mix(hash, Double.doubleToLongBits(_coords[2*ii]));
+            hash = mix(hash, Double.doubleToLongBits(_coords[2*ii+1]));
+            switch (_ops[ii]) {
+            case TEXT:
+                Text text = (Text)_objects[ii];
+                hash = mix(hash, text.text.hashCode());
+                hash = mix(hash, text.font.getName().hashCode());
+                hash = mix(hash, text.font.getStyle());
+                hash = mix(hash, Float.floatToIntBits(text.font.getSize2D()));
+                break;
+            case DRAW:
+                for (PathIterator iter = ((Shape)_objects[ii]).getPathIterator(null);
+                     !iter.isDone(); iter.next()) {
+                    int type = iter.currentSegment(coords);
+                    hash = mix(hash, type);
+                    for (int cc = 0, cl = SEGMENT_COORDS[type]; cc < cl; cc++) {
+                        hash = mix(hash, Float.floatToIntBits(coords[cc]));
+                    }
+                }
+                break;
+            case BEGIN:
+                if (_objects[ii] != null) {
+                    hash = mix(hash, _objects[ii].hashCode());
+                }
+                break;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Returns our spatial index, creating it if necessary.
+     */
+    protected synchronized Index getIndex ()
+    {
+        if (_index == null) {
+            _index = new Index();
+        }
+        return _index;
+    }
+
+    /**
+     * A uniform grid over the bounds of a list's top-level primitives and groups, which is used to
+     * find the entries that intersect a clip region, along with the bounds of every group. All
+     * bounds are computed from the primitives themselves, in the list's untranslated coordinates,
+     * and are padded to account for stroke width, antialiasing and hinting.
+     */
+    protected class Index
+    {
+        /** The range of primitives that make up each entry. */
+        public int[] starts, ends;
+
+        /** The translation in effect at the start of each entry. */
+        public double[] translations;
+
+        /** The bounds of all of our entries. */
+        public Rectangle2D extent = new Rectangle2D.Double();
+
+        public Index ()
+        {
+            starts = new int[_size];
+            ends = new int[_size];
+            translations = new double[2*_size];
+            _bounds = new double[4*_size];
+            _groups = new double[4*_size];
+
+            // compute the bounds of each primitive and group, noting our top-level entries
+            int[] open = new int[Math.max(_depth, 8)];
+            int depth = 0;
+            double tx = 0, ty = 0;
+            for (int ii = 0; ii < _size; ii++) {
+                Rectangle2D pbounds;
+                switch (_ops[ii]) {
+                case TEXT:
+                    pbounds = ((Text)_objects[ii]).layout.getBounds();
+                    pbounds.setRect(pbounds.getX() + _coords[2*ii] + tx,
+                                    pbounds.getY() + _coords[2*ii+1] + ty,
+                                    pbounds.getWidth(), pbounds.getHeight());
+                    break;
+                case DRAW:
+                    pbounds = ((Shape)_objects[ii]).getBounds2D();
+                    pbounds.setRect(pbounds.getX() + tx, pbounds.getY() + ty,
+                                    pbounds.getWidth(), pbounds.getHeight());
+                    break;
+                case TRANSLATE:
+                    tx += _coords[2*ii];
+                    ty += _coords[2*ii+1];
+                    continue;
+                case BEGIN:
+                    if (depth == 0) {
+                        startEntry(ii, (int)_coords[2*ii] + 1, tx, ty);
+                    }
+                    if (depth == open.length) {
+                        int[] nopen = new int[depth*2];
+                        System.arraycopy(open, 0, nopen, 0, depth);
+                        open = nopen;
+                    }
+                    open[depth++] = ii;
+                    _groups[4*ii] = _groups[4*ii+1] = Double.MAX_VALUE;
+                    _groups[4*ii+2] = _groups[4*ii+3] = -Double.MAX_VALUE;
+                    continue;
+                case END:
+                    int group = open[--depth];
+                    if (depth > 0) {
+                        union(_groups, 4*open[depth-1], _groups, 4*group);
+                    } else {
+                        union(_bounds, 4*(_count-1), _groups, 4*group);
+                    }
+                    continue;
+                default:
+                    continue;
+                }
+
+                // pad the primitive's bounds and incorporate them into its group or entry
+                double[] pb = {
+                    pbounds.getX() - PAD, pbounds.getY() - PAD,
+                    pbounds.getMaxX() + PAD, pbounds.getMaxY() + PAD };
+                if (depth > 0) {
+                    union(_groups, 4*open[depth-1], pb, 0);
+                } else {
+                    startEntry(ii, ii+1, tx, ty);
+                    union(_bounds, 4*(_count-1), pb, 0);
+                }
+            }
+
+            // compute our overall extent
+            for (int ee = 0; ee < _count; ee++) {
+                double x1 = _bounds[4*ee], y1 = _bounds[4*ee+1];
+                double x2 = _bounds[4*ee+2], y2 = _bounds[4*ee+3];
+                if (x1 > x2) {
+                    continue; // an empty group
+                } else if (extent.isEmpty()) {
+                    extent.setFrameFromDiagonal(x1, y1, x2, y2);
+                } else {
+                    extent.add(x1, y1);
+                    extent.add(x2, y2);
+                }
+            }
+
+            // now bin the entries into grid cells
+            _originX = extent.getX();
+            _originY = extent.getY();
+            _columns = Math.max(1, (int)Math.ceil(extent.getWidth() / CELL_SIZE));
+            _rows = Math.max(1, (int)Math.ceil(extent.getHeight() / CELL_SIZE));
+            _cellStarts = new int[_columns*_rows+1];
+            for (int pass = 0; pass < 2; pass++) {
+                int[] fill = (pass == 0) ? null : new int[_columns*_rows];
+                for (int ee = 0; ee < _count; ee++) {
+                    if (_bounds[4*ee] > _bounds[4*ee+2]) {
+                        continue;
+                    }
+                    int c1 = column(_bounds[4*ee]), c2 = column(_bounds[4*ee+2]);
+                    int r1 = row(_bounds[4*ee+1]), r2 = row(_bounds[4*ee+3]);
+                    for (int rr = r1; rr <= r2; rr++) {
+                        for (int cc = c1; cc <= c2; cc++) {
+                            int cell = rr*_columns + cc;
+                            if (pass == 0) {
+                                _cellStarts[cell+1]++;
+                            } else {
+                                _cells[_cellStarts[cell] + fill[cell]++] = ee;
+                            }
+                        }
+                    }
+                }
+                if (pass == 0) {
+                    for (int cell = 0; cell < _columns*_rows; cell++) {
+                        _cellStarts[cell+1] += _cellStarts[cell];
+                    }
+                    _cells = new int[_cellStarts[_columns*_rows]];
+                }
+            }
+        }
+
+        /**
+         * Returns the entries whose bounds intersect the supplied clip, in recording order.
+         */
+        public int[] query (Rectangle clip)
+        {
+            double cx1 = clip.getX(), cy1 = clip.getY();
+            double cx2 = cx1 + clip.getWidth(), cy2 = cy1 + clip.getHeight();
+            if (extent.isEmpty() || !extent.intersects(cx1, cy1, cx2-cx1, cy2-cy1)) {
+                return new int[0];
+            }
+
+            boolean[] seen = new boolean[_count];
+            int[] found = new int[_count];
+            int nfound = 0;
+            for (int rr = row(cy1), r2 = row(cy2); rr <= r2; rr++) {
+                for (int cc = column(cx1), c2 = column(cx2); cc <= c2; cc++) {
+                    int cell = rr*_columns + cc;
+                    for (int ii = _cellStarts[cell]; ii < _cellStarts[cell+1]; ii++) {
+                        int ee = _cells[ii];
+                        if (!seen[ee] && overlaps(_bounds, 4*ee, cx1, cy1, cx2, cy2)) {
+                            found[nfound++] = ee;
+                        }
+                        seen[ee] = true;
+                    }
+                }
+            }
+
+            int[] result = new int[nfound];
+            System.arraycopy(found, 0, result, 0, nfound);
+            Arrays.sort(result);
+            return result;
+        }
+
+        /**
+         * Returns true if the group that starts with the specified primitive intersects the
+         * supplied clip.
+         */
+        public boolean intersects (int group, Rectangle clip)
+        {
+            double cx1 = clip.getX(), cy1 = clip.getY();
+            return overlaps(_groups, 4*group, cx1, cy1, cx1 + clip.getWidth(),
+                            cy1 + clip.getHeight());
+        }
+
+        protected void startEntry (int start, int end, double tx, double ty)
+        {
+            starts[_count] = start;
+            ends[_count] = end;
+            translations[2*_count] = tx;
+            translations[2*_count+1] = ty;
+            _bounds[4*_count] = _bounds[4*_count+1] = Double.MAX_VALUE;
+            _bounds[4*_count+2] = _bounds[4*_count+3] = -Double.MAX_VALUE;
+            _count++;
+        }
+
+        protected int column (double x)
+        {
+            return Math.max(0, Math.min(_columns-1, (int)((x - _originX) / CELL_SIZE)));
+        }
+
+        protected int row (double y)
+        {
+            return Math.max(0, Math.min(_rows-1, (int)((y - _originY) / CELL_SIZE)));
+        }
+
+        /** The number of top-level entries. */
+        protected int _count;
+
+        /** The bounds (x1, y1, x2, y2) of each entry. */
+        protected double[] _bounds;
+
+        /** The bounds of each group, indexed by the group's starting primitive. */
+        protected double[] _groups;
+
+        protected double _originX, _originY;
+        protected int _columns, _rows;
+
+        /** The entries in each cell, stored end to end, and the start of each cell's entries. */
+        protected int[] _cells, _cellStarts;
+    }
+
+    /**
+     * Expands the rectangle (x1, y1, x2, y2) at the specified offset in the target array to
+     * include the one at the specified offset in the source array.
+     */
+    protected static void union (double[] target, int toff, double[] source, int soff)
+    {
+        target[toff] = Math.min(target[toff], source[soff]);
+        target[toff+1] = Math.min(target[toff+1], source[soff+1]);
+        target[toff+2] = Math.max(target[toff+2], source[soff+2]);
+        target[toff+3] = Math.max(target[toff+3], source[soff+3]);
+    }
+
+    /**
+     * Returns true if the rectangle (x1, y1, x2, y2) at the specified offset in the supplied array
+     * overlaps the supplied rectangle.
+     */
+    protected static boolean overlaps (double[] rects, int off, double x1, double y1,
+                                       double x2, double y2)
+    {
+        return rects[off] < x2 && rects[off+2] > x1 && rects[off+1] < y2 && rects[off+3] > y1;
+    }
+
+    /** Mixes a value into an FNV-1a hash, a byte at a time. */
+    protected static long mix (long hash, long value)
+    {
+        for (int ii = 0; ii < 8; ii++, value >>>= 8) {
+            hash = (hash ^ (value & 0xFF)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    protected void add (byte op, Object object, double x, double y)
+    {
+        if (_size == _ops.length) {
+            byte[] ops = new byte[_size*2];
+            System.arraycopy(_ops, 0, ops, 0, _size);
+            _ops = ops;
+            Object[] objects = new Object[_size*2];
+            System.arraycopy(_objects, 0, objects, 0, _size);
+            _objects = objects;
+            double[] coords = new double[_size*4];
+            System.arraycopy(_coords, 0, coords, 0, _size*2);
+            _coords = coords;
+        }
+        _ops[_size] = op;
+        _objects[_size] = object;
+        _coords[2*_size] = x;
+        _coords[2*_size+1] = y;
+        _size++;
+    }
+
+    /** A recorded piece of text, along with the text and font from which it was shaped. */
+    protected static class Text
+    {
+        public final String text;
+        public final Font font;
+        public final TextLayout layout;
+
+        public Text (String text, Font font, TextLayout layout)
+        {
+            this.text = text;
+            this.font = font;
+            this.layout = layout;
+        }
+    }
+
+    /** An element to be entered into a search index. */
+    protected static class Entry
+    {
+        public final int kind;
+        public final String owner, name;
+        public final double x, y, width, height;
+        public final String[] keys;
+
+        public Entry (int kind, String owner, String name, double x, double y, double width,
+                      double height, String[] keys)
+        {
+            this.kind = kind;
+            this.owner = owner;
+            this.name = name;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.keys = keys;
+        }
+    }
+
+    /** The context for which our text is shaped. */
+    protected FontRenderContext _frc;
+
+    /** The operation code, object and coordinates of each of our primitives. */
+    protected byte[] _ops = new byte[64];
+    protected Object[] _objects = new Object[64];
+    protected double[] _coords = new double[128];
+    protected int _size;
+
+    /** The starts of the groups that have been begun but not yet ended. */
+    protected int[] _open = new int[8];
+    protected int _depth;
+
+    /** The sum of the translations recorded thus far. */
+    protected double _tx, _ty;
+
+    /** The elements yet to be entered into a search index, or null. */
+    protected ArrayList<Entry> _entries;
+
+    /** Our spatial index, created the first time we're replayed into a clipped context. */
+    protected Index _index;
+
+    /** The parameters of our 64-bit FNV-1a content hash. */
+    protected static final long FNV_OFFSET = 0xcbf29ce484222325L, FNV_PRIME = 0x100000001b3L;
+
+    /** The number of coordinates in each type of path segment. */
+    protected static final int[] SEGMENT_COORDS = { 2, 2, 4, 6, 0 };
+
+    protected static final byte TEXT = 0;
+    protected static final byte DRAW = 1;
+    protected static final byte TRANSLATE = 2;
+    protected static final byte BEGIN = 3;
+    protected static final byte END = 4;
+
+    /** The amount by which bounds are padded to account for stroke width and antialiasing. */
+    protected static final double PAD = 2;
+
+    /** The size of the cells in our spatial index. */
+    protected static final double CELL_SIZE = 64;
+}
@@ -0,0 +1,346 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool.util;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.samskivert.viztool.Log;
+
+/**
+ * Emits Java Flight Recorder events for the individual units of work that make up a
+ * visualization (enumerating a classpath component, loading or introspecting a class, laying out
+ * a chain group or a page of summaries, rendering a page), so that they can be correlated with
+ * garbage collection, I/O and the like in a recording of the VM in which viztool runs.
+ *
+ * <p> viztool is built to run on VMs that predate flight recorder, so the events are defined at
+ * runtime (via <code>jdk.jfr.EventFactory</code>) rather than compiled in. They are not defined
+ * until a recording is first started, so a VM that never records pays only for a listener that
+ * tells us when one starts. If the VM does not provide flight recorder, no events are ever emitted.
+ * Events of a particular type are only created while a recording that includes that type is
+ * running; otherwise {@link #begin} returns a shared no-op event and costs a single (volatile)
+ * read.
+ *
+ * <p> Each event has a duration, a name (of the component, class, package or visualizer
+ * concerned) and up to two counts, which are described in the documentation of each event type.
+ */
+public class Events
+{
+    /** Enumerating a classpath component. Spans from the time the component's first class is
+     * requested until it is exhausted. Records the component and the number of classes it
+     * contained. */
+    public static final int ENUMERATE = 0;
+
+    /** Loading a class. Records the class name. */
+    public static final int LOAD = 1;
+
+    /** Introspecting a class into a record. Records the class name and the number of members. */
+    public static final int INTROSPECT = 2;
+
+    /** Laying out a chain group. Records the package, the number of chains placed and the number
+     * of chains that overflowed into a new group. */
+    public static final int CHAIN_GROUP = 3;
+
+    /** Packing a page of class summaries. Records the first class on the page, the page index and
+     * the number of summaries on the page. */
+    public static final int SUMMARY_PAGE = 4;
+
+    /** Rendering a page. Records the visualizer, the page index and the number of primitives
+     * replayed (before culling). */
+    public static final int RENDER = 5;
+
+    /**
+     * A single event. Obtained via {@link #begin}.
+     */
+    public static class Event
+    {
+        /**
+         * Ends the event and records it along with the supplied name and counts (counts not used
+         * by the event's type are ignored).
+         */
+        public void commit (String name, int count1, int count2)
+        {
+            try {
+                EventType type = _types[_type];
+                SET.invoke(_event, 0, name);
+                if (type.counts > 0) {
+                    SET.invoke(_event, 1, count1);
+                }
+                if (type.counts > 1) {
+                    SET.invoke(_event, 2, count2);
+                }
+                COMMIT.invoke(_event);
+            } catch (Exception e) {
+                Log.warning("Failed to commit flight recorder event [error=" + e + "].");
+            }
+        }
+
+        /**
+         * Ends the event and records it along with the supplied name.
+         */
+        public void commit (String name)
+        {
+            commit(name, 0, 0);
+        }
+
+        protected Event ()
+        {
+        }
+
+        protected Event (int type, Object event)
+            throws Exception
+        {
+            _type = type;
+            _event = event;
+            BEGIN.invoke(_event);
+        }
+
+        protected int _type;
+        protected Object _event;
+    }
+
+    /**
+     * Returns true if flight recorder is available and events of the specified type are being
+     * recorded.
+     */
+    public static boolean isEnabled (int type)
+    {
+        return _active && _types[type].enabled;
+    }
+
+    /**
+     * Begins an event of the specified type, which is ended by calling {@link Event#commit}.
+     */
+    public static Event begin (int type)
+    {
+        if (!_active || !_types[type].enabled) {
+            return NOOP;
+        }
+        try {
+            return new Event(type, NEW_EVENT.invoke(_types[type].factory));
+        } catch (Exception e) {
+            return NOOP;
+        }
+    }
+
+    /** Describes and creates the events of a particular type. */
+    protected static class EventType
+    {
+        /** The <code>jdk.jfr.EventFactory</code> that creates our events. */
+        public Object factory;
+
+        /** Our <code>jdk.jfr.EventType</code>. */
+        public Object type;
+
+        /** The number of counts recorded by our events. */
+        public int counts;
+
+        /** Whether or not a running recording includes our events. */
+        public volatile boolean enabled;
+    }
+
+    /**
+     * Defines an event type with the supplied name, label, description and fields.
+     */
+    protected static EventType define (String name, String label, String description,
+                                       String... fields)
+        throws Exception
+    {
+        List<Object> annos = new ArrayList<Object>();
+        annos.add(annotation("jdk.jfr.Name", "viztool." + name));
+        annos.add(annotation("jdk.jfr.Label", label));
+        annos.add(annotation("jdk.jfr.Description", description));
+        annos.add(annotation("jdk.jfr.Category", new String[] { "viztool" }));
+        // our events are committed reflectively, so their stack traces are of no use
+        annos.add(annotation("jdk.jfr.StackTrace", false));
+
+        // fields are given as pairs of name and label; the first is a string, the rest counts
+        List<Object> values = new ArrayList<Object>();
+        Class<?> vdclass = Class.forName("jdk.jfr.ValueDescriptor");
+        Constructor<?> vdctor = vdclass.getConstructor(Class.class, String.class, List.class);
+        for (int ii = 0; ii < fields.length; ii += 2) {
+            List<Object> vannos = new ArrayList<Object>();
+            vannos.add(annotation("jdk.jfr.Label", fields[ii+1]));
+            Class<?> vtype = (ii == 0) ? String.class : int.class;
+            values.add(vdctor.newInstance(vtype, fields[ii], vannos));
+        }
+
+        EventType etype = new EventType();
+        etype.factory = Class.forName("jdk.jfr.EventFactory").getMethod(
+            "create", List.class, List.class).invoke(null, annos, values);
+        etype.type = etype.factory.getClass().getMethod("getEventType").invoke(etype.factory);
+        etype.counts = fields.length/2 - 1;
+        return etype;
+    }
+
+    /**
+     * Creates a <code>jdk.jfr.AnnotationElement</code> for the specified annotation and value.
+     */
+    protected static Object annotation (String aclass, Object value)
+        throws Exception
+    {
+        Class<?> aeclass = Class.forName("jdk.jfr.AnnotationElement");
+        return aeclass.getConstructor(Class.class, Object.class).newInstance(
+            Class.forName(aclass), value);
+    }
+
+    /**
+     * Defines all of our event types.
+     */
+    protected static EventType[] defineTypes ()
+        throws Exception
+    {
+        EventType[] types = new EventType[6];
+        types[ENUMERATE] = define(
+            "Enumerate", "Enumerate Component", "Enumerates the classes in a classpath component",
+            "component", "Component", "classes", "Classes");
+        types[LOAD] = define(
+            "Load", "Load Class", "Loads a class to be visualized",
+            "className", "Class");
+        types[INTROSPECT] = define(
+            "Introspect", "Introspect Class", "Introspects a class into a class record",
+            "className", "Class", "members", "Members");
+        types[CHAIN_GROUP] = define(
+            "ChainGroup", "Lay Out Chain Group", "Lays out the inheritance chains of a package",
+            "packageName", "Package", "chains", "Chains", "overflow", "Overflowed Chains");
+        types[SUMMARY_PAGE] = define(
+            "SummaryPage", "Lay Out Summary Page", "Packs class summaries onto a page",
+            "firstClass", "First Class", "page", "Page", "summaries", "Summaries");
+        types[RENDER] = define(
+            "Render", "Render Page", "Renders a laid out page",
+            "visualizer", "Visualizer", "page", "Page", "primitives", "Primitives");
+        return types;
+    }
+
+    /**
+     * Returns true if flight recorder has been initialized and has a running recording. This
+     * neither initializes flight recorder nor defines our events.
+     */
+    protected static boolean isRecording ()
+        throws Exception
+    {
+        Class<?> frclass = Class.forName("jdk.jfr.FlightRecorder");
+        if (!(Boolean)frclass.getMethod("isInitialized").invoke(null)) {
+            return false;
+        }
+        Object recorder = frclass.getMethod("getFlightRecorder").invoke(null);
+        Method getState = Class.forName("jdk.jfr.Recording").getMethod("getState");
+        for (Object rec : (List<?>)frclass.getMethod("getRecordings").invoke(recorder)) {
+            if (String.valueOf(getState.invoke(rec)).equals("RUNNING")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Notes which of our event types are included in a running recording, defining our event
+     * types if this is the first time a recording has been running. Flight recorder lets us know
+     * (via {@link #listen}) whenever a recording starts or stops.
+     */
+    protected static synchronized void refresh ()
+    {
+        if (_types.length == 0) {
+            if (_unavailable) {
+                return;
+            }
+            try {
+                if (!isRecording()) {
+                    return;
+                }
+                _types = defineTypes();
+            } catch (Throwable t) {
+                Log.warning("Unable to define flight recorder events [error=" + t + "].");
+                _unavailable = true;
+                return;
+            }
+        }
+
+        boolean active = false;
+        for (EventType etype : _types) {
+            try {
+                etype.enabled = (Boolean)IS_ENABLED.invoke(etype.type);
+            } catch (Exception e) {
+                etype.enabled = false;
+            }
+            active = active || etype.enabled;
+        }
+        _active = active;
+    }
+
+    /**
+     * Registers a listener with flight recorder that calls {@link #refresh} whenever the state of
+     * a recording changes.
+     */
+    protected static void listen ()
+        throws Exception
+    {
+        Class<?> lclass = Class.forName("jdk.jfr.FlightRecorderListener");
+        Object listener = Proxy.newProxyInstance(
+            Events.class.getClassLoader(), new Class<?>[] { lclass }, new InvocationHandler() {
+            public Object invoke (Object proxy, Method method, Object[] args) {
+                if (method.getDeclaringClass() == Object.class) {
+                    String name = method.getName();
+                    if (name.equals("equals")) {
+                        return proxy == args[0];
+                    } else if (name.equals("hashCode")) {
+                        return System.identityHashCode(proxy);
+                    } else {
+                        return "Events.listener";
+                    }
+                }
+                refresh();
+                return null;
+            }
+        });
+        Class.forName("jdk.jfr.FlightRecorder").getMethod("addListener", lclass).invoke(
+            null, listener);
+    }
+
+    /** Whether any of our event types are being recorded. */
+    protected static volatile boolean _active;
+
+    /** Our event types, indexed by type code. Empty until a recording is first running. */
+    protected static volatile EventType[] _types = new EventType[0];
+
+    /** Set if flight recorder is not available, or our events could not be defined. */
+    protected static boolean _unavailable;
+
+    /** Methods of <code>jdk.jfr.Event</code> and <code>jdk.jfr.EventType</code>. */
+    protected static Method BEGIN, COMMIT, SET, NEW_EVENT, IS_ENABLED;
+
+    protected static final Event NOOP = new Event() {
+        public void commit (String name, int count1, int count2) {
+        }
+    };
+
+    static {
+        try {
+            Class<?> eclass = Class.forName("jdk.jfr.Event");
+            BEGIN = eclass.getMethod("begin");
+            COMMIT = eclass.getMethod("commit");
+            SET = eclass.getMethod("set", int.class, Object.class);
+            NEW_EVENT = Class.forName("jdk.jfr.EventFactory").getMethod("newEvent");
+            IS_ENABLED = Class.forName("jdk.jfr.EventType").getMethod("isEnabled");
+
+            // we'll define our events when (and if) a recording is started, which may already
+            // have happened if the VM was started with one
+            listen();
+            refresh();
+
+        } catch (ClassNotFoundException cnfe) {
+            // flight recorder is not available on this VM
+            _unavailable = true;
+        } catch (Throwable t) {
+            Log.warning("Unable to listen to flight recorder [error=" + t + "].");
+            _unavailable = true;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool.util;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Modifier;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Summarizes everything that goes into a visualization in a single string, so that a
+ * visualization need not be generated again if its fingerprint has not changed since it was last
+ * generated. Classes contribute only the parts of their class files that can affect a
+ * visualization: their modifiers, supertypes and declared classes and the signatures of their
+ * public members. Changes to the bodies of methods and to non-public members leave the
+ * fingerprint unchanged. The class files are parsed directly, so fingerprinting classes requires
+ * neither loading nor introspecting them.
+ */
+public class Fingerprint
+{
+    /**
+     * Creates a fingerprint to which nothing has yet been added.
+     */
+    public Fingerprint ()
+    {
+        try {
+            _digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new RuntimeException("SHA-1 unavailable.", nsae);
+        }
+    }
+
+    /**
+     * Adds a value (a setting of the visualization, say) to the fingerprint.
+     */
+    public void add (String value)
+    {
+        try {
+            _digest.update(value.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException uee) {
+            throw new RuntimeException(uee); // not possible
+        }
+        _digest.update((byte)0);
+    }
+
+    /**
+     * Adds the named class to the fingerprint, reading its class file from the supplied stream
+     * (which is closed). If the class file can't be parsed, the whole of it is added.
+     */
+    public void addClass (String name, InputStream in)
+        throws IOException
+    {
+        add(name);
+        byte[] data;
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            for (int read; (read = in.read(buf)) > 0; ) {
+                out.write(buf, 0, read);
+            }
+            data = out.toByteArray();
+        } finally {
+            in.close();
+        }
+
+        // parse into a scratch digest so that a parse failure halfway through doesn't leave half
+        // of the class's signature in ours
+        Fingerprint api = new Fingerprint();
+        try {
+            api.addSignature(new DataInputStream(new ByteArrayInputStream(data)));
+            _digest.update(api._digest.digest());
+        } catch (Exception e) {
+            _digest.update(data);
+        }
+    }
+
+    /**
+     * Returns the fingerprint of everything added so far, as a hexadecimal string. The
+     * fingerprint can't be added to after this call.
+     */
+    public String toHex ()
+    {
+        StringBuilder buf = new StringBuilder();
+        for (byte b : _digest.digest()) {
+            buf.append(Character.forDigit((b >> 4) & 0xF, 16));
+            buf.append(Character.forDigit(b & 0xF, 16));
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Reads a fingerprint previously written to the supplied file, returning null if there is no
+     * such file or it could not be read.
+     */
+    public static String read (File file)
+    {
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            BufferedReader in = new BufferedReader(new FileReader(file));
+            try {
+                return in.readLine();
+            } finally {
+                in.close();
+            }
+        } catch (IOException ioe) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes a fingerprint to the supplied file.
+     */
+    public static void write (File file, String fingerprint)
+        throws IOException
+    {
+        FileWriter out = new FileWriter(file);
+        try {
+            out.write(fingerprint + "\n");
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Parses a class file and adds its signature to this fingerprint.
+     */
+    protected void addSignature (DataInputStream in)
+        throws IOException
+    {
+        if (in.readInt() != 0xCAFEBABE) {
+            throw new IOException("Not a class file.");
+        }
+        in.readUnsignedShort(); // minor version
+        in.readUnsignedShort(); // major version
+
+        // read the constant pool, of which we need only the strings and class names
+        int count = in.readUnsignedShort();
+        String[] utf8 = new String[count];
+        int[] classes = new int[count];
+        for (int ii = 1; ii < count; ii++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+            case UTF8: utf8[ii] = in.readUTF(); break;
+            case CLASS: classes[ii] = in.readUnsignedShort(); break;
+            case LONG: case DOUBLE: in.skipBytes(8); ii++; break;
+            case INTEGER: case FLOAT: case FIELD_REF: case METHOD_REF: case IMETHOD_REF:
+            case NAME_AND_TYPE: case DYNAMIC: case INVOKE_DYNAMIC: in.skipBytes(4); break;
+            case METHOD_HANDLE: in.skipBytes(3); break;
+            case STRING: case METHOD_TYPE: case MODULE: case PACKAGE: in.skipBytes(2); break;
+            default: throw new IOException("Unknown constant type " + tag + ".");
+            }
+        }
+
+        int access = in.readUnsignedShort();
+        int self = in.readUnsignedShort();
+        add(String.valueOf(access));
+        add(className(utf8, classes, self));
+        add(className(utf8, classes, in.readUnsignedShort()));
+        for (int ii = 0, ll = in.readUnsignedShort(); ii < ll; ii++) {
+            add(className(utf8, classes, in.readUnsignedShort()));
+        }
+
+        // fields and methods (which include constructors) alike
+        for (int kind = 0; kind < 2; kind++) {
+            for (int ii = 0, ll = in.readUnsignedShort(); ii < ll; ii++) {
+                int maccess = in.readUnsignedShort();
+                String name = utf8[in.readUnsignedShort()];
+                String desc = utf8[in.readUnsignedShort()];
+                boolean visible = (maccess & Modifier.PUBLIC) != 0;
+                if (visible) {
+                    add(maccess + " " + name + " " + desc);
+                }
+                for (int aa = 0, al = in.readUnsignedShort(); aa < al; aa++) {
+                    String aname = utf8[in.readUnsignedShort()];
+                    int length = in.readInt();
+                    if (visible && "Exceptions".equals(aname)) {
+                        for (int ee = 0, el = in.readUnsignedShort(); ee < el; ee++) {
+                            add(className(utf8, classes, in.readUnsignedShort()));
+                        }
+                    } else {
+                        in.skipBytes(length);
+                    }
+                }
+            }
+        }
+
+        // the classes declared by this class are listed in its inner classes attribute
+        for (int aa = 0, al = in.readUnsignedShort(); aa < al; aa++) {
+            String aname = utf8[in.readUnsignedShort()];
+            int length = in.readInt();
+            if ("InnerClasses".equals(aname)) {
+                for (int ii = 0, ll = in.readUnsignedShort(); ii < ll; ii++) {
+                    int inner = in.readUnsignedShort(), outer = in.readUnsignedShort();
+                    in.readUnsignedShort(); // simple name
+                    int iaccess = in.readUnsignedShort();
+                    if (outer == self) {
+                        add(iaccess + " " + className(utf8, classes, inner));
+                    }
+                }
+            } else {
+                in.skipBytes(length);
+            }
+        }
+    }
+
+    protected static String className (String[] utf8, int[] classes, int index)
+        throws IOException
+    {
+        if (index == 0) {
+            return ""; // java.lang.Object has no superclass
+        }
+        if (index >= classes.length || utf8[classes[index]] == null) {
+            throw new IOException("Invalid class reference " + index + ".");
+        }
+        return utf8[classes[index]];
+    }
+
+    protected MessageDigest _digest;
+
+    /** Constant pool entry types. */
+    protected static final int UTF8 = 1, INTEGER = 3, FLOAT = 4, LONG = 5, DOUBLE = 6, CLASS = 7,
+        STRING = 8, FIELD_REF = 9, METHOD_REF = 10, IMETHOD_REF = 11, NAME_AND_TYPE = 12,
+        METHOD_HANDLE = 15, METHOD_TYPE = 16, DYNAMIC = 17, INVOKE_DYNAMIC = 18, MODULE = 19,
+        PACKAGE = 20;
+}
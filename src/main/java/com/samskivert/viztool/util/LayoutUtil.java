@@ -9,27 +9,112 @@ import java.awt.Font;
 import java.awt.font.FontRenderContext;
 import java.awt.font.TextLayout;
 import java.awt.geom.Rectangle2D;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.samskivert.util.LRUHashMap;
 
 /**
  * Layout related utility functions.
  */
 public class LayoutUtil
 {
+    /** The default values of the spacing constants below. */
+    public static final double DEFAULT_HEADER_BORDER = 3, DEFAULT_GAP = 4,
+        DEFAULT_SUBORDINATE_INSET = 3;
+
     /**
      * The number of points surrounding the name of the chain.
      */
-    public static double HEADER_BORDER = 3;
+    public static double HEADER_BORDER = DEFAULT_HEADER_BORDER;
 
     /**
      * The number of points of spacing between each child chain.
      */
-    public static double GAP = 4;
+    public static double GAP = DEFAULT_GAP;
 
     /**
      * The number of points that interfaces, inner classes and generally any text that is
      * subordinate to other text is indented.
      */
-    public static double SUBORDINATE_INSET = 3;
+    public static double SUBORDINATE_INSET = DEFAULT_SUBORDINATE_INSET;
+
+    /**
+     * Shapes the supplied text. All of the text measured or rendered by the visualizations is
+     * shaped via this method, so that it can be accounted for in the run's {@link Stats}. If a
+     * layout cache has been configured, the layout is reused from (or added to) the cache.
+     */
+    public static TextLayout createLayout (String text, Font font, FontRenderContext frc)
+    {
+        LRUHashMap<LayoutKey,TextLayout> cache = _layouts;
+        if (cache == null) {
+            Stats.count(Stats.TEXT_LAYOUTS);
+            return new TextLayout(text, font, frc);
+        }
+
+        LayoutKey key = new LayoutKey(text, font, frc);
+        TextLayout layout;
+        synchronized (cache) {
+            layout = cache.get(key);
+        }
+        if (layout != null) {
+            _layoutHits.incrementAndGet();
+            return layout;
+        }
+        _layoutMisses.incrementAndGet();
+
+        // shape the text outside the lock; if two threads race to shape the same text, both
+        // results are equivalent
+        Stats.count(Stats.TEXT_LAYOUTS);
+        layout = new TextLayout(text, font, frc);
+        synchronized (cache) {
+            cache.put(key, layout);
+        }
+        return layout;
+    }
+
+    /**
+     * Configures the number of text layouts that are cached for reuse by {@link #createLayout}.
+     * By default no layouts are cached, which suits a single visualization (which rarely shapes
+     * the same text twice in the same font). A process that visualizes the same classes
+     * repeatedly can cache their layouts. Zero disables (and clears) the cache.
+     */
+    public static synchronized void setLayoutCacheSize (int size)
+    {
+        _layouts = (size > 0) ? new LRUHashMap<LayoutKey,TextLayout>(size) : null;
+        _layoutHits.set(0);
+        _layoutMisses.set(0);
+    }
+
+    /**
+     * Returns the number of layouts in the layout cache.
+     */
+    public static int getLayoutCacheSize ()
+    {
+        LRUHashMap<LayoutKey,TextLayout> cache = _layouts;
+        if (cache == null) {
+            return 0;
+        }
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Returns the number of layouts that were found in the layout cache since it was configured.
+     */
+    public static long getLayoutCacheHits ()
+    {
+        return _layoutHits.get();
+    }
+
+    /**
+     * Returns the number of layouts that were not found in the layout cache since it was
+     * configured.
+     */
+    public static long getLayoutCacheMisses ()
+    {
+        return _layoutMisses.get();
+    }
 
     /**
      * Returns a rectangle that contains the supplied text with space around the text for an
@@ -38,7 +123,7 @@ public class LayoutUtil
     public static Rectangle2D getTextBox (Font font, FontRenderContext frc, boolean withLeading,
                                           String text)
     {
-        Rectangle2D bounds = getBounds(new TextLayout(text, font, frc), withLeading);
+        Rectangle2D bounds = getBounds(createLayout(text, font, frc), withLeading);
         // incorporate room for the border in the bounds
         return pad(bounds, 2*HEADER_BORDER, 2*HEADER_BORDER);
     }
@@ -51,7 +136,7 @@ public class LayoutUtil
     public static Rectangle2D accomodate (Rectangle2D bounds, Font font, FontRenderContext frc,
                                           boolean withLeading, double inset, String text)
     {
-        Rectangle2D tbounds = getBounds(new TextLayout(text, font, frc), withLeading);
+        Rectangle2D tbounds = getBounds(createLayout(text, font, frc), withLeading);
         bounds.setRect(bounds.getX(), bounds.getY(),
                        Math.max(bounds.getWidth(), tbounds.getWidth()+inset),
                        bounds.getHeight() + tbounds.getHeight());
@@ -71,7 +156,7 @@ public class LayoutUtil
 
         for (int i = 0; i < text.length; i++) {
             Rectangle2D tbounds = getBounds(
-                new TextLayout(text[i], font, frc), i > 0 || withLeading);
+                createLayout(text[i], font, frc), i > 0 || withLeading);
             maxwid = Math.max(maxwid, tbounds.getWidth()+inset);
             height += tbounds.getHeight();
         }
@@ -97,8 +182,8 @@ public class LayoutUtil
 
         // first compute our dimensions
         for (int i = 0; i < left.length; i++) {
-            bndl[i] = getBounds(new TextLayout(left[i], font, frc), i > 0 || withLeading);
-            bndr[i] = getBounds(new TextLayout(right[i], font, frc), i > 0 || withLeading);
+            bndl[i] = getBounds(createLayout(left[i], font, frc), i > 0 || withLeading);
+            bndr[i] = getBounds(createLayout(right[i], font, frc), i > 0 || withLeading);
             maxleft = Math.max(maxleft, bndl[i].getWidth());
         }
 
@@ -112,6 +197,34 @@ public class LayoutUtil
         return bounds;
     }
 
+    /** Identifies a cached text layout. */
+    protected static class LayoutKey
+    {
+        public LayoutKey (String text, Font font, FontRenderContext frc)
+        {
+            _text = text;
+            _font = font;
+            _frc = frc;
+        }
+
+        @Override
+        public boolean equals (Object other)
+        {
+            LayoutKey okey = (LayoutKey)other;
+            return _text.equals(okey._text) && _font.equals(okey._font) && _frc.equals(okey._frc);
+        }
+
+        @Override
+        public int hashCode ()
+        {
+            return (_text.hashCode() * 31 + _font.hashCode()) * 31 + _frc.hashCode();
+        }
+
+        protected String _text;
+        protected Font _font;
+        protected FontRenderContext _frc;
+    }
+
     protected static Rectangle2D getBounds (TextLayout layout, boolean withLeading) {
         Rectangle2D lbounds = layout.getBounds();
         return new Rectangle2D.Double(
@@ -123,4 +236,8 @@ public class LayoutUtil
         rect.setRect(rect.getX(), rect.getY(), rect.getWidth()+width, rect.getHeight()+height);
         return rect;
     }
+
+    /** Our cache of text layouts, if one has been configured. */
+    protected static volatile LRUHashMap<LayoutKey,TextLayout> _layouts;
+    protected static AtomicLong _layoutHits = new AtomicLong(), _layoutMisses = new AtomicLong();
 }
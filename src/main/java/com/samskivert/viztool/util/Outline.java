@@ -0,0 +1,158 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool.util;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A cheap depiction of a page: the bounds and name of each of the elements on the page, in the
+ * order in which they were rendered (so an enclosing element precedes the elements it encloses).
+ * Outlines are extracted from a page's {@link DisplayList} when the page is laid out and are
+ * kept in memory even when the display lists themselves are not.
+ */
+public class Outline
+{
+    /**
+     * Creates an outline with the supplied element bounds (x, y, width and height for each
+     * element) and labels.
+     *
+     * @param hash the content hash of the page (see {@link DisplayList#getContentHash}).
+     */
+    public Outline (float[] bounds, String[] labels, long hash)
+    {
+        _bounds = bounds;
+        _labels = labels;
+        _hash = hash;
+    }
+
+    /**
+     * Returns the content hash of the page from which this outline was extracted, which changes
+     * whenever anything on the page changes (not just the elements in the outline).
+     */
+    public long getContentHash ()
+    {
+        return _hash;
+    }
+
+    /**
+     * Returns the number of elements in this outline.
+     */
+    public int size ()
+    {
+        return _labels.length;
+    }
+
+    /**
+     * Returns the label of the specified element.
+     */
+    public String getLabel (int index)
+    {
+        return _labels[index];
+    }
+
+    /**
+     * Returns the bounds of the specified element.
+     */
+    public Rectangle2D getBounds (int index)
+    {
+        return new Rectangle2D.Float(_bounds[4*index], _bounds[4*index+1],
+                                     _bounds[4*index+2], _bounds[4*index+3]);
+    }
+
+    /**
+     * Writes this outline to the supplied output, from which it can be reread via {@link #read}.
+     */
+    public void write (DataOutput out)
+        throws IOException
+    {
+        out.writeLong(_hash);
+        out.writeInt(_labels.length);
+        for (int ii = 0; ii < _labels.length; ii++) {
+            out.writeUTF(_labels[ii]);
+            for (int bb = 0; bb < 4; bb++) {
+                out.writeFloat(_bounds[4*ii+bb]);
+            }
+        }
+    }
+
+    /**
+     * Reads an outline written via {@link #write}.
+     */
+    public static Outline read (DataInput in)
+        throws IOException
+    {
+        long hash = in.readLong();
+        String[] labels = new String[in.readInt()];
+        float[] bounds = new float[4*labels.length];
+        for (int ii = 0; ii < labels.length; ii++) {
+            labels[ii] = in.readUTF();
+            for (int bb = 0; bb < 4; bb++) {
+                bounds[4*ii+bb] = in.readFloat();
+            }
+        }
+        return new Outline(bounds, labels, hash);
+    }
+
+    /**
+     * Renders this outline into the supplied graphics context: each element is drawn as a box
+     * and is labeled with its name if the name would be legible (and fit in the box) at the
+     * context's current scale. Only the elements that intersect the clip are drawn.
+     */
+    public void paint (Graphics2D gfx)
+    {
+        // labels are drawn at a fixed size on the screen, regardless of our scale
+        double scale = Math.abs(gfx.getTransform().getScaleX());
+        Font font = FontPicker.getClassFont();
+        font = font.deriveFont((float)(LABEL_SIZE / scale));
+        FontMetrics metrics = gfx.getFontMetrics(font);
+        double lheight = metrics.getAscent() + metrics.getDescent();
+        gfx.setFont(font);
+        gfx.setStroke(new BasicStroke((float)(1 / scale)));
+
+        Rectangle clip = gfx.getClipBounds();
+        Rectangle2D.Float box = new Rectangle2D.Float();
+        for (int ii = 0; ii < _labels.length; ii++) {
+            box.setRect(_bounds[4*ii], _bounds[4*ii+1], _bounds[4*ii+2], _bounds[4*ii+3]);
+            if (clip != null && !box.intersects(clip)) {
+                continue;
+            }
+
+            gfx.setColor(FILL);
+            gfx.fill(box);
+            gfx.setColor(Color.black);
+            gfx.draw(box);
+
+            // label the box if there's room
+            if (box.height >= lheight && metrics.stringWidth(_labels[ii]) <= box.width) {
+                gfx.drawString(_labels[ii], box.x, box.y + metrics.getAscent());
+            }
+        }
+    }
+
+    /** The bounds of each element (x, y, width and height). */
+    protected float[] _bounds;
+
+    /** The label of each element. */
+    protected String[] _labels;
+
+    /** The content hash of our page. */
+    protected long _hash;
+
+    /** The size (in pixels) at which labels are drawn. */
+    protected static final double LABEL_SIZE = 9;
+
+    /** The color with which boxes are filled. */
+    protected static final Color FILL = new Color(0xF4F4F4);
+}
@@ -0,0 +1,129 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool.util;
+
+import java.awt.font.FontRenderContext;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import com.samskivert.viztool.Log;
+
+/**
+ * Holds the display lists of a visualization's laid out pages, either in memory or, if the
+ * visualization has been configured with a {@link PageStore}, in that store. Failures to use the
+ * store are logged and the affected pages are kept in memory instead. The {@link Outline} of
+ * every page, and the {@link SearchIndex} of the elements of all of the pages, are kept in memory
+ * regardless.
+ */
+public class PageLists
+{
+    /**
+     * Creates an empty set of pages, clearing out the supplied store if it is non-null.
+     */
+    public PageLists (PageStore store)
+    {
+        _store = store;
+        if (_store != null) {
+            try {
+                _store.clear();
+            } catch (IOException ioe) {
+                Log.warning("Unable to clear page store [error=" + ioe + "].");
+            }
+        }
+    }
+
+    /**
+     * Adds the display list for the next page.
+     */
+    public void add (DisplayList list)
+    {
+        Stats.count(Stats.PAGES);
+        _outlines.add(list.getOutline());
+        list.indexTo(_index, _lists.size());
+        if (_store != null) {
+            try {
+                _store.put(_lists.size(), list);
+                list = null;
+            } catch (IOException ioe) {
+                // we'll just have to keep it in memory
+                Log.warning("Unable to store page [page=" + _lists.size() +
+                            ", error=" + ioe + "].");
+            }
+        }
+        _lists.add(list);
+    }
+
+    /**
+     * Replaces the in-memory display list for the specified page.
+     */
+    public void set (int pageIndex, DisplayList list)
+    {
+        // the page's elements were indexed when it was added
+        if (list != null) {
+            list.indexTo(null, pageIndex);
+        }
+        _lists.set(pageIndex, list);
+    }
+
+    /**
+     * Returns the display list for the specified page, loading it from our store if need be, or
+     * null if we have no such page. A list loaded from the store will be shaped for the supplied
+     * font render context, but one held in memory may not be.
+     */
+    public DisplayList get (int pageIndex, FontRenderContext frc)
+    {
+        if (pageIndex < 0 || pageIndex >= _lists.size()) {
+            return null;
+        }
+        DisplayList list = _lists.get(pageIndex);
+        if (list == null && _store != null) {
+            try {
+                list = _store.getPage(pageIndex, frc);
+            } catch (IOException ioe) {
+                Log.warning("Unable to load page [page=" + pageIndex + ", error=" + ioe + "].");
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Returns the outline of the specified page, or null if we have no such page. Outlines are
+     * always kept in memory.
+     */
+    public Outline getOutline (int pageIndex)
+    {
+        return (pageIndex < 0 || pageIndex >= _outlines.size()) ? null : _outlines.get(pageIndex);
+    }
+
+    /**
+     * Returns the index of the elements of our pages, to which each page's elements are added as
+     * the page is added.
+     */
+    public SearchIndex getSearchIndex ()
+    {
+        return _index;
+    }
+
+    /**
+     * Returns the number of pages.
+     */
+    public int size ()
+    {
+        return _lists.size();
+    }
+
+    /** Our in-memory display lists (null for pages in our store). */
+    protected ArrayList<DisplayList> _lists = new ArrayList<DisplayList>();
+
+    /** The outline of each of our pages. */
+    protected ArrayList<Outline> _outlines = new ArrayList<Outline>();
+
+    /** The index of the elements of our pages. */
+    protected SearchIndex _index = new SearchIndex();
+
+    /** The store in which we keep our pages, or null. */
+    protected PageStore _store;
+}
@@ -0,0 +1,553 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool.util;
+
+import java.awt.Font;
+import java.awt.Shape;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Line2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import com.samskivert.util.LRUHashMap;
+
+/**
+ * Stores the display lists of a visualization's pages in a file rather than on the heap. Pages
+ * are encoded into a compact binary form as they are laid out and are decoded (from a memory
+ * mapped view of the file) when they are needed, with a small cache of recently used pages. The
+ * file is mapped in a few large windows, which are remapped only as the file grows substantially;
+ * pages written since their window was mapped are read directly from the file.
+ * This allows a visualization of thousands of pages to be browsed or printed without holding
+ * thousands of pages of shaped text in memory.
+ *
+ * <p> Text is stored as strings and fonts, and is shaped anew when a page is decoded, using the
+ * font render context of the graphics into which the page will be rendered.
+ *
+ * <p> A store is normally discarded along with its visualization, but one that has been {@link
+ * #seal}ed can be reopened (by another process, say) via {@link #open}.
+ */
+public class PageStore
+{
+    /** The default number of decoded pages kept in memory. */
+    public static final int DEFAULT_CACHE = 8;
+
+    /**
+     * Creates a page store that stores pages in the specified file, which will be created (or
+     * truncated) by this call.
+     *
+     * @param cacheSize the number of decoded pages to keep in memory.
+     */
+    public PageStore (File file, int cacheSize)
+        throws IOException
+    {
+        _file = new RandomAccessFile(file, "rw");
+        _file.setLength(0);
+        _channel = _file.getChannel();
+        _cache = new LRUHashMap<Integer,DisplayList>(Math.max(cacheSize, 1));
+    }
+
+    /**
+     * Opens a store previously written and {@link #seal}ed, from which the pages it held can be
+     * read (but to which no more may be written).
+     *
+     * @param cacheSize the number of decoded pages to keep in memory.
+     */
+    public static PageStore open (File file, int cacheSize)
+        throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return new PageStore(raf, cacheSize);
+        } catch (IOException ioe) {
+            raf.close();
+            throw ioe;
+        }
+    }
+
+    /**
+     * Discards all stored pages. A visualization clears its store before each layout.
+     */
+    public synchronized void clear ()
+        throws IOException
+    {
+        // our mappings are invalid once the file is truncated
+        _windows.clear();
+        _file.setLength(0);
+        _starts = new long[64];
+        _lengths = new int[64];
+        _end = 0;
+        _cache.clear();
+    }
+
+    /**
+     * Writes the supplied page to the store.
+     */
+    public synchronized void put (int index, DisplayList list)
+        throws IOException
+    {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        encode(list, new DataOutputStream(bout));
+        byte[] data = bout.toByteArray();
+        _channel.write(ByteBuffer.wrap(data), _end);
+
+        if (index >= _starts.length) {
+            int size = Math.max(_starts.length*2, index+1);
+            long[] starts = new long[size];
+            System.arraycopy(_starts, 0, starts, 0, _starts.length);
+            _starts = starts;
+            int[] lengths = new int[size];
+            System.arraycopy(_lengths, 0, lengths, 0, _lengths.length);
+            _lengths = lengths;
+        }
+        _starts[index] = _end;
+        _lengths[index] = data.length;
+        _end += data.length;
+        _cache.remove(index);
+    }
+
+    /**
+     * Writes the table of stored pages (and of the fonts they use) to the end of the file, so
+     * that it can be reopened via {@link #open}. Pages may still be written afterwards, but the
+     * store must be sealed again for them to be seen by a reopened store.
+     */
+    public synchronized void seal ()
+        throws IOException
+    {
+        int count = 0;
+        for (int ii = 0; ii < _lengths.length; ii++) {
+            if (_lengths[ii] > 0) {
+                count = ii+1;
+            }
+        }
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bout);
+        out.writeInt(_fonts.size());
+        for (Font font : _fonts) {
+            out.writeUTF(font.getName());
+            out.writeInt(font.getStyle());
+            out.writeFloat(font.getSize2D());
+        }
+        out.writeInt(count);
+        for (int ii = 0; ii < count; ii++) {
+            out.writeLong(_starts[ii]);
+            out.writeInt(_lengths[ii]);
+        }
+        out.writeLong(_end);
+        out.writeInt(SEAL_MAGIC);
+        _channel.write(ByteBuffer.wrap(bout.toByteArray()), _end);
+        _file.setLength(_end + bout.size());
+    }
+
+    /**
+     * Returns the number of pages in a store that was reopened via {@link #open}, or the highest
+     * index written plus one.
+     */
+    public synchronized int getPageCount ()
+    {
+        for (int ii = _lengths.length-1; ii >= 0; ii--) {
+            if (_lengths[ii] > 0) {
+                return ii+1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the number of bytes occupied by the stored pages.
+     */
+    public synchronized long getSize ()
+    {
+        return _end;
+    }
+
+    /**
+     * Returns the specified page, decoding it for the supplied font render context if it is not
+     * already cached for that context. Returns null if no such page has been stored.
+     */
+    public synchronized DisplayList getPage (int index, FontRenderContext frc)
+        throws IOException
+    {
+        if (index < 0 || index >= _lengths.length || _lengths[index] == 0) {
+            return null;
+        }
+
+        DisplayList list = _cache.get(index);
+        if (list == null || !list.isCompatible(frc)) {
+            list = decode(getData(_starts[index], _lengths[index]), frc);
+            _cache.put(index, list);
+        }
+        return list;
+    }
+
+    /**
+     * Closes the file that backs this store. The store may not be used thereafter.
+     */
+    public synchronized void close ()
+        throws IOException
+    {
+        _cache.clear();
+        _windows.clear();
+        _file.close();
+    }
+
+    /**
+     * Reopens a sealed store, reading its page and font tables from the end of the file.
+     */
+    protected PageStore (RandomAccessFile file, int cacheSize)
+        throws IOException
+    {
+        _file = file;
+        _channel = _file.getChannel();
+        _cache = new LRUHashMap<Integer,DisplayList>(Math.max(cacheSize, 1));
+
+        long length = _file.length();
+        if (length < 12) {
+            throw new IOException("Page store is not sealed.");
+        }
+        _file.seek(length - 12);
+        _end = _file.readLong();
+        if (_file.readInt() != SEAL_MAGIC || _end < 0 || _end > length - 12) {
+            throw new IOException("Page store is not sealed.");
+        }
+
+        _file.seek(_end);
+        for (int ii = 0, ll = _file.readInt(); ii < ll; ii++) {
+            fontIndex(new Font(_file.readUTF(), _file.readInt(), 1).deriveFont(
+                          _file.readFloat()));
+        }
+        int count = _file.readInt();
+        _starts = new long[count];
+        _lengths = new int[count];
+        for (int ii = 0; ii < count; ii++) {
+            _starts[ii] = _file.readLong();
+            _lengths[ii] = _file.readInt();
+        }
+    }
+
+    /**
+     * Returns a buffer containing the specified range of the file: a slice of the mapped window
+     * that contains it, mapping (or remapping) the window if need be, or, if the range was written
+     * since its window was last mapped and the file hasn't grown enough to be worth remapping,
+     * a copy read from the file.
+     */
+    protected ByteBuffer getData (long start, int length)
+        throws IOException
+    {
+        int widx = (int)(start / WINDOW_SIZE);
+        long wstart = (long)widx * WINDOW_SIZE;
+        while (_windows.size() <= widx) {
+            _windows.add(null);
+        }
+
+        ByteBuffer window = _windows.get(widx);
+        int offset = (int)(start - wstart);
+        if (window == null || offset + length > window.capacity()) {
+            // windows overlap by a margin so that pages straddling a boundary are usually
+            // contained in the earlier window
+            long avail = Math.min(_channel.size() - wstart, WINDOW_SIZE + WINDOW_OVERLAP);
+            int mapped = (window == null) ? 0 : window.capacity();
+            if (avail > mapped && (window == null || avail >= mapped + REMAP_GROWTH ||
+                                   avail == WINDOW_SIZE + WINDOW_OVERLAP)) {
+                window = _channel.map(FileChannel.MapMode.READ_ONLY, wstart, avail);
+                _windows.set(widx, window);
+            }
+        }
+
+        if (window != null && offset + length <= window.capacity()) {
+            ByteBuffer data = window.duplicate();
+            data.position(offset);
+            data.limit(offset + length);
+            return data.slice();
+        }
+
+        ByteBuffer data = ByteBuffer.allocate(length);
+        while (data.hasRemaining()) {
+            if (_channel.read(data, start + data.position()) < 0) {
+                throw new IOException("Page extends beyond the end of the store.");
+            }
+        }
+        data.flip();
+        return data;
+    }
+
+    protected void encode (DisplayList list, DataOutputStream out)
+        throws IOException
+    {
+        // strings are written out the first time they're used on a page and referenced by index
+        // thereafter
+        HashMap<String,Integer> strings = new HashMap<String,Integer>();
+
+        out.writeInt(list._size);
+        for (int ii = 0; ii < list._size; ii++) {
+            byte op = list._ops[ii];
+            Object object = list._objects[ii];
+            double x = list._coords[2*ii], y = list._coords[2*ii+1];
+
+            switch (op) {
+            case DisplayList.TEXT:
+                DisplayList.Text text = (DisplayList.Text)object;
+                out.writeByte(TEXT);
+                out.writeShort(fontIndex(text.font));
+                writeString(text.text, strings, out);
+                out.writeFloat((float)x);
+                out.writeFloat((float)y);
+                break;
+
+            case DisplayList.DRAW:
+                encodeShape((Shape)object, out);
+                break;
+
+            case DisplayList.TRANSLATE:
+                out.writeByte(TRANSLATE);
+                out.writeDouble(x);
+                out.writeDouble(y);
+                break;
+
+            case DisplayList.BEGIN:
+                out.writeByte(BEGIN);
+                out.writeBoolean(object != null);
+                if (object != null) {
+                    writeString((String)object, strings, out);
+                }
+                break;
+
+            case DisplayList.END:
+                out.writeByte(END);
+                break;
+            }
+        }
+    }
+
+    protected void encodeShape (Shape shape, DataOutputStream out)
+        throws IOException
+    {
+        if (shape instanceof Rectangle2D) {
+            Rectangle2D rect = (Rectangle2D)shape;
+            out.writeByte(RECT);
+            out.writeDouble(rect.getX());
+            out.writeDouble(rect.getY());
+            out.writeDouble(rect.getWidth());
+            out.writeDouble(rect.getHeight());
+
+        } else if (shape instanceof Line2D) {
+            Line2D line = (Line2D)shape;
+            out.writeByte(LINE);
+            out.writeDouble(line.getX1());
+            out.writeDouble(line.getY1());
+            out.writeDouble(line.getX2());
+            out.writeDouble(line.getY2());
+
+        } else {
+            // anything else is written out as a path with float coordinates (the precision of
+            // the general paths that we use)
+            ArrayList<float[]> segments = new ArrayList<float[]>();
+            PathIterator iter = shape.getPathIterator(null);
+            int winding = iter.getWindingRule();
+            for (; !iter.isDone(); iter.next()) {
+                float[] coords = new float[7];
+                coords[6] = iter.currentSegment(coords);
+                segments.add(coords);
+            }
+            out.writeByte(PATH);
+            out.writeByte(winding);
+            out.writeInt(segments.size());
+            for (float[] coords : segments) {
+                int type = (int)coords[6];
+                out.writeByte(type);
+                for (int cc = 0, ll = SEGMENT_COORDS[type]; cc < ll; cc++) {
+                    out.writeFloat(coords[cc]);
+                }
+            }
+        }
+    }
+
+    protected DisplayList decode (ByteBuffer data, FontRenderContext frc)
+    {
+        DisplayList list = new DisplayList(frc);
+        ArrayList<String> strings = new ArrayList<String>();
+
+        for (int ii = 0, ll = data.getInt(); ii < ll; ii++) {
+            switch (data.get()) {
+            case TEXT:
+                Font font = _fonts.get(data.getShort());
+                list.drawText(readString(data, strings), font, data.getFloat(), data.getFloat());
+                break;
+
+            case RECT:
+                list.draw(new Rectangle2D.Double(
+                              data.getDouble(), data.getDouble(),
+                              data.getDouble(), data.getDouble()));
+                break;
+
+            case LINE:
+                list.draw(new Line2D.Double(
+                              data.getDouble(), data.getDouble(),
+                              data.getDouble(), data.getDouble()));
+                break;
+
+            case PATH:
+                GeneralPath path = new GeneralPath(data.get());
+                for (int ss = 0, scount = data.getInt(); ss < scount; ss++) {
+                    switch (data.get()) {
+                    case PathIterator.SEG_MOVETO:
+                        path.moveTo(data.getFloat(), data.getFloat());
+                        break;
+                    case PathIterator.SEG_LINETO:
+                        path.lineTo(data.getFloat(), data.getFloat());
+                        break;
+                    case PathIterator.SEG_QUADTO:
+                        path.quadTo(data.getFloat(), data.getFloat(),
+                                    data.getFloat(), data.getFloat());
+                        break;
+                    case PathIterator.SEG_CUBICTO:
+                        path.curveTo(data.getFloat(), data.getFloat(), data.getFloat(),
+                                     data.getFloat(), data.getFloat(), data.getFloat());
+                        break;
+                    case PathIterator.SEG_CLOSE:
+                        path.closePath();
+                        break;
+                    }
+                }
+                list.draw(path);
+                break;
+
+            case TRANSLATE:
+                list.translate(data.getDouble(), data.getDouble());
+                break;
+
+            case BEGIN:
+                list.begin(data.get() == 0 ? null : readString(data, strings));
+                break;
+
+            case END:
+                list.end();
+                break;
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Writes the supplied string, or a reference to it if it has already been written.
+     */
+    protected static void writeString (
+        String value, HashMap<String,Integer> strings, DataOutputStream out)
+        throws IOException
+    {
+        Integer sidx = strings.get(value);
+        if (sidx == null) {
+            out.writeInt(strings.size());
+            out.writeUTF(value);
+            strings.put(value, strings.size());
+        } else {
+            out.writeInt(sidx);
+        }
+    }
+
+    /**
+     * Reads a string written by {@link #writeString}.
+     */
+    protected static String readString (ByteBuffer data, ArrayList<String> strings)
+    {
+        int sidx = data.getInt();
+        if (sidx == strings.size()) {
+            strings.add(readUTF(data));
+        }
+        return strings.get(sidx);
+    }
+
+    /**
+     * Returns the index of the supplied font in our font table, adding it if necessary. A
+     * visualization uses only a handful of fonts, so we keep them in memory.
+     */
+    protected int fontIndex (Font font)
+    {
+        Integer index = _fontIndices.get(font);
+        if (index == null) {
+            _fontIndices.put(font, index = _fonts.size());
+            _fonts.add(font);
+        }
+        return index;
+    }
+
+    /**
+     * Reads a string written by {@link DataOutputStream#writeUTF}.
+     */
+    protected static String readUTF (ByteBuffer data)
+    {
+        char[] chars = new char[data.getShort() & 0xFFFF];
+        int count = 0;
+        for (int remain = chars.length; remain > 0; ) {
+            int b = data.get() & 0xFF;
+            if (b < 0x80) {
+                chars[count++] = (char)b;
+                remain -= 1;
+            } else if ((b & 0xE0) == 0xC0) {
+                chars[count++] = (char)(((b & 0x1F) << 6) | (data.get() & 0x3F));
+                remain -= 2;
+            } else {
+                int b2 = data.get() & 0x3F, b3 = data.get() & 0x3F;
+                chars[count++] = (char)(((b & 0x0F) << 12) | (b2 << 6) | b3);
+                remain -= 3;
+            }
+        }
+        return new String(chars, 0, count);
+    }
+
+    protected RandomAccessFile _file;
+    protected FileChannel _channel;
+
+    /** The mapped windows of the file (null for those not yet mapped). */
+    protected ArrayList<ByteBuffer> _windows = new ArrayList<ByteBuffer>();
+
+    /** The offset and length of each page in the file (a length of zero if it's not stored). */
+    protected long[] _starts = new long[64];
+    protected int[] _lengths = new int[64];
+
+    /** The end of the data in the file. */
+    protected long _end;
+
+    /** Recently decoded pages. */
+    protected LRUHashMap<Integer,DisplayList> _cache;
+
+    /** The fonts used by our pages, referenced by index. */
+    protected ArrayList<Font> _fonts = new ArrayList<Font>();
+    protected HashMap<Font,Integer> _fontIndices = new HashMap<Font,Integer>();
+
+    /** Operation codes in our file format. */
+    protected static final byte TEXT = 0;
+    protected static final byte RECT = 1;
+    protected static final byte LINE = 2;
+    protected static final byte PATH = 3;
+    protected static final byte TRANSLATE = 4;
+    protected static final byte BEGIN = 5;
+    protected static final byte END = 6;
+
+    /** The size of the windows in which the file is mapped, and the amount by which each window
+     * extends into the next. */
+    protected static final long WINDOW_SIZE = 1L << 28, WINDOW_OVERLAP = 1L << 24;
+
+    /** The amount by which the file must grow beyond a window's mapping before it is remapped. */
+    protected static final long REMAP_GROWTH = 1L << 23;
+
+    /** Marks the end of a sealed store. */
+    protected static final int SEAL_MAGIC = 0x5649505A;
+
+    /** The number of coordinates taken by each path segment type. */
+    protected static final int[] SEGMENT_COORDS = { 2, 2, 4, 6, 0 };
+}
@@ -0,0 +1,284 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool.util;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A pipeline stage pulls items from an upstream iterator, processes them on a pool of threads and
+ * hands the results downstream (in the order in which they were pulled from upstream) via its own
+ * iterator interface. Stages are chained by supplying one pipeline as the source of the next, which
+ * allows every stage to run while the stages before it are still producing.
+ *
+ * <p> The number of items in flight in a stage (queued, being processed or waiting to be handed
+ * on in order) is bounded by the stage's capacity. When that many items are outstanding, the
+ * stage stops pulling from upstream until the downstream consumer catches up.
+ *
+ * <p> A consumer that stops iterating before the stage is exhausted must {@link #close} it (and
+ * with it any stages upstream of it), lest its threads wait forever for the consumer to catch up.
+ */
+public class Pipeline<I,O> implements Iterator<O>
+{
+    /**
+     * Performs the work of a single pipeline stage. Implementations will be called from multiple
+     * threads simultaneously (unless the stage is configured with a single thread).
+     */
+    public interface Stage<I,O>
+    {
+        /**
+         * Processes the supplied input.
+         *
+         * @return the result to be handed downstream or null if the input should be dropped.
+         */
+        public O process (I input);
+    }
+
+    /**
+     * Creates and starts a pipeline stage.
+     *
+     * @param name a name for the stage, used to name its threads.
+     * @param source the iterator from which inputs will be pulled. This is only ever accessed by
+     * a single thread.
+     * @param stage the work to be performed on each input.
+     * @param threads the number of threads that will process inputs.
+     * @param capacity the maximum number of items that may be in flight in this stage.
+     */
+    public Pipeline (String name, Iterator<I> source, Stage<I,O> stage, int threads, int capacity)
+    {
+        _source = source;
+        _stage = stage;
+        _threads = Math.max(threads, 1);
+        _permits = new Semaphore(Math.max(capacity, 1));
+
+        _workers = new Thread[_threads+1];
+        _workers[0] = new Thread(name + "-feed") {
+            public void run () {
+                feed();
+            }
+        };
+        for (int ii = 0; ii < _threads; ii++) {
+            _workers[ii+1] = new Thread(name + "-" + ii) {
+                public void run () {
+                    work();
+                }
+            };
+        }
+        for (Thread thread : _workers) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Closes the supplied iterator if it is a pipeline stage (see {@link #close()}).
+     */
+    public static void close (Iterator<?> iter)
+    {
+        if (iter instanceof Pipeline<?,?>) {
+            ((Pipeline<?,?>)iter).close();
+        }
+    }
+
+    /**
+     * Stops this stage: no more inputs are pulled from upstream, inputs being processed are
+     * discarded and the stage's threads exit. Any stage upstream of this one is closed as well.
+     * The stage then appears to be exhausted. Closing an exhausted or closed stage does nothing.
+     */
+    public void close ()
+    {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        for (Thread thread : _workers) {
+            thread.interrupt();
+        }
+        close(_source);
+    }
+
+    // from interface Iterator<O>
+    public boolean hasNext ()
+    {
+        while (!_closed) {
+            Item<O> item = _pending.get(_nextSeq);
+            if (item != null) {
+                if (item.error != null) {
+                    throw rethrow(item.error);
+                }
+                if (item.value != null) {
+                    return true;
+                }
+                // this item was dropped by the stage, skip it
+                consume();
+                continue;
+            }
+
+            // if we've handed on everything the feeder ever produced, we're done
+            if (_nextSeq == _total) {
+                if (_failure != null) {
+                    throw rethrow(_failure);
+                }
+                return false;
+            }
+
+            // otherwise wait for another result to arrive
+            try {
+                Item<O> result = _output.take();
+                if (result != _end) {
+                    _pending.put(result.seq, result);
+                }
+            } catch (InterruptedException ie) {
+                // let our consumer know why it's being cut short
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted waiting for pipeline results.", ie);
+            }
+        }
+        return false;
+    }
+
+    // from interface Iterator<O>
+    public O next ()
+    {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return consume().value;
+    }
+
+    // from interface Iterator<O>
+    public void remove ()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Removes the next in-order item from the pending table and frees up its slot so that the
+     * feeder can pull another input from upstream.
+     */
+    protected Item<O> consume ()
+    {
+        Item<O> item = _pending.remove(_nextSeq++);
+        _permits.release();
+        return item;
+    }
+
+    /**
+     * Pulls inputs from upstream and queues them up for processing. Runs on the feeder thread.
+     */
+    protected void feed ()
+    {
+        int seq = 0;
+        try {
+            while (!_closed) {
+                _permits.acquire();
+                if (!_source.hasNext()) {
+                    _permits.release();
+                    break;
+                }
+                _input.put(new Item<I>(seq++, _source.next(), null));
+            }
+        } catch (Throwable t) {
+            // an interruption by close() is not a failure
+            if (!_closed) {
+                _failure = t;
+            }
+        }
+
+        // let the workers know that there's nothing more coming
+        for (int ii = 0; ii < _threads; ii++) {
+            _input.add(new Item<I>(-1, null, null));
+        }
+
+        // make a note of how many items we produced and wake up the consumer in case it's waiting
+        // for results that will never arrive
+        _total = seq;
+        _output.add(_end);
+    }
+
+    /**
+     * Processes queued inputs until we're told there are no more. Runs on each worker thread.
+     */
+    protected void work ()
+    {
+        while (!_closed) {
+            Item<I> item;
+            try {
+                item = _input.take();
+            } catch (InterruptedException ie) {
+                continue;
+            }
+            if (item.seq < 0) {
+                return;
+            }
+
+            O result = null;
+            Throwable error = null;
+            try {
+                result = _stage.process(item.value);
+            } catch (Throwable t) {
+                error = t;
+            }
+            _output.add(new Item<O>(item.seq, result, error));
+        }
+    }
+
+    protected static RuntimeException rethrow (Throwable t)
+    {
+        if (t instanceof RuntimeException) {
+            return (RuntimeException)t;
+        } else if (t instanceof Error) {
+            throw (Error)t;
+        } else {
+            return new RuntimeException(t);
+        }
+    }
+
+    /** Tracks an item and its position in the input sequence. */
+    protected static class Item<T>
+    {
+        public final int seq;
+        public final T value;
+        public final Throwable error;
+
+        public Item (int seq, T value, Throwable error)
+        {
+            this.seq = seq;
+            this.value = value;
+            this.error = error;
+        }
+    }
+
+    protected Iterator<I> _source;
+    protected Stage<I,O> _stage;
+    protected int _threads;
+
+    /** Our feeder thread followed by our worker threads. */
+    protected Thread[] _workers;
+    protected volatile boolean _closed;
+
+    /** Bounds the number of items that are in flight. */
+    protected Semaphore _permits;
+
+    protected BlockingQueue<Item<I>> _input = new LinkedBlockingQueue<Item<I>>();
+    protected BlockingQueue<Item<O>> _output = new LinkedBlockingQueue<Item<O>>();
+
+    /** Results that arrived ahead of their turn (only accessed by the consumer). */
+    protected Map<Integer,Item<O>> _pending = new HashMap<Integer,Item<O>>();
+    protected int _nextSeq;
+
+    /** The number of items pulled from upstream; set once the source is exhausted. */
+    protected volatile int _total = -1;
+    protected volatile Throwable _failure;
+
+    /** Posted to the output queue when the feeder is done. */
+    protected final Item<O> _end = new Item<O>(-1, null, null);
+}
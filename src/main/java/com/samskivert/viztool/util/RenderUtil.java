@@ -6,30 +6,31 @@
 package com.samskivert.viztool.util;
 
 import java.awt.Font;
-import java.awt.Graphics2D;
 import java.awt.font.FontRenderContext;
 import java.awt.font.TextLayout;
 import java.awt.geom.Rectangle2D;
 
 /**
- * Rendering related utility functions.
+ * Rendering related utility functions. These record the rendering of text into a {@link
+ * DisplayList} rather than rendering it directly.
  */
 public class RenderUtil
 {
     /**
-     * Renders a string to the specified graphics context, in the specified font at the specified
+     * Renders a string to the specified display list, in the specified font at the specified
      * coordinates.
      *
      * @return the bounds occupied by the rendered string.
      */
-    public static Rectangle2D renderString (Graphics2D gfx, FontRenderContext frc, Font font,
+    public static Rectangle2D renderString (DisplayList list, FontRenderContext frc, Font font,
                                             boolean withLeading, double x, double y, String text)
     {
         // do the rendering
-        TextLayout ilay = new TextLayout(text, font, frc);
+        TextLayout ilay = LayoutUtil.createLayout(text, font, frc);
         float dy = withLeading ? ilay.getLeading() : 0;
         Rectangle2D ibounds = ilay.getBounds();
-        ilay.draw(gfx, (float)(x - ibounds.getX()), (float)(y + dy + ilay.getAscent()));
+        list.drawText(text, font, ilay, (float)(x - ibounds.getX()),
+                      (float)(y + dy + ilay.getAscent()));
 
         // return the dimensions occupied by the rendered string
         return new Rectangle2D.Double(
@@ -37,26 +38,26 @@ public class RenderUtil
     }
 
     /**
-     * Renders an array of strings to the specified graphics context, in the specified font at the
+     * Renders an array of strings to the specified display list, in the specified font at the
      * specified coordinates.
      *
      * @return the bounds occupied by the rendered strings.
      */
-    public static Rectangle2D renderStrings (Graphics2D gfx, FontRenderContext frc, Font font,
+    public static Rectangle2D renderStrings (DisplayList list, FontRenderContext frc, Font font,
                                              boolean withLeading, double x, double y, String[] text)
     {
-        return renderStrings(gfx, frc, font, withLeading, x, y, text, (String)null);
+        return renderStrings(list, frc, font, withLeading, x, y, text, (String)null);
     }
 
     /**
-     * Renders an array of strings to the specified graphics context, in the specified font at the
+     * Renders an array of strings to the specified display list, in the specified font at the
      * specified coordinates. If prefix is non-null, it will be prefixed to the first string and
      * subsequent strings will be rendered with the space necessary to line them up with the first
      * string.
      *
      * @return the bounds occupied by the rendered strings.
      */
-    public static Rectangle2D renderStrings (Graphics2D gfx, FontRenderContext frc, Font font,
+    public static Rectangle2D renderStrings (DisplayList list, FontRenderContext frc, Font font,
                                              boolean withLeading, double x, double y, String[] text,
                                              String prefix)
     {
@@ -64,7 +65,7 @@ public class RenderUtil
         double inset = 0;
 
         if (prefix != null) {
-            TextLayout play = new TextLayout(prefix, font, frc);
+            TextLayout play = LayoutUtil.createLayout(prefix, font, frc);
             inset = play.getBounds().getWidth();
         }
 
@@ -74,11 +75,12 @@ public class RenderUtil
             double sinset = ((i == 0) ? 0 : inset);
 
             // do the rendering
-            TextLayout ilay = new TextLayout(string, font, frc);
+            TextLayout ilay = LayoutUtil.createLayout(string, font, frc);
             if (i > 0 || withLeading) y += ilay.getLeading();
             Rectangle2D ibounds = ilay.getBounds();
             y += ilay.getAscent();
-            ilay.draw(gfx, (float)(x - ibounds.getX() + sinset), (float)y);
+            list.drawText(string, font, ilay, (float)(x - ibounds.getX() + sinset),
+                          (float)y);
 
             maxwid = Math.max(sinset + ibounds.getWidth(), maxwid);
             y += ilay.getDescent();
@@ -89,15 +91,30 @@ public class RenderUtil
     }
 
     /**
-     * Renders a two column array of strings to the specified graphics context, in the specified
+     * Renders a two column array of strings to the specified display list, in the specified
      * font at the specified coordinates. The left column is right align and the right, left
      * aligned.
      *
      * @return the bounds occupied by the rendered strings.
      */
-    public static Rectangle2D renderStrings (Graphics2D gfx, FontRenderContext frc, Font font,
+    public static Rectangle2D renderStrings (DisplayList list, FontRenderContext frc, Font font,
                                              boolean withLeading, double x, double y,
                                              String[] left, String[] right)
+    {
+        return renderStrings(list, frc, font, withLeading, x, y, left, right, null);
+    }
+
+    /**
+     * Renders a two column array of strings just as {@link
+     * #renderStrings(DisplayList,FontRenderContext,Font,boolean,double,double,String[],String[])}
+     * does, additionally filling in the bounds of each row of strings if <code>rows</code> is
+     * non-null.
+     *
+     * @return the bounds occupied by the rendered strings.
+     */
+    public static Rectangle2D renderStrings (DisplayList list, FontRenderContext frc, Font font,
+                                             boolean withLeading, double x, double y,
+                                             String[] left, String[] right, Rectangle2D[] rows)
     {
         double maxleft = 0, maxwid = 0, starty = y;
 
@@ -109,9 +126,9 @@ public class RenderUtil
 
         // compute the dimensions
         for (int i = 0; i < left.length; i++) {
-            llay[i] = new TextLayout(left[i], font, frc);
+            llay[i] = LayoutUtil.createLayout(left[i], font, frc);
             lbnds[i] = llay[i].getBounds();
-            rlay[i] = new TextLayout(right[i], font, frc);
+            rlay[i] = LayoutUtil.createLayout(right[i], font, frc);
             rbnds[i] = rlay[i].getBounds();
             maxleft = Math.max(maxleft, lbnds[i].getWidth());
         }
@@ -126,10 +143,18 @@ public class RenderUtil
             // parenthesis) and would appear a bit lower than the left hand side if we didn't use
             // it's y offset
             y += rl.getAscent();
-            ll.draw(gfx, (float)(x - lbnds[i].getX() + maxleft - lw), (float)y);
-            rl.draw(gfx, (float)(x - rbnds[i].getX() + maxleft + LayoutUtil.GAP), (float)y);
+            list.drawText(left[i], font, ll,
+                          (float)(x - lbnds[i].getX() + maxleft - lw), (float)y);
+            list.drawText(right[i], font, rl,
+                          (float)(x - rbnds[i].getX() + maxleft + LayoutUtil.GAP), (float)y);
             maxwid = Math.max(maxwid, maxleft + LayoutUtil.GAP + rbnds[i].getWidth());
-            y += Math.max(ll.getDescent(), rl.getDescent());
+            double descent = Math.max(ll.getDescent(), rl.getDescent());
+            if (rows != null) {
+                rows[i] = new Rectangle2D.Double(
+                    x, y - rl.getAscent(), maxleft + LayoutUtil.GAP + rbnds[i].getWidth(),
+                    rl.getAscent() + descent);
+            }
+            y += descent;
         }
 
         // return the dimensions occupied by the rendered strings
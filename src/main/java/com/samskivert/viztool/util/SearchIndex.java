@@ -0,0 +1,396 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool.util;
+
+import java.awt.geom.Rectangle2D;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Maps the names of the elements of a laid out visualization (the full and simple names of its
+ * classes, the names of their members and the names of its packages) to the page on which, and
+ * the bounds within which, each element is drawn. The index is built as the visualization's pages
+ * are laid out (see {@link DisplayList#index}) and can be searched, case insensitively, for the
+ * names that start with a given prefix.
+ *
+ * <p> The names are kept in a sorted array, so a search is a binary search for the first name
+ * with the prefix followed by a scan of the matching names, and takes a few microseconds even for
+ * a visualization of a hundred thousand classes. Names added since the last search are sorted and
+ * merged into the array by the next search.
+ */
+public class SearchIndex
+{
+    /** The kind of an entry for a class. */
+    public static final int CLASS = 0;
+
+    /** The kind of an entry for a member of a class. */
+    public static final int MEMBER = 1;
+
+    /** The kind of an entry for a package. */
+    public static final int PACKAGE = 2;
+
+    /**
+     * An element that matched a search.
+     */
+    public static class Match
+    {
+        /** The name of the element (a member's name is qualified by that of its class). */
+        public String name;
+
+        /** The kind of element ({@link #CLASS}, {@link #MEMBER} or {@link #PACKAGE}). */
+        public int kind;
+
+        /** The (zero-based) index of the page on which the element is drawn. */
+        public int page;
+
+        /** The bounds of the element on its page. */
+        public Rectangle2D bounds;
+
+        public String toString ()
+        {
+            return name + " (" + KIND_NAMES[kind] + ", page " + (page+1) + ")";
+        }
+    }
+
+    /**
+     * Returns the names under which the class with the supplied (fully qualified) name should be
+     * found: its full name, its name sans package and, for an inner class, its name sans outer
+     * classes.
+     */
+    public static String[] getClassKeys (String cname)
+    {
+        String simple = cname.substring(cname.lastIndexOf('.')+1);
+        int didx = simple.lastIndexOf('$');
+        return (didx == -1) ? new String[] { cname, simple } :
+            new String[] { cname, simple, simple.substring(didx+1) };
+    }
+
+    /**
+     * Adds an element to the index.
+     *
+     * @param kind the kind of element ({@link #CLASS}, {@link #MEMBER} or {@link #PACKAGE}).
+     * @param owner the full name of the class of which the element is a member, or null.
+     * @param name the name of the element.
+     * @param page the index of the page on which the element is drawn.
+     * @param keys the names under which the element can be found.
+     */
+    public synchronized void add (int kind, String owner, String name, int page, double x,
+                                  double y, double width, double height, String... keys)
+    {
+        int target = _targetCount++;
+        if (target == _names.length) {
+            String[] owners = new String[target*2];
+            System.arraycopy(_owners, 0, owners, 0, target);
+            _owners = owners;
+            String[] names = new String[target*2];
+            System.arraycopy(_names, 0, names, 0, target);
+            _names = names;
+            byte[] kinds = new byte[target*2];
+            System.arraycopy(_kinds, 0, kinds, 0, target);
+            _kinds = kinds;
+            int[] pages = new int[target*2];
+            System.arraycopy(_pages, 0, pages, 0, target);
+            _pages = pages;
+            float[] bounds = new float[target*8];
+            System.arraycopy(_bounds, 0, bounds, 0, target*4);
+            _bounds = bounds;
+        }
+        _owners[target] = owner;
+        _names[target] = name;
+        _kinds[target] = (byte)kind;
+        _pages[target] = page;
+        _bounds[4*target] = (float)x;
+        _bounds[4*target+1] = (float)y;
+        _bounds[4*target+2] = (float)width;
+        _bounds[4*target+3] = (float)height;
+
+        for (String key : keys) {
+            if (_keyCount == _keys.length) {
+                String[] nkeys = new String[_keyCount*2];
+                System.arraycopy(_keys, 0, nkeys, 0, _keyCount);
+                _keys = nkeys;
+                int[] targets = new int[_keyCount*2];
+                System.arraycopy(_keyTargets, 0, targets, 0, _keyCount);
+                _keyTargets = targets;
+            }
+            _keys[_keyCount] = key;
+            _keyTargets[_keyCount++] = target;
+        }
+    }
+
+    /**
+     * Returns the number of elements in the index.
+     */
+    public synchronized int size ()
+    {
+        return _targetCount;
+    }
+
+    /**
+     * Returns the elements with a name that starts with the supplied prefix (ignoring case), in
+     * order of the matching name, up to the specified maximum number of matches.
+     */
+    public synchronized List<Match> find (String prefix, int max)
+    {
+        sort();
+        List<Match> matches = new ArrayList<Match>();
+        int plen = prefix.length();
+        int[] found = new int[Math.max(max, 0)];
+        for (int ii = lowerBound(prefix); ii < _keyCount && matches.size() < max; ii++) {
+            if (!_keys[ii].regionMatches(true, 0, prefix, 0, plen)) {
+                break;
+            }
+            // an element may be found under more than one of its names
+            int target = _keyTargets[ii];
+            boolean dup = false;
+            for (int ff = 0, fl = matches.size(); ff < fl && !dup; ff++) {
+                dup = (found[ff] == target);
+            }
+            if (!dup) {
+                found[matches.size()] = target;
+                matches.add(getMatch(target));
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Sorts any names added since the last search into our sorted names. This is done
+     * automatically by {@link #find}, but may be done in advance (on a thread other than the one
+     * that will search the index, say).
+     */
+    public synchronized void sort ()
+    {
+        if (_sorted == _keyCount) {
+            return;
+        }
+
+        // sort the new names
+        Integer[] order = new Integer[_keyCount - _sorted];
+        for (int ii = 0; ii < order.length; ii++) {
+            order[ii] = _sorted + ii;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare (Integer k1, Integer k2) {
+                return compareKeys(_keys[k1], _keys[k2]);
+            }
+        });
+
+        // and merge them with the old
+        String[] keys = new String[_keys.length];
+        int[] targets = new int[_keys.length];
+        int oo = 0, nn = 0, kk = 0;
+        while (oo < _sorted || nn < order.length) {
+            int src;
+            if (nn == order.length ||
+                (oo < _sorted && compareKeys(_keys[oo], _keys[order[nn]]) <= 0)) {
+                src = oo++;
+            } else {
+                src = order[nn++];
+            }
+            keys[kk] = _keys[src];
+            targets[kk++] = _keyTargets[src];
+        }
+        _keys = keys;
+        _keyTargets = targets;
+        _sorted = _keyCount;
+    }
+
+    /**
+     * Writes the index to the supplied output, from which its elements can be added to another
+     * index via {@link #read}.
+     */
+    public synchronized void write (DataOutput out)
+        throws IOException
+    {
+        // note the keys of each element
+        List<List<String>> keys = getKeysByTarget();
+        out.writeInt(_targetCount);
+        for (int ii = 0; ii < _targetCount; ii++) {
+            out.writeByte(_kinds[ii]);
+            out.writeBoolean(_owners[ii] != null);
+            if (_owners[ii] != null) {
+                out.writeUTF(_owners[ii]);
+            }
+            out.writeUTF(_names[ii]);
+            out.writeInt(_pages[ii]);
+            for (int bb = 0; bb < 4; bb++) {
+                out.writeFloat(_bounds[4*ii+bb]);
+            }
+            out.writeShort(keys.get(ii).size());
+            for (String key : keys.get(ii)) {
+                out.writeUTF(key);
+            }
+        }
+    }
+
+    /**
+     * Adds the elements of an index written via {@link #write} to this index, offsetting their
+     * page indices by the specified amount.
+     */
+    public void read (DataInput in, int pageOffset)
+        throws IOException
+    {
+        for (int ii = 0, ll = in.readInt(); ii < ll; ii++) {
+            int kind = in.readByte();
+            String owner = in.readBoolean() ? in.readUTF() : null;
+            String name = in.readUTF();
+            int page = in.readInt() + pageOffset;
+            float x = in.readFloat(), y = in.readFloat();
+            float width = in.readFloat(), height = in.readFloat();
+            String[] keys = new String[in.readShort()];
+            for (int kk = 0; kk < keys.length; kk++) {
+                keys[kk] = in.readUTF();
+            }
+            add(kind, owner, name, page, x, y, width, height, keys);
+        }
+    }
+
+    /**
+     * Returns the (qualified) names of the elements of the specified kinds on each page, in the
+     * order in which they were added. The list has an entry for every page up to the last on
+     * which there is such an element.
+     */
+    public synchronized List<List<String>> getNamesByPage (int... kinds)
+    {
+        boolean[] wanted = new boolean[KIND_NAMES.length];
+        for (int kind : kinds) {
+            wanted[kind] = true;
+        }
+        List<List<String>> names = new ArrayList<List<String>>();
+        for (int ii = 0; ii < _targetCount; ii++) {
+            if (!wanted[_kinds[ii]]) {
+                continue;
+            }
+            while (names.size() <= _pages[ii]) {
+                names.add(new ArrayList<String>());
+            }
+            names.get(_pages[ii]).add(getName(ii));
+        }
+        return names;
+    }
+
+    /**
+     * Writes the index as a table of contents: each element, in order of its (qualified) name
+     * (ignoring case), followed by its kind and the (one-based) number of its page, separated by
+     * tabs.
+     */
+    public synchronized void writeContents (File file)
+        throws IOException
+    {
+        final String[] names = new String[_targetCount];
+        Integer[] order = new Integer[_targetCount];
+        for (int ii = 0; ii < order.length; ii++) {
+            names[ii] = getName(ii);
+            order[ii] = ii;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare (Integer t1, Integer t2) {
+                int rv = compareKeys(names[t1], names[t2]);
+                return (rv != 0) ? rv : (_pages[t1] - _pages[t2]);
+            }
+        });
+
+        PrintWriter out = new PrintWriter(new FileWriter(file));
+        try {
+            for (Integer target : order) {
+                out.println(names[target] + "\t" + KIND_NAMES[_kinds[target]] + "\t" +
+                            (_pages[target]+1));
+            }
+        } finally {
+            out.close();
+        }
+        if (out.checkError()) {
+            throw new IOException("Unable to write '" + file + "'.");
+        }
+    }
+
+    /**
+     * Returns the index of the first of our (sorted) names that is not less than the supplied
+     * prefix, ignoring case.
+     */
+    protected int lowerBound (String prefix)
+    {
+        int lo = 0, hi = _keyCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (String.CASE_INSENSITIVE_ORDER.compare(_keys[mid], prefix) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    protected Match getMatch (int target)
+    {
+        Match match = new Match();
+        match.name = getName(target);
+        match.kind = _kinds[target];
+        match.page = _pages[target];
+        match.bounds = new Rectangle2D.Float(_bounds[4*target], _bounds[4*target+1],
+                                             _bounds[4*target+2], _bounds[4*target+3]);
+        return match;
+    }
+
+    /**
+     * Returns the name of the specified element, qualified by that of its class if it has one.
+     */
+    protected String getName (int target)
+    {
+        String owner = _owners[target];
+        return (owner == null) ? _names[target] : (owner + "." + _names[target]);
+    }
+
+    protected List<List<String>> getKeysByTarget ()
+    {
+        List<List<String>> keys = new ArrayList<List<String>>(_targetCount);
+        for (int ii = 0; ii < _targetCount; ii++) {
+            keys.add(new ArrayList<String>(2));
+        }
+        for (int ii = 0; ii < _keyCount; ii++) {
+            keys.get(_keyTargets[ii]).add(_keys[ii]);
+        }
+        return keys;
+    }
+
+    /**
+     * Orders names ignoring case, breaking ties (names that differ only in case) by case, so
+     * that all of the names with a given prefix are adjacent in our sorted array.
+     */
+    protected static int compareKeys (String k1, String k2)
+    {
+        int rv = String.CASE_INSENSITIVE_ORDER.compare(k1, k2);
+        return (rv != 0) ? rv : k1.compareTo(k2);
+    }
+
+    /** The owning class, name, kind, page and bounds (x, y, width and height) of each element.
+     * The owners are shared by the members of a class, so a member costs us no new strings. */
+    protected String[] _owners = new String[64];
+    protected String[] _names = new String[64];
+    protected byte[] _kinds = new byte[64];
+    protected int[] _pages = new int[64];
+    protected float[] _bounds = new float[256];
+    protected int _targetCount;
+
+    /** The names under which elements can be found and the element found under each. The first
+     * {@link #_sorted} of them are sorted (see {@link #compareKeys}). */
+    protected String[] _keys = new String[64];
+    protected int[] _keyTargets = new int[64];
+    protected int _keyCount, _sorted;
+
+    /** The names of the kinds of elements, as written to a table of contents. */
+    protected static final String[] KIND_NAMES = { "class", "member", "package" };
+}
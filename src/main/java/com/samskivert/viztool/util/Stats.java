@@ -0,0 +1,277 @@
+//
+// viztool - a tool for visualizing collections of java classes
+// Copyright (c) 2001-2013, Michael Bayne - All rights reserved.
+// http://github.com/samskivert/viztool/blob/master/LICENSE
+
+package com.samskivert.viztool.util;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Collects per-phase timing and allocation statistics and item counts for a run, so that a slow
+ * run can be attributed to scanning, class loading, introspection, measurement, layout or
+ * rendering. Statistics are only collected once {@link #setEnabled} has been called; until then
+ * the probes cost a single (volatile) read.
+ *
+ * <p> Each phase accumulates the number of times it was entered along with the elapsed time, CPU
+ * time and bytes allocated by the thread that entered it. Phases that run on several threads at
+ * once (scanning, loading, introspection and measurement run on pipeline threads) report totals
+ * summed over those threads, and a phase's totals include those of any phases nested within it
+ * on the same thread (introspection within setting the classes, measurement within layout and so
+ * on). The report is written as JSON.
+ */
+public class Stats
+{
+    /** Scanning the classpath for class names. */
+    public static final int SCAN = 0;
+
+    /** Loading classes. */
+    public static final int LOAD = 1;
+
+    /** Supplying the classes to the visualizer. */
+    public static final int SET_CLASSES = 2;
+
+    /** Introspecting classes into records. */
+    public static final int INTROSPECT = 3;
+
+    /** Formatting and measuring the elements of a visualization. */
+    public static final int MEASURE = 4;
+
+    /** Laying out a visualization. */
+    public static final int LAYOUT = 5;
+
+    /** Rendering (painting or printing) pages. */
+    public static final int RENDER = 6;
+
+    /** The number of class names produced by scanning. */
+    public static final int CLASSES_SCANNED = 0;
+
+    /** The number of classes loaded. */
+    public static final int CLASSES_LOADED = 1;
+
+    /** The number of class records introspected. */
+    public static final int CLASSES_INTROSPECTED = 2;
+
+    /** The number of text layouts created (each of which shapes a run of text). */
+    public static final int TEXT_LAYOUTS = 3;
+
+    /** The number of pages laid out. */
+    public static final int PAGES = 4;
+
+    /** The number of pages rendered. */
+    public static final int PAGES_RENDERED = 5;
+
+    /** The number of pages not written because they were unchanged since they were last written. */
+    public static final int PAGES_UNCHANGED = 6;
+
+    /**
+     * Measures a single pass through a phase. Obtained via {@link #start}.
+     */
+    public static class Probe
+    {
+        /**
+         * Ends the pass through the phase, adding its costs to the phase's totals. This must be
+         * called on the thread that started the probe.
+         */
+        public void stop ()
+        {
+            int base = 4*_phase;
+            _phases.incrementAndGet(base);
+            _phases.addAndGet(base+1, System.nanoTime() - _wall);
+            if (_cpu >= 0) {
+                _phases.addAndGet(base+2, threadCpuTime() - _cpu);
+            }
+            if (_alloc >= 0) {
+                _phases.addAndGet(base+3, threadAllocatedBytes() - _alloc);
+            }
+        }
+
+        protected Probe ()
+        {
+        }
+
+        protected Probe (int phase)
+        {
+            _phase = phase;
+            _wall = System.nanoTime();
+            _cpu = threadCpuTime();
+            _alloc = threadAllocatedBytes();
+        }
+
+        protected int _phase;
+        protected long _wall, _cpu, _alloc;
+    }
+
+    /**
+     * Enables or disables the collection of statistics. Enabling collection resets any previously
+     * collected statistics.
+     */
+    public static void setEnabled (boolean enabled)
+    {
+        if (enabled) {
+            _phases = new AtomicLongArray(4*PHASE_NAMES.length);
+            _counts = new AtomicLongArray(COUNT_NAMES.length);
+            _started = System.nanoTime();
+        }
+        _enabled = enabled;
+    }
+
+    /**
+     * Returns true if statistics are being collected.
+     */
+    public static boolean isEnabled ()
+    {
+        return _enabled;
+    }
+
+    /**
+     * Starts a pass through the specified phase, which is ended by calling {@link Probe#stop}.
+     */
+    public static Probe start (int phase)
+    {
+        return _enabled ? new Probe(phase) : NOOP;
+    }
+
+    /**
+     * Increments the specified count.
+     */
+    public static void count (int count)
+    {
+        if (_enabled) {
+            _counts.incrementAndGet(count);
+        }
+    }
+
+    /**
+     * Returns the total of the specified count.
+     */
+    public static long getCount (int count)
+    {
+        return _counts.get(count);
+    }
+
+    /**
+     * Returns the statistics collected since collection was enabled, as JSON.
+     */
+    public static String toJSON ()
+    {
+        StringBuilder buf = new StringBuilder();
+        buf.append("{\n");
+        buf.append("  \"wallMillis\": ").append(millis(System.nanoTime() - _started));
+        buf.append(",\n");
+        buf.append("  \"phases\": {\n");
+        for (int ii = 0; ii < PHASE_NAMES.length; ii++) {
+            int base = 4*ii;
+            buf.append("    \"").append(PHASE_NAMES[ii]).append("\": {");
+            buf.append("\"calls\": ").append(_phases.get(base));
+            buf.append(", \"wallMillis\": ").append(millis(_phases.get(base+1)));
+            buf.append(", \"cpuMillis\": ");
+            buf.append(_cpuSupported ? String.valueOf(millis(_phases.get(base+2))) : "null");
+            buf.append(", \"allocatedBytes\": ");
+            buf.append(_allocMethod != null ? String.valueOf(_phases.get(base+3)) : "null");
+            buf.append("}").append(ii < PHASE_NAMES.length-1 ? ",\n" : "\n");
+        }
+        buf.append("  },\n");
+        buf.append("  \"counts\": {\n");
+        for (int ii = 0; ii < COUNT_NAMES.length; ii++) {
+            buf.append("    \"").append(COUNT_NAMES[ii]).append("\": ").append(_counts.get(ii));
+            buf.append(ii < COUNT_NAMES.length-1 ? ",\n" : "\n");
+        }
+        buf.append("  },\n");
+        Runtime rt = Runtime.getRuntime();
+        buf.append("  \"heap\": {\"usedBytes\": ").append(rt.totalMemory() - rt.freeMemory());
+        buf.append(", \"maxBytes\": ").append(rt.maxMemory()).append("}\n");
+        buf.append("}\n");
+        return buf.toString();
+    }
+
+    /**
+     * Writes the statistics collected since collection was enabled, as JSON, to the specified
+     * file.
+     */
+    public static void write (File file)
+        throws IOException
+    {
+        Writer out = new FileWriter(file);
+        try {
+            out.write(toJSON());
+        } finally {
+            out.close();
+        }
+    }
+
+    protected static double millis (long nanos)
+    {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+
+    protected static long threadCpuTime ()
+    {
+        return _cpuSupported ? _threads.getCurrentThreadCpuTime() : -1;
+    }
+
+    protected static long threadAllocatedBytes ()
+    {
+        if (_allocMethod == null) {
+            return -1;
+        }
+        try {
+            return (Long)_allocMethod.invoke(_threads, Thread.currentThread().getId());
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    protected static volatile boolean _enabled;
+    protected static long _started;
+
+    /** The calls, elapsed nanoseconds, CPU nanoseconds and allocated bytes of each phase. */
+    protected static AtomicLongArray _phases = new AtomicLongArray(0);
+
+    /** Our counts. */
+    protected static AtomicLongArray _counts = new AtomicLongArray(0);
+
+    protected static ThreadMXBean _threads = ManagementFactory.getThreadMXBean();
+    protected static boolean _cpuSupported;
+
+    /** Per-thread allocation accounting is an extension provided by some VMs. */
+    protected static Method _allocMethod;
+
+    protected static final Probe NOOP = new Probe() {
+        public void stop () {
+        }
+    };
+
+    protected static final String[] PHASE_NAMES = {
+        "scan", "load", "setClasses", "introspect", "measure", "layout", "render" };
+
+    protected static final String[] COUNT_NAMES = {
+        "classesScanned", "classesLoaded", "classesIntrospected", "textLayouts", "pages",
+        "pagesRendered", "pagesUnchanged" };
+
+    static {
+        try {
+            _cpuSupported = _threads.isCurrentThreadCpuTimeSupported();
+            if (_cpuSupported && !_threads.isThreadCpuTimeEnabled()) {
+                _threads.setThreadCpuTimeEnabled(true);
+            }
+        } catch (Exception e) {
+            _cpuSupported = false;
+        }
+        try {
+            Method method = Class.forName("com.sun.management.ThreadMXBean").getMethod(
+                "getThreadAllocatedBytes", long.class);
+            method.invoke(_threads, Thread.currentThread().getId());
+            _allocMethod = method;
+        } catch (Throwable t) {
+            // not available on this VM
+        }
+    }
+}